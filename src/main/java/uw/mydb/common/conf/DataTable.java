@@ -3,6 +3,7 @@ package uw.mydb.common.conf;
 
 import org.apache.commons.lang3.StringUtils;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Objects;
 
 /**
@@ -21,6 +22,11 @@ public class DataTable {
      */
     private String table;
 
+    /**
+     * sql标识符的UTF-8编码缓存，改写SQL时直接拼接字节。
+     */
+    private transient byte[] sqlIdentityBytes;
+
     public DataTable() {
     }
 
@@ -73,9 +79,14 @@ public class DataTable {
 
     /**
      * 复制一个RouteInfo。
+     * 路由配置中的实例每次路由都会被复制，sql标识符编码缓存在原实例上，复制出的实例直接共用。
      */
     public DataTable copy() {
-        return new DataTable( dataNode, table );
+        DataTable dataTable = new DataTable( dataNode, table );
+        if (table != null) {
+            dataTable.sqlIdentityBytes = genSqlIdentityBytes();
+        }
+        return dataTable;
     }
 
     @Override
@@ -123,12 +134,27 @@ public class DataTable {
         }
     }
 
+    /**
+     * 生成sql标识符的UTF-8编码，首次调用时编码并缓存，copy出的实例共用。
+     *
+     * @return
+     */
+    public byte[] genSqlIdentityBytes() {
+        byte[] bytes = sqlIdentityBytes;
+        if (bytes == null) {
+            bytes = genSqlIdentity().getBytes( StandardCharsets.UTF_8 );
+            sqlIdentityBytes = bytes;
+        }
+        return bytes;
+    }
+
     public DataNode getDataNode() {
         return dataNode;
     }
 
     public void setDataNode(DataNode dataNode) {
         this.dataNode = dataNode;
+        this.sqlIdentityBytes = null;
     }
 
     public long getClusterId() {
@@ -145,5 +171,6 @@ public class DataTable {
 
     public void setTable(String table) {
         this.table = table;
+        this.sqlIdentityBytes = null;
     }
 }
@@ -24,10 +24,41 @@ public class MysqlConnStats {
 
     /**
      * mysql链接信息。
-     * long数组为：clusterId,busyConnNum,idleConnNum。
+     * long数组为：mysqlId,busyConnNum,idleConnNum。
      */
     private List<long[]> mysqlConnList;
 
+    /**
+     * mysql等待队列信息。
+     * long数组为：mysqlId,pendingAcquireNum。
+     */
+    private List<long[]> mysqlPendingAcquireList;
+
+    /**
+     * mysql等待获取连接的acquire数量（等待队列深度）。
+     */
+    private long mysqlPendingAcquireNum;
+
+    /**
+     * mysql连接排队等待累计次数。
+     */
+    private long mysqlAcquireWaitNum;
+
+    /**
+     * mysql连接排队等待累计毫秒数。
+     */
+    private long mysqlAcquireWaitMillis;
+
+    /**
+     * mysql连接排队超时累计次数。
+     */
+    private long mysqlAcquireTimeoutNum;
+
+    /**
+     * mysql连接等待队列已满被拒绝累计次数。
+     */
+    private long mysqlAcquireRejectNum;
+
     public MysqlConnStats(int mysqlNum, long mysqlBusyConnNum, long mysqlIdleConnNum, List<long[]> mysqlConnList) {
         this.mysqlNum = mysqlNum;
         this.mysqlBusyConnNum = mysqlBusyConnNum;
@@ -69,4 +100,52 @@ public class MysqlConnStats {
     public void setMysqlConnList(List<long[]> mysqlConnList) {
         this.mysqlConnList = mysqlConnList;
     }
+
+    public List<long[]> getMysqlPendingAcquireList() {
+        return mysqlPendingAcquireList;
+    }
+
+    public void setMysqlPendingAcquireList(List<long[]> mysqlPendingAcquireList) {
+        this.mysqlPendingAcquireList = mysqlPendingAcquireList;
+    }
+
+    public long getMysqlPendingAcquireNum() {
+        return mysqlPendingAcquireNum;
+    }
+
+    public void setMysqlPendingAcquireNum(long mysqlPendingAcquireNum) {
+        this.mysqlPendingAcquireNum = mysqlPendingAcquireNum;
+    }
+
+    public long getMysqlAcquireWaitNum() {
+        return mysqlAcquireWaitNum;
+    }
+
+    public void setMysqlAcquireWaitNum(long mysqlAcquireWaitNum) {
+        this.mysqlAcquireWaitNum = mysqlAcquireWaitNum;
+    }
+
+    public long getMysqlAcquireWaitMillis() {
+        return mysqlAcquireWaitMillis;
+    }
+
+    public void setMysqlAcquireWaitMillis(long mysqlAcquireWaitMillis) {
+        this.mysqlAcquireWaitMillis = mysqlAcquireWaitMillis;
+    }
+
+    public long getMysqlAcquireTimeoutNum() {
+        return mysqlAcquireTimeoutNum;
+    }
+
+    public void setMysqlAcquireTimeoutNum(long mysqlAcquireTimeoutNum) {
+        this.mysqlAcquireTimeoutNum = mysqlAcquireTimeoutNum;
+    }
+
+    public long getMysqlAcquireRejectNum() {
+        return mysqlAcquireRejectNum;
+    }
+
+    public void setMysqlAcquireRejectNum(long mysqlAcquireRejectNum) {
+        this.mysqlAcquireRejectNum = mysqlAcquireRejectNum;
+    }
 }
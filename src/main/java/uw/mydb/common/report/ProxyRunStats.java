@@ -106,6 +106,63 @@ public class ProxyRunStats {
      * mysql链接信息。
      */
     private List<long[]> mysqlConnList;
+
+    /**
+     * mysql等待队列信息。
+     * long数组为：mysqlId,pendingAcquireNum。
+     */
+    private List<long[]> mysqlPendingAcquireList;
+
+    /**
+     * mysql等待获取连接的acquire数量（等待队列深度）。
+     */
+    private long mysqlPendingAcquireNum;
+
+    /**
+     * mysql连接排队等待累计次数。
+     */
+    private long mysqlAcquireWaitNum;
+
+    /**
+     * mysql连接排队等待累计毫秒数。
+     */
+    private long mysqlAcquireWaitMillis;
+
+    /**
+     * mysql连接排队超时累计次数。
+     */
+    private long mysqlAcquireTimeoutNum;
+
+    /**
+     * mysql连接等待队列已满被拒绝累计次数。
+     */
+    private long mysqlAcquireRejectNum;
+
+    /**
+     * SQL解析计划缓存命中累计次数。
+     */
+    private long sqlPlanCacheHitNum;
+
+    /**
+     * SQL解析计划缓存未命中累计次数。
+     */
+    private long sqlPlanCacheMissNum;
+
+    /**
+     * 路由结果缓存命中累计次数。
+     */
+    private long routeResultCacheHitNum;
+
+    /**
+     * 路由结果缓存未命中累计次数。
+     */
+    private long routeResultCacheMissNum;
+
+    /**
+     * 路由结果缓存累计命中率（0~1）。
+     */
+    private double routeResultCacheHitRatio;
+
     /**
      * schema统计数量。
      */
@@ -409,6 +466,94 @@ public class ProxyRunStats {
         this.mysqlConnList = mysqlConnList;
     }
 
+    public List<long[]> getMysqlPendingAcquireList() {
+        return mysqlPendingAcquireList;
+    }
+
+    public void setMysqlPendingAcquireList(List<long[]> mysqlPendingAcquireList) {
+        this.mysqlPendingAcquireList = mysqlPendingAcquireList;
+    }
+
+    public long getMysqlPendingAcquireNum() {
+        return mysqlPendingAcquireNum;
+    }
+
+    public void setMysqlPendingAcquireNum(long mysqlPendingAcquireNum) {
+        this.mysqlPendingAcquireNum = mysqlPendingAcquireNum;
+    }
+
+    public long getMysqlAcquireWaitNum() {
+        return mysqlAcquireWaitNum;
+    }
+
+    public void setMysqlAcquireWaitNum(long mysqlAcquireWaitNum) {
+        this.mysqlAcquireWaitNum = mysqlAcquireWaitNum;
+    }
+
+    public long getMysqlAcquireWaitMillis() {
+        return mysqlAcquireWaitMillis;
+    }
+
+    public void setMysqlAcquireWaitMillis(long mysqlAcquireWaitMillis) {
+        this.mysqlAcquireWaitMillis = mysqlAcquireWaitMillis;
+    }
+
+    public long getMysqlAcquireTimeoutNum() {
+        return mysqlAcquireTimeoutNum;
+    }
+
+    public void setMysqlAcquireTimeoutNum(long mysqlAcquireTimeoutNum) {
+        this.mysqlAcquireTimeoutNum = mysqlAcquireTimeoutNum;
+    }
+
+    public long getMysqlAcquireRejectNum() {
+        return mysqlAcquireRejectNum;
+    }
+
+    public void setMysqlAcquireRejectNum(long mysqlAcquireRejectNum) {
+        this.mysqlAcquireRejectNum = mysqlAcquireRejectNum;
+    }
+
+    public long getSqlPlanCacheHitNum() {
+        return sqlPlanCacheHitNum;
+    }
+
+    public void setSqlPlanCacheHitNum(long sqlPlanCacheHitNum) {
+        this.sqlPlanCacheHitNum = sqlPlanCacheHitNum;
+    }
+
+    public long getSqlPlanCacheMissNum() {
+        return sqlPlanCacheMissNum;
+    }
+
+    public void setSqlPlanCacheMissNum(long sqlPlanCacheMissNum) {
+        this.sqlPlanCacheMissNum = sqlPlanCacheMissNum;
+    }
+
+    public long getRouteResultCacheHitNum() {
+        return routeResultCacheHitNum;
+    }
+
+    public void setRouteResultCacheHitNum(long routeResultCacheHitNum) {
+        this.routeResultCacheHitNum = routeResultCacheHitNum;
+    }
+
+    public long getRouteResultCacheMissNum() {
+        return routeResultCacheMissNum;
+    }
+
+    public void setRouteResultCacheMissNum(long routeResultCacheMissNum) {
+        this.routeResultCacheMissNum = routeResultCacheMissNum;
+    }
+
+    public double getRouteResultCacheHitRatio() {
+        return routeResultCacheHitRatio;
+    }
+
+    public void setRouteResultCacheHitRatio(double routeResultCacheHitRatio) {
+        this.routeResultCacheHitRatio = routeResultCacheHitRatio;
+    }
+
     public long getSchemaStatsNum() {
         return schemaStatsNum;
     }
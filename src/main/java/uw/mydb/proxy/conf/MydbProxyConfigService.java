@@ -9,6 +9,9 @@ import uw.cache.CacheDataLoader;
 import uw.cache.FusionCache;
 import uw.mydb.common.conf.*;
 import uw.mydb.common.report.*;
+import uw.mydb.proxy.route.RouteManager;
+import uw.mydb.proxy.route.RouteResultCache;
+import uw.mydb.proxy.route.RouteTableListCache;
 
 import java.util.ArrayList;
 import java.util.Collection;
@@ -21,7 +24,7 @@ import java.util.List;
  * 在构造器（由 {@link MydbProxySpringAutoConfiguration} 注入）中注册多个 {@link FusionCache}：
  * <ul>
  *   <li>{@link MydbProxyConfig}：key = {@code configKey}，容量 20。RPC 拉取 proxy 总配置（用户名/密码/baseCluster 等）。</li>
- *   <li>{@link TableConfig}：key = {@code configKey:tableName}，容量 10000。RPC 拉取表分片配置。</li>
+ *   <li>{@link TableConfig}：key = {@code configKey:tableName}，容量与 {@link TableConfigIndex#DEFAULT_MAX_SIZE} 一致（10000）。RPC 拉取表分片配置，加载后登记到 {@link TableConfigIndex} 供解析时无分配查找。</li>
  *   <li>{@link RouteConfig}：key = {@code configKey:routeId}，容量 100。RPC 拉取路由算法配置。</li>
  *   <li>{@link MysqlClusterConfig}：key = {@code clusterId}，容量 10000。RPC 拉取 MySQL 集群配置（含 serverList 与权重）。</li>
  *   <li>{@code HashSet<String>}（DataTable 类型 key）：key = {@code clusterId:database}，容量 10000。RPC 拉取某库的表名集合，用于 {@link #ensureTableExists} 判定。</li>
@@ -77,7 +80,7 @@ public class MydbProxyConfigService {
         });
 
         //table配置缓存 key: configKey:tableName value:TableConfig
-        FusionCache.config(new FusionCache.Config(TableConfig.class, 10000, 0L), new CacheDataLoader<String, TableConfig>() {
+        FusionCache.config(new FusionCache.Config(TableConfig.class, TableConfigIndex.DEFAULT_MAX_SIZE, 0L), new CacheDataLoader<String, TableConfig>() {
             @Override
             public TableConfig load(String key) throws Exception {
                 if (key != null) {
@@ -90,6 +93,15 @@ public class MydbProxyConfigService {
                 }
                 return null;
             }
+        }, (key, oldValue, newValue) -> {
+            //配置变更时按新值登记索引，没有新值时移出，下次查找重新从缓存加载。
+            String cacheKey = String.valueOf(key);
+            String tableName = cacheKey.substring(cacheKey.indexOf(':') + 1);
+            if (newValue != null) {
+                TableConfigIndex.put(tableName, (TableConfig) newValue);
+            } else {
+                TableConfigIndex.remove(tableName);
+            }
         });
 
 
@@ -107,6 +119,10 @@ public class MydbProxyConfigService {
                 return null;
             }
         }, (key, oldValue, newValue) -> {
+            //路由配置可能是其它算法链的parent，全部算法链与路由结果缓存一起作废。
+            if (oldValue != null) {
+                RouteManager.invalidateAllRouteAlgorithm();
+            }
         });
 
 
@@ -140,6 +156,11 @@ public class MydbProxyConfigService {
                 return null;
             }
         }, (key, oldValue, newValue) -> {
+            //库表集合变化，MATCH_ALL等依赖表集合的路由结果失效，分表清单在下次访问时刷新。
+            if (oldValue != null) {
+                RouteTableListCache.expireAll();
+                RouteResultCache.clear();
+            }
         });
 
         //saas node缓存： key:configKey:saasId value: DataNode
@@ -224,6 +245,11 @@ public class MydbProxyConfigService {
                             .body(String.class);
             if (StringUtils.isNotBlank(tableName)) {
                 tableSet.add(tableName);
+                //新建了物理表，加入该逻辑表的分表清单，MATCH_ALL路由结果失效。
+                DataTable newTable = dataTable.copy();
+                newTable.setTable(tableName);
+                RouteTableListCache.addTable(tableConfigName, newTable);
+                RouteResultCache.invalidateTable(tableConfigName);
                 return true;
             }
             return false;
@@ -233,7 +259,7 @@ public class MydbProxyConfigService {
 
 
     /**
-     * 根据前缀获取表列表。
+     * 根据前缀获取表列表。同步请求 center，MATCH_ALL 路由请使用 {@link RouteTableListCache}。
      *
      * @param tablePrefix 表名前缀
      * @return 数据表列表
@@ -264,13 +290,21 @@ public class MydbProxyConfigService {
     }
 
     /**
-     * 获取表配置。
+     * 获取表配置。先查 {@link TableConfigIndex}，未命中时从缓存加载并登记到索引；加载期间配置发生变更时不登记。
      *
      * @param tableName 表名
      * @return 表配置
      */
     public static TableConfig getTableConfig(String tableName) {
-        return FusionCache.get(TableConfig.class, mydbProperties.getConfigKey() + ":" + tableName);
+        TableConfig tableConfig = TableConfigIndex.get(tableName);
+        if (tableConfig == null) {
+            long version = TableConfigIndex.version();
+            tableConfig = FusionCache.get(TableConfig.class, mydbProperties.getConfigKey() + ":" + tableName);
+            if (tableConfig != null) {
+                TableConfigIndex.put(tableName, tableConfig, version);
+            }
+        }
+        return tableConfig;
     }
 
     /**
@@ -326,6 +360,7 @@ public class MydbProxyConfigService {
      */
     public static void putTableConfigToLocalCache(String tableName, TableConfig tableConfig) {
         FusionCache.put(TableConfig.class, mydbProperties.getConfigKey() + ":" + tableName, tableConfig, true);
+        TableConfigIndex.put(tableName, tableConfig);
     }
 
     /**
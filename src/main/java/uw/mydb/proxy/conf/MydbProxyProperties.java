@@ -54,6 +54,89 @@ public class MydbProxyProperties {
      */
     private long slowQueryMillis = 10_000L;
 
+    /**
+     * 是否前后端共享同一个 EventLoopGroup。开启后 {@code ProxyServer} 的 worker 与 {@code MySqlClient} 使用同一组 EventLoop，
+     * 后端连接池按 EventLoop 分区，前端 session 优先借用同一 EventLoop 上的后端连接，回写客户端时无需跨线程投递。默认关闭。
+     */
+    private boolean shareEventLoop = false;
+
+    /**
+     * 后端连接池等待队列最大长度。连接数达到 connMax 时 acquire 进入 FIFO 队列等待，超出此长度直接报错。默认 1000，0 表示不排队。
+     */
+    private int connAcquireQueueSize = 1000;
+
+    /**
+     * 后端连接池排队等待超时（毫秒），超时未拿到连接则报错。默认 10 秒。
+     */
+    private long connAcquireTimeoutMillis = 10_000L;
+
+    /**
+     * 多节点 GROUP BY 合并的单查询内存预算（字节），超出后新分组溢写到内存映射临时文件。默认 64MB。
+     */
+    private long groupMemoryBudget = 64L * 1024 * 1024;
+
+    /**
+     * 多节点合并溢写临时文件目录，为空时使用 java.io.tmpdir。
+     */
+    private String spillDir;
+
+    /**
+     * 结果集透传时累计写出多少字节后 flush 一次，避免大结果集全部堆积在前端 outbound 缓冲中。默认 64KB。
+     */
+    private int flushBytes = 64 * 1024;
+
+    /**
+     * 结果集透传时累计写出多少个包后 flush 一次。默认 256。
+     */
+    private int flushPackets = 256;
+
+    /**
+     * 前端 channel 写缓冲高水位（字节），超过后 channel 不可写，暂停后端读取直至回落到一半以下。默认 1MB。
+     */
+    private int writeBufferHighWaterMark = 1024 * 1024;
+
+    /**
+     * 单节点结果集转存阈值（字节）：结果集已超过该大小且前端不可写时，剩余结果转存到内存映射临时文件，后端连接提前归还连接池。
+     * 默认 0，不按大小转存（仍可通过 hint spool=true 开启）。
+     */
+    private long spoolThreshold;
+
+    /**
+     * 单个多节点查询同时执行的节点数上限，其余节点排队派发，避免一条语句抽干各集群连接池。0 表示不限制。默认 16。
+     * 按 ORDER BY 有序归并的查询需要全部节点同时执行，不受此限制。
+     */
+    private int multiNodeConcurrency = 16;
+
+    /**
+     * SQL解析计划缓存的条目上限，按SQL指纹（字面量归一化后的token序列）缓存表名、切分点与routeKey字面量位置。0 表示关闭。默认 1024。
+     */
+    private int sqlPlanCacheSize = 1024;
+
+    /**
+     * 参与解析计划缓存的SQL最大长度（字节），更长的SQL（如批量INSERT）不计算指纹，直接完整解析。默认 4096。
+     */
+    private int sqlPlanCacheMaxSqlLength = 4096;
+
+    /**
+     * 路由结果缓存的条目上限，按 (routeId, 表名, routeKey 取值) 缓存路由计算结果。0 表示关闭。默认 4096。
+     */
+    private int routeResultCacheSize = 4096;
+
+    /**
+     * MATCH_ALL / route=* 使用的物理分表清单的刷新间隔（毫秒），超过间隔后异步向 center 刷新。0 表示不缓存。默认 60000。
+     */
+    private long routeTableListRefreshMillis = 60000L;
+
+    /**
+     * 每个后端连接缓存的预编译语句上限。MySQL 的 max_prepared_stmt_count（默认 16382）是整个服务器共享的，
+     * 需保证 本值 × connMax × 集群内代理实例数 远小于该值。0 表示不缓存，执行完立即关闭。默认 16。
+     */
+    private int stmtCacheSize = 16;
+
+    /**
+     * 单个前端会话可同时保持的预编译语句上限，超过时 COM_STMT_PREPARE 返回错误，防止客户端泄漏语句占满内存。默认 4096。
+     */
+    private int maxPreparedStmts = 4096;
 
     public String getMydbCenterHost() {
         return mydbCenterHost;
@@ -87,6 +170,134 @@ public class MydbProxyProperties {
         this.slowQueryMillis = slowQueryMillis;
     }
 
+    public boolean isShareEventLoop() {
+        return shareEventLoop;
+    }
+
+    public void setShareEventLoop(boolean shareEventLoop) {
+        this.shareEventLoop = shareEventLoop;
+    }
+
+    public int getConnAcquireQueueSize() {
+        return connAcquireQueueSize;
+    }
+
+    public void setConnAcquireQueueSize(int connAcquireQueueSize) {
+        this.connAcquireQueueSize = connAcquireQueueSize;
+    }
+
+    public long getConnAcquireTimeoutMillis() {
+        return connAcquireTimeoutMillis;
+    }
+
+    public void setConnAcquireTimeoutMillis(long connAcquireTimeoutMillis) {
+        this.connAcquireTimeoutMillis = connAcquireTimeoutMillis;
+    }
+
+    public long getGroupMemoryBudget() {
+        return groupMemoryBudget;
+    }
+
+    public void setGroupMemoryBudget(long groupMemoryBudget) {
+        this.groupMemoryBudget = groupMemoryBudget;
+    }
+
+    public String getSpillDir() {
+        return spillDir;
+    }
+
+    public void setSpillDir(String spillDir) {
+        this.spillDir = spillDir;
+    }
+
+    public int getFlushBytes() {
+        return flushBytes;
+    }
+
+    public void setFlushBytes(int flushBytes) {
+        this.flushBytes = flushBytes;
+    }
+
+    public int getFlushPackets() {
+        return flushPackets;
+    }
+
+    public void setFlushPackets(int flushPackets) {
+        this.flushPackets = flushPackets;
+    }
+
+    public int getWriteBufferHighWaterMark() {
+        return writeBufferHighWaterMark;
+    }
+
+    public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+        this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+    }
+
+    public long getSpoolThreshold() {
+        return spoolThreshold;
+    }
+
+    public void setSpoolThreshold(long spoolThreshold) {
+        this.spoolThreshold = spoolThreshold;
+    }
+
+    public int getMultiNodeConcurrency() {
+        return multiNodeConcurrency;
+    }
+
+    public void setMultiNodeConcurrency(int multiNodeConcurrency) {
+        this.multiNodeConcurrency = multiNodeConcurrency;
+    }
+
+    public int getSqlPlanCacheSize() {
+        return sqlPlanCacheSize;
+    }
+
+    public void setSqlPlanCacheSize(int sqlPlanCacheSize) {
+        this.sqlPlanCacheSize = sqlPlanCacheSize;
+    }
+
+    public int getSqlPlanCacheMaxSqlLength() {
+        return sqlPlanCacheMaxSqlLength;
+    }
+
+    public void setSqlPlanCacheMaxSqlLength(int sqlPlanCacheMaxSqlLength) {
+        this.sqlPlanCacheMaxSqlLength = sqlPlanCacheMaxSqlLength;
+    }
+
+    public int getRouteResultCacheSize() {
+        return routeResultCacheSize;
+    }
+
+    public void setRouteResultCacheSize(int routeResultCacheSize) {
+        this.routeResultCacheSize = routeResultCacheSize;
+    }
+
+    public long getRouteTableListRefreshMillis() {
+        return routeTableListRefreshMillis;
+    }
+
+    public void setRouteTableListRefreshMillis(long routeTableListRefreshMillis) {
+        this.routeTableListRefreshMillis = routeTableListRefreshMillis;
+    }
+
+    public int getStmtCacheSize() {
+        return stmtCacheSize;
+    }
+
+    public void setStmtCacheSize(int stmtCacheSize) {
+        this.stmtCacheSize = stmtCacheSize;
+    }
+
+    public int getMaxPreparedStmts() {
+        return maxPreparedStmts;
+    }
+
+    public void setMaxPreparedStmts(int maxPreparedStmts) {
+        this.maxPreparedStmts = maxPreparedStmts;
+    }
+
     public String getAppName() {
         return appName;
     }
@@ -0,0 +1,403 @@
+package uw.mydb.proxy.conf;
+
+import uw.mydb.common.conf.TableConfig;
+import uw.mydb.proxy.sqlparse.parser.FnvHash;
+import uw.mydb.proxy.sqlparse.parser.SqlLexer;
+import uw.mydb.proxy.sqlparse.parser.Token;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 表配置的内存索引，按表名的小写 fnv1a_64 哈希（与 lexer 扫描标识符时计算的 hash_lower 一致）查找。
+ * <p>
+ * 解析 SQL 时直接用当前标识符的哈希探测，命中后逐字节/字符与表名比对，不构造表名字符串、不拼接缓存 key，查找过程无分配。
+ * 哈希按小写计算，大小写不同的表名落在同一槽位的链上，比对时区分大小写。
+ * {@link uw.mydb.proxy.sqlparse.parser.ByteLexer} 按 UTF-8 字节计算哈希，非 ASCII 表名额外按字节哈希登记一次。
+ * <p>
+ * 槽位链由不可变节点组成，增删在类锁内只替换所在槽位的链头，读取无锁；条目数超过槽位数一半时槽位表翻倍后整体替换。
+ * 数据来自 {@link MydbProxyConfigService#getTableConfig} 与 {@link MydbProxyConfigService#putTableConfigToLocalCache}，
+ * 未配置分片的表以解析时生成的默认配置登记，同样走索引。FusionCache 中的表配置变更时由变更通知按新值登记或移除。
+ * <p>
+ * 条目数不超过 {@link #DEFAULT_MAX_SIZE}（与 FusionCache 中表配置的容量一致），满时按 CLOCK 淘汰：
+ * 查找命中时置引用位，从最早登记的条目开始，有引用位的清除后移到末尾，没有的移出索引。被淘汰的表下次引用时重新从缓存读取。
+ * <p>
+ * 每次变更使 {@link #version()} 加一。从缓存读取后再登记的一方使用 {@link #put(String, TableConfig, long)}，
+ * 读取期间发生过变更时放弃登记，避免用变更前读到的配置覆盖变更通知的结果。
+ *
+ * @author axeon
+ */
+public class TableConfigIndex {
+
+    /**
+     * 默认条目上限，与 FusionCache 中 {@link TableConfig} 的容量一致。
+     */
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    /**
+     * 初始槽位数。
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * 槽位表，扩容时整体替换。
+     */
+    private static volatile AtomicReferenceArray<Node> table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+
+    /**
+     * 表名 -> 条目，按登记顺序排列，淘汰时从最早的开始。只在类锁内读写。
+     */
+    private static final LinkedHashMap<String, Entry> entryMap = new LinkedHashMap<>();
+
+    /**
+     * 条目上限。
+     */
+    private static int maxSize = DEFAULT_MAX_SIZE;
+
+    /**
+     * 变更版本号，每次 {@link #put(String, TableConfig)}、{@link #remove}、{@link #clear} 加一。
+     */
+    private static volatile long version;
+
+    /**
+     * 指定条目上限，清空已有条目。
+     *
+     * @param maxSize 条目上限
+     */
+    public static synchronized void config(int maxSize) {
+        TableConfigIndex.maxSize = Math.max(1, maxSize);
+        clear();
+    }
+
+    /**
+     * 按 lexer 当前的标识符查找表配置。
+     *
+     * @param lexer 词法分析器，当前 token 应为标识符
+     * @return 索引条目，未命中时为 null
+     */
+    public static Entry lookup(SqlLexer lexer) {
+        if (lexer.token() != Token.IDENTIFIER) {
+            return null;
+        }
+        AtomicReferenceArray<Node> table = TableConfigIndex.table;
+        long hash = lexer.hashLower();
+        for (Node node = table.get(slot(hash, table.length() - 1)); node != null; node = node.next) {
+            if (node.hash == hash && lexer.identifierEquals(node.entry.tableName)) {
+                node.entry.touch();
+                return node.entry;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 按表名查找表配置。
+     *
+     * @param tableName 表名
+     * @return 表配置，未命中时为 null
+     */
+    public static TableConfig get(String tableName) {
+        AtomicReferenceArray<Node> table = TableConfigIndex.table;
+        long hash = charHash(tableName);
+        for (Node node = table.get(slot(hash, table.length() - 1)); node != null; node = node.next) {
+            if (node.hash == hash && node.entry.tableName.equals(tableName)) {
+                node.entry.touch();
+                return node.entry.tableConfig;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return 当前变更版本号，从缓存读取表配置前取得，登记时传给 {@link #put(String, TableConfig, long)}
+     */
+    public static long version() {
+        return version;
+    }
+
+    /**
+     * 登记表配置（配置变更），版本号加一。已登记同一对象时直接返回。
+     *
+     * @param tableName   表名
+     * @param tableConfig 表配置
+     */
+    public static void put(String tableName, TableConfig tableConfig) {
+        if (get(tableName) == tableConfig) {
+            return;
+        }
+        synchronized (TableConfigIndex.class) {
+            version++;
+            putEntry(tableName, tableConfig);
+        }
+    }
+
+    /**
+     * 登记从缓存读到的表配置，读取后索引已变更（版本号不同）时放弃，下次查找重新读取。
+     *
+     * @param tableName       表名
+     * @param tableConfig     表配置
+     * @param expectedVersion 读取前的 {@link #version()}
+     * @return 是否已登记
+     */
+    public static boolean put(String tableName, TableConfig tableConfig, long expectedVersion) {
+        synchronized (TableConfigIndex.class) {
+            if (version != expectedVersion) {
+                return false;
+            }
+            if (get(tableName) != tableConfig) {
+                putEntry(tableName, tableConfig);
+            }
+            return true;
+        }
+    }
+
+    /**
+     * 移除表配置。
+     *
+     * @param tableName 表名
+     */
+    public static void remove(String tableName) {
+        synchronized (TableConfigIndex.class) {
+            //未登记时也要加版本号，作废正在读取中的登记。
+            version++;
+            putEntry(tableName, null);
+        }
+    }
+
+    /**
+     * 清空索引。
+     */
+    public static synchronized void clear() {
+        version++;
+        entryMap.clear();
+        table = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @return 已登记的表数量
+     */
+    public static synchronized int size() {
+        return entryMap.size();
+    }
+
+    /**
+     * 登记或移除一个条目：新条目先挂入槽位再摘除旧条目，查找期间总能命中其中之一。调用方持有类锁。
+     *
+     * @param tableName   表名
+     * @param tableConfig 表配置，null 表示移除
+     */
+    private static void putEntry(String tableName, TableConfig tableConfig) {
+        Entry old = entryMap.remove(tableName);
+        if (tableConfig != null) {
+            if (old == null && entryMap.size() >= maxSize) {
+                evict();
+            }
+            Entry entry = new Entry(tableName, tableConfig);
+            entryMap.put(tableName, entry);
+            link(table, entry);
+        }
+        if (old != null) {
+            unlink(old);
+        }
+        if (entryMap.size() > table.length() >> 1) {
+            resize(table.length() << 1);
+        }
+    }
+
+    /**
+     * 按 CLOCK 淘汰一个条目：从最早登记的开始，有引用位的清除后移到末尾，遇到没有引用位的移出索引。调用方持有类锁。
+     */
+    private static void evict() {
+        while (!entryMap.isEmpty()) {
+            Entry entry = entryMap.values().iterator().next();
+            entryMap.remove(entry.tableName);
+            if (entry.referenced) {
+                entry.referenced = false;
+                entryMap.put(entry.tableName, entry);
+            } else {
+                unlink(entry);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 槽位表扩容，按现有条目重新挂链后整体替换。调用方持有类锁。
+     *
+     * @param capacity 新槽位数
+     */
+    private static void resize(int capacity) {
+        AtomicReferenceArray<Node> newTable = new AtomicReferenceArray<>(capacity);
+        for (Entry entry : entryMap.values()) {
+            link(newTable, entry);
+        }
+        table = newTable;
+    }
+
+    /**
+     * 把条目按字符哈希（及不同的字节哈希）挂到槽位链头。调用方持有类锁。
+     */
+    private static void link(AtomicReferenceArray<Node> table, Entry entry) {
+        linkNode(table, entry.charHash, entry);
+        if (entry.byteHash != entry.charHash) {
+            linkNode(table, entry.byteHash, entry);
+        }
+    }
+
+    private static void linkNode(AtomicReferenceArray<Node> table, long hash, Entry entry) {
+        int i = slot(hash, table.length() - 1);
+        table.set(i, new Node(hash, entry, table.get(i)));
+    }
+
+    /**
+     * 把条目从所在槽位链上摘除。调用方持有类锁。
+     */
+    private static void unlink(Entry entry) {
+        AtomicReferenceArray<Node> table = TableConfigIndex.table;
+        unlinkNode(table, entry.charHash, entry);
+        if (entry.byteHash != entry.charHash) {
+            unlinkNode(table, entry.byteHash, entry);
+        }
+    }
+
+    private static void unlinkNode(AtomicReferenceArray<Node> table, long hash, Entry entry) {
+        int i = slot(hash, table.length() - 1);
+        table.set(i, without(table.get(i), entry));
+    }
+
+    /**
+     * 复制链上 entry 之前的节点，返回不含 entry 的新链，之后的节点共享。
+     */
+    private static Node without(Node node, Entry entry) {
+        if (node == null) {
+            return null;
+        }
+        if (node.entry == entry) {
+            return node.next;
+        }
+        Node next = without(node.next, entry);
+        return next == node.next ? node : new Node(node.hash, node.entry, next);
+    }
+
+    /**
+     * 按字符计算小写 fnv1a_64 哈希，与 {@link uw.mydb.proxy.sqlparse.parser.Lexer} 一致。
+     */
+    private static long charHash(String name) {
+        long hash = FnvHash.BASIC;
+        for (int i = 0; i < name.length(); i++) {
+            char ch = name.charAt(i);
+            hash ^= ((ch >= 'A' && ch <= 'Z') ? (ch + 32) : ch);
+            hash *= FnvHash.PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 按 UTF-8 字节计算小写 fnv1a_64 哈希，与 {@link uw.mydb.proxy.sqlparse.parser.ByteLexer} 一致。
+     */
+    private static long byteHash(String name) {
+        long hash = FnvHash.BASIC;
+        for (byte b : name.getBytes(StandardCharsets.UTF_8)) {
+            int c = b & 0xff;
+            hash ^= ((c >= 'A' && c <= 'Z') ? (c + 32) : c);
+            hash *= FnvHash.PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * 计算槽位，高低位混合后取模。
+     */
+    private static int slot(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * 索引条目：表名与表配置。
+     */
+    public static class Entry {
+
+        /**
+         * 表名。
+         */
+        private final String tableName;
+
+        /**
+         * 表配置。
+         */
+        private final TableConfig tableConfig;
+
+        /**
+         * 按字符计算的哈希。
+         */
+        private final long charHash;
+
+        /**
+         * 按 UTF-8 字节计算的哈希，ASCII 表名与 {@link #charHash} 相同。
+         */
+        private final long byteHash;
+
+        /**
+         * 引用位，查找命中时置位，淘汰时清除。只作淘汰参考，不要求可见性。
+         */
+        private boolean referenced;
+
+        Entry(String tableName, TableConfig tableConfig) {
+            this.tableName = tableName;
+            this.tableConfig = tableConfig;
+            this.charHash = charHash(tableName);
+            this.byteHash = byteHash(tableName);
+        }
+
+        /**
+         * @return 表名
+         */
+        public String getTableName() {
+            return tableName;
+        }
+
+        /**
+         * @return 表配置
+         */
+        public TableConfig getTableConfig() {
+            return tableConfig;
+        }
+
+        /**
+         * 置引用位，已置位时不再写入。
+         */
+        private void touch() {
+            if (!referenced) {
+                referenced = true;
+            }
+        }
+    }
+
+    /**
+     * 槽位链节点，不可变。
+     */
+    private static final class Node {
+
+        /**
+         * 登记时使用的哈希。
+         */
+        private final long hash;
+
+        /**
+         * 条目。
+         */
+        private final Entry entry;
+
+        /**
+         * 同一槽位的下一个节点。
+         */
+        private final Node next;
+
+        Node(long hash, Entry entry, Node next) {
+            this.hash = hash;
+            this.entry = entry;
+            this.next = next;
+        }
+    }
+}
@@ -4,16 +4,21 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.pool.AbstractChannelPoolMap;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
 import org.slf4j.LoggerFactory;
 import uw.mydb.common.conf.MysqlClusterConfig;
 import uw.mydb.common.conf.MysqlServerConfig;
 import uw.mydb.common.report.MysqlConnStats;
 import uw.mydb.proxy.conf.MydbProxyConfigService;
+import uw.mydb.proxy.conf.MydbProxyProperties;
 
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -34,6 +39,8 @@ import java.util.concurrent.TimeoutException;
  *       {@link AbstractChannelPoolMap}；</li>
  *   <li>对外暴露 {@link #getMySqlSession(long, boolean)}：按 clusterId 路由到主/从节点的
  *       {@link MySqlPool}，acquire channel 并返回对应的 {@link MySqlSession}；</li>
+ *   <li>对外暴露 {@link #acquireMySqlSession(long, boolean)}：同样的路由逻辑，但直接返回 acquire 的
+ *       {@link Future}，供 EventLoop 线程以 listener 方式非阻塞地获取 session；</li>
  *   <li>启动后台 housekeeping 定时任务（默认 60s 一次），调用每个 pool 的
  *       {@link MySqlPool#housekeeping()} 清理超时/超龄连接；</li>
  *   <li>对外暴露 {@link #getMysqlConnStats()} 汇总各 pool 的 busy/idle 连接数。</li>
@@ -43,11 +50,17 @@ import java.util.concurrent.TimeoutException;
  * 本类为静态单例式门面，内部 EventLoopGroup 与 scheduledExecutorService 均在 {@link #start()} 中创建，
  * 在 {@link #stop()} 中关闭。channelPoolMap 内部线程安全。
  *
+ * <h3>共享 EventLoop 模式</h3>
+ * 开启 {@code uw.mydb.proxy.share-event-loop} 后，{@link #eventLoopGroup} 同时作为 ProxyServer 的 worker 线程组
+ * （ProxyServer 通过 {@link #getEventLoopGroup()} 获取），所有 {@link MySqlPool} 按 EventLoop 分区空闲连接。
+ * 前端 session 通过 {@link #acquireMySqlSession(long, boolean, EventLoop)} 传入自己的 EventLoop，借到的后端 channel
+ * 与前端 channel 同线程，后端回包写入前端 ctx 时不再产生跨线程任务投递。
+ *
  * <h3>getMySqlSession 阻塞语义（重要）</h3>
  * {@link #getMySqlSession} 内部通过 {@code Future.get(30, SECONDS)} 阻塞等待 acquire 完成，
  * <b>禁止在 Netty EventLoop 线程中调用</b>，否则会阻塞同 loop 上其它连接的 IO，造成死锁/饿死。
- * 调用方必须确保在独立线程（如业务线程池、multiNodeExecutor 等）中调用，超时后会 cancel future
- * 防止 channel 泄漏。
+ * 调用方必须确保在独立线程（如业务线程池）中调用，超时后会 cancel future
+ * 防止 channel 泄漏。EventLoop 线程中应改用 {@link #acquireMySqlSession}。
  *
  * @author axeon
  */
@@ -66,6 +79,11 @@ public class MySqlClient {
      */
     private static EventLoopGroup eventLoopGroup = null;
 
+    /**
+     * 是否前后端共享 EventLoopGroup（来自 {@link MydbProxyProperties#isShareEventLoop()}），在 {@link #start()} 时确定。
+     */
+    private static boolean shareEventLoop = false;
+
     /**
      * 后台 housekeeping 调度器（单线程 daemon），周期性触发各 pool 的 {@link MySqlPool#housekeeping()}。
      */
@@ -118,7 +136,7 @@ public class MySqlClient {
      *
      * <p><b>阻塞语义（重要）</b>：本方法会调用 {@code channelFuture.get(30, SECONDS)} 同步阻塞等待
      * 连接池 acquire，<b>禁止在 Netty EventLoop 线程中调用</b>，否则会饿死同 loop 上的其它连接 IO。
-     * 调用方必须确保在独立线程（如 multiNodeExecutor 或业务线程池）中调用。
+     * 调用方必须确保在独立线程（如业务线程池）中调用。
      *
      * <p>超时处理：捕获 {@link TimeoutException} 时会 {@code cancel(true)} future，避免连接池
      * 在 future 最终完成时把 channel 放入 busySet 但无人 release 造成连接泄漏。
@@ -154,14 +172,97 @@ public class MySqlClient {
         return mySqlSession;
     }
 
+    /**
+     * 异步获取一个 MySQL session：路由逻辑与 {@link #getMySqlSession(long, boolean)} 一致，但不阻塞等待，
+     * 直接返回 acquire 的 {@link Future}，完成后携带已绑定 pool 的 {@link MySqlSession}。
+     *
+     * <p><b>线程语义</b>：返回的 Future 由 {@link ImmediateEventExecutor} 创建，listener 在 acquire 完成的线程
+     * （即后端 channel 所属 EventLoop）上直接回调，没有额外的线程切换；因此可以在 Netty EventLoop 线程中调用，
+     * listener 内也只能执行非阻塞操作（如 {@link MySqlSession#addCommand}）。
+     * 注意：不要在返回的 Future 上调用 get/await，阻塞等待请使用 {@link #getMySqlSession(long, boolean)}。
+     *
+     * <p>如果返回的 Future 在 acquire 完成前已被 cancel，拿到的 channel 会立即归还到连接池，避免泄漏。
+     *
+     * @param clusterId 目标 MySQL cluster id
+     * @param isMaster  true 走主节点，false 走从节点（按权重负载均衡）
+     * @return acquire 的 Future，成功时携带已绑定 pool 的 session；cluster 不存在/无可用节点/acquire 异常时为失败状态
+     */
+    public static Future<MySqlSession> acquireMySqlSession(long clusterId, boolean isMaster) {
+        return acquireMySqlSession( clusterId, isMaster, null );
+    }
+
+    /**
+     * 异步获取一个 MySQL session，并尽量借用指定 EventLoop 上的后端连接。
+     * <p>仅在共享 EventLoop 模式下 loop 才生效：优先复用/新建该 EventLoop 上的后端 channel，listener 也在该 EventLoop 上回调；
+     * 非共享模式下等价于 {@link #acquireMySqlSession(long, boolean)}。
+     *
+     * @param clusterId 目标 MySQL cluster id
+     * @param isMaster  true 走主节点，false 走从节点（按权重负载均衡）
+     * @param loop      调用方所在的 EventLoop（通常为前端 channel 的 EventLoop），可为 null
+     * @return acquire 的 Future，成功时携带已绑定 pool 的 session；失败时为失败状态
+     */
+    public static Future<MySqlSession> acquireMySqlSession(long clusterId, boolean isMaster, EventLoop loop) {
+        MysqlClusterConfig clusterConfig = MydbProxyConfigService.getMysqlCluster( clusterId );
+        if (clusterConfig == null) {
+            return ImmediateEventExecutor.INSTANCE.newFailedFuture( new IllegalStateException( "MySQL cluster not found, clusterId=" + clusterId ) );
+        }
+        MysqlServerConfig mysqlServerConfig = clusterConfig.fetchServerConfig( isMaster );
+        if (mysqlServerConfig == null) {
+            logger.error( "获取MySQL连接失败：无可用服务器节点[clusterId={}, isMaster={}]", clusterId, isMaster );
+            return ImmediateEventExecutor.INSTANCE.newFailedFuture( new IllegalStateException( "No available mysql server, clusterId=" + clusterId ) );
+        }
+        MySqlPool channelPool = channelPoolMap.get( mysqlServerConfig );
+        Promise<MySqlSession> sessionPromise = ImmediateEventExecutor.INSTANCE.newPromise();
+        channelPool.acquire( loop ).addListener( (FutureListener<Channel>) future -> {
+            if (!future.isSuccess()) {
+                sessionPromise.tryFailure( future.cause() );
+                return;
+            }
+            Channel channel = future.getNow();
+            MySqlSession mySqlSession = channel.attr( MySqlHandler.MYSQL_SESSION ).get();
+            if (mySqlSession == null) {
+                channelPool.release( channel );
+                sessionPromise.tryFailure( new IllegalStateException( "Channel[" + channel + "] lost mysql session!" ) );
+                return;
+            }
+            //绑定连接池，这个非常重要。
+            mySqlSession.bindChannelPool( channelPool );
+            if (!sessionPromise.trySuccess( mySqlSession )) {
+                //promise已被cancel，立即归还channel，避免连接泄漏。
+                channelPool.release( channel );
+            }
+        } );
+        return sessionPromise;
+    }
+
+    /**
+     * @return MySQL 连接使用的 EventLoopGroup；共享 EventLoop 模式下 ProxyServer 以此作为 worker 线程组
+     */
+    public static EventLoopGroup getEventLoopGroup() {
+        return eventLoopGroup;
+    }
+
+    /**
+     * @return 是否前后端共享 EventLoopGroup
+     */
+    public static boolean isShareEventLoop() {
+        return shareEventLoop;
+    }
+
     /**
      * 启动 MySQL 客户端：创建 NIO EventLoopGroup（连接超时 10s、TCP_NODELAY），
      * 初始化按 {@link MysqlServerConfig} 建池的 {@link AbstractChannelPoolMap}（pool 参数全部来自
-     * serverConfig：connMin/connMax/connIdleTimeout/connBusyTimeout/connMaxAge），并启动 60s 间隔的
+     * serverConfig：connMin/connMax/connIdleTimeout/connBusyTimeout/connMaxAge，等待队列长度与排队超时来自
+     * {@link MydbProxyProperties}），并启动 60s 间隔的
      * housekeeping 调度任务（daemon 线程 mysql-housekeeping-task）。
+     * <p>共享 EventLoop 模式下线程名为 mydb-event-%d，并且必须先于 ProxyServer 启动。
      */
     public static void start() {
-        eventLoopGroup = new NioEventLoopGroup( 0, new ThreadFactoryBuilder().setNameFormat( "mysql-event-%d" ).build() );
+        MydbProxyProperties mydbProperties = MydbProxyConfigService.getMydbProperties();
+        shareEventLoop = mydbProperties != null && mydbProperties.isShareEventLoop();
+        final int acquireQueueSize = mydbProperties != null ? mydbProperties.getConnAcquireQueueSize() : -1;
+        final long acquireTimeoutMillis = mydbProperties != null ? mydbProperties.getConnAcquireTimeoutMillis() : -1L;
+        eventLoopGroup = new NioEventLoopGroup( 0, new ThreadFactoryBuilder().setNameFormat( shareEventLoop ? "mydb-event-%d" : "mysql-event-%d" ).build() );
         Bootstrap bootstrap = new Bootstrap();
         bootstrap.group( eventLoopGroup ).channel( NioSocketChannel.class ).option( ChannelOption.CONNECT_TIMEOUT_MILLIS, 10000 ).option( ChannelOption.TCP_NODELAY, true );
         channelPoolMap = new AbstractChannelPoolMap<>() {
@@ -169,7 +270,7 @@ public class MySqlClient {
             protected MySqlPool newPool(MysqlServerConfig mysqlServerConfig) {
                 return new MySqlPool( bootstrap.remoteAddress( mysqlServerConfig.getHost(), mysqlServerConfig.getPort() ).clone(), new MysqlPoolHandler( mysqlServerConfig ),
                         mysqlServerConfig.getConnMin(), mysqlServerConfig.getConnMax(), mysqlServerConfig.getConnIdleTimeout() * 1000L,
-                        mysqlServerConfig.getConnBusyTimeout() * 1000L, mysqlServerConfig.getConnMaxAge() * 1000L );
+                        mysqlServerConfig.getConnBusyTimeout() * 1000L, mysqlServerConfig.getConnMaxAge() * 1000L, acquireQueueSize, acquireTimeoutMillis, shareEventLoop );
             }
         };
         //设置后台调度任务。
@@ -193,18 +294,20 @@ public class MySqlClient {
                 }
             }
         }, 60, 60, TimeUnit.SECONDS );
-        logger.info( "MySqlClient started!" );
+        logger.info( "MySqlClient started! shareEventLoop={}", shareEventLoop );
     }
 
     /**
      * 汇总所有 server 连接池的统计信息，用于监控/上报。
      *
-     * @return 含 pool 总数、总 busy/idle 连接数及每个 mysqlId 的 [busyConnNum, idleConnNum] 明细的
-     *         {@link MysqlConnStats}
+     * @return 含 pool 总数、总 busy/idle 连接数、等待队列深度与排队等待/超时/拒绝累计值，
+     *         及每个 mysqlId 的 [busyConnNum, idleConnNum] 与 [pendingAcquireNum] 明细的 {@link MysqlConnStats}
      */
     public static MysqlConnStats getMysqlConnStats() {
         long sumBusyConnNum = 0, sumIdleConnNum = 0;
+        long sumPendingAcquireNum = 0, sumAcquireWaitNum = 0, sumAcquireWaitMillis = 0, sumAcquireTimeoutNum = 0, sumAcquireRejectNum = 0;
         List<long[]> mysqlConnList = new ArrayList<>();
+        List<long[]> mysqlPendingAcquireList = new ArrayList<>();
         Iterator<Map.Entry<MysqlServerConfig, MySqlPool>> iterator = channelPoolMap.iterator();
         while (iterator.hasNext()) {
             Map.Entry<MysqlServerConfig, MySqlPool> kv = iterator.next();
@@ -212,11 +315,25 @@ public class MySqlClient {
             MySqlPool pool = kv.getValue();
             int busyConnNum = pool.getBusyConnNum();
             int idleConnNum = pool.getIdleConnNum();
+            int pendingAcquireNum = pool.getPendingAcquireNum();
             sumBusyConnNum += busyConnNum;
             sumIdleConnNum += idleConnNum;
+            sumPendingAcquireNum += pendingAcquireNum;
+            sumAcquireWaitNum += pool.getAcquireWaitNum();
+            sumAcquireWaitMillis += pool.getAcquireWaitMillis();
+            sumAcquireTimeoutNum += pool.getAcquireTimeoutNum();
+            sumAcquireRejectNum += pool.getAcquireRejectNum();
             mysqlConnList.add( new long[]{config.getId(), busyConnNum, idleConnNum} );
+            mysqlPendingAcquireList.add( new long[]{config.getId(), pendingAcquireNum} );
         }
-        return new MysqlConnStats( channelPoolMap.size(), sumBusyConnNum, sumIdleConnNum, mysqlConnList );
+        MysqlConnStats mysqlConnStats = new MysqlConnStats( channelPoolMap.size(), sumBusyConnNum, sumIdleConnNum, mysqlConnList );
+        mysqlConnStats.setMysqlPendingAcquireList( mysqlPendingAcquireList );
+        mysqlConnStats.setMysqlPendingAcquireNum( sumPendingAcquireNum );
+        mysqlConnStats.setMysqlAcquireWaitNum( sumAcquireWaitNum );
+        mysqlConnStats.setMysqlAcquireWaitMillis( sumAcquireWaitMillis );
+        mysqlConnStats.setMysqlAcquireTimeoutNum( sumAcquireTimeoutNum );
+        mysqlConnStats.setMysqlAcquireRejectNum( sumAcquireRejectNum );
+        return mysqlConnStats;
     }
 
     /**
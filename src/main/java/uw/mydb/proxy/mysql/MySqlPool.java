@@ -10,16 +10,24 @@ import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.FutureListener;
 import io.netty.util.concurrent.GlobalEventExecutor;
 import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uw.common.util.SystemClock;
 
 import java.util.Deque;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static io.netty.util.internal.ObjectUtil.checkNotNull;
 import static uw.mydb.proxy.mysql.MySqlHandler.MYSQL_SESSION;
@@ -44,6 +52,12 @@ import static uw.mydb.proxy.mysql.MySqlHandler.MYSQL_SESSION;
  *       housekeeping 时据此检查 busy 超时。</li>
  * </ul>
  *
+ * <h3>EventLoop 亲和分区</h3>
+ * 开启 {@link #loopAffinity} 时（前后端共享 EventLoopGroup 模式），空闲连接不再放入共享的 idleDeque，
+ * 而是按 channel 所属 EventLoop 分区存放到 {@link #loopIdleDequeMap}。{@link #acquire(EventLoop)} 优先
+ * 复用调用方 EventLoop 上的空闲连接，没有则在该 EventLoop 上新建连接；配额耗尽时才从其它 EventLoop 分区借用。
+ * 这样前端 session 拿到的后端 channel 与自己处于同一线程，回写 ctx 时无需跨线程投递任务。
+ *
  * <h3>线程安全模型</h3>
  * <ul>
  *   <li>idleDeque 使用 {@link ConcurrentLinkedDeque}，busySet 使用
@@ -57,7 +71,7 @@ import static uw.mydb.proxy.mysql.MySqlHandler.MYSQL_SESSION;
  * <h3>关键容量/超时参数（均带单位）</h3>
  * <ul>
  *   <li>{@link #connMin}：最小连接数（条），housekeeping 时即使空闲也不会清理到低于此数；</li>
- *   <li>{@link #connMax}：最大连接数（条），新建连接前用 CAS 配额守护，超限即拒；</li>
+ *   <li>{@link #connMax}：最大连接数（条），新建连接前用 CAS 配额守护，超限进入等待队列；</li>
  *   <li>{@link #connIdleTimeoutMillis}：空闲超时（毫秒），空闲超过此值且 idle 总数 &gt; connMin
  *       时由 housekeeping 关闭，默认 600_000ms（10分钟）；</li>
  *   <li>{@link #connBusyTimeoutMillis}：忙时超时（毫秒），处于 busySet 中超过此值的连接
@@ -71,6 +85,17 @@ import static uw.mydb.proxy.mysql.MySqlHandler.MYSQL_SESSION;
  * 通过 CAS 自增；connectChannel 失败、closeChannel 真正关闭连接时自减。复用空闲连接不占用
  * 新配额。该计数器保证任意瞬时活跃连接数（idle + busy）不超过 connMax。
  *
+ * <h3>pendingAcquire 等待队列</h3>
+ * 配额耗尽且没有可借用的空闲连接时，acquire 不再立即失败，而是进入 FIFO 的 {@link #pendingAcquireQueue} 等待：
+ * <ul>
+ *   <li>队列长度上限为 {@link #maxPendingAcquires}，超出时立即以 "Connection pool exhausted" 失败；</li>
+ *   <li>每个等待者在 {@link #acquireTimeoutMillis} 后超时失败（{@link TimeoutException}）；超时只做标记，出队时跳过，不做 O(n) 的队列删除；</li>
+ *   <li>{@link #releaseAndOffer} 归还健康连接时直接移交给最早的等待者，不再放回空闲队列；
+ *       连接真正关闭时配额直接转给最早的等待者去新建连接，不经过计数器，避免被其它 acquire 抢占后等待者重新排队；</li>
+ *   <li>唤醒方总是先拿到连接或配额再认领等待者，认领后的等待者一定能拿到连接，等待时间只统计一次。</li>
+ *   <li>等待次数、累计等待毫秒数、超时次数、拒绝次数以及当前队列深度供 {@link MySqlClient#getMysqlConnStats()} 汇总上报。</li>
+ * </ul>
+ *
  * <h3>housekeeping 清理逻辑</h3>
  * 由 {@link MySqlClient} 的定时调度线程周期性调用（默认 60s/次），分两步扫描：
  * <ol>
@@ -94,6 +119,13 @@ public class MySqlPool implements ChannelPool {
      */
     private final Deque<Channel> idleDeque = new ConcurrentLinkedDeque<>();
 
+    /**
+     * 按 EventLoop 分区的空闲连接队列，仅在 {@link #loopAffinity} 开启时使用。
+     * 每个分区基本只被所属 EventLoop 线程读写（release 总是在 channel 的 EventLoop 上执行），
+     * 仅 housekeeping 与跨分区借用时会有其它线程访问，因此仍使用 {@link ConcurrentLinkedDeque}。
+     */
+    private final ConcurrentHashMap<EventLoop, Deque<Channel>> loopIdleDequeMap = new ConcurrentHashMap<>();
+
     /**
      * 在用连接集合。acquire 成功后加入，release 时移除；housekeeping 据此检查 busy 超时。
      * 线程安全：{@link ConcurrentHashMap#newKeySet()} 提供的并发 Set。
@@ -121,13 +153,18 @@ public class MySqlPool implements ChannelPool {
      */
     private final boolean releaseHealthCheck;
 
+    /**
+     * 是否启用 EventLoop 亲和分区。由 {@link MySqlClient} 在前后端共享 EventLoopGroup 模式下开启。
+     */
+    private final boolean loopAffinity;
+
     /**
      * 最小连接数（条）。housekeeping 清理空闲连接时不会让 idleDeque 跌破此值。默认 1。
      */
     private int connMin = 1;
 
     /**
-     * 最大连接数（条）。{@link #acquiredPermits} 通过 CAS 守护此上限，达到即拒绝新建。默认 1000。
+     * 最大连接数（条）。{@link #acquiredPermits} 通过 CAS 守护此上限，达到后 acquire 进入等待队列。默认 1000。
      */
     private int connMax = 1000;
 
@@ -136,7 +173,7 @@ public class MySqlPool implements ChannelPool {
      * <p>记录"建连成功且尚未真正 close"的连接条数，用于保证 connMax 上限的线程安全，
      * 避免 check-then-act 竞态导致超出 connMax。复用空闲连接不占用新配额。
      */
-    private final java.util.concurrent.atomic.AtomicInteger acquiredPermits = new java.util.concurrent.atomic.AtomicInteger(0);
+    private final AtomicInteger acquiredPermits = new AtomicInteger(0);
 
     /**
      * 连接空闲超时（毫秒）。空闲连接超过此值且 idleDeque.size() &gt; connMin 时，由 housekeeping 关闭。
@@ -156,6 +193,56 @@ public class MySqlPool implements ChannelPool {
      */
     private long connMaxAgeMillis = 36000_000L;
 
+    /**
+     * 等待队列最大长度（个）。配额耗尽时最多允许这么多 acquire 排队等待，超出即拒绝。默认 1000。
+     */
+    private int maxPendingAcquires = 1000;
+
+    /**
+     * 单次 acquire 在等待队列中的超时时间（毫秒）。默认 10_000ms。
+     */
+    private long acquireTimeoutMillis = 10_000L;
+
+    /**
+     * 等待获取连接的 acquire 队列（FIFO）。仅在配额耗尽时入队，由 release/closeChannel 按先后顺序唤醒。
+     */
+    private final ConcurrentLinkedQueue<PendingAcquire> pendingAcquireQueue = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 当前等待中的 acquire 数量（队列深度）。以此计数而不是 queue.size() 做上限判断，避免 O(n) 遍历。
+     */
+    private final AtomicInteger pendingAcquireNum = new AtomicInteger( 0 );
+
+    /**
+     * 累计经过排队后拿到连接的 acquire 次数。健康检测失败后重新排队的 acquire 仍只计一次。
+     */
+    private final AtomicLong acquireWaitNum = new AtomicLong();
+
+    /**
+     * 累计排队等待毫秒数（从首次入队到拿到连接），与 {@link #acquireWaitNum} 相除可得平均等待时间。
+     */
+    private final AtomicLong acquireWaitMillis = new AtomicLong();
+
+    /**
+     * 排队中的 acquire 及其首次入队时间，acquire 完成时移除并记录等待时间，见 {@link #recordAcquireWait(Promise)}。
+     */
+    private final Map<Promise<Channel>, Long> acquireWaitStartMap = new ConcurrentHashMap<>();
+
+    /**
+     * 累计排队超时次数。
+     */
+    private final AtomicLong acquireTimeoutNum = new AtomicLong();
+
+    /**
+     * 累计因等待队列已满被拒绝的次数。
+     */
+    private final AtomicLong acquireRejectNum = new AtomicLong();
+
+    /**
+     * 上次清理后超时（留在队列中待跳过）的等待者数量，见 {@link #purgeCancelledAcquires()}。
+     */
+    private final AtomicInteger cancelledAcquireNum = new AtomicInteger();
+
     /**
      * 创建一个连接池实例。
      * <p>构造时会 clone 入参 bootstrap 并替换 handler 为内部 {@link ChannelInitializer}，确保
@@ -169,12 +256,17 @@ public class MySqlPool implements ChannelPool {
      * @param connIdleTimeoutMillis 空闲超时毫秒数，&gt;0 时生效
      * @param connBusyTimeoutMillis 忙时超时毫秒数，&gt;0 时生效
      * @param connMaxAgeMillis      连接最大寿命毫秒数，&gt;0 时生效
+     * @param maxPendingAcquires    等待队列最大长度，&gt;=0 时生效（0 表示不排队，耗尽即失败）
+     * @param acquireTimeoutMillis  排队等待超时毫秒数，&gt;0 时生效
+     * @param loopAffinity          是否按 EventLoop 分区空闲连接（前后端共享 EventLoopGroup 模式下为 true）
      * @throws NullPointerException 当 bootstrap 或 handler 为 null 时
      */
-    public MySqlPool(Bootstrap bootstrap, ChannelPoolHandler handler, int connMin, int connMax, long connIdleTimeoutMillis, long connBusyTimeoutMillis, long connMaxAgeMillis) {
+    public MySqlPool(Bootstrap bootstrap, ChannelPoolHandler handler, int connMin, int connMax, long connIdleTimeoutMillis, long connBusyTimeoutMillis, long connMaxAgeMillis,
+                     int maxPendingAcquires, long acquireTimeoutMillis, boolean loopAffinity) {
         this.handler = checkNotNull( handler, "handler" );
         this.healthCheck = ChannelHealthChecker.ACTIVE;
         this.releaseHealthCheck = true;
+        this.loopAffinity = loopAffinity;
         // Clone the original Bootstrap as we want to set our own handler
         this.bootstrap = checkNotNull( bootstrap, "bootstrap" ).clone();
         this.bootstrap.handler( new ChannelInitializer<Channel>() {
@@ -199,6 +291,12 @@ public class MySqlPool implements ChannelPool {
         if (connMaxAgeMillis > 0) {
             this.connMaxAgeMillis = connMaxAgeMillis;
         }
+        if (maxPendingAcquires >= 0) {
+            this.maxPendingAcquires = maxPendingAcquires;
+        }
+        if (acquireTimeoutMillis > 0) {
+            this.acquireTimeoutMillis = acquireTimeoutMillis;
+        }
     }
 
     /**
@@ -237,10 +335,70 @@ public class MySqlPool implements ChannelPool {
     }
 
     /**
-     * @return 当前空闲连接数（idleDeque 大小，条）
+     * @return 等待队列最大长度（个）
+     */
+    public int getMaxPendingAcquires() {
+        return maxPendingAcquires;
+    }
+
+    /**
+     * @return 排队等待超时（毫秒）
+     */
+    public long getAcquireTimeoutMillis() {
+        return acquireTimeoutMillis;
+    }
+
+    /**
+     * @return 当前等待队列深度（个）
+     */
+    public int getPendingAcquireNum() {
+        return pendingAcquireNum.get();
+    }
+
+    /**
+     * @return 累计排队后拿到连接的次数
+     */
+    public long getAcquireWaitNum() {
+        return acquireWaitNum.get();
+    }
+
+    /**
+     * @return 累计排队等待毫秒数
+     */
+    public long getAcquireWaitMillis() {
+        return acquireWaitMillis.get();
+    }
+
+    /**
+     * @return 累计排队超时次数
+     */
+    public long getAcquireTimeoutNum() {
+        return acquireTimeoutNum.get();
+    }
+
+    /**
+     * @return 累计因等待队列已满被拒绝的次数
+     */
+    public long getAcquireRejectNum() {
+        return acquireRejectNum.get();
+    }
+
+    /**
+     * @return 是否启用 EventLoop 亲和分区
+     */
+    public boolean isLoopAffinity() {
+        return loopAffinity;
+    }
+
+    /**
+     * @return 当前空闲连接数（idleDeque 与各 EventLoop 分区大小之和，条）
      */
     public int getIdleConnNum() {
-        return idleDeque.size();
+        int num = idleDeque.size();
+        for (Deque<Channel> deque : loopIdleDequeMap.values()) {
+            num += deque.size();
+        }
+        return num;
     }
 
     /**
@@ -260,6 +418,21 @@ public class MySqlPool implements ChannelPool {
         return acquire( bootstrap.config().group().next().<Channel>newPromise() );
     }
 
+    /**
+     * 在指定 EventLoop 上异步获取一个 channel。
+     * <p>开启 {@link #loopAffinity} 时优先复用该 EventLoop 分区的空闲连接，没有则在该 EventLoop 上新建连接，
+     * promise 也由该 EventLoop 创建，listener 在调用方线程回调；未开启时等价于 {@link #acquire()}。
+     *
+     * @param loop 调用方所在的 EventLoop（通常为前端 channel 的 EventLoop），必须属于本 pool 的 EventLoopGroup
+     * @return acquire 操作的 Future，完成后携带 channel 或失败原因
+     */
+    public Future<Channel> acquire(EventLoop loop) {
+        if (!loopAffinity || loop == null) {
+            return acquire();
+        }
+        return acquireHealthyFromPoolOrNew( loop, loop.<Channel>newPromise() );
+    }
+
     /**
      * 异步获取一个 channel。
      *
@@ -269,7 +442,7 @@ public class MySqlPool implements ChannelPool {
      */
     @Override
     public Future<Channel> acquire(final Promise<Channel> promise) {
-        return acquireHealthyFromPoolOrNew( checkNotNull( promise, "promise" ) );
+        return acquireHealthyFromPoolOrNew( null, checkNotNull( promise, "promise" ) );
     }
 
     /**
@@ -309,13 +482,13 @@ public class MySqlPool implements ChannelPool {
     }
 
     /**
-     * 同步关闭整个连接池：循环 poll 出所有空闲 channel 并 await close。
-     * 注意：仅清理 idleDeque，不主动关闭 busySet 中的连接（这些将由在途请求 release 时处理）。
+     * 同步关闭整个连接池：循环 poll 出所有空闲 channel（含各 EventLoop 分区）并 await close。
+     * 注意：仅清理空闲连接，不主动关闭 busySet 中的连接（这些将由在途请求 release 时处理）。
      */
     @Override
     public void close() {
         for (; ; ) {
-            Channel channel = pollChannel();
+            Channel channel = pollChannel( null );
             if (channel == null) {
                 break;
             }
@@ -347,37 +520,30 @@ public class MySqlPool implements ChannelPool {
      * <ol>
      *   <li>idleDeque：对每个空闲 channel，若 session 缺失、或超过 connMaxAgeMillis 寿命、
      *       或（空闲数 &gt; connMin 且超过 connIdleTimeoutMillis 空闲），则 closeChannel 关闭；
-     *       否则重新 offer 回 idleDeque。注意空闲数不超过 connMin 时跳过 idle 超时检查以保底。</li>
+     *       否则重新 offer 回 idleDeque。注意空闲数不超过 connMin 时跳过 idle 超时检查以保底。
+     *       亲和分区模式下各 EventLoop 分区逐个按同样规则扫描，connMin 按全部分区空闲数之和判断。</li>
      *   <li>busySet：对每个 busy channel，若 session 缺失或超过 connBusyTimeoutMillis 忙时，
      *       closeChannel 关闭并从 busySet 移除，防止悬挂请求长期占位。</li>
      * </ol>
      * closeChannel 内部会归还 {@link #acquiredPermits} 配额，使后续 acquire 能新建连接补位。
      */
     protected void housekeeping() {
-        //先检查idleDeque。
-        int idleLoop = idleDeque.size();
-        for (int i = 0; i < idleLoop; i++) {
-            Channel channel = idleDeque.pollFirst();
-            if (channel == null) {
-                break;
-            }
-            //如果超出了最小连接数数值，则进行检查。
+        //先检查idleDeque，亲和分区模式下再逐个检查各 EventLoop 分区。
+        housekeepingIdle( idleDeque );
+        for (Deque<Channel> deque : loopIdleDequeMap.values()) {
+            housekeepingIdle( deque );
+        }
+        //再检查busySet。
+        Iterator<Channel> busyIterator = busySet.iterator();
+        while (busyIterator.hasNext()) {
+            Channel channel = busyIterator.next();
             MySqlSession session = channel.attr( MYSQL_SESSION ).get();
             boolean readyClose = false;
             if (session != null) {
                 long now = SystemClock.now();
-                if (idleDeque.size() > connMin) {
-                    if ((now - session.getLastRequestTime()) > connIdleTimeoutMillis) {
-                        if (log.isDebugEnabled()) {
-                            log.debug( "Channel[{}] will be closed because reach idle timeout[{}]!", channel, connIdleTimeoutMillis );
-                        }
-                        //准备释放链接吧。
-                        readyClose = true;
-                    }
-                }
-                if ((now - session.getCreateTime()) > connMaxAgeMillis) {
+                if ((now - session.getLastRequestTime()) > connBusyTimeoutMillis) {
                     if (log.isDebugEnabled()) {
-                        log.debug( "Channel[{}] will be closed because reach max age[{}]!", channel, connMaxAgeMillis );
+                        log.debug( "Channel[{}] will be closed because reach busy timeout[{}]!", channel, connBusyTimeoutMillis );
                     }
                     //准备释放链接吧。
                     readyClose = true;
@@ -395,21 +561,45 @@ public class MySqlPool implements ChannelPool {
                 } catch (Exception e) {
                     log.error( e.getMessage(), e );
                 }
-            } else {
-                idleDeque.offer( channel );
+                busyIterator.remove();
             }
         }
-        //再检查busySet。
-        Iterator<Channel> busyIterator = busySet.iterator();
-        while (busyIterator.hasNext()) {
-            Channel channel = busyIterator.next();
+    }
+
+    /**
+     * 扫描一个空闲队列：超 idleTimeout（且总空闲数 &gt; connMin）或超 maxAge、或 session 缺失的连接直接关闭，
+     * 其余重新 offer 回原队列。
+     *
+     * @param deque 待扫描的空闲队列（idleDeque 或某个 EventLoop 分区）
+     */
+    private void housekeepingIdle(Deque<Channel> deque) {
+        int idleLoop = deque.size();
+        for (int i = 0; i < idleLoop; i++) {
+            Channel channel = deque.pollFirst();
+            if (channel == null) {
+                break;
+            }
+            //如果超出了最小连接数数值，则进行检查。
             MySqlSession session = channel.attr( MYSQL_SESSION ).get();
             boolean readyClose = false;
             if (session != null) {
                 long now = SystemClock.now();
-                if ((now - session.getLastRequestTime()) > connBusyTimeoutMillis) {
+                if (getIdleConnNum() > connMin) {
+                    if ((now - session.getLastRequestTime()) > connIdleTimeoutMillis) {
+                        if (log.isDebugEnabled()) {
+                            log.debug( "Channel[{}] will be closed because reach idle timeout[{}]!", channel, connIdleTimeoutMillis );
+                        }
+                        //准备释放链接吧。
+                        readyClose = true;
+                    }
+                }
+                if (!readyClose && (now - session.getLastRequestTime()) > connIdleTimeoutMillis) {
+                    //保底连接不关闭，但释放其缓存的预编译语句，避免长期占用服务器的 max_prepared_stmt_count。
+                    channel.eventLoop().execute( session::clearStmtCache );
+                }
+                if ((now - session.getCreateTime()) > connMaxAgeMillis) {
                     if (log.isDebugEnabled()) {
-                        log.debug( "Channel[{}] will be closed because reach busy timeout[{}]!", channel, connBusyTimeoutMillis );
+                        log.debug( "Channel[{}] will be closed because reach max age[{}]!", channel, connMaxAgeMillis );
                     }
                     //准备释放链接吧。
                     readyClose = true;
@@ -427,7 +617,8 @@ public class MySqlPool implements ChannelPool {
                 } catch (Exception e) {
                     log.error( e.getMessage(), e );
                 }
-                busyIterator.remove();
+            } else {
+                deque.offer( channel );
             }
         }
     }
@@ -483,82 +674,356 @@ public class MySqlPool implements ChannelPool {
      * Poll a {@link Channel} out of the internal storage to reuse it. This will return {@code null} if no
      * {@link Channel} is ready to be reused.
      * <p>
-     * Sub-classes may override {@link #pollChannel()} and {@link #offerChannel(Channel)}. Be aware that
+     * Sub-classes may override {@link #pollChannel(EventLoop)} and {@link #offerChannel(Channel)}. Be aware that
      * implementations of these methods needs to be thread-safe!
+     * <p>
+     * 亲和分区模式下：loop 非空时只从该 EventLoop 分区取；loop 为空时从任意分区借用。
+     *
+     * @param loop 期望的 EventLoop，可为 null
      */
-    protected Channel pollChannel() {
-        return idleDeque.pollFirst();
+    protected Channel pollChannel(EventLoop loop) {
+        if (!loopAffinity) {
+            return idleDeque.pollFirst();
+        }
+        if (loop == null) {
+            return stealChannel( null );
+        }
+        Deque<Channel> deque = loopIdleDequeMap.get( loop );
+        return deque == null ? null : deque.pollFirst();
+    }
+
+    /**
+     * 亲和分区模式下从其它 EventLoop 分区借用一个空闲 channel，仅在本分区无空闲且配额耗尽时使用。
+     *
+     * @param excludeLoop 需要跳过的 EventLoop（通常为调用方自己的分区），可为 null
+     * @return 借到的 channel，没有则返回 null
+     */
+    private Channel stealChannel(EventLoop excludeLoop) {
+        if (!loopAffinity) {
+            return null;
+        }
+        for (Map.Entry<EventLoop, Deque<Channel>> kv : loopIdleDequeMap.entrySet()) {
+            if (kv.getKey() == excludeLoop) {
+                continue;
+            }
+            Channel channel = kv.getValue().pollFirst();
+            if (channel != null) {
+                return channel;
+            }
+        }
+        return null;
     }
 
     /**
      * Offer a {@link Channel} back to the internal storage. This will return {@code true} if the {@link Channel}
      * could be added, {@code false} otherwise.
      * <p>
-     * Sub-classes may override {@link #pollChannel()} and {@link #offerChannel(Channel)}. Be aware that
+     * Sub-classes may override {@link #pollChannel(EventLoop)} and {@link #offerChannel(Channel)}. Be aware that
      * implementations of these methods needs to be thread-safe!
+     * <p>
+     * 亲和分区模式下放回 channel 所属 EventLoop 的分区。
      */
     protected boolean offerChannel(Channel channel) {
-        return idleDeque.offer( channel );
+        if (!loopAffinity) {
+            return idleDeque.offer( channel );
+        }
+        return loopIdleDequeMap.computeIfAbsent( channel.eventLoop(), loop -> new ConcurrentLinkedDeque<>() ).offer( channel );
     }
 
     /**
      * Tries to retrieve healthy channel from the pool if any or creates a new channel otherwise.
+     * <p>
+     * 亲和分区模式下 preferLoop 非空时：优先取该 EventLoop 分区的空闲连接，其次在该 EventLoop 上新建连接，
+     * 配额耗尽时再从其它分区借用。
      *
-     * @param promise the promise to provide acquire result.
+     * @param preferLoop 期望的 EventLoop，可为 null（不区分分区）
+     * @param promise    the promise to provide acquire result.
      * @return future for acquiring a channel.
      */
-    private Future<Channel> acquireHealthyFromPoolOrNew(final Promise<Channel> promise) {
+    private Future<Channel> acquireHealthyFromPoolOrNew(final EventLoop preferLoop, final Promise<Channel> promise) {
         try {
-            final Channel ch = pollChannel();
+            Channel ch = pollChannel( preferLoop );
             if (ch != null) {
                 //复用idle连接，无需占用新配额。
-                EventLoop loop = ch.eventLoop();
-                if (loop.inEventLoop()) {
-                    doHealthCheck( ch, promise );
-                } else {
-                    loop.execute( new Runnable() {
-                        @Override
-                        public void run() {
-                            doHealthCheck( ch, promise );
-                        }
-                    } );
-                }
-                return promise;
+                return healthCheckAndNotify( preferLoop, ch, promise );
             }
             //无idle连接，需新建：用CAS原子占用配额，保证不超connMax。
-            for (;;) {
-                int current = acquiredPermits.get();
-                if (current >= connMax) {
-                    //达到上限，放入acquireQueue等待release时唤醒（由父类scheduleAcquireLink机制处理）。
-                    promise.tryFailure( new IllegalStateException( "Connection pool exhausted, connMax=" + connMax ) );
-                    return promise;
+            if (!tryReservePermit()) {
+                //达到上限，亲和分区模式下先尝试从其它分区借用空闲连接。
+                ch = stealChannel( preferLoop );
+                if (ch != null) {
+                    return healthCheckAndNotify( preferLoop, ch, promise );
                 }
-                if (acquiredPermits.compareAndSet( current, current + 1 )) {
-                    break;
+                //仍然没有，进入等待队列，由release/closeChannel按FIFO唤醒。
+                return offerPendingAcquire( preferLoop, promise );
+            }
+            connectNewChannel( preferLoop, promise );
+        } catch (Throwable cause) {
+            promise.tryFailure( cause );
+        }
+        return promise;
+    }
+
+    /**
+     * 用 CAS 占用一个新建连接的配额。
+     *
+     * @return 是否占用成功（已达 connMax 时返回 false）
+     */
+    private boolean tryReservePermit() {
+        for (; ; ) {
+            int current = acquiredPermits.get();
+            if (current >= connMax) {
+                return false;
+            }
+            if (acquiredPermits.compareAndSet( current, current + 1 )) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 在已占用配额的前提下新建连接，亲和分区模式下建在期望的EventLoop上。失败时归还配额。
+     *
+     * @param preferLoop 期望的 EventLoop，可为 null
+     * @param promise    acquire 操作的 promise
+     */
+    private void connectNewChannel(final EventLoop preferLoop, final Promise<Channel> promise) {
+        try {
+            Bootstrap bs = (loopAffinity && preferLoop != null) ? bootstrap.clone( preferLoop ) : bootstrap.clone();
+            bs.attr( POOL_KEY, this );
+            ChannelFuture f = connectChannel( bs );
+            if (f.isDone()) {
+                notifyConnect( f, promise );
+            } else {
+                f.addListener( new ChannelFutureListener() {
+                    @Override
+                    public void operationComplete(ChannelFuture future) throws Exception {
+                        notifyConnect( future, promise );
+                    }
+                } );
+            }
+        } catch (Throwable cause) {
+            //新建连接异常，归还配额。
+            closeAndFail( null, cause, promise );
+            releasePermit();
+        }
+    }
+
+    /**
+     * 配额耗尽时将 acquire 放入等待队列，并为其设置 {@link #acquireTimeoutMillis} 超时。
+     * 队列已满时立即失败。入队后会复查一次空闲连接与配额，避免与并发的 release/close 竞态导致错过唤醒；
+     * 复查时先拿到连接或配额再认领等待者，认领失败（已超时或已被唤醒）时把连接或配额转给下一个等待者。
+     *
+     * @param preferLoop 期望的 EventLoop，可为 null
+     * @param promise    acquire 操作的 promise
+     * @return 入参 promise 本身
+     */
+    private Future<Channel> offerPendingAcquire(final EventLoop preferLoop, final Promise<Channel> promise) {
+        //CAS占用队列名额，保证不超maxPendingAcquires。
+        for (; ; ) {
+            int current = pendingAcquireNum.get();
+            if (current >= maxPendingAcquires) {
+                acquireRejectNum.incrementAndGet();
+                promise.tryFailure( new IllegalStateException( "Connection pool exhausted, connMax=" + connMax + ", pendingAcquires=" + current ) );
+                return promise;
+            }
+            if (pendingAcquireNum.compareAndSet( current, current + 1 )) {
+                break;
+            }
+        }
+        recordAcquireWait( promise );
+        final PendingAcquire waiter = new PendingAcquire( preferLoop, promise );
+        EventLoop timeoutLoop = preferLoop != null ? preferLoop : bootstrap.config().group().next();
+        waiter.timeoutFuture = timeoutLoop.schedule( new Runnable() {
+            @Override
+            public void run() {
+                if (waiter.claim()) {
+                    //不从队列中移除（O(n)），由poll时跳过。
+                    pendingAcquireNum.decrementAndGet();
+                    acquireTimeoutNum.incrementAndGet();
+                    purgeCancelledAcquires();
+                    promise.tryFailure( new TimeoutException( "Acquire connection timeout after " + acquireTimeoutMillis + "ms, connMax=" + connMax ) );
                 }
             }
-            //已成功占用配额，开始新建连接。
-            try {
-                Bootstrap bs = bootstrap.clone();
-                bs.attr( POOL_KEY, this );
-                ChannelFuture f = connectChannel( bs );
-                if (f.isDone()) {
-                    notifyConnect( f, promise );
-                } else {
-                    f.addListener( new ChannelFutureListener() {
-                        @Override
-                        public void operationComplete(ChannelFuture future) throws Exception {
-                            notifyConnect( future, promise );
-                        }
-                    } );
+        }, acquireTimeoutMillis, TimeUnit.MILLISECONDS );
+        pendingAcquireQueue.offer( waiter );
+        //入队后复查：入队前后恰好有连接归还或关闭时，可能已错过唤醒。
+        Channel ch = pollChannel( preferLoop );
+        if (ch == null) {
+            ch = stealChannel( preferLoop );
+        }
+        if (ch != null) {
+            if (claimPendingAcquire( waiter )) {
+                return healthCheckAndNotify( preferLoop, ch, promise );
+            }
+            //已被其它线程唤醒或已超时，连接转给下一个等待者或放回空闲队列。
+            offerIdleChannel( ch );
+        } else if (tryReservePermit()) {
+            if (claimPendingAcquire( waiter )) {
+                connectNewChannel( preferLoop, promise );
+            } else {
+                //配额转给下一个等待者或归还。
+                releasePermit();
+            }
+        }
+        return promise;
+    }
+
+    /**
+     * 登记一次排队等待，在 acquire 成功完成时记录从首次入队到拿到连接的等待时间。
+     * 同一个 acquire 因健康检测失败重新排队时不再重复登记，保证每个 acquire 只记录一次。
+     *
+     * @param promise acquire 操作的 promise
+     */
+    private void recordAcquireWait(final Promise<Channel> promise) {
+        if (acquireWaitStartMap.putIfAbsent( promise, SystemClock.now() ) != null) {
+            return;
+        }
+        promise.addListener( new FutureListener<Channel>() {
+            @Override
+            public void operationComplete(Future<Channel> future) {
+                Long startTime = acquireWaitStartMap.remove( promise );
+                if (startTime != null && future.isSuccess()) {
+                    acquireWaitNum.incrementAndGet();
+                    acquireWaitMillis.addAndGet( SystemClock.now() - startTime );
                 }
-            } catch (Throwable cause) {
-                //新建连接异常，归还配额。
-                acquiredPermits.decrementAndGet();
-                closeAndFail( null, cause, promise );
             }
-        } catch (Throwable cause) {
-            promise.tryFailure( cause );
+        } );
+    }
+
+    /**
+     * 已认领（超时）的等待者不从队列中移除，由 poll 时跳过。队列中积压的失效等待者超过 {@link #maxPendingAcquires} 时统一清理一次，
+     * 避免长时间没有连接归还时队列无限增长。
+     */
+    private void purgeCancelledAcquires() {
+        if (cancelledAcquireNum.incrementAndGet() > Math.max( maxPendingAcquires, 16 )) {
+            cancelledAcquireNum.set( 0 );
+            pendingAcquireQueue.removeIf( PendingAcquire::isClaimed );
+        }
+    }
+
+    /**
+     * 放回一个未经检测的空闲连接：有等待者时经健康检测后交给最早的等待者，否则放回空闲队列并复查等待队列。
+     *
+     * @param channel 空闲连接
+     */
+    private void offerIdleChannel(Channel channel) {
+        PendingAcquire waiter = pollPendingAcquire();
+        if (waiter != null) {
+            healthCheckAndNotify( waiter.preferLoop, channel, waiter.promise );
+            return;
+        }
+        offerChannel( channel );
+        recheckPendingAcquire();
+    }
+
+    /**
+     * 连接放回空闲队列后复查等待队列：并发入队的等待者可能在连接放回前复查过空闲队列，此时取回一条空闲连接交给它。
+     * 先取连接再认领等待者，没有等待者时放回连接，直到等待队列为空。
+     */
+    private void recheckPendingAcquire() {
+        while (!pendingAcquireQueue.isEmpty()) {
+            Channel ch = pollChannel( null );
+            if (ch == null) {
+                return;
+            }
+            PendingAcquire waiter = pollPendingAcquire();
+            if (waiter != null) {
+                healthCheckAndNotify( waiter.preferLoop, ch, waiter.promise );
+                return;
+            }
+            //队列中只剩已超时的等待者（已被poll清除），放回后再判断一次。
+            offerChannel( ch );
+        }
+    }
+
+    /**
+     * 按 FIFO 顺序取出最早的有效等待者（跳过已超时的）。
+     *
+     * @return 最早的等待者，没有则返回 null
+     */
+    private PendingAcquire pollPendingAcquire() {
+        for (; ; ) {
+            PendingAcquire waiter = pendingAcquireQueue.poll();
+            if (waiter == null) {
+                return null;
+            }
+            if (claimPendingAcquire( waiter )) {
+                return waiter;
+            }
+        }
+    }
+
+    /**
+     * 认领一个等待者：成功则扣减队列深度并取消超时任务（不负责从队列中移除）。
+     *
+     * @param waiter 等待者
+     * @return 是否认领成功（已超时或已被其它线程认领时返回 false）
+     */
+    private boolean claimPendingAcquire(PendingAcquire waiter) {
+        if (!waiter.claim()) {
+            return false;
+        }
+        pendingAcquireNum.decrementAndGet();
+        if (waiter.timeoutFuture != null) {
+            waiter.timeoutFuture.cancel( false );
+        }
+        return true;
+    }
+
+    /**
+     * 将一个已通过健康检测的 channel 直接移交给等待者：恢复 POOL_KEY、加入 busySet、回调 channelAcquired 并完成等待者的 promise。
+     * 如果等待者的 promise 已被取消，则重新 release 该 channel（继续移交给下一个等待者或放回空闲队列）。
+     *
+     * @param channel 待移交的 channel
+     * @param waiter  已认领的等待者
+     */
+    private void handoffChannel(Channel channel, PendingAcquire waiter) throws Exception {
+        channel.attr( POOL_KEY ).set( this );
+        busySet.add( channel );
+        handler.channelAcquired( channel );
+        if (!waiter.promise.trySuccess( channel )) {
+            release( channel );
+        }
+    }
+
+    /**
+     * 归还一个连接配额：有等待者时把配额直接转给最早的等待者去新建连接（不经过计数器，避免被其它线程抢占后等待者重新排队），
+     * 否则归还到计数器。归还后复查等待队列，并发入队的等待者可能在归还前看到配额已满。
+     */
+    private void releasePermit() {
+        for (; ; ) {
+            PendingAcquire waiter = pollPendingAcquire();
+            if (waiter != null) {
+                connectNewChannel( waiter.preferLoop, waiter.promise );
+                return;
+            }
+            acquiredPermits.decrementAndGet();
+            if (pendingAcquireQueue.isEmpty() || !tryReservePermit()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 将复用的 idle channel 路由到其所属 EventLoop 上做健康检测。
+     *
+     * @param preferLoop 期望的 EventLoop，健康检测失败重试时沿用
+     * @param ch         待复用的 idle channel
+     * @param promise    acquire 操作的 promise
+     * @return 入参 promise 本身
+     */
+    private Future<Channel> healthCheckAndNotify(final EventLoop preferLoop, final Channel ch, final Promise<Channel> promise) {
+        EventLoop loop = ch.eventLoop();
+        if (loop.inEventLoop()) {
+            doHealthCheck( preferLoop, ch, promise );
+        } else {
+            loop.execute( new Runnable() {
+                @Override
+                public void run() {
+                    doHealthCheck( preferLoop, ch, promise );
+                }
+            } );
         }
         return promise;
     }
@@ -586,8 +1051,8 @@ public class MySqlPool implements ChannelPool {
                 }
             } else {
                 //连接创建失败，归还已占用的配额，避免permits泄漏导致后续无法新建连接。
-                acquiredPermits.decrementAndGet();
                 promise.tryFailure( future.cause() );
+                releasePermit();
             }
         } catch (Throwable cause) {
             closeAndFail( channel, cause, promise );
@@ -596,22 +1061,23 @@ public class MySqlPool implements ChannelPool {
 
     /**
      * 复用 idle channel 前的健康检测入口。调用此方法前必须确认当前线程在该 channel 的 EventLoop 中。
-     * 检测结果交给 {@link #notifyHealthCheck(Future, Channel, Promise)} 处理。
+     * 检测结果交给 {@link #notifyHealthCheck(Future, EventLoop, Channel, Promise)} 处理。
      *
-     * @param channel 待检测的 idle channel
-     * @param promise acquire 操作的 promise
+     * @param preferLoop 期望的 EventLoop，健康检测失败重试时沿用
+     * @param channel    待检测的 idle channel
+     * @param promise    acquire 操作的 promise
      */
-    private void doHealthCheck(final Channel channel, final Promise<Channel> promise) {
+    private void doHealthCheck(final EventLoop preferLoop, final Channel channel, final Promise<Channel> promise) {
         try {
             assert channel.eventLoop().inEventLoop();
             Future<Boolean> f = healthCheck.isHealthy( channel );
             if (f.isDone()) {
-                notifyHealthCheck( f, channel, promise );
+                notifyHealthCheck( f, preferLoop, channel, promise );
             } else {
                 f.addListener( new FutureListener<Boolean>() {
                     @Override
                     public void operationComplete(Future<Boolean> future) {
-                        notifyHealthCheck( future, channel, promise );
+                        notifyHealthCheck( future, preferLoop, channel, promise );
                     }
                 } );
             }
@@ -623,9 +1089,9 @@ public class MySqlPool implements ChannelPool {
     /**
      * 处理健康检测结果（acquire 路径）。
      * 健康：绑定 POOL_KEY 到本 pool、加入 busySet、回调 channelAcquired 并成功 promise；
-     * 不健康：closeChannel 关闭并以原 promise 递归调用 {@link #acquireHealthyFromPoolOrNew} 重新尝试。
+     * 不健康：closeChannel 关闭并以原 preferLoop/promise 递归调用 {@link #acquireHealthyFromPoolOrNew} 重新尝试。
      */
-    private void notifyHealthCheck(Future<Boolean> future, Channel channel, Promise<Channel> promise) {
+    private void notifyHealthCheck(Future<Boolean> future, EventLoop preferLoop, Channel channel, Promise<Channel> promise) {
         try {
             assert channel.eventLoop().inEventLoop();
             if (future.isSuccess() && future.getNow()) {
@@ -636,7 +1102,7 @@ public class MySqlPool implements ChannelPool {
                 promise.setSuccess( channel );
             } else {
                 closeChannel( channel );
-                acquireHealthyFromPoolOrNew( promise );
+                acquireHealthyFromPoolOrNew( preferLoop, promise );
             }
         } catch (Throwable cause) {
             closeAndFail( channel, cause, promise );
@@ -710,14 +1176,23 @@ public class MySqlPool implements ChannelPool {
 
     /**
      * 将 channel offer 回 idleDeque 并回调 channelReleased、完成 promise。
+     * 等待队列非空时，直接把 channel 移交给最早的等待者，不再放回 idleDeque。
      * offer 失败（理论上 ConcurrentLinkedDeque 不会拒绝）则关闭 channel 并以
      * {@link ChannelPoolFullException} 失败 promise。
      */
     private void releaseAndOffer(Channel channel, Promise<Void> promise) throws Exception {
+        PendingAcquire waiter = pollPendingAcquire();
+        if (waiter != null) {
+            handler.channelReleased( channel );
+            promise.setSuccess( null );
+            handoffChannel( channel, waiter );
+            return;
+        }
         if (offerChannel( channel )) {
             //此处释放计数。
             handler.channelReleased( channel );
             promise.setSuccess( null );
+            recheckPendingAcquire();
         } else {
             closeAndFail( channel, new ChannelPoolFullException(), promise );
         }
@@ -725,8 +1200,8 @@ public class MySqlPool implements ChannelPool {
 
     /**
      * 真正关闭一个 channel：清除 POOL_KEY、关闭 channel，并归还 {@link #acquiredPermits} 配额，
-     * 使后续 acquireHealthyFromPoolOrNew 能新建连接补位。acquiredPermits 仅在真正 close 时归还，
-     * 避免 idle/busy 之间流转时误减。
+     * 使后续 acquireHealthyFromPoolOrNew 能新建连接补位（等待队列非空时直接唤醒最早的等待者）。
+     * acquiredPermits 仅在真正 close 时归还，避免 idle/busy 之间流转时误减。
      *
      * @param channel 待关闭的 channel
      */
@@ -734,7 +1209,7 @@ public class MySqlPool implements ChannelPool {
         channel.attr( POOL_KEY ).getAndSet( null );
         channel.close();
         //连接真正关闭，归还配额，使acquireHealthyFromPoolOrNew能新建连接补充。
-        acquiredPermits.decrementAndGet();
+        releasePermit();
     }
 
     /**
@@ -752,6 +1227,45 @@ public class MySqlPool implements ChannelPool {
         promise.tryFailure( cause );
     }
 
+    /**
+     * 等待队列中的一个 acquire 请求。claim 通过 CAS 保证超时任务与唤醒方只有一方能处理它。
+     */
+    private static final class PendingAcquire {
+
+        /**
+         * 期望的 EventLoop，可为 null。
+         */
+        private final EventLoop preferLoop;
+
+        /**
+         * acquire 操作的 promise。
+         */
+        private final Promise<Channel> promise;
+
+        /**
+         * 认领标记。
+         */
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        /**
+         * 超时任务，认领成功后取消。
+         */
+        private volatile ScheduledFuture<?> timeoutFuture;
+
+        private PendingAcquire(EventLoop preferLoop, Promise<Channel> promise) {
+            this.preferLoop = preferLoop;
+            this.promise = promise;
+        }
+
+        private boolean claim() {
+            return claimed.compareAndSet( false, true );
+        }
+
+        private boolean isClaimed() {
+            return claimed.get();
+        }
+    }
+
     private static final class ChannelPoolFullException extends IllegalStateException {
 
         private ChannelPoolFullException() {
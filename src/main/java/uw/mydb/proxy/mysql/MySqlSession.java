@@ -3,21 +3,30 @@ package uw.mydb.proxy.mysql;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoop;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.LoggerFactory;
 import uw.common.util.SystemClock;
 import uw.mydb.common.conf.MysqlServerConfig;
+import uw.mydb.proxy.conf.MydbProxyConfigService;
+import uw.mydb.proxy.conf.MydbProxyProperties;
 import uw.mydb.proxy.constant.SQLType;
 import uw.mydb.proxy.protocol.constant.MySqlErrorCode;
 import uw.mydb.proxy.protocol.constant.MySQLCapability;
 import uw.mydb.proxy.protocol.packet.*;
 import uw.mydb.proxy.stats.StatsManager;
+import uw.mydb.proxy.util.ByteBufUtils;
 import uw.mydb.proxy.util.CachingSha2PasswordPlugin;
 import uw.mydb.proxy.util.MySqlNativePasswordPlugin;
 
+import java.nio.charset.StandardCharsets;
 import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * MySQL 后端单连接会话实例，负责协议握手鉴权、命令收发、结果集分片回调。
@@ -59,6 +68,17 @@ import java.security.NoSuchAlgorithmException;
  * 由 {@link #handleCommandResponse} 按 resultStatus 子状态机推进（RESULT_INIT→RESULT_FIELD→RESULT_DATA），
  * 将 Ok/Error/ResultSetHeader/Field/Row 各类包逐个回调到 {@link #sessionCallback}。命令结束后
  * {@link #unbindCallback()} 统一进行 SQL 统计、状态归零、释放 channel 给 pool。
+ * <p>
+ * 以字节形式提交的 SQL（{@link #addCommand(MySqlSessionCallback, String, String, ByteBuf, int)}）只拼上 5 字节包头，
+ * 以 CompositeByteBuf 直接写出，不复制、不编码；仅在 trace 日志与慢 SQL 上报时解码为文本。
+ *
+ * <h3>预编译语句</h3>
+ * {@link #addStmtCommand} 以二进制协议执行前端的预编译语句：按语句文本查找本连接上已预编译的语句 ID（{@link #stmtCache}），
+ * 未命中时先发 COM_STMT_PREPARE，吞掉 PREPARE_OK 与参数/列定义包后记入缓存，再发 COM_STMT_EXECUTE；
+ * 执行结果（二进制结果集的行以 0x00 开头，按数据区处理）与 COM_QUERY 一样逐包回调。缓存按 LRU 淘汰，淘汰时发 COM_STMT_CLOSE。
+ * 缓存上限取自 {@link MydbProxyProperties#getStmtCacheSize()}；max_prepared_stmt_count 是整个 MySQL 服务器共享的，
+ * 预编译返回 1461（达到上限）时清空本连接的缓存，并在一段时间内对该服务器停止缓存（语句执行完即关闭）。
+ * 连接在池中空闲超过 idleTimeout 时由 pool housekeeping 调用 {@link #clearStmtCache()} 释放已缓存的语句。
  *
  * <h3>线程安全模型</h3>
  * session 的所有读写几乎都发生在 channel 归属的 EventLoop 线程上（由 {@link MySqlHandler} 调用
@@ -115,6 +135,21 @@ public class MySqlSession {
      */
     private static final int RESULT_DATA = 2;
 
+    /**
+     * 未配置时每个连接缓存的预编译语句上限，超过后按 LRU 关闭最久未用的语句。
+     */
+    private static final int DEFAULT_STMT_CACHE_SIZE = 16;
+
+    /**
+     * 服务器返回预编译语句数达到上限后，停止缓存的时长（ms）。
+     */
+    private static final long STMT_CACHE_SUSPEND_MILLIS = 60_000L;
+
+    /**
+     * 停止缓存预编译语句的服务器：服务器 ID -> 恢复缓存的时间（ms）。
+     */
+    private static final Map<Long, Long> stmtCacheSuspendMap = new ConcurrentHashMap<>();
+
     /**
      * session 创建时间（ms，{@link SystemClock#now()}），用于 pool housekeeping 的 maxAge 判断。
      */
@@ -186,6 +221,11 @@ public class MySqlSession {
      */
     private String sql;
 
+    /**
+     * 当前执行的 SQL 字节（不含包头），由 addCommand 的字节重载转入所有权，unbindCallback/trueClose 时释放并置 null。
+     */
+    private ByteBuf sqlBytes;
+
     /**
      * 当前 SQL 类型，见 {@link SQLType}。unbindCallback 后重置为 {@link SQLType#OTHER}。
      */
@@ -227,6 +267,50 @@ public class MySqlSession {
      */
     private int resultFieldPos = 0;
 
+    /**
+     * 是否被前端事务钉住：命令结束时不归还连接池，直到 {@link #unpin()}。
+     */
+    private volatile boolean pinned;
+
+    /**
+     * 本连接上已预编译的语句：语句文本 -> 后端语句 ID，按访问顺序淘汰。只在 channel 的 EventLoop 上访问。
+     */
+    private final Map<String, Long> stmtCache = new LinkedHashMap<String, Long>( 16, 0.75f, true ) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            if (size() > stmtCacheSize()) {
+                closeStmt( eldest.getValue() );
+                return true;
+            }
+            return false;
+        }
+    };
+
+    /**
+     * 未进入缓存、需在命令结束时关闭的后端语句 ID，-1 表示没有。
+     */
+    private long stmtCloseId = -1;
+
+    /**
+     * 当前预编译执行的命令包，null 表示当前命令为 COM_QUERY。unbindCallback 后置 null。
+     */
+    private StmtExecutePacket stmtExecutePacket;
+
+    /**
+     * 是否正在等待 COM_STMT_PREPARE 的响应。
+     */
+    private boolean stmtPreparing;
+
+    /**
+     * COM_STMT_PREPARE 响应中尚未收到的定义包个数，-1 表示尚未收到 PREPARE_OK。
+     */
+    private int stmtPrepareRemain = -1;
+
+    /**
+     * 正在预编译的后端语句 ID。
+     */
+    private long stmtPrepareId;
+
 
     /**
      * 构造 session，由 {@link MysqlPoolHandler#channelCreated} 在 channel 建连时调用。
@@ -274,6 +358,43 @@ public class MySqlSession {
         }
     }
 
+    /**
+     * 异步执行一条以字节形式给出的 SQL（完整入参，携带 database/table/sqlType 用于统计）。
+     * 字节直接作为 COM_QUERY 的参数写出，调用方转移 sqlBytes 的一个引用计数，命令结束时由 session 释放。
+     *
+     * @param sessionCallback 前端回调
+     * @param database        SQL 所在库名（用于统计，可 null）
+     * @param table           SQL 所在表名（用于统计，可 null）
+     * @param sqlBytes        待执行 SQL 的 UTF-8 字节
+     * @param sqlType         SQL 类型，见 {@link SQLType}
+     */
+    public void addCommand(MySqlSessionCallback sessionCallback, String database, String table, ByteBuf sqlBytes, int sqlType) {
+        bindCallback( sessionCallback );
+        this.database = database;
+        this.table = table;
+        this.sqlBytes = sqlBytes;
+        this.sqlType = sqlType;
+        if (sessionStatus > SESSION_NORMAL) {
+            execute();
+        }
+    }
+
+    /**
+     * 异步执行一条预编译语句（二进制协议）。本连接上尚未预编译该语句时先预编译，再以后端语句 ID 执行。
+     * 调用方需保证 executePacket 携带参数类型（new_params_bound_flag=1），因为语句可能刚在本连接上预编译。
+     *
+     * @param sessionCallback 前端回调
+     * @param database        SQL 所在库名（用于统计，可 null）
+     * @param table           SQL 所在表名（用于统计，可 null）
+     * @param sql             预编译语句文本（含 ? 占位符）
+     * @param sqlType         SQL 类型，见 {@link SQLType}
+     * @param executePacket   前端的执行包，发出前改写为后端语句 ID
+     */
+    public void addStmtCommand(MySqlSessionCallback sessionCallback, String database, String table, String sql, int sqlType, StmtExecutePacket executePacket) {
+        this.stmtExecutePacket = executePacket;
+        addCommand( sessionCallback, database, table, sql, sqlType );
+    }
+
     /**
      * @return session 创建时间（ms）
      */
@@ -371,6 +492,7 @@ public class MySqlSession {
             return;
         }
         sessionStatus = SESSION_CLOSED;
+        releaseSqlBytes();
         this.channel.close();
         try {
             if (this.channelPool != null) {
@@ -381,6 +503,16 @@ public class MySqlSession {
         }
     }
 
+    /**
+     * 释放当前命令的 SQL 字节。
+     */
+    private void releaseSqlBytes() {
+        if (this.sqlBytes != null) {
+            this.sqlBytes.release();
+            this.sqlBytes = null;
+        }
+    }
+
     /**
      * 强制关闭连接（公开入口），用于上层在超时、取消或主动断开场景下避免连接泄漏。
      * 内部直接委托 {@link #trueClose()}。
@@ -389,6 +521,57 @@ public class MySqlSession {
         trueClose();
     }
 
+    /**
+     * @return 连接是否已关闭（终态）
+     */
+    public boolean isClosed() {
+        return sessionStatus == SESSION_CLOSED;
+    }
+
+    /**
+     * @return 后端 channel 绑定的 EventLoop。钉住的 session 在两条命令之间被复用时，新命令需投递到这里执行，
+     * 保证排在上一条命令的 {@link #unbindCallback()} 之后
+     */
+    public EventLoop eventLoop() {
+        return channel.eventLoop();
+    }
+
+    /**
+     * 钉住 session：此后命令结束时不再归还连接池，供前端事务在多条语句间独占同一连接。
+     * 需在下发命令前调用。
+     */
+    public void pin() {
+        this.pinned = true;
+    }
+
+    /**
+     * 解除钉住：session 闲置时立即归还连接池，命令执行中则由该命令的 {@link #unbindCallback()} 归还。
+     * 在 channel 的 EventLoop 上执行，避免与 unbindCallback 竞争导致重复归还。
+     */
+    public void unpin() {
+        if (!channel.eventLoop().inEventLoop()) {
+            channel.eventLoop().execute( this::unpin );
+            return;
+        }
+        if (!pinned) {
+            return;
+        }
+        pinned = false;
+        if (sessionStatus == SESSION_NORMAL && channelPool != null) {
+            channelPool.release( channel );
+        }
+    }
+
+    /**
+     * 设置后端 channel 的 autoRead，用于多节点归并时对积压过多的节点做读背压。
+     * 命令结束归还 pool 前会在 {@link #unbindCallback()} 中自动恢复为 true。
+     *
+     * @param autoRead 是否自动读取
+     */
+    public void setAutoRead(boolean autoRead) {
+        channel.config().setAutoRead( autoRead );
+    }
+
     /**
      * 处理后端 Initial Handshake Packet（SESSION_INIT 阶段）。
      * <p>读到 ErrorPacket 直接关闭；否则解析握手包，按 server 给出的 plugin 名构造
@@ -551,6 +734,24 @@ public class MySqlSession {
         rxBytes += buf.readableBytes();
         byte packetId = buf.getByte( 3 );
         byte status = buf.getByte( 4 );
+        if (stmtPreparing) {
+            if (status != MySqlPacket.PACKET_ERROR || stmtPrepareRemain >= 0) {
+                handleStmtPrepareResponse( buf );
+                return;
+            }
+            //预编译失败，错误包按普通命令响应回传。
+            stmtPreparing = false;
+            if (buf.readableBytes() >= 7 && buf.getUnsignedShortLE( 5 ) == MySqlErrorCode.ER_MAX_PREPARED_STMT_COUNT_REACHED) {
+                //服务器的预编译语句数已满，先让出本连接缓存的语句，并暂停对该服务器缓存。
+                stmtCacheSuspendMap.put( mysqlServerConfig.getId(), SystemClock.now() + STMT_CACHE_SUSPEND_MILLIS );
+                log.warn( "MySQL[{}]预编译语句数达到max_prepared_stmt_count，暂停缓存预编译语句{}ms！", mysqlServerConfig.toString(), STMT_CACHE_SUSPEND_MILLIS );
+                clearStmtCache();
+            }
+        }
+        //数据区内以0x00开头的是首列为空串的行，只有长度小于0xFFFFFF的0xFE包才是结果集结束包。
+        if (resultStatus == RESULT_DATA && (status == MySqlPacket.PACKET_OK || (status == MySqlPacket.PACKET_EOF && buf.getUnsignedMediumLE( 0 ) >= 0xFFFFFF))) {
+            status = 0x01;
+        }
         switch (status) {
             case MySqlPacket.PACKET_OK:
             case MySqlPacket.PACKET_EOF:
@@ -610,11 +811,141 @@ public class MySqlSession {
     }
 
     /**
-     * 发出当前命令。仅当 {@link #sql} 非空时构造 {@link CommandPacket}（COM_QUERY）写出并 flush。
+     * 处理本连接自行发出的 COM_STMT_PREPARE 的响应：PREPARE_OK 与其后的参数/列定义包都不回调前端，
+     * 收齐后把语句 ID 记入 {@link #stmtCache} 并发出 COM_STMT_EXECUTE。
+     *
+     * @param buf 后端响应包
+     */
+    private void handleStmtPrepareResponse(ByteBuf buf) {
+        if (stmtPrepareRemain < 0) {
+            StmtPrepareOkPacket okPacket = new StmtPrepareOkPacket();
+            okPacket.readPayLoad( buf );
+            stmtPrepareId = okPacket.statementId;
+            stmtPrepareRemain = okPacket.parametersNumber + okPacket.columnsNumber;
+        } else {
+            stmtPrepareRemain--;
+        }
+        if (stmtPrepareRemain == 0) {
+            stmtPreparing = false;
+            stmtPrepareRemain = -1;
+            if (isStmtCacheable()) {
+                stmtCache.put( sql, stmtPrepareId );
+            } else {
+                stmtCloseId = stmtPrepareId;
+            }
+            executeStmt( stmtPrepareId );
+        }
+    }
+
+    /**
+     * 以后端语句 ID 发出当前预编译语句的 COM_STMT_EXECUTE。
+     *
+     * @param statementId 后端语句 ID
+     */
+    private void executeStmt(long statementId) {
+        ByteBuf buf = channel.alloc().buffer();
+        stmtExecutePacket.packetId = 0;
+        stmtExecutePacket.statementId = statementId;
+        stmtExecutePacket.writePayLoad( buf );
+        //标记发送字节数。
+        txBytes += buf.readableBytes();
+        channel.writeAndFlush( buf );
+    }
+
+    /**
+     * 关闭本连接缓存的全部预编译语句。只在 channel 的 EventLoop 上调用。
+     */
+    protected void clearStmtCache() {
+        if (stmtCache.isEmpty() || sessionStatus == SESSION_CLOSED) {
+            return;
+        }
+        for (Long statementId : stmtCache.values()) {
+            closeStmt( statementId );
+        }
+        stmtCache.clear();
+        channel.flush();
+    }
+
+    /**
+     * @return 每个连接缓存的预编译语句上限
+     */
+    private static int stmtCacheSize() {
+        MydbProxyProperties properties = MydbProxyConfigService.getMydbProperties();
+        return properties != null ? properties.getStmtCacheSize() : DEFAULT_STMT_CACHE_SIZE;
+    }
+
+    /**
+     * @return 新预编译的语句是否可以进入缓存：未关闭缓存，且该服务器未因预编译语句数满而暂停缓存
+     */
+    private boolean isStmtCacheable() {
+        if (stmtCacheSize() <= 0) {
+            return false;
+        }
+        Long suspendUntil = stmtCacheSuspendMap.get( mysqlServerConfig.getId() );
+        if (suspendUntil == null) {
+            return true;
+        }
+        if (SystemClock.now() < suspendUntil) {
+            return false;
+        }
+        stmtCacheSuspendMap.remove( mysqlServerConfig.getId(), suspendUntil );
+        return true;
+    }
+
+    /**
+     * 发出 COM_STMT_CLOSE 关闭后端预编译语句，该命令没有响应。
+     *
+     * @param statementId 后端语句 ID
+     */
+    private void closeStmt(long statementId) {
+        ByteBuf buf = channel.alloc().buffer( 9 );
+        buf.writeMediumLE( 5 );
+        buf.writeByte( 0 );
+        buf.writeByte( MySqlPacket.CMD_STMT_CLOSE );
+        buf.writeIntLE( (int) statementId );
+        channel.write( buf );
+    }
+
+    /**
+     * 发出当前命令。{@link #sqlBytes} 非空时拼上包头直接写出 COM_QUERY；{@link #sql} 非空时构造 {@link CommandPacket}（COM_QUERY）写出并 flush；
+     * 预编译语句改走二进制协议，本连接上未预编译过该语句时先发 COM_STMT_PREPARE。
      * 由 {@link #addCommand}（SESSION_NORMAL 后）或 {@link #handleAuthResponse}（鉴权 Ok 后）触发。
      * 累计 txBytes 用于统计。
      */
     private void execute() {
+        if (this.sql != null && this.stmtExecutePacket != null) {
+            Long statementId = stmtCache.get( sql );
+            if (statementId != null) {
+                executeStmt( statementId );
+                return;
+            }
+            ByteBuf buf = channel.alloc().buffer();
+            CommandPacket packet = new CommandPacket();
+            packet.command = MySqlPacket.CMD_STMT_PREPARE;
+            packet.arg = sql;
+            packet.writePayLoad( buf );
+            stmtPreparing = true;
+            stmtPrepareRemain = -1;
+            txBytes += buf.readableBytes();
+            channel.writeAndFlush( buf );
+            return;
+        }
+        if (this.sqlBytes != null) {
+            int length = sqlBytes.readableBytes();
+            ByteBuf header = channel.alloc().buffer( 5 );
+            ByteBufUtils.writeUB3( header, length + 1 );
+            header.writeByte( 0 );
+            header.writeByte( MySqlPacket.CMD_QUERY );
+            CompositeByteBuf buf = channel.alloc().compositeBuffer( 2 );
+            buf.addComponents( true, header, sqlBytes.retainedDuplicate() );
+            if (log.isTraceEnabled()) {
+                log.trace( "MySQL执行: {}", sqlBytes.toString( StandardCharsets.UTF_8 ) );
+            }
+            //标记发送字节数。
+            txBytes += buf.readableBytes();
+            channel.writeAndFlush( buf );
+            return;
+        }
         if (this.sql != null) {
             ByteBuf buf = channel.alloc().buffer();
             CommandPacket packet = new CommandPacket();
@@ -692,13 +1023,18 @@ public class MySqlSession {
      *   <li>把 database/table/sql/sqlType/计数器/结果集状态全部归零，准备复用；</li>
      *   <li>回调 {@link MySqlSessionCallback#onFinish()} 通知前端完成，置 null callback；</li>
      *   <li>sessionStatus 转回 SESSION_NORMAL；</li>
-     *   <li>调用 {@link MySqlPool#release(Channel)} 把 channel 归还连接池。</li>
+     *   <li>调用 {@link MySqlPool#release(Channel)} 把 channel 归还连接池（被事务钉住时跳过，见 {@link #pin()}）。</li>
      * </ol>
      */
     private void unbindCallback() {
         long now = SystemClock.now();
         long exeMillis = (now - this.lastRequestTime);
         this.lastRequestTime = now;
+        //字节形式的SQL只在慢SQL上报时才需要文本。
+        if (sqlBytes != null && exeMillis >= MydbProxyConfigService.getMydbProperties().getSlowQueryMillis()) {
+            this.sql = sqlBytes.toString( StandardCharsets.UTF_8 );
+        }
+        releaseSqlBytes();
         //最后统计执行信息。
         StatsManager.statsSql( this.sessionCallback.getClientInfo(), this.mysqlServerConfig.getClusterId(), this.mysqlServerConfig.getId(), database, table, sql, sqlType,
                 isSuccess, Math.max( dataRowsCount, affectRowsCount ), txBytes, rxBytes, exeMillis, now );
@@ -715,6 +1051,15 @@ public class MySqlSession {
         this.resultStatus = RESULT_INIT;
         this.resultFieldCount = 0;
         this.resultFieldPos = 0;
+        this.stmtExecutePacket = null;
+        this.stmtPreparing = false;
+        this.stmtPrepareRemain = -1;
+        //未缓存的语句用完即关，归还前发出。
+        if (this.stmtCloseId >= 0) {
+            closeStmt( this.stmtCloseId );
+            channel.flush();
+            this.stmtCloseId = -1;
+        }
         //解绑callback。
         if (this.sessionCallback != null) {
             this.sessionCallback.onFinish();
@@ -722,8 +1067,12 @@ public class MySqlSession {
         }
         //设置状态。
         this.sessionStatus = SESSION_NORMAL;
-        //释放channelPool。
-        if (channelPool != null) {
+        //恢复读取，避免带着背压状态归还pool。
+        if (!channel.config().isAutoRead()) {
+            channel.config().setAutoRead( true );
+        }
+        //释放channelPool，事务钉住时保留。
+        if (channelPool != null && !pinned) {
             channelPool.release( channel );
         }
     }
@@ -481,6 +481,10 @@ public interface MySqlErrorCode {
     int ER_PARTITION_WRONG_NO_SUBPART_ERROR = 1459;
     int ER_CONST_EXPR_IN_PARTITION_FUNC_ERROR = 1460;
     int ER_NO_CONST_EXPR_IN_RANGE_OR_LIST_ERROR = 1461;
+    /**
+     * MySQL 5.6+ 中 1461 为服务器预编译语句数达到 max_prepared_stmt_count。
+     */
+    int ER_MAX_PREPARED_STMT_COUNT_REACHED = 1461;
     int ER_FIELD_NOT_FOUND_PART_ERROR = 1462;
     int ER_LIST_OF_FIELDS_ONLY_IN_HASH_ERROR = 1463;
     int ER_INCONSISTENT_PARTITION_INFO_ERROR = 1464;
@@ -68,22 +68,21 @@ public class ResultSetFieldPacket extends MySqlPacket {
 
     @Override
     protected void write(ByteBuf buf) {
-        ByteBufUtils.writeBytesWithNull(buf, catalog);
-        ByteBufUtils.writeBytesWithNull(buf, db);
-        ByteBufUtils.writeBytesWithNull(buf, table);
-        ByteBufUtils.writeBytesWithNull(buf, orgTable);
-        ByteBufUtils.writeBytesWithNull(buf, name);
-        ByteBufUtils.writeBytesWithNull(buf, orgName);
+        ByteBufUtils.writeBytesWithLenEnc(buf, catalog);
+        ByteBufUtils.writeBytesWithLenEnc(buf, db);
+        ByteBufUtils.writeBytesWithLenEnc(buf, table);
+        ByteBufUtils.writeBytesWithLenEnc(buf, orgTable);
+        ByteBufUtils.writeBytesWithLenEnc(buf, name);
+        ByteBufUtils.writeBytesWithLenEnc(buf, orgName);
         buf.writeByte((byte) 0x0C);
         ByteBufUtils.writeUB2(buf, charsetIndex);
         ByteBufUtils.writeUB4(buf, length);
         buf.writeByte((byte) (type & 0xff));
         ByteBufUtils.writeUB2(buf, flags);
         buf.writeByte(decimals);
-        buf.writeByte((byte) 0x00);
         buf.writeBytes(FILLER);
         if (definition != null) {
-            ByteBufUtils.writeBytesWithNull(buf, definition);
+            ByteBufUtils.writeBytesWithLenEnc(buf, definition);
         }
     }
 
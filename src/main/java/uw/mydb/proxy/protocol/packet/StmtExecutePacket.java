@@ -0,0 +1,261 @@
+package uw.mydb.proxy.protocol.packet;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import uw.mydb.proxy.util.ByteBufUtils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * COM_STMT_EXECUTE 命令包（客户端 -> 服务端），参数以二进制协议编码。
+ * <p>
+ * 参数区的长度取决于预编译语句的占位符个数，读取前必须先设置 {@link #paramCount}（可用 {@link #peekStatementId} 先取出语句 ID 查找）。
+ * 参数类型只在 new_params_bound_flag=1 时携带，客户端通常只在首次执行时发送。
+ *
+ * <pre>
+ * Bytes         Name
+ * -----         ----
+ * 1             command (0x17)
+ * 4             statement_id
+ * 1             flags
+ * 4             iteration_count (1)
+ * (n+7)/8       NULL-bitmap（n = 参数个数，n&gt;0 时存在）
+ * 1             new_params_bound_flag
+ * 2*n           参数类型（type + unsigned 标记，flag=1 时存在）
+ * m             参数值
+ * </pre>
+ *
+ * @author axeon
+ */
+public class StmtExecutePacket extends MySqlPacket {
+
+    private static final int TYPE_DECIMAL = 0;
+    private static final int TYPE_TINY = 1;
+    private static final int TYPE_SHORT = 2;
+    private static final int TYPE_LONG = 3;
+    private static final int TYPE_FLOAT = 4;
+    private static final int TYPE_DOUBLE = 5;
+    private static final int TYPE_NULL = 6;
+    private static final int TYPE_TIMESTAMP = 7;
+    private static final int TYPE_LONGLONG = 8;
+    private static final int TYPE_INT24 = 9;
+    private static final int TYPE_DATE = 10;
+    private static final int TYPE_TIME = 11;
+    private static final int TYPE_DATETIME = 12;
+    private static final int TYPE_YEAR = 13;
+
+    /**
+     * 参数类型第二字节的 unsigned 标记。
+     */
+    private static final int UNSIGNED_FLAG = 0x80;
+
+    /**
+     * 预编译语句 ID。
+     */
+    public long statementId;
+
+    /**
+     * flags 中的游标类型位（CURSOR_TYPE_READ_ONLY / FOR_UPDATE / SCROLLABLE）。
+     */
+    public static final int CURSOR_TYPE_MASK = 0x07;
+
+    /**
+     * 游标标记，低 3 位为游标类型，0 表示不开游标。
+     */
+    public byte flags;
+
+    /**
+     * 迭代次数，固定为 1。
+     */
+    public long iterationCount = 1;
+
+    /**
+     * 参数个数，读取前由调用方设置。
+     */
+    public int paramCount;
+
+    /**
+     * NULL 位图，第 i 个参数为 NULL 时第 i 位置 1。
+     */
+    public byte[] nullBitmap;
+
+    /**
+     * 是否携带参数类型。
+     */
+    public byte newParamsBound;
+
+    /**
+     * 参数类型，每个参数 2 字节，未携带时为 null。
+     */
+    public byte[] paramTypes;
+
+    /**
+     * 参数值区的原始字节。
+     */
+    public byte[] paramValues;
+
+    /**
+     * 不移动读指针，从完整包（含 4 字节包头）中取出语句 ID。
+     *
+     * @param buf 完整包
+     * @return 语句 ID
+     */
+    public static long peekStatementId(ByteBuf buf) {
+        return buf.getUnsignedIntLE(5);
+    }
+
+    /**
+     * @param index 参数序号
+     * @return 该参数是否为 NULL
+     */
+    public boolean isNull(int index) {
+        return (nullBitmap[index >>> 3] & (1 << (index & 7))) != 0;
+    }
+
+    /**
+     * 把参数值解码为文本，供路由计算使用。整数按有/无符号转十进制，日期时间按 MySQL 字面量格式输出，其余类型按 UTF-8 解码。
+     *
+     * @param types 参数类型（本次未携带时使用首次执行时记录的类型）
+     * @return 各参数的文本，NULL 参数为 null
+     */
+    public String[] decodeParams(byte[] types) {
+        String[] params = new String[paramCount];
+        if (paramCount == 0) {
+            return params;
+        }
+        ByteBuf buf = Unpooled.wrappedBuffer(paramValues);
+        for (int i = 0; i < paramCount; i++) {
+            if (isNull(i)) {
+                continue;
+            }
+            int type = types[i << 1] & 0xff;
+            boolean unsigned = (types[(i << 1) + 1] & UNSIGNED_FLAG) != 0;
+            switch (type) {
+                case TYPE_NULL:
+                    break;
+                case TYPE_TINY:
+                    params[i] = String.valueOf(unsigned ? buf.readUnsignedByte() : buf.readByte());
+                    break;
+                case TYPE_SHORT:
+                case TYPE_YEAR:
+                    params[i] = String.valueOf(unsigned ? buf.readUnsignedShortLE() : buf.readShortLE());
+                    break;
+                case TYPE_LONG:
+                case TYPE_INT24:
+                    params[i] = String.valueOf(unsigned ? buf.readUnsignedIntLE() : buf.readIntLE());
+                    break;
+                case TYPE_LONGLONG:
+                    long value = buf.readLongLE();
+                    params[i] = unsigned ? Long.toUnsignedString(value) : String.valueOf(value);
+                    break;
+                case TYPE_FLOAT:
+                    params[i] = String.valueOf(buf.readFloatLE());
+                    break;
+                case TYPE_DOUBLE:
+                    params[i] = String.valueOf(buf.readDoubleLE());
+                    break;
+                case TYPE_DATE:
+                case TYPE_DATETIME:
+                case TYPE_TIMESTAMP:
+                    params[i] = readDateTime(buf, type == TYPE_DATE);
+                    break;
+                case TYPE_TIME:
+                    params[i] = readTime(buf);
+                    break;
+                case TYPE_DECIMAL:
+                default:
+                    //字符串、DECIMAL、BLOB、JSON等均为LenEnc字节串。
+                    byte[] data = ByteBufUtils.readBytesWithLenEnc(buf);
+                    params[i] = data == null ? null : new String(data, StandardCharsets.UTF_8);
+                    break;
+            }
+        }
+        return params;
+    }
+
+    /**
+     * 读取二进制协议的 DATE/DATETIME/TIMESTAMP：1 字节长度（0/4/7/11）+ 年月日 + 时分秒 + 微秒。
+     */
+    private static String readDateTime(ByteBuf buf, boolean dateOnly) {
+        int length = buf.readUnsignedByte();
+        int year = 0, month = 0, day = 0, hour = 0, minute = 0, second = 0;
+        long micros = 0;
+        if (length >= 4) {
+            year = buf.readUnsignedShortLE();
+            month = buf.readUnsignedByte();
+            day = buf.readUnsignedByte();
+        }
+        if (length >= 7) {
+            hour = buf.readUnsignedByte();
+            minute = buf.readUnsignedByte();
+            second = buf.readUnsignedByte();
+        }
+        if (length >= 11) {
+            micros = buf.readUnsignedIntLE();
+        }
+        if (dateOnly) {
+            return String.format("%04d-%02d-%02d", year, month, day);
+        }
+        if (micros > 0) {
+            return String.format("%04d-%02d-%02d %02d:%02d:%02d.%06d", year, month, day, hour, minute, second, micros);
+        }
+        return String.format("%04d-%02d-%02d %02d:%02d:%02d", year, month, day, hour, minute, second);
+    }
+
+    /**
+     * 读取二进制协议的 TIME：1 字节长度（0/8/12）+ 符号 + 天数 + 时分秒 + 微秒。
+     */
+    private static String readTime(ByteBuf buf) {
+        int length = buf.readUnsignedByte();
+        boolean negative = false;
+        long hours = 0;
+        int minute = 0, second = 0;
+        long micros = 0;
+        if (length >= 8) {
+            negative = buf.readByte() == 1;
+            hours = buf.readUnsignedIntLE() * 24;
+            hours += buf.readUnsignedByte();
+            minute = buf.readUnsignedByte();
+            second = buf.readUnsignedByte();
+        }
+        if (length >= 12) {
+            micros = buf.readUnsignedIntLE();
+        }
+        String time = String.format("%s%02d:%02d:%02d", negative ? "-" : "", hours, minute, second);
+        return micros > 0 ? time + String.format(".%06d", micros) : time;
+    }
+
+    @Override
+    protected void write(ByteBuf buf) {
+        buf.writeByte(CMD_STMT_EXECUTE);
+        ByteBufUtils.writeUB4(buf, statementId);
+        buf.writeByte(flags);
+        ByteBufUtils.writeUB4(buf, iterationCount);
+        if (paramCount > 0) {
+            buf.writeBytes(nullBitmap);
+            buf.writeByte(newParamsBound);
+            if (newParamsBound == 1) {
+                buf.writeBytes(paramTypes);
+            }
+            buf.writeBytes(paramValues);
+        }
+    }
+
+    @Override
+    protected void read(ByteBuf buf) {
+        buf.readByte();
+        statementId = ByteBufUtils.readUB4(buf);
+        flags = buf.readByte();
+        iterationCount = ByteBufUtils.readUB4(buf);
+        if (paramCount > 0) {
+            nullBitmap = new byte[(paramCount + 7) >>> 3];
+            buf.readBytes(nullBitmap);
+            newParamsBound = buf.readByte();
+            if (newParamsBound == 1) {
+                paramTypes = new byte[paramCount << 1];
+                buf.readBytes(paramTypes);
+            }
+            paramValues = ByteBufUtils.readBytesWithEof(buf);
+        }
+    }
+}
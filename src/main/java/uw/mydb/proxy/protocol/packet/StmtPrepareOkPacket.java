@@ -0,0 +1,64 @@
+package uw.mydb.proxy.protocol.packet;
+
+import io.netty.buffer.ByteBuf;
+import uw.mydb.proxy.util.ByteBufUtils;
+
+/**
+ * COM_STMT_PREPARE 的成功响应（服务端 -> 客户端），其后依次跟 num_params 个参数定义包与 num_columns 个列定义包
+ * （协商了 CLIENT_DEPRECATE_EOF 时两组定义之后都没有 EOF 包）。
+ *
+ * <pre>
+ * Bytes         Name
+ * -----         ----
+ * 1             status (0x00)
+ * 4             statement_id
+ * 2             num_columns
+ * 2             num_params
+ * 1             reserved_1 (0x00)
+ * 2             warning_count
+ * </pre>
+ *
+ * @author axeon
+ */
+public class StmtPrepareOkPacket extends MySqlPacket {
+
+    /**
+     * 预编译语句 ID。
+     */
+    public long statementId;
+
+    /**
+     * 结果集列数。
+     */
+    public int columnsNumber;
+
+    /**
+     * ? 占位符个数。
+     */
+    public int parametersNumber;
+
+    /**
+     * 警告计数。
+     */
+    public int warningCount;
+
+    @Override
+    protected void write(ByteBuf buf) {
+        buf.writeByte(PACKET_OK);
+        ByteBufUtils.writeUB4(buf, statementId);
+        ByteBufUtils.writeUB2(buf, columnsNumber);
+        ByteBufUtils.writeUB2(buf, parametersNumber);
+        buf.writeByte(0);
+        ByteBufUtils.writeUB2(buf, warningCount);
+    }
+
+    @Override
+    protected void read(ByteBuf buf) {
+        buf.readByte();
+        statementId = ByteBufUtils.readUB4(buf);
+        columnsNumber = ByteBufUtils.readUB2(buf);
+        parametersNumber = ByteBufUtils.readUB2(buf);
+        buf.readByte();
+        warningCount = ByteBufUtils.readUB2(buf);
+    }
+}
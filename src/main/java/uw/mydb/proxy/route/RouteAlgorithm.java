@@ -5,8 +5,11 @@ import uw.mydb.common.conf.RouteConfig;
 import uw.mydb.common.conf.TableConfig;
 
 import java.security.PrivilegedActionException;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -146,6 +149,17 @@ public abstract class RouteAlgorithm {
         throw new RouteException( "不支持范围计算!" );
     }
 
+    /**
+     * 是否支持单端范围（只有 &gt;= 或 &lt;= 一端的条件）。
+     * <p>基类返回 false，{@link RouteManager} 会把单端范围退化为单值（见 {@link RouteValue#guessType()}）。
+     * 返回 true 时单端范围保持 RANGE，{@link #calculateRange} 的 startValue/endValue 之一可能为 null，表示该端不设限。</p>
+     *
+     * @return true 表示 {@link #calculateRange} 能处理开区间
+     */
+    public boolean supportOpenRange() {
+        return false;
+    }
+
     /**
      * 返回该算法绑定的分片键名称（即 SQL 中需要路由的列名）。
      * {@link RouteManager} 据此从 {@link RouteData} 中取出对应的 {@link RouteValue}。
@@ -533,10 +547,26 @@ public abstract class RouteAlgorithm {
          * RANGE 模式下若只有一端有值，则降级为 SINGLE 的优化。
          * <p>判定逻辑：value 或 valueEnd 任一为 null，则把 type 改成 SINGLE，
          * 并把非空端复制到另一端，使 {@link #getValueStart()} 永远非 null。
-         * 当两端都为 null 时退化为 SINGLE 但 value 仍为 null（视为空值）。</p>
+         * 当两端都为 null 时退化为 SINGLE 但 value 仍为 null（视为空值）。MULTI 不使用两端取值，保持不变。</p>
          * 由 {@link RouteManager} 在分发前主动调用。
          */
         public void guessType() {
+            guessType( false );
+        }
+
+        /**
+         * 同 {@link #guessType()}，openRange 为 true 时只有一端有值的 RANGE 保持不变（开区间），
+         * 供支持单端范围的算法（{@link RouteAlgorithm#supportOpenRange()}）使用。
+         *
+         * @param openRange 是否保留单端范围
+         */
+        public void guessType(boolean openRange) {
+            if (type == MULTI) {
+                return;
+            }
+            if (openRange && type == RANGE && (value != null || valueEnd != null)) {
+                return;
+            }
             if (value == null || valueEnd == null) {
                 type = SINGLE;
                 if (value == null && valueEnd != null) {
@@ -549,6 +579,16 @@ public abstract class RouteAlgorithm {
         }
 
 
+        /**
+         * 清空全部取值，回到 {@link #NULL} 状态。预编译语句每次执行回填参数前调用。
+         */
+        public void clear() {
+            type = NULL;
+            value = null;
+            valueEnd = null;
+            values = null;
+        }
+
         /**
          * 设置为 SINGLE 单值。覆盖之前的状态。
          *
@@ -665,12 +705,25 @@ public abstract class RouteAlgorithm {
         private Set<DataTable> dataTables;
 
         /**
-         * 设置多条命中结果。
+         * MULTI 取值按命中路由的分组：key 为命中的路由，value 为落在该路由上的取值在 {@link RouteValue#getValues()} 中的下标。
+         * 仅当算法链中只有一个 MULTI 取值且其后没有再展开为多条时有效，否则为 null。
+         */
+        private Map<DataTable, BitSet> multiValueMap;
+
+        /**
+         * 是否已冻结为只读（放入 {@link RouteResultCache} 后被多个线程共享）。
+         */
+        private boolean frozen;
+
+        /**
+         * 设置多条命中结果，同时清空 {@link #multiValueMap}。
          * 若集合恰好只有 1 个元素，自动折叠为单引用模式以节省内存。
          *
          * @param dataTables 命中集合，可 null（视作 0 命中，进入多条模式但集合为 null）
          */
         public void setAll(Set<DataTable> dataTables) {
+            checkFrozen();
+            this.multiValueMap = null;
             if (dataTables != null && dataTables.size() == 1) {
                 this.dataTable = dataTables.iterator().next();
                 this.dataTables = null;
@@ -690,13 +743,56 @@ public abstract class RouteAlgorithm {
         }
 
         /**
-         * 设置单条命中结果，同时清空 dataTables。
+         * 设置单条命中结果，同时清空 dataTables 与 {@link #multiValueMap}。
          *
          * @param dataTable 命中的路由信息，可为 null（表示尚未计算/默认路由）
          */
         public void setSingle(DataTable dataTable) {
+            checkFrozen();
             this.dataTable = dataTable;
             this.dataTables = null;
+            this.multiValueMap = null;
+        }
+
+        /**
+         * 设置 MULTI 取值按命中路由的分组，须在 {@link #setAll} 之后调用。
+         *
+         * @param multiValueMap 命中路由 -> 取值下标
+         */
+        public void setMultiValueMap(Map<DataTable, BitSet> multiValueMap) {
+            checkFrozen();
+            this.multiValueMap = multiValueMap;
+        }
+
+        /**
+         * 冻结为只读：命中集合替换为不可修改的视图，之后调用 set 方法抛出 {@link IllegalStateException}。
+         */
+        public void freeze() {
+            if (!frozen) {
+                if (dataTables != null) {
+                    dataTables = Collections.unmodifiableSet( dataTables );
+                }
+                frozen = true;
+            }
+        }
+
+        /**
+         * 检查是否已冻结。
+         */
+        private void checkFrozen() {
+            if (frozen) {
+                throw new IllegalStateException( "RouteResult is frozen!" );
+            }
+        }
+
+        /**
+         * 取落在指定路由上的 MULTI 取值下标，用于按路由裁剪 IN 列表。
+         *
+         * @param dataTable 命中的路由
+         * @return 取值下标；没有分组信息或该路由不在分组中时返回 null
+         */
+        public BitSet getMultiValueIndexes(DataTable dataTable) {
+            return multiValueMap == null ? null : multiValueMap.get( dataTable );
         }
 
         /**
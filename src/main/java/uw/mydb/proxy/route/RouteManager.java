@@ -39,9 +39,10 @@ import java.util.concurrent.ConcurrentHashMap;
  *           guessType()
  *           SINGLE -> calculate() 单条
  *           RANGE  -> 对已有结果集合做笛卡尔 calculateRange()
- *           MULTI  -> 对已有结果集合做笛卡尔 calculate(values)
+ *           MULTI  -> 对已有结果集合逐个取值 calculate(value)，并记录各路由命中的取值下标
  *   4. ensureTableExists 校验
  * </pre>
+ * 非 MULTI 的计算结果按 (routeId, 表名, routeKey 取值) 缓存在 {@link RouteResultCache} 中，命中时直接返回只读结果，跳过 1~4。
  *
  * <h2>线程安全</h2>
  * 类为全静态。{@link #routeAlgorithmMap} 使用 {@link ConcurrentHashMap}，算法实例在
@@ -90,28 +91,65 @@ public class RouteManager {
      *   <li>值为空 + 其它 matchType：抛 RouteException("Route can not fix match!")</li>
      *   <li>SINGLE：调用 {@link RouteAlgorithm#calculate(TableConfig, DataTable, String)}，单条</li>
      *   <li>RANGE：对当前结果做笛卡尔 {@link RouteAlgorithm#calculateRange}，多条</li>
-     *   <li>MULTI：对当前结果做笛卡尔 {@link RouteAlgorithm#calculate(TableConfig, DataTable, List)}，多条</li>
+     *   <li>MULTI：对当前结果的每条路由逐个取值调用 {@link RouteAlgorithm#calculate(TableConfig, DataTable, String)}，多条；
+     *       同时记录每条路由命中的取值下标（{@link RouteAlgorithm.RouteResult#getMultiValueIndexes}），供 SQL 改写按路由裁剪 IN 列表</li>
      *   <li>type=NULL 等其它情况：退化为 getDefaultRoute 单条</li>
      * </ul>
      * 笛卡尔展开：若上一段输出多条，本段对每个父路由都计算一遍再合并去重。</p>
      *
      * @param tableConfig 逻辑表配置，非 null。其 routeId 决定算法链、matchType 决定空值兜底
      * @param routeData   分片键容器，非 null。一般由 {@link #initRouteData} 创建并由 SQL 解析器填充
-     * @return 路由结果，非 null；可能单条也可能多条，可能 0 命中（算法链为空时返回默认路由的 RouteResult）
+     * @return 路由结果，非 null；可能单条也可能多条，可能 0 命中（算法链为空时返回默认路由的 RouteResult）。
+     *         命中 {@link RouteResultCache} 时为只读的共享实例，调用方不应修改
      * @throws RouteAlgorithm.RouteException 当 matchType 配置错误、MATCH_ALL 取不到列表、
      *         算法显式抛出（参数错误、范围过大等）时抛出
      */
     public static RouteAlgorithm.RouteResult calculate(TableConfig tableConfig, RouteAlgorithm.RouteData routeData) throws RouteAlgorithm.RouteException {
-        RouteAlgorithm.RouteResult routeResult = new RouteAlgorithm.RouteResult();
         //获取路由算法列表。
         List<RouteAlgorithm> routeAlgorithms = getRouteAlgorithmList( tableConfig.getRouteId() );
         //算法列表为空（未配置或加载失败），直接返回空结果，由上层走默认路由。
         if (routeAlgorithms == null || routeAlgorithms.isEmpty()) {
-            return routeResult;
+            return new RouteAlgorithm.RouteResult();
+        }
+        RouteResultCache.Key cacheKey = RouteResultCache.key( tableConfig, routeData );
+        if (cacheKey != null) {
+            RouteAlgorithm.RouteResult cached = RouteResultCache.get( cacheKey, tableConfig );
+            if (cached != null) {
+                return cached;
+            }
+        }
+        RouteAlgorithm.RouteResult routeResult = calculate( tableConfig, routeData, routeAlgorithms );
+        // 检查schema情况，建表失败的结果不缓存，下次重试。
+        boolean tableExists = true;
+        if (routeResult.isSingle()) {
+            tableExists = MydbProxyConfigService.ensureTableExists( tableConfig.getTableName(), routeResult.getDataTable() );
+        } else {
+            for (DataTable dataTable : routeResult.getDataTables()) {
+                tableExists = MydbProxyConfigService.ensureTableExists( tableConfig.getTableName(), dataTable ) && tableExists;
+            }
         }
+        if (cacheKey != null && tableExists) {
+            RouteResultCache.put( cacheKey, tableConfig, routeResult );
+        }
+        return routeResult;
+    }
+
+    /**
+     * 驱动算法链计算路由，不做库表存在性校验。
+     *
+     * @param tableConfig     逻辑表配置
+     * @param routeData       分片键容器
+     * @param routeAlgorithms 算法链，非空
+     * @return 路由结果
+     * @throws RouteAlgorithm.RouteException 计算失败时抛出
+     */
+    private static RouteAlgorithm.RouteResult calculate(TableConfig tableConfig, RouteAlgorithm.RouteData routeData, List<RouteAlgorithm> routeAlgorithms) throws RouteAlgorithm.RouteException {
+        RouteAlgorithm.RouteResult routeResult = new RouteAlgorithm.RouteResult();
         DataTable defaultRoute = tableConfig.genDataTable();
         //初始化routeResult为默认路由，避免首个算法为RANGE/MULTI时getDataTable()返回null。
         routeResult.setSingle( defaultRoute );
+        //已处理的MULTI取值数。
+        int multiValueNum = 0;
         for (RouteAlgorithm routeAlgorithm : routeAlgorithms) {
             RouteAlgorithm.RouteValue routeValue = routeData.getValue( routeAlgorithm.getRouteKey() );
             if (routeValue == null || routeValue.isEmpty()) {
@@ -139,7 +177,7 @@ public class RouteManager {
                         throw new RouteAlgorithm.RouteException( "Route can not fix match!" );
                 }
             } else {
-                routeValue.guessType();
+                routeValue.guessType( routeAlgorithm.supportOpenRange() );
                 if (routeValue.getType() == RouteAlgorithm.RouteValue.SINGLE) {
                     defaultRoute = routeAlgorithm.calculate( tableConfig, defaultRoute, routeValue.getValueStart() );
                     routeResult.setSingle( defaultRoute );
@@ -157,18 +195,22 @@ public class RouteManager {
                     }
                     routeResult.setAll( set );
                 } else if (routeValue.getType() == RouteAlgorithm.RouteValue.MULTI) {
-                    Set<DataTable> set = new LinkedHashSet<>();
+                    //逐个取值计算，记录每个路由上落了哪些取值，供按路由裁剪IN列表。
+                    Map<DataTable, BitSet> valueMap = new LinkedHashMap<>();
+                    List<String> values = routeValue.getValues();
                     if (routeResult.isSingle()) {
                         DataTable baseTable = routeResult.getDataTable() != null ? routeResult.getDataTable() : defaultRoute;
-                        Set<DataTable> dts = routeAlgorithm.calculate( tableConfig, baseTable, routeValue.getValues() );
-                        set.addAll( dts );
+                        putMultiValues( valueMap, routeAlgorithm, tableConfig, baseTable, values );
                     } else {
                         for (DataTable dataTable : routeResult.getDataTables()) {
-                            Set<DataTable> dts = routeAlgorithm.calculate( tableConfig, dataTable, routeValue.getValues() );
-                            set.addAll( dts );
+                            putMultiValues( valueMap, routeAlgorithm, tableConfig, dataTable, values );
                         }
                     }
-                    routeResult.setAll( set );
+                    routeResult.setAll( new LinkedHashSet<>( valueMap.keySet() ) );
+                    //多个MULTI取值时下标无法对应到单个IN列表，不做裁剪。
+                    if (multiValueNum++ == 0) {
+                        routeResult.setMultiValueMap( valueMap );
+                    }
                 } else {
                     //此时说明参数没有匹配上。
                     defaultRoute = routeAlgorithm.getDefaultRoute( tableConfig, defaultRoute );
@@ -176,28 +218,37 @@ public class RouteManager {
                 }
             }
         }
+        return routeResult;
+    }
 
-        // 检查schema情况
-        if (routeResult.isSingle()) {
-            MydbProxyConfigService.ensureTableExists( tableConfig.getTableName(), routeResult.getDataTable() );
-        } else {
-            for (DataTable dataTable : routeResult.getDataTables()) {
-                MydbProxyConfigService.ensureTableExists( tableConfig.getTableName(), dataTable );
-            }
+    /**
+     * MULTI 取值逐个计算路由，按命中的路由记录取值下标。
+     *
+     * @param valueMap       命中路由 -> 取值下标
+     * @param routeAlgorithm 当前算法
+     * @param tableConfig    逻辑表配置
+     * @param baseTable      基准路由信息
+     * @param values         MULTI 取值
+     * @throws RouteAlgorithm.RouteException 任一取值计算失败时抛出
+     */
+    private static void putMultiValues(Map<DataTable, BitSet> valueMap, RouteAlgorithm routeAlgorithm, TableConfig tableConfig, DataTable baseTable,
+                                       List<String> values) throws RouteAlgorithm.RouteException {
+        for (int i = 0; i < values.size(); i++) {
+            DataTable dataTable = routeAlgorithm.calculate( tableConfig, baseTable, values.get( i ) );
+            valueMap.computeIfAbsent( dataTable, key -> new BitSet( values.size() ) ).set( i );
         }
-        return routeResult;
     }
 
     /**
      * 取回逻辑表的全部物理分表，用于 MATCH_ALL 全表扫描兜底。
-     * 直接通过管理端按表名前缀查询实际存在的库表，不依赖算法枚举。
+     * 取自 {@link RouteTableListCache}（管理端按表名前缀查询实际存在的库表，本地缓存、异步刷新），不依赖算法枚举。
      *
      * @param tableConfig 逻辑表配置，非 null
-     * @return 命中的物理表列表；可能为空
+     * @return 命中的物理表列表，只读；可能为空，查询失败时为 null
      * @throws RouteAlgorithm.RouteException 当底层查询失败时抛出
      */
     public static List<DataTable> getAllRouteList(TableConfig tableConfig) throws RouteAlgorithm.RouteException {
-        return MydbProxyConfigService.getTableListByPrefix( tableConfig.getTableName() + "_" );
+        return RouteTableListCache.get( tableConfig.getTableName() );
     }
 
     /**
@@ -252,20 +303,22 @@ public class RouteManager {
     /**
      * 作废指定 routeId 的算法链缓存。
      * 在路由配置（routeParamMap/routeKey/parentId/算法类名）发生变更时由配置变更监听器调用，
-     * 下次 {@link #calculate} 会重新走 {@link #getRouteAlgorithmList} 加载。
+     * 下次 {@link #calculate} 会重新走 {@link #getRouteAlgorithmList} 加载；该 routeId 在 {@link RouteResultCache} 中的结果一并作废。
      *
      * @param routeId 要失效的 routeId
      */
     public static void invalidateRouteAlgorithm(long routeId) {
         routeAlgorithmMap.remove( routeId );
+        RouteResultCache.invalidateRoute( routeId );
     }
 
     /**
      * 作废全部算法链缓存。
-     * 一般用于全量配置重载/批量变更场景，调用后所有 routeId 都会在下次访问时重新加载。
+     * 一般用于全量配置重载/批量变更场景，调用后所有 routeId 都会在下次访问时重新加载，{@link RouteResultCache} 同时清空。
      */
     public static void invalidateAllRouteAlgorithm() {
         routeAlgorithmMap.clear();
+        RouteResultCache.clear();
     }
 
 
@@ -0,0 +1,350 @@
+package uw.mydb.proxy.route;
+
+import uw.mydb.common.conf.TableConfig;
+import uw.mydb.proxy.conf.MydbProxyConfigService;
+import uw.mydb.proxy.conf.MydbProxyProperties;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 路由结果缓存：按 (routeId, 表名, routeKey 取值) 缓存 {@link RouteManager#calculate} 的结果，有界、无锁。
+ * <p>
+ * 条目存放在 {@link ConcurrentHashMap} 中，读取只做一次 map 查找并标记访问位；容量由一个固定大小的环形槽位数组限定，
+ * 写入时按 CLOCK 算法（LRU 的近似）转动指针寻找槽位：最近访问过的条目清掉访问位获得第二次机会，未访问的被淘汰。
+ * 缓存的 {@link RouteAlgorithm.RouteResult} 已冻结为只读，可被多个解析线程共享。
+ * <p>
+ * 只缓存各 routeKey 都是 SINGLE/RANGE 取值的结果。MULTI（IN 列表）取值组合多、还需要按路由记录取值下标，不缓存；
+ * 有 routeKey 没有取值时结果取决于 matchType 的兜底（如按日期分表的默认路由取当前时间，跨天、跨月后应落到新表），也不缓存。
+ * 命中时按引用校验表配置，配置刷新后自动失效；算法链变更（{@link RouteManager#invalidateRouteAlgorithm}）与库表集合变化时显式作废。
+ * 容量取自 {@link MydbProxyProperties}，首次使用时初始化；无配置（如测试）时使用默认值。
+ *
+ * @author axeon
+ */
+public class RouteResultCache {
+
+    /**
+     * 默认容量。
+     */
+    private static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * 命中次数。
+     */
+    private static final AtomicLong hitNum = new AtomicLong();
+
+    /**
+     * 未命中次数。
+     */
+    private static final AtomicLong missNum = new AtomicLong();
+
+    /**
+     * 当前存储，容量为 0 时为 null。
+     */
+    private static volatile Store store;
+
+    /**
+     * 是否已初始化。
+     */
+    private static volatile boolean inited;
+
+    /**
+     * 指定容量，清空已有结果。
+     *
+     * @param capacity 条目上限，0 表示关闭
+     */
+    public static synchronized void config(int capacity) {
+        store = capacity > 0 ? new Store( capacity ) : null;
+        inited = true;
+    }
+
+    /**
+     * 按路由输入生成缓存 key。
+     *
+     * @param tableConfig 逻辑表配置
+     * @param routeData   路由输入
+     * @return 缓存 key；缓存关闭或取值不参与缓存（MULTI、空值）时返回 null
+     */
+    public static Key key(TableConfig tableConfig, RouteAlgorithm.RouteData routeData) {
+        if (!inited) {
+            init();
+        }
+        if (store == null) {
+            return null;
+        }
+        RouteAlgorithm.RouteValue[] routeValues = routeData.getValues();
+        String[] values = new String[routeValues.length * 2];
+        int types = 0;
+        for (int i = 0; i < routeValues.length; i++) {
+            RouteAlgorithm.RouteValue routeValue = routeValues[i];
+            int type;
+            if (routeValue.isEmpty()) {
+                //兜底路由可能随时间变化。
+                return null;
+            } else if (routeValue.getType() == RouteAlgorithm.RouteValue.SINGLE) {
+                type = RouteAlgorithm.RouteValue.SINGLE;
+                values[i * 2] = routeValue.getValueStart();
+            } else if (routeValue.getType() == RouteAlgorithm.RouteValue.RANGE) {
+                type = RouteAlgorithm.RouteValue.RANGE;
+                values[i * 2] = routeValue.getValueStart();
+                values[i * 2 + 1] = routeValue.getValueEnd();
+            } else {
+                return null;
+            }
+            types = types * 4 + type;
+        }
+        return new Key( tableConfig.getRouteId(), tableConfig.getTableName(), types, values );
+    }
+
+    /**
+     * 查找路由结果，同时计入命中/未命中次数。
+     *
+     * @param key         缓存 key
+     * @param tableConfig 当前表配置，与缓存时的配置不是同一对象时视为未命中
+     * @return 只读的路由结果，未命中时为 null
+     */
+    public static RouteAlgorithm.RouteResult get(Key key, TableConfig tableConfig) {
+        Store store = RouteResultCache.store;
+        Entry entry = store != null ? store.map.get( key ) : null;
+        if (entry != null) {
+            if (entry.tableConfig == tableConfig) {
+                if (!entry.referenced) {
+                    entry.referenced = true;
+                }
+                hitNum.incrementAndGet();
+                return entry.routeResult;
+            }
+            //配置已刷新。
+            store.map.remove( key, entry );
+        }
+        missNum.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 放入路由结果，结果被冻结为只读。
+     *
+     * @param key         缓存 key
+     * @param tableConfig 计算时的表配置
+     * @param routeResult 路由结果
+     */
+    public static void put(Key key, TableConfig tableConfig, RouteAlgorithm.RouteResult routeResult) {
+        Store store = RouteResultCache.store;
+        if (store == null) {
+            return;
+        }
+        routeResult.freeze();
+        store.put( new Entry( key, tableConfig, routeResult ) );
+    }
+
+    /**
+     * 作废指定 routeId 的全部结果。
+     *
+     * @param routeId 路由配置 id
+     */
+    public static void invalidateRoute(long routeId) {
+        Store store = RouteResultCache.store;
+        if (store != null) {
+            store.map.keySet().removeIf( key -> key.routeId == routeId );
+        }
+    }
+
+    /**
+     * 作废指定逻辑表的全部结果，逻辑表的物理表集合变化（如动态建表）时调用。
+     *
+     * @param tableName 逻辑表名
+     */
+    public static void invalidateTable(String tableName) {
+        Store store = RouteResultCache.store;
+        if (store != null) {
+            store.map.keySet().removeIf( key -> key.tableName.equals( tableName ) );
+        }
+    }
+
+    /**
+     * 清空全部结果。
+     */
+    public static void clear() {
+        Store store = RouteResultCache.store;
+        if (store != null) {
+            store.map.clear();
+        }
+    }
+
+    /**
+     * @return 当前条目数
+     */
+    public static int size() {
+        Store store = RouteResultCache.store;
+        return store != null ? store.map.size() : 0;
+    }
+
+    /**
+     * @return 命中次数
+     */
+    public static long getHitNum() {
+        return hitNum.get();
+    }
+
+    /**
+     * @return 未命中次数
+     */
+    public static long getMissNum() {
+        return missNum.get();
+    }
+
+    /**
+     * 按配置初始化。
+     */
+    private static synchronized void init() {
+        if (inited) {
+            return;
+        }
+        MydbProxyProperties properties = MydbProxyConfigService.getMydbProperties();
+        config( properties != null ? properties.getRouteResultCacheSize() : DEFAULT_CAPACITY );
+    }
+
+    /**
+     * 缓存 key：routeId、逻辑表名与各 routeKey 槽位的取值状态。
+     */
+    public static final class Key {
+
+        /**
+         * 路由配置 id。
+         */
+        private final long routeId;
+
+        /**
+         * 逻辑表名（兜底路由、MATCH_ALL 与建表校验都与表名相关）。
+         */
+        private final String tableName;
+
+        /**
+         * 各槽位的取值类型，每个槽位占 2 位。
+         */
+        private final int types;
+
+        /**
+         * 各槽位的起始值/单值与结束值，每个槽位 2 个元素。
+         */
+        private final String[] values;
+
+        /**
+         * 预先计算的哈希。
+         */
+        private final int hash;
+
+        private Key(long routeId, String tableName, int types, String[] values) {
+            this.routeId = routeId;
+            this.tableName = tableName;
+            this.types = types;
+            this.values = values;
+            int h = Long.hashCode( routeId );
+            h = 31 * h + tableName.hashCode();
+            h = 31 * h + types;
+            h = 31 * h + Arrays.hashCode( values );
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key key)) return false;
+            return hash == key.hash && routeId == key.routeId && types == key.types && tableName.equals( key.tableName ) && Arrays.equals( values, key.values );
+        }
+    }
+
+    /**
+     * 缓存条目。
+     */
+    private static class Entry {
+
+        /**
+         * 缓存 key。
+         */
+        final Key key;
+
+        /**
+         * 计算时的表配置。
+         */
+        final TableConfig tableConfig;
+
+        /**
+         * 只读的路由结果。
+         */
+        final RouteAlgorithm.RouteResult routeResult;
+
+        /**
+         * 访问位，命中时置位，CLOCK 指针经过时清除。
+         */
+        volatile boolean referenced;
+
+        Entry(Key key, TableConfig tableConfig, RouteAlgorithm.RouteResult routeResult) {
+            this.key = key;
+            this.tableConfig = tableConfig;
+            this.routeResult = routeResult;
+        }
+    }
+
+    /**
+     * 存储：条目 map 与 CLOCK 环形槽位。
+     */
+    private static class Store {
+
+        /**
+         * 全部条目。
+         */
+        final ConcurrentHashMap<Key, Entry> map;
+
+        /**
+         * 环形槽位，长度即容量。
+         */
+        final AtomicReferenceArray<Entry> ring;
+
+        /**
+         * CLOCK 指针。
+         */
+        final AtomicInteger hand = new AtomicInteger();
+
+        Store(int capacity) {
+            this.map = new ConcurrentHashMap<>( capacity * 4 / 3 + 1 );
+            this.ring = new AtomicReferenceArray<>( capacity );
+        }
+
+        /**
+         * 放入条目并占用一个槽位，淘汰槽位上原有的条目。已有相同 key 时不放入。
+         *
+         * @param entry 条目
+         */
+        void put(Entry entry) {
+            if (map.putIfAbsent( entry.key, entry ) != null) {
+                return;
+            }
+            int capacity = ring.length();
+            for (int i = 0; ; i++) {
+                int slot = Math.floorMod( hand.getAndIncrement(), capacity );
+                Entry old = ring.get( slot );
+                //最近访问过的给第二次机会；转过一圈后直接淘汰，避免全部被访问时空转。
+                if (old != null && old.referenced && i < capacity) {
+                    old.referenced = false;
+                    continue;
+                }
+                if (ring.compareAndSet( slot, old, entry )) {
+                    if (old != null) {
+                        //已被作废或替换的条目不在map中，remove不会误删。
+                        map.remove( old.key, old );
+                    }
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package uw.mydb.proxy.route;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uw.mydb.common.conf.DataTable;
+import uw.mydb.proxy.conf.MydbProxyConfigService;
+import uw.mydb.proxy.conf.MydbProxyProperties;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 逻辑表的物理分表清单缓存，供 MATCH_ALL 与 {@code route=*} hint 使用，按逻辑表名缓存 center 的 getTableListByPrefix 结果。
+ * <p>
+ * 首次访问时同步加载；之后直接返回本地清单，超过刷新间隔时提交到后台线程异步刷新，查询不再等待 center。
+ * 每个条目带版本号，本地变更（{@link #addTable}，动态建表后调用）使版本加一；异步刷新开始时记下版本，
+ * 完成时版本已变化则丢弃结果，避免用建表前发出的查询结果覆盖新表。清单内容变化时作废该表的 {@link RouteResultCache}。
+ * 刷新间隔取自 {@link MydbProxyProperties}，首次使用时初始化；0 表示不缓存，每次都请求 center。
+ *
+ * @author axeon
+ */
+public class RouteTableListCache {
+
+    private static final Logger logger = LoggerFactory.getLogger( RouteTableListCache.class );
+
+    /**
+     * 默认刷新间隔（毫秒）。
+     */
+    private static final long DEFAULT_REFRESH_MILLIS = 60_000L;
+
+    /**
+     * 异步刷新线程池，单线程，空闲时回收。
+     */
+    private static final ThreadPoolExecutor refreshExecutor = new ThreadPoolExecutor( 0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            new ThreadFactoryBuilder().setDaemon( true ).setNameFormat( "route-table-list-refresh-%d" ).build() );
+
+    /**
+     * 逻辑表名 -> 分表清单。
+     */
+    private static final ConcurrentHashMap<String, Entry> entryMap = new ConcurrentHashMap<>();
+
+    /**
+     * 刷新间隔（毫秒），0 表示不缓存。
+     */
+    private static volatile long refreshMillis;
+
+    /**
+     * 是否已初始化。
+     */
+    private static volatile boolean inited;
+
+    /**
+     * 指定刷新间隔，清空已有清单。
+     *
+     * @param refreshMillis 刷新间隔（毫秒），0 表示不缓存
+     */
+    public static synchronized void config(long refreshMillis) {
+        RouteTableListCache.refreshMillis = refreshMillis;
+        entryMap.clear();
+        inited = true;
+    }
+
+    /**
+     * 取逻辑表的全部物理分表。
+     *
+     * @param tableName 逻辑表名
+     * @return 只读的分表清单；center 查询失败时为 null
+     */
+    public static List<DataTable> get(String tableName) {
+        if (!inited) {
+            init();
+        }
+        if (refreshMillis <= 0) {
+            return load( tableName );
+        }
+        Entry entry = entryMap.get( tableName );
+        if (entry == null) {
+            List<DataTable> list = load( tableName );
+            if (list == null) {
+                return null;
+            }
+            entry = new Entry( list, 0 );
+            Entry exists = entryMap.putIfAbsent( tableName, entry );
+            return exists != null ? exists.tableList : entry.tableList;
+        }
+        if (System.currentTimeMillis() - entry.loadTime > refreshMillis && entry.refreshing.compareAndSet( false, true )) {
+            refreshExecutor.execute( () -> refresh( tableName, entry ) );
+        }
+        return entry.tableList;
+    }
+
+    /**
+     * 动态建表后把新表加入清单，版本加一。未缓存该逻辑表时不处理（下次访问加载的清单已包含新表）。
+     *
+     * @param tableName 逻辑表名
+     * @param dataTable 新建的物理表
+     */
+    public static void addTable(String tableName, DataTable dataTable) {
+        while (true) {
+            Entry entry = entryMap.get( tableName );
+            if (entry == null || entry.tableList.contains( dataTable )) {
+                return;
+            }
+            List<DataTable> list = new ArrayList<>( entry.tableList.size() + 1 );
+            list.addAll( entry.tableList );
+            list.add( dataTable );
+            Entry newEntry = new Entry( Collections.unmodifiableList( list ), entry.version + 1 );
+            newEntry.loadTime = entry.loadTime;
+            if (entryMap.replace( tableName, entry, newEntry )) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 标记全部清单过期，下次访问时异步刷新（仍先返回现有清单）。库表集合变化时调用。
+     */
+    public static void expireAll() {
+        for (Entry entry : entryMap.values()) {
+            entry.loadTime = 0;
+        }
+    }
+
+    /**
+     * 移除指定逻辑表的清单。
+     *
+     * @param tableName 逻辑表名
+     */
+    public static void invalidate(String tableName) {
+        entryMap.remove( tableName );
+    }
+
+    /**
+     * 清空全部清单。
+     */
+    public static void clear() {
+        entryMap.clear();
+    }
+
+    /**
+     * @return 已缓存的逻辑表数量
+     */
+    public static int size() {
+        return entryMap.size();
+    }
+
+    /**
+     * 按配置初始化。
+     */
+    private static synchronized void init() {
+        if (inited) {
+            return;
+        }
+        MydbProxyProperties properties = MydbProxyConfigService.getMydbProperties();
+        config( properties != null ? properties.getRouteTableListRefreshMillis() : DEFAULT_REFRESH_MILLIS );
+    }
+
+    /**
+     * 从 center 查询逻辑表的分表清单。
+     *
+     * @param tableName 逻辑表名
+     * @return 只读的分表清单；查询失败时为 null
+     */
+    private static List<DataTable> load(String tableName) {
+        List<DataTable> list = MydbProxyConfigService.getTableListByPrefix( tableName + "_" );
+        return list != null ? Collections.unmodifiableList( list ) : null;
+    }
+
+    /**
+     * 后台刷新一个条目。失败时保留原清单，下个间隔再试。
+     *
+     * @param tableName 逻辑表名
+     * @param entry     发起刷新时的条目
+     */
+    private static void refresh(String tableName, Entry entry) {
+        try {
+            List<DataTable> list = load( tableName );
+            if (list == null) {
+                return;
+            }
+            if (list.equals( entry.tableList )) {
+                return;
+            }
+            //条目已被本地变更（版本不同）或移除时，丢弃本次结果。
+            Entry newEntry = new Entry( list, entry.version + 1 );
+            if (entryMap.replace( tableName, entry, newEntry )) {
+                RouteResultCache.invalidateTable( tableName );
+                logger.info( "分表清单[{}]已更新，version: {}, size: {}", tableName, newEntry.version, list.size() );
+            }
+        } catch (Throwable e) {
+            logger.warn( "刷新[{}]分表清单失败: {}", tableName, e.getMessage() );
+        } finally {
+            //失败时同样等下个间隔再试，避免center不可用时每次查询都发起刷新。
+            entry.loadTime = System.currentTimeMillis();
+            entry.refreshing.set( false );
+        }
+    }
+
+    /**
+     * 缓存条目：分表清单与版本。
+     */
+    private static class Entry {
+
+        /**
+         * 只读的分表清单。
+         */
+        final List<DataTable> tableList;
+
+        /**
+         * 版本号，清单每次变化加一。
+         */
+        final long version;
+
+        /**
+         * 加载或最近一次刷新的时间，0 表示已过期。
+         */
+        volatile long loadTime = System.currentTimeMillis();
+
+        /**
+         * 是否正在刷新，保证同一条目同时只有一个刷新任务。
+         */
+        final AtomicBoolean refreshing = new AtomicBoolean();
+
+        Entry(List<DataTable> tableList, long version) {
+            this.tableList = tableList;
+            this.version = version;
+        }
+    }
+}
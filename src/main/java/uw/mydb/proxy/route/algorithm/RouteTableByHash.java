@@ -6,7 +6,7 @@ import uw.mydb.common.conf.DataNode;
 import uw.mydb.common.conf.DataTable;
 import uw.mydb.common.conf.TableConfig;
 import uw.mydb.proxy.route.RouteAlgorithm;
-import uw.mydb.proxy.util.ConsistentHash;
+import uw.mydb.proxy.util.ConsistentHashRing;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -15,7 +15,7 @@ import java.util.List;
  * 一致性 Hash 分表路由：按 KEY 的 hash 值在预设表集合中分配，扩缩容时迁移量最小。
  *
  * <h2>职责</h2>
- * 把 routeKey 的字符串值经一致性 hash 路由到预设的物理表之一。底层依赖 {@link ConsistentHash}，
+ * 把 routeKey 的字符串值经一致性 hash 路由到预设的物理表之一。底层依赖 {@link ConsistentHashRing}（平行数组 + 二分查找），
  * 每个真实节点有 128 个虚拟节点，分布更均匀。不支持 RANGE。
  *
  * <h2>配置参数（routeParamMap）</h2>
@@ -38,11 +38,11 @@ public class RouteTableByHash extends RouteAlgorithm {
     private static final Logger logger = LoggerFactory.getLogger( RouteTableByHash.class );
 
     /**
-     * 一致性 Hash 算法对象，key 为字符串，value 为 {@link DataTable}。
-     * <p>由 {@link #config()} 构造，虚拟节点数 128。构造完成后只读，线程安全。</p>
+     * 一致性 Hash 环，key 为字符串，value 为 {@link DataTable}。
+     * <p>由 {@link #config()} 一次构造，虚拟节点数 128。构造完成后只读，线程安全。</p>
      * null 表示尚未调用 config() 或配置错误。
      */
-    private ConsistentHash<DataTable> consistentHash = null;
+    private ConsistentHashRing<DataTable> consistentHash = null;
 
     /**
      * 预设的物理表清单，从 {@code routeList} 解析得到。
@@ -71,7 +71,7 @@ public class RouteTableByHash extends RouteAlgorithm {
             }
             routeInfos.add(new DataTable( new DataNode(Long.parseLong( data[0] ), data[1]), data[2] ) );
         }
-        consistentHash = new ConsistentHash<>( 128, routeInfos );
+        consistentHash = new ConsistentHashRing<>( 128, routeInfos );
     }
 
     /**
@@ -105,7 +105,7 @@ public class RouteTableByHash extends RouteAlgorithm {
      * @param routeInfo   上游累积路由信息，非 null（本算法不基于此计算，仅按 value 选表）
      * @param value       routeKey 字符串值，非 null；将作为 hash 输入
      * @return 命中预设表的 {@link DataTable#copy()} 副本
-     * @throws RouteException 当 consistentHash 未初始化导致 {@link ConsistentHash#get} 返回 null 时抛出
+     * @throws RouteException 当 consistentHash 未初始化导致 {@link ConsistentHashRing#get} 返回 null 时抛出
      */
     @Override
     public DataTable calculate(TableConfig tableConfig, DataTable routeInfo, String value) throws RouteException {
@@ -0,0 +1,251 @@
+package uw.mydb.proxy.route.algorithm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uw.mydb.common.conf.DataNode;
+import uw.mydb.common.conf.DataTable;
+import uw.mydb.common.conf.TableConfig;
+import uw.mydb.proxy.route.RouteAlgorithm;
+import uw.mydb.proxy.sqlparse.parser.FnvHash;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Jump 一致性 Hash 分表路由：按 KEY 的 64 位 hash 用 Jump Consistent Hash 选出预设表之一。
+ *
+ * <h2>职责</h2>
+ * 把 routeKey 的字符串值经 fnv1a_64 + fmix64 得到 64 位 key，再用 Jump Consistent Hash（Lamping &amp; Veach）映射到
+ * {@code [0, 表数)} 的下标。与 {@link RouteTableByHash} 相比：
+ * <ul>
+ *   <li>不需要虚拟节点环，内存只有表清单本身；单次查找 O(log n) 次整数运算，无分配。</li>
+ *   <li>表数从 N 增加到 M 时，只有约 (M-N)/M 的 key 迁移，且只会迁往新增的表（N..M-1），旧表之间不互相迁移。</li>
+ *   <li>只支持在 routeList 末尾追加表；删除或调换中间的表会导致大面积迁移。</li>
+ * </ul>
+ * 扩容前可用 {@link #listMovedKeys} 列出会迁移的 key。不支持 RANGE。
+ *
+ * <h2>配置参数（routeParamMap）</h2>
+ * <ul>
+ *   <li>{@code routeList}：逗号分隔的物理表清单，每项格式 {@code "clusterId.database.table"}，顺序即桶序号。
+ *       未配置或全部解析失败时 {@link #calculate} 抛 RouteException。</li>
+ * </ul>
+ *
+ * <h2>典型用法示例</h2>
+ * <pre>
+ * routeParamMap: routeList=1.shop_db.order_0,1.shop_db.order_1,2.shop_db.order_2
+ * algorithm.calculate(tableConfig, routeInfo, "user_8001") -> 某张预设表的副本
+ * </pre>
+ *
+ * @author axeon
+ */
+public class RouteTableByJumpHash extends RouteAlgorithm {
+
+    private static final Logger logger = LoggerFactory.getLogger( RouteTableByJumpHash.class );
+
+    /**
+     * 预设的物理表清单，从 {@code routeList} 解析得到，下标即 Jump Hash 的桶序号。
+     * <p>由 {@link #config()} 构造，发布后只读。供 {@link #calculate} 与 {@link #getAllRouteList} 使用。</p>
+     * 初始为空 ArrayList。
+     */
+    private List<DataTable> routeInfos = new ArrayList<>();
+
+    /**
+     * 计算 key 落在哪个桶（Jump Consistent Hash，与 Guava {@code Hashing.consistentHash(long, int)} 相同的算法）。
+     *
+     * @param key     64 位 key
+     * @param buckets 桶数，大于 0
+     * @return 桶序号，{@code [0, buckets)}
+     */
+    public static int jumpHash(long key, int buckets) {
+        long b = -1;
+        long j = 0;
+        while (j < buckets) {
+            b = j;
+            key = key * 2862933555777941757L + 1;
+            j = (long) ((b + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) b;
+    }
+
+    /**
+     * 把 routeKey 的字符串值转为 64 位 key：按字符计算 fnv1a_64，再用 murmur3 的 fmix64 打散，使相近的字符串分布均匀。
+     *
+     * @param value routeKey 字符串值
+     * @return 64 位 key
+     */
+    public static long keyHash(String value) {
+        long h = FnvHash.fnv1a_64( value );
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 扩容辅助：列出表数从 fromCount 增加到 toCount 时需要迁移的 key。
+     * <p>Jump Hash 的性质保证迁移的 key 只会迁往新增的表（序号 &gt;= fromCount），未列出的 key 不需要迁移。
+     * 缩容（toCount &lt; fromCount）同样适用，此时迁移的是原先落在被移除表上的 key。</p>
+     *
+     * @param keys      routeKey 取值集合
+     * @param fromCount 当前表数，大于 0
+     * @param toCount   目标表数，大于 0
+     * @return 需要迁移的 key 及其原/新表序号，按 keys 的迭代顺序
+     */
+    public static List<KeyMove> listMovedKeys(Collection<String> keys, int fromCount, int toCount) {
+        if (fromCount <= 0 || toCount <= 0) {
+            throw new IllegalArgumentException( "表数必须大于0！fromCount=" + fromCount + ", toCount=" + toCount );
+        }
+        List<KeyMove> moves = new ArrayList<>();
+        if (fromCount == toCount) {
+            return moves;
+        }
+        for (String key : keys) {
+            long hash = keyHash( key );
+            int fromIndex = jumpHash( hash, fromCount );
+            int toIndex = jumpHash( hash, toCount );
+            if (fromIndex != toIndex) {
+                moves.add( new KeyMove( key, fromIndex, toIndex ) );
+            }
+        }
+        return moves;
+    }
+
+    /**
+     * 解析 routeParamMap.routeList，构造 {@link #routeInfos}。
+     * <p>每项格式 {@code "clusterId.database.table"}，解析失败的项记 ERROR 日志后跳过（后续表的桶序号随之前移，需保证配置正确）。
+     * routeList 未配置时仅记日志，routeInfos 保持空。</p>
+     */
+    @Override
+    public void config() {
+        String routeList = this.routeConfig.getRouteParamMap().get( "routeList" );
+        if (routeList == null || routeList.isBlank()) {
+            logger.error( "RouteTableByJumpHash参数配置错误！routeList未配置，routeId=[{}]", this.routeConfig.getId() );
+            return;
+        }
+        for (String route : routeList.split( "," )) {
+            String[] data = route.split( "\\." );
+            if (data.length != 3) {
+                logger.error( "参数配置错误！route:[{}]", route );
+                continue;
+            }
+            routeInfos.add( new DataTable( new DataNode( Long.parseLong( data[0] ), data[1] ), data[2] ) );
+        }
+    }
+
+    /**
+     * 路由名称。用于管理端展示。
+     *
+     * @return 固定字符串 "JumpHash分表路由"
+     */
+    @Override
+    public String name() {
+        return "JumpHash分表路由";
+    }
+
+    /**
+     * 算法描述与参数说明。
+     *
+     * @return 多行文本，含 routeList 格式
+     */
+    @Override
+    public String description() {
+        return """
+                根据给定的KEY值，按照Jump一致性hash分表，扩容时只在末尾追加表，迁移量最小。
+                参数说明:
+                routeList: clusterId.database.table,clusterId.database.table,...
+                """;
+    }
+
+    /**
+     * 按 Jump Hash 选出一张预设表，返回其副本（避免多请求共享同一可变实例）。
+     *
+     * @param tableConfig 逻辑表配置，非 null（本算法未直接使用）
+     * @param routeInfo   上游累积路由信息，非 null（本算法不基于此计算，仅按 value 选表）
+     * @param value       routeKey 字符串值，非 null；将作为 hash 输入
+     * @return 命中预设表的 {@link DataTable#copy()} 副本
+     * @throws RouteException 当 value 为 null 或 {@link #routeInfos} 为空时抛出
+     */
+    @Override
+    public DataTable calculate(TableConfig tableConfig, DataTable routeInfo, String value) throws RouteException {
+        if (value == null || routeInfos.isEmpty()) {
+            throw new RouteException( "calculate计算失败，参数值[" + value + "]错误！" );
+        }
+        return routeInfos.get( jumpHash( keyHash( value ), routeInfos.size() ) ).copy();
+    }
+
+    /**
+     * 返回算法配置中的全部预设物理表。
+     * 用于 MATCH_ALL 全表扫描。注意直接返回内部引用 {@link #routeInfos}，调用方不应修改。
+     *
+     * @param tableConfig 逻辑表配置，非 null（本算法未直接使用）
+     * @param routeInfos  上游累积列表，非 null（本算法忽略，直接返回自身预设表）
+     * @return {@link #routeInfos}
+     * @throws RouteException 本实现不抛出
+     */
+    @Override
+    public List<DataTable> getAllRouteList(TableConfig tableConfig, List<DataTable> routeInfos) throws RouteException {
+        return this.routeInfos;
+    }
+
+    /**
+     * 扩容时一个 key 的迁移信息。
+     */
+    public static class KeyMove {
+
+        /**
+         * routeKey 取值。
+         */
+        private final String key;
+
+        /**
+         * 原表序号。
+         */
+        private final int fromIndex;
+
+        /**
+         * 新表序号。
+         */
+        private final int toIndex;
+
+        /**
+         * @param key       routeKey 取值
+         * @param fromIndex 原表序号
+         * @param toIndex   新表序号
+         */
+        public KeyMove(String key, int fromIndex, int toIndex) {
+            this.key = key;
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+        }
+
+        /**
+         * @return routeKey 取值
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return 原表序号
+         */
+        public int getFromIndex() {
+            return fromIndex;
+        }
+
+        /**
+         * @return 新表序号
+         */
+        public int getToIndex() {
+            return toIndex;
+        }
+
+        @Override
+        public String toString() {
+            return key + ": " + fromIndex + " -> " + toIndex;
+        }
+    }
+
+}
@@ -0,0 +1,227 @@
+package uw.mydb.proxy.route.algorithm;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uw.mydb.common.conf.DataNode;
+import uw.mydb.common.conf.DataTable;
+import uw.mydb.common.conf.TableConfig;
+import uw.mydb.proxy.route.RouteAlgorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 数值范围分表路由：按 long 值所在的区间映射到预设表，区间边界有序存放、二分查找。
+ *
+ * <h2>职责</h2>
+ * 每张表对应一个左闭右开区间 {@code [下界, 下一个下界)}，最后一张表向上不设限。
+ * {@link #calculate} 二分查找不大于取值的最大下界；{@link #calculateRange} 只返回与查询区间有交集的表，
+ * 使 {@code BETWEEN}、{@code >=}、{@code <=} 等条件只落到相关分表，而不是广播到全部分表。
+ * 单端范围（如 {@code id >= 1000}）保持为开区间计算（{@link #supportOpenRange()}）。
+ * 范围两端按闭区间处理，{@code <}、{@code >} 最多多带一张边界上的表，不影响结果正确性。
+ *
+ * <h2>配置参数（routeParamMap）</h2>
+ * <ul>
+ *   <li>key：区间下界（含），long 值，如 {@code "0"}、{@code "1000000"}</li>
+ *   <li>value：该区间的目标表，格式 {@code "clusterId.database.table"}，如 {@code "1.shop_db.order_0"}</li>
+ * </ul>
+ * 多组 key/value 即多个区间，配置时按下界排序，与书写顺序无关。小于最小下界的取值在 {@link #calculate} 中抛 RouteException。
+ *
+ * <h2>典型用法示例</h2>
+ * <pre>
+ * routeParamMap:
+ *   "0"       -> "1.shop_db.order_0"
+ *   "1000000" -> "1.shop_db.order_1"
+ *   "2000000" -> "2.shop_db.order_2"
+ * algorithm.calculate(tableConfig, routeInfo, "1500000") -> order_1
+ * algorithm.calculateRange(tableConfig, routeInfo, "500000", "1200000") -> [order_0, order_1]
+ * </pre>
+ *
+ * @author axeon
+ */
+public class RouteTableByRange extends RouteAlgorithm {
+
+    private static final Logger logger = LoggerFactory.getLogger( RouteTableByRange.class );
+
+    /**
+     * 各区间下界，升序。与 {@link #routeInfos} 一一对应。
+     * <p>由 {@link #config()} 构造，发布后只读。</p>
+     */
+    private long[] bounds = new long[0];
+
+    /**
+     * 各区间的目标表，与 {@link #bounds} 一一对应。
+     * <p>由 {@link #config()} 构造，发布后只读。供 {@link #getAllRouteList} 直接返回。</p>
+     */
+    private List<DataTable> routeInfos = new ArrayList<>();
+
+    /**
+     * 解析 routeParamMap，按下界排序后构造 {@link #bounds} 与 {@link #routeInfos}。
+     * key 不是 long 或 value 不是 {@code "clusterId.database.table"} 三段的项记 ERROR 日志后跳过。
+     */
+    @Override
+    public void config() {
+        TreeMap<Long, DataTable> rangeMap = new TreeMap<>();
+        for (Map.Entry<String, String> kv : this.routeConfig.getRouteParamMap().entrySet()) {
+            String[] data = kv.getValue().split( "\\." );
+            long bound;
+            try {
+                bound = Long.parseLong( kv.getKey().trim() );
+            } catch (NumberFormatException e) {
+                logger.error( "参数配置错误！key:[{}], value:[{}]", kv.getKey(), kv.getValue() );
+                continue;
+            }
+            if (data.length != 3) {
+                logger.error( "参数配置错误！key:[{}], value:[{}]", kv.getKey(), kv.getValue() );
+                continue;
+            }
+            rangeMap.put( bound, new DataTable( new DataNode( Long.parseLong( data[0] ), data[1] ), data[2] ) );
+        }
+        long[] bounds = new long[rangeMap.size()];
+        List<DataTable> routeInfos = new ArrayList<>( rangeMap.size() );
+        int i = 0;
+        for (Map.Entry<Long, DataTable> kv : rangeMap.entrySet()) {
+            bounds[i++] = kv.getKey();
+            routeInfos.add( kv.getValue() );
+        }
+        this.bounds = bounds;
+        this.routeInfos = routeInfos;
+    }
+
+    /**
+     * 路由名称。用于管理端展示。
+     *
+     * @return 固定字符串 "范围分表路由"
+     */
+    @Override
+    public String name() {
+        return "范围分表路由";
+    }
+
+    /**
+     * 算法描述与参数说明。
+     *
+     * @return 多行文本，含 routeParamMap 的格式约定
+     */
+    @Override
+    public String description() {
+        return """
+                根据给定的long值所在区间分表，支持BETWEEN/>=/<=范围查询只路由到相关分表。
+                参数说明:
+                key: 区间下界(含)，value: clusterId.database.table。
+                """;
+    }
+
+    /**
+     * 按单值二分查找所在区间，返回目标表副本（避免多请求共享同一可变实例）。
+     *
+     * @param tableConfig 逻辑表配置，非 null（本算法未直接使用）
+     * @param routeInfo   上游累积路由信息，非 null（本算法不基于此计算，仅按 value 选表）
+     * @param value       long 字符串，非 null
+     * @return 命中区间目标表的 {@link DataTable#copy()} 副本
+     * @throws RouteException 当 value 不是 long、小于最小下界或未配置任何区间时抛出
+     */
+    @Override
+    public DataTable calculate(TableConfig tableConfig, DataTable routeInfo, String value) throws RouteException {
+        int index = floorIndex( parseValue( value ) );
+        if (index < 0) {
+            throw new RouteException( "calculate计算失败，参数值[" + value + "]不在配置的范围内！" );
+        }
+        return routeInfos.get( index ).copy();
+    }
+
+    /**
+     * 返回与 {@code [startValue, endValue]} 有交集的全部区间目标表。
+     * <p>startValue 为 null 时从第一个区间开始，endValue 为 null 时到最后一个区间为止。
+     * 起止颠倒或整个区间低于最小下界时不会有数据，只返回一张表供语句执行。</p>
+     *
+     * @param tableConfig 逻辑表配置，非 null（本算法未直接使用）
+     * @param dataTable   模板路由信息，非 null（本算法不基于此计算）
+     * @param startValue  起始值（含），可 null
+     * @param endValue    结束值（含），可 null
+     * @return 命中的目标表副本列表，按下界升序，非空
+     * @throws RouteException 当取值不是 long 或未配置任何区间时抛出
+     */
+    @Override
+    public List<DataTable> calculateRange(TableConfig tableConfig, DataTable dataTable, String startValue, String endValue) throws RouteException {
+        if (bounds.length == 0) {
+            throw new RouteException( "calculateRange计算失败，未配置任何范围！" );
+        }
+        int start = startValue == null ? 0 : Math.max( 0, floorIndex( parseValue( startValue ) ) );
+        int end = endValue == null ? bounds.length - 1 : Math.max( 0, floorIndex( parseValue( endValue ) ) );
+        if (end < start) {
+            end = start;
+        }
+        List<DataTable> list = new ArrayList<>( end - start + 1 );
+        for (int i = start; i <= end; i++) {
+            list.add( routeInfos.get( i ).copy() );
+        }
+        return list;
+    }
+
+    /**
+     * 支持单端范围：{@code id >= x} 计算为 {@code [x, +∞)}。
+     *
+     * @return true
+     */
+    @Override
+    public boolean supportOpenRange() {
+        return true;
+    }
+
+    /**
+     * 返回全部区间的目标表。
+     * 用于 MATCH_ALL 全表扫描。注意直接返回内部引用 {@link #routeInfos}，调用方不应修改。
+     *
+     * @param tableConfig 逻辑表配置，非 null（本算法未直接使用）
+     * @param routeInfos  上游累积列表，非 null（本算法忽略，直接返回自身预设表）
+     * @return {@link #routeInfos}
+     * @throws RouteException 本实现不抛出
+     */
+    @Override
+    public List<DataTable> getAllRouteList(TableConfig tableConfig, List<DataTable> routeInfos) throws RouteException {
+        return this.routeInfos;
+    }
+
+    /**
+     * 二分查找不大于 key 的最大下界。
+     *
+     * @param key 取值
+     * @return 区间下标；key 小于最小下界或未配置区间时返回 -1
+     */
+    private int floorIndex(long key) {
+        long[] bounds = this.bounds;
+        int low = 0;
+        int high = bounds.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (bounds[mid] <= key) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * 把取值解析为 long。
+     *
+     * @param value 取值
+     * @return long 值
+     * @throws RouteException 当 value 为 null 或不是 long 时抛出
+     */
+    private long parseValue(String value) throws RouteException {
+        if (value == null) {
+            throw new RouteException( "calculate计算失败，参数值为空！" );
+        }
+        try {
+            return Long.parseLong( value.trim() );
+        } catch (NumberFormatException e) {
+            throw new RouteException( "calculate计算失败，参数值[" + value + "]错误！", e );
+        }
+    }
+
+}
@@ -57,7 +57,7 @@ public class ProxyDataHandler extends ChannelInboundHandlerAdapter {
     }
 
     /**
-     * 连接断开回调，从 {@link ProxySessionManager} 中移除该会话。
+     * 连接断开回调，从 {@link ProxySessionManager} 中移除该会话，并恢复被写背压暂停的后端读取。
      *
      * @param ctx channel 上下文
      * @throws Exception 由父类逻辑抛出
@@ -66,9 +66,30 @@ public class ProxyDataHandler extends ChannelInboundHandlerAdapter {
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
         ProxySession session = ctx.channel().attr( MYDB_SESSION ).get();
         ProxySessionManager.remove( ctx.channel().remoteAddress().toString() );
+        if (session != null) {
+            //恢复被写背压暂停的后端读取，让后端结果尽快读完释放连接。
+            session.onWritabilityChanged();
+            //关闭事务钉住的后端连接。
+            session.onClientClosed();
+        }
         super.channelInactive( ctx );
     }
 
+    /**
+     * 前端 channel 可写性变化回调：写缓冲回落到低水位以下时，恢复因写背压暂停的后端读取。
+     *
+     * @param ctx channel 上下文
+     * @throws Exception 由父类逻辑抛出
+     */
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        ProxySession session = ctx.channel().attr( MYDB_SESSION ).get();
+        if (session != null) {
+            session.onWritabilityChanged();
+        }
+        super.channelWritabilityChanged( ctx );
+    }
+
     /**
      * 读取一条完整的 MySQL 命令包并分发处理。
      * <p>
@@ -122,6 +143,12 @@ public class ProxyDataHandler extends ChannelInboundHandlerAdapter {
                 case MySqlPacket.CMD_STMT_CLOSE:
                     session.stmtClose( ctx, buf );
                     break;
+                case MySqlPacket.CMD_STMT_SEND_LONG_DATA:
+                    session.stmtSendLongData( ctx, buf );
+                    break;
+                case MySqlPacket.CMD_STMT_RESET:
+                    session.stmtReset( ctx, buf );
+                    break;
                 case MySqlPacket.CMD_HEARTBEAT:
                     session.heartbeat( ctx, buf );
                     break;
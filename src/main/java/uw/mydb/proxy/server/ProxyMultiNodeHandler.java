@@ -3,65 +3,125 @@ package uw.mydb.proxy.server;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uw.common.util.SystemClock;
+import uw.mydb.proxy.conf.MydbProxyConfigService;
+import uw.mydb.proxy.conf.MydbProxyProperties;
 import uw.mydb.proxy.constant.SQLType;
 import uw.mydb.proxy.mysql.MySqlClient;
 import uw.mydb.proxy.mysql.MySqlSession;
 import uw.mydb.proxy.mysql.MySqlSessionCallback;
 import uw.mydb.proxy.protocol.constant.MySqlErrorCode;
 import uw.mydb.proxy.protocol.packet.ErrorPacket;
+import uw.mydb.proxy.protocol.packet.MySqlPacket;
 import uw.mydb.proxy.protocol.packet.OkPacket;
+import uw.mydb.proxy.protocol.packet.ResultSetFieldPacket;
+import uw.mydb.proxy.protocol.packet.ResultSetHeaderPacket;
+import uw.mydb.proxy.server.merge.AggregateMerger;
+import uw.mydb.proxy.server.merge.GroupAggregator;
+import uw.mydb.proxy.server.merge.RowDataReader;
+import uw.mydb.proxy.server.merge.ShardEventDrainer;
+import uw.mydb.proxy.server.merge.ShardRowMerger;
+import uw.mydb.proxy.server.merge.SortKey;
 import uw.mydb.proxy.sqlparse.SqlParseResult;
 import uw.mydb.proxy.stats.StatsManager;
 
-import java.util.concurrent.CountDownLatch;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * 多节点查询的聚合处理器，由 {@link ProxySession#query} 在 SQL 被路由到多个后端节点时提交到
- * {@link ProxySession#getMultiNodeExecutor} 执行。
+ * 多节点查询的聚合处理器，由 {@link ProxySession#query} 在 SQL 被路由到多个后端节点时直接调用 {@link #run} 派发。
  * <p>
  * 核心设计：
  * <ul>
- *   <li>同步等待：构造时根据目标节点数初始化 {@link CountDownLatch}，{@link #run} 在派发完全部命令后
- *       {@code await(180s)}，每个节点完成会回调 {@link #onFinish} 触发 countDown。</li>
- *   <li>packetStep 状态机：{@link #PACKET_STEP_INIT}(收 header/field) ->
- *       {@link #PACKET_STEP_EOF_FIELD}(字段定义结束，开始接 row) ->
- *       {@link #PACKET_STEP_EOF}(全部结束)。控制多节点结果集的 header/field 只透传一次。</li>
- *   <li>packetSeq 重写：多节点结果集需作为单个连续结果集返回给客户端，行数据包的 packetId 由
+ *   <li>异步派发：{@link #run} 对目标节点同时发起 {@link MySqlClient#acquireMySqlSession} 异步获取连接，
+ *       每个连接到手即在 listener 中下发命令，不占用任何等待线程；各节点完成（{@link ShardCallback#onFinish}）或获取失败时
+ *       递减 {@link #pendingShards}，减到 0 时执行收尾 {@link #complete}。散发延迟因此为各节点耗时的最大值，
+ *       而不是逐个获取连接的耗时之和再加最慢节点。</li>
+ *   <li>并发上限：单个查询同时执行的节点数不超过 {@link MydbProxyProperties#getMultiNodeConcurrency()}，其余节点排队，
+ *       每结束一个节点派发下一个（{@link #nextShard}），避免一条 route=* 或 MATCH_ALL 语句一次抽干各集群的连接池。
+ *       有序归并需要全部节点同时提供队首行，不受此上限约束（{@link #dispatchConcurrency}）。</li>
+ *   <li>取消：SELECT 在首个节点出错或客户端断开时 {@link #cancel}，排队节点不再派发，执行中的节点 {@code forceClose}
+ *       关闭后端连接（MySQL 在写结果时发现连接断开即终止语句），以错误包收尾；写语句不取消，保证各节点结果可统计。</li>
+ *   <li>节点回调：每个目标节点一个 {@link ShardCallback}，携带节点序号，使行数据可以按节点区分并归并。</li>
+ *   <li>事件汇聚：{@link ShardCallback} 在后端 EventLoop 上只把包（retain 后）写入该节点的单生产者无锁队列，
+ *       由 {@link ShardEventDrainer} 在前端 EventLoop 上按节点轮转取出后处理（{@link #onShardEvent}），后端线程之间不再争抢锁。
+ *       单节点队列积压超过 {@link #SHARD_QUEUE_HIGH_WATER} 时暂停该节点的后端读取，消费者处理到暂停标记时恢复。</li>
+ *   <li>packetStep 状态机：{@link #PACKET_STEP_INIT}(未收到 header) ->
+ *       {@link #PACKET_STEP_FIELD}(首个节点的 header 已透传，正在透传其字段定义) ->
+ *       {@link #PACKET_STEP_DATA}(字段定义结束，开始输出 row)。header/field 只透传首个节点（leader）的一份。</li>
+ *   <li>行归并：行数据先进入 {@link ShardRowMerger}。字段定义写完前暂存；SQL 带可归并的顶层 ORDER BY 时，
+ *       按排序键做 k 路堆归并，只解码排序键所在列，积压超过 {@link #SHARD_BUFFER_HIGH_WATER} 的节点暂停后端读取，
+ *       内存占用与节点数成正比；否则按到达顺序透传。</li>
+ *   <li>全局 LIMIT：各节点 SQL 已被改写为 LIMIT offset+count，归并输出时跳过前 offset 行、输出 count 行后立即补写 EOF 并 flush，
+ *       剩余节点的后续行直接丢弃（不再缓冲、恢复其后端读取），节点 SQL 已受 LIMIT 约束，排空代价有限。</li>
+ *   <li>聚合合并：不带 GROUP BY 的聚合查询（COUNT/SUM/MIN/MAX/AVG）每个节点只返回一行部分聚合值，
+ *       由 {@link AggregateMerger} 合并为一行后在收尾时输出；AVG 在节点侧被改写为 SUM + 隐藏 COUNT 列，
+ *       隐藏列的字段定义不透传，header 中的列数按可见列重写。</li>
+ *   <li>分组合并：带 GROUP BY 时各节点返回按组的部分聚合行（LIMIT 已从节点 SQL 去掉），由 {@link GroupAggregator}
+ *       在单查询内存预算内做哈希聚合，超出预算的分组溢写到内存映射临时文件，收尾时按 ORDER BY 输出并执行全局 LIMIT。</li>
+ *   <li>写背压：输出包按字节数/包数阈值增量 flush；前端 channel 不可写时暂停全部节点的后端读取，
+ *       由 {@link ProxySession#onWritabilityChanged()} 转发的可写事件（{@link #onClientWritable}）恢复；收尾阶段代理层生成的行
+ *       （分组合并结果）在不可写时暂停输出，可写事件到达后在 {@link #onClientWritable} 中继续，不阻塞线程。</li>
+ *   <li>packetSeq 重写：多节点结果集需作为单个连续结果集返回给客户端，所有输出包的 packetId 由
  *       {@link #packetSeq} 单调递增重写后写入前端 channel。</li>
  *   <li>列数一致性校验：第一个节点的 ResultSetHeader 透传后记录列数（{@link #expectedFieldCount}），
  *       后续节点 header 的列数不一致时记告警并构造 Error（行数据会错位）。</li>
- *   <li>超时防护：{@link #run} 中 180s 未全部完成时遍历 {@link #dispatchedSessions} 强制
- *       {@code forceClose} 未完成节点的后端连接，避免连接泄漏与延迟回调的野指针写入。</li>
+ *   <li>超时防护：{@link #run} 在前端 EventLoop 上调度 {@link #QUERY_TIMEOUT_SECONDS} 秒的超时任务，到期仍未完成时
+ *       按取消流程关闭全部未完成节点（含已出错但未回调结束的节点），避免连接泄漏与延迟回调的野指针写入。
+ *       收尾只执行一次（{@link #finished}）。</li>
  * </ul>
- * 线程安全：回调方法由后端不同 session 的 EventLoop 并发调用，使用 synchronized + AtomicInteger 保证 packet 序列与状态机的一致性。
+ * 线程模型：除 {@link ShardCallback} 的入队与获取连接的 listener 外，全部状态（packet 序列、状态机、归并器、节点计数）
+ * 只在前端 EventLoop 上读写，无需加锁；listener 中的失败处理同样投递到前端 EventLoop 执行。
  *
  * @author axeon
  */
-public class ProxyMultiNodeHandler implements MySqlSessionCallback, Runnable {
+public class ProxyMultiNodeHandler implements Runnable {
 
     private static final Logger logger = LoggerFactory.getLogger( ProxyMultiNodeHandler.class );
 
     /**
-     * packetStep 状态机：初始状态，尚未收到任何 FieldEOF。
+     * packetStep 状态机：初始状态，尚未收到任何 ResultSetHeader。
      */
     private static final int PACKET_STEP_INIT = 0;
 
     /**
-     * packetStep 状态机：已收到字段定义结束 EOF（FieldEOF），后续节点不再透传 header/field。
+     * packetStep 状态机：leader 节点的 header 已透传，正在透传其字段定义。
      */
-    private static final int PACKET_STEP_EOF_FIELD = 1;
+    private static final int PACKET_STEP_FIELD = 1;
 
     /**
-     * packetStep 状态机：全部结果集结束（此处实际未使用，由 run() 末尾根据 packetStep > INIT 判定）。
+     * packetStep 状态机：字段定义已全部透传，开始输出行数据。
      */
-    private static final int PACKET_STEP_EOF = 2;
+    private static final int PACKET_STEP_DATA = 2;
+
+    /**
+     * 有序归并时单节点缓冲行数上限，超过后暂停该节点的后端读取。
+     */
+    private static final int SHARD_BUFFER_HIGH_WATER = 256;
+
+    /**
+     * 有序归并时单节点缓冲行数回落到该值以下，恢复该节点的后端读取。
+     */
+    private static final int SHARD_BUFFER_LOW_WATER = 64;
+
+    /**
+     * 单节点事件队列积压上限，超过后暂停该节点的后端读取，直至消费者追上。
+     */
+    private static final int SHARD_QUEUE_HIGH_WATER = 1024;
+
+    /**
+     * 多节点查询整体超时（秒）。
+     */
+    private static final long QUERY_TIMEOUT_SECONDS = 180L;
 
     /**
      * 任务创建时间（毫秒），用于整体执行耗时统计。
@@ -81,7 +141,7 @@ public class ProxyMultiNodeHandler implements MySqlSessionCallback, Runnable {
     /**
      * 数据行计数（多节点累加）。
      */
-    private AtomicInteger dataRowsCount = new AtomicInteger();
+    private int dataRowsCount;
 
     /**
      * 受影响行计数（多节点 OK 包累加；初值 0 表示尚未收到 OK 包，-1 用作哨兵）。
@@ -89,19 +149,59 @@ public class ProxyMultiNodeHandler implements MySqlSessionCallback, Runnable {
     private AtomicInteger affectRowsCount = new AtomicInteger();
 
     /**
-     * 同步门栓：构造时按目标节点数初始化，每个节点 onFinish 时 countDown。
+     * 尚未完成的节点数：构造时按目标节点数初始化，每个节点 onFinish 或获取连接失败时减 1，减到 0 时收尾。
+     */
+    private int pendingShards;
+
+    /**
+     * 是否已开始收尾（全部完成或超时），保证 {@link #complete} 只执行一次。
      */
-    private CountDownLatch countDownLatch;
+    private boolean finished;
+
+    /**
+     * 各节点获取连接的 Future，超时时取消尚未完成的获取。
+     */
+    private final Future<?>[] acquireFutures;
+
+    /**
+     * 超时任务，正常完成时取消。
+     */
+    private Future<?> timeoutFuture;
+
+    /**
+     * 分组合并结果因前端不可写暂停输出，等待 {@link #onClientWritable} 继续。
+     */
+    private boolean groupDraining;
+
+    /**
+     * 单个查询同时执行的节点数上限。
+     */
+    private final int concurrency;
+
+    /**
+     * 下一个待派发的节点序号。
+     */
+    private int nextShard;
+
+    /**
+     * 是否已取消（出错、客户端断开或超时），置位后不再派发排队节点。
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * 出错或客户端断开时是否取消其余节点，仅 SELECT 取消。
+     */
+    private final boolean cancellable;
 
     /**
      * 写往客户端的 packetId 序列号（单调递增），用于把多节点结果集重写为一个连续的 MySQL 结果集。
      */
-    private AtomicInteger packetSeq = new AtomicInteger();
+    private int packetSeq;
 
     /**
-     * packetStep 状态机当前值（INIT/EOF_FIELD/EOF）。
+     * packetStep 状态机当前值（INIT/FIELD/DATA）。
      */
-    private AtomicInteger packetStep = new AtomicInteger( PACKET_STEP_INIT );
+    private int packetStep = PACKET_STEP_INIT;
 
     /**
      * 错误节点计数（收到 ErrorPacket 或 fail message 时自增）。
@@ -119,6 +219,121 @@ public class ProxyMultiNodeHandler implements MySqlSessionCallback, Runnable {
      */
     private int expectedFieldCount = -1;
 
+    /**
+     * 透传 header/field 的 leader 节点序号，-1 表示尚未收到 header。
+     */
+    private int leaderShard = -1;
+
+    /**
+     * leader 节点已透传的字段定义数。
+     */
+    private int leaderFieldPos;
+
+    /**
+     * leader 节点的字段定义，仅在需要有序归并时解码，用于把 ORDER BY 列映射为结果列号。
+     */
+    private List<ResultSetFieldPacket> fieldList;
+
+    /**
+     * 聚合合并模式下收集的 leader 节点全部字段定义（含隐藏列），null 表示非聚合模式。
+     */
+    private List<ResultSetFieldPacket> aggregateFields;
+
+    /**
+     * 聚合合并器，进入数据阶段时创建。
+     */
+    private AggregateMerger aggregateMerger;
+
+    /**
+     * 聚合合并状态。
+     */
+    private AggregateMerger.State aggregateState;
+
+    /**
+     * 分组合并器，带 GROUP BY 时进入数据阶段创建。
+     */
+    private GroupAggregator groupAggregator;
+
+    /**
+     * 分组合并结果的排序键，null 表示无序输出。
+     */
+    private SortKey[] groupSortKeys;
+
+    /**
+     * 代理层合并失败（如溢写文件无法创建），之后到达的行直接丢弃，收尾时以错误包结束结果集。
+     */
+    private boolean mergeFailed;
+
+    /**
+     * 多节点行归并器。
+     */
+    private ShardRowMerger rowMerger;
+
+    /**
+     * 各节点的回调对象，下标即节点序号。
+     */
+    private ShardCallback[] shardCallbacks;
+
+    /**
+     * 各节点事件队列的汇聚器，消费者为前端 EventLoop。
+     */
+    private final ShardEventDrainer drainer;
+
+    /**
+     * 是否已进入收尾阶段。置位后迟到的回调（如超时后仍在返回的节点）不再写前端。
+     */
+    private boolean closed;
+
+    /**
+     * 结果集是否已输出完毕（全局 LIMIT 已满足时提前置位），之后到达的行直接丢弃。
+     */
+    private boolean resultSent;
+
+    /**
+     * 全局 LIMIT 偏移量。
+     */
+    private long limitOffset;
+
+    /**
+     * 全局 LIMIT 行数，-1 表示无 LIMIT。
+     */
+    private long limitCount;
+
+    /**
+     * 已跳过的行数（用于 LIMIT offset）。
+     */
+    private long skippedRows;
+
+    /**
+     * 已输出给客户端的行数。
+     */
+    private long sentRows;
+
+    /**
+     * flush 字节阈值。
+     */
+    private final int flushBytes;
+
+    /**
+     * flush 包数阈值。
+     */
+    private final int flushPackets;
+
+    /**
+     * 自上次 flush 以来写入前端的字节数。
+     */
+    private int unflushedBytes;
+
+    /**
+     * 自上次 flush 以来写入前端的包数。
+     */
+    private int unflushedPackets;
+
+    /**
+     * 是否因前端不可写暂停了各节点的后端读取。
+     */
+    private boolean writePaused;
+
     /**
      * 当前多节点查询的解析结果（含 sqlInfoList、源 SQL 等）。
      */
@@ -134,93 +349,193 @@ public class ProxyMultiNodeHandler implements MySqlSessionCallback, Runnable {
      */
     private boolean isExeSuccess = true;
 
-    /**
-     * 已派发的后端 session 集合，用于超时时强制关闭未回调的连接，避免连接泄漏。
-     * key=MySqlSession 实例，onFinish 后并未实时移除（在 run() 末尾统一 clear），超时路径据此 forceClose。
-     */
-    private final ConcurrentHashMap<MySqlSession, Boolean> dispatchedSessions = new ConcurrentHashMap<>();
-
 
     /**
-     * 构造多节点聚合处理器，初始化 {@link #countDownLatch} 为目标节点数。
+     * 构造多节点聚合处理器，初始化 {@link #pendingShards} 与各节点回调。
      *
      * @param clientInfo  客户端 IP
      * @param ctx         前端 channel 上下文
-     * @param parseResult SQL 解析结果（sqlInfoList.size() 决定门栓数量）
+     * @param parseResult SQL 解析结果（sqlInfoList.size() 决定节点数量）
      */
     public ProxyMultiNodeHandler(String clientInfo, ChannelHandlerContext ctx, SqlParseResult parseResult) {
         this.clientInfo = clientInfo;
         this.ctx = ctx;
         this.parseResult = parseResult;
-        countDownLatch = new CountDownLatch( parseResult.getSqlInfoList().size() );
+        int shardCount = parseResult.getSqlInfoList().size();
+        this.pendingShards = shardCount;
+        this.acquireFutures = new Future<?>[shardCount];
+        this.rowMerger = new ShardRowMerger( shardCount );
+        this.shardCallbacks = new ShardCallback[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shardCallbacks[i] = new ShardCallback( i );
+        }
+        this.drainer = new ShardEventDrainer( shardCount, ctx.executor(), this::onShardEvent );
+        if (parseResult.hasAggregate()) {
+            this.aggregateFields = new ArrayList<>();
+        } else if (parseResult.hasOrderBy()) {
+            this.fieldList = new ArrayList<>();
+        }
+        this.limitOffset = parseResult.getLimitOffset();
+        this.limitCount = parseResult.getLimitCount();
+        MydbProxyProperties properties = MydbProxyConfigService.getMydbProperties();
+        this.flushBytes = properties != null ? properties.getFlushBytes() : 64 * 1024;
+        this.flushPackets = properties != null ? properties.getFlushPackets() : 256;
+        int maxConcurrency = properties != null ? properties.getMultiNodeConcurrency() : 16;
+        this.concurrency = dispatchConcurrency( maxConcurrency, shardCount, fieldList != null );
+        this.cancellable = parseResult.getSqlType() == SQLType.SELECT.getValue();
     }
 
     /**
-     * @return 客户端 IP（实现 {@link MySqlSessionCallback}）
+     * 计算单个查询同时执行的节点数。
+     * <p>有序归并要等所有未结束节点都有队首行才能输出，排队节点既没有结束也没有队首行：执行中的节点积压到
+     * {@link #SHARD_BUFFER_HIGH_WATER} 后暂停读取、不会结束，排队节点也就不会被派发，查询一直等到超时。
+     * 因此有序归并时全部派发，节点数与内存占用仍由高水位暂停约束。</p>
+     *
+     * @param maxConcurrency 配置的并发上限，0 或负数表示不限
+     * @param shardCount     节点数
+     * @param ordered        是否可能按 ORDER BY 有序归并
+     * @return 首批派发的节点数
      */
-    @Override
-    public String getClientInfo() {
-        return clientInfo;
+    public static int dispatchConcurrency(int maxConcurrency, int shardCount, boolean ordered) {
+        if (ordered || maxConcurrency <= 0) {
+            return shardCount;
+        }
+        return Math.min( maxConcurrency, shardCount );
     }
 
     /**
-     * 后端回调：收到 OK 包。累加 affectedRows；若该节点 affectedRows==0，则将 affectRowsCount 从 -1 推进到 0 标记收到过 OK。
+     * 在前端 EventLoop 上处理一个节点事件，由 {@link ShardEventDrainer} 串行调用。行数据包以 ByteBuf 本身入队，
+     * 其它事件包装为 {@link ShardEvent}。已结束的节点（如被取消关闭后仍在队列中的包）只释放不处理。
      *
-     * @param packetId MySQL 协议 packetId
-     * @param buf      OK 包 ByteBuf
+     * @param shard 节点序号
+     * @param event 事件（所有权转移）
      */
-    @Override
-    public void receiveOkPacket(byte packetId, ByteBuf buf) {
+    private void onShardEvent(int shard, Object event) {
+        ShardCallback callback = shardCallbacks[shard];
+        if (event instanceof ByteBuf) {
+            ByteBuf buf = (ByteBuf) event;
+            if (callback.done) {
+                buf.release();
+                return;
+            }
+            receiveRowDataPacket( shard, buf );
+            return;
+        }
+        ShardEvent shardEvent = (ShardEvent) event;
+        try {
+            if (callback.done) {
+                return;
+            }
+            switch (shardEvent.type) {
+                case ShardEvent.OK:
+                    receiveOkPacket( shardEvent.buf );
+                    break;
+                case ShardEvent.ERROR:
+                    receiveErrorPacket( shardEvent.buf );
+                    break;
+                case ShardEvent.HEADER:
+                    receiveResultSetHeaderPacket( shard, shardEvent.buf );
+                    break;
+                case ShardEvent.FIELD:
+                    receiveFieldDataPacket( shard, shardEvent.buf );
+                    break;
+                case ShardEvent.FIELD_EOF:
+                    receiveFieldDataEOFPacket( shard, shardEvent.buf );
+                    break;
+                case ShardEvent.ROW_EOF:
+                    finishShard( shard );
+                    break;
+                case ShardEvent.FAIL:
+                    onMysqlFailMessage( shardEvent.errorNo, shardEvent.info );
+                    break;
+                case ShardEvent.FINISH:
+                    finishShard( shard );
+                    shardDone( shard );
+                    break;
+                case ShardEvent.QUEUE_DRAINED:
+                    //生产者暂停后写入的标记，处理到这里说明积压已消化。
+                    callback.queuePaused = false;
+                    if (!callback.readPaused && !writePaused && callback.session != null) {
+                        callback.session.setAutoRead( true );
+                    }
+                    break;
+                default:
+                    break;
+            }
+        } finally {
+            if (shardEvent.buf != null) {
+                shardEvent.buf.release();
+            }
+        }
+    }
+
+    /**
+     * 收到 OK 包。累加 affectedRows；若该节点 affectedRows==0，则将 affectRowsCount 从 -1 推进到 0 标记收到过 OK。
+     *
+     * @param buf OK 包 ByteBuf
+     */
+    private void receiveOkPacket(ByteBuf buf) {
         OkPacket okPacket = new OkPacket();
         okPacket.readPayLoad( buf );
         if (okPacket.affectedRows > 0) {
-            affectRowsCount.addAndGet( (int)okPacket.affectedRows );
+            affectRowsCount.addAndGet( (int) okPacket.affectedRows );
         } else {
             affectRowsCount.compareAndSet( -1, 0 );
         }
     }
 
     /**
-     * 后端回调：收到 Error 包。仅记录第一个错误包（CAS 保证只赋值一次），并自增错误计数；最终错误由 {@link #run} 统一回传。
+     * 收到 Error 包。仅记录第一个错误包（CAS 保证只赋值一次），并自增错误计数；最终错误由 {@link #complete} 统一回传。
+     * 查询语句随即取消其余节点。
      *
-     * @param packetId MySQL 协议 packetId
-     * @param buf      Error 包 ByteBuf
+     * @param buf Error 包 ByteBuf
      */
-    @Override
-    public void receiveErrorPacket(byte packetId, ByteBuf buf) {
+    private void receiveErrorPacket(ByteBuf buf) {
         if (errorCount.compareAndSet( 0, 1 )) {
             this.errorPacket = new ErrorPacket();
             errorPacket.readPayLoad( buf );
         }
         errorCount.incrementAndGet();
+        if (cancellable) {
+            requestCancel();
+        }
     }
 
     /**
-     * 后端回调：收到 ResultSetHeader。
+     * 收到 ResultSetHeader。
      * <p>
-     * 第一个节点的 header 透传给客户端并记录列数；后续节点的 header 校验列数一致性，
-     * 不一致则记告警并构造 Error（行数据会按首节点列定义透传，列数错位会破坏客户端解码）。
-     * 若 packetStep 已进入 EOF_FIELD，直接丢弃后续 header。
-     * <p>
-     * 方法加 synchronized：多节点回调来自不同 EventLoop 线程，需保证 packetSeq CAS 与 ctx.write 的原子性。
+     * 第一个节点的 header 透传给客户端并记录列数，该节点成为 leader，后续只透传它的字段定义；
+     * 后续节点的 header 校验列数一致性，不一致则记告警并构造 Error（行数据会按首节点列定义透传，列数错位会破坏客户端解码）。
      *
-     * @param packetId MySQL 协议 packetId
-     * @param buf      header 包 ByteBuf（含 4 字节包头 + payload）
+     * @param shard 节点序号
+     * @param buf   header 包 ByteBuf（含 4 字节包头 + payload）
      */
-    @Override
-    public synchronized void receiveResultSetHeaderPacket(byte packetId, ByteBuf buf) {
-        if (packetStep.get() == PACKET_STEP_EOF_FIELD) {
+    private void receiveResultSetHeaderPacket(int shard, ByteBuf buf) {
+        if (closed) {
             return;
         }
         //读取fieldCount（lenenc int，在跳过4字节包头后的payload首字节起）用于一致性校验。
-        //buf经readPayLoad后readerIndex已在包头之后。
-        int fieldCount = readFieldCountFromHeader(buf);
-        if (expectedFieldCount < 0) {
+        int fieldCount = readFieldCountFromHeader( buf );
+        if (leaderShard < 0) {
             //第一个节点的header，记录列数并透传。
+            leaderShard = shard;
             expectedFieldCount = fieldCount;
-            if (packetSeq.compareAndSet( 0, packetId )) {
-                txBytes.addAndGet( buf.readableBytes() );
-                ctx.write( buf.retain() );
+            packetStep = PACKET_STEP_FIELD;
+            int hiddenCount = parseResult.getAggregateHiddenCount();
+            if (aggregateFields != null && fieldCount != parseResult.getAggregateList().size() + hiddenCount) {
+                //列数与解析结果对不上（如 SELECT *），放弃聚合合并。
+                logger.warn( "聚合列数与结果集不一致，按到达顺序输出，SQL: {}", parseResult.getSourceSql() );
+                aggregateFields = null;
+            }
+            if (aggregateFields != null && hiddenCount > 0) {
+                //隐藏列不返回给客户端，按可见列数重写header。
+                ResultSetHeaderPacket headerPacket = new ResultSetHeaderPacket();
+                headerPacket.fieldCount = fieldCount - hiddenCount;
+                ByteBuf headerBuf = ctx.alloc().buffer();
+                headerPacket.writePayLoad( headerBuf );
+                writePacket( headerBuf );
+            } else {
+                writePacket( buf.retain() );
             }
         } else {
             //后续节点的header：校验列数一致性，不一致则记录告警（数据已按首节点列定义透传，列数不一致会导致行数据错位）。
@@ -265,79 +580,399 @@ public class ProxyMultiNodeHandler implements MySqlSessionCallback, Runnable {
     }
 
     /**
-     * 后端回调：收到字段定义包。仅在 INIT 状态透传第一个节点的字段定义；EOF_FIELD 后丢弃。
-     * 通过 packetSeq CAS 保证只接受连续序号的包，乱序则告警丢弃。
+     * 收到字段定义包。仅透传 leader 节点的字段定义，其它节点丢弃。
+     * CLIENT_DEPRECATE_EOF 下字段区没有 EOF 包，按 header 中的列数计数判断字段区结束。
      *
-     * @param packetId MySQL 协议 packetId
-     * @param buf      字段定义包 ByteBuf
+     * @param shard 节点序号
+     * @param buf   字段定义包 ByteBuf
      */
-    @Override
-    public synchronized void receiveFieldDataPacket(byte packetId, ByteBuf buf) {
-        if (packetStep.get() == PACKET_STEP_EOF_FIELD) {
+    private void receiveFieldDataPacket(int shard, ByteBuf buf) {
+        if (closed || shard != leaderShard || packetStep != PACKET_STEP_FIELD) {
             return;
         }
-        if (packetSeq.compareAndSet( packetId - 1, packetId )) {
-            txBytes.addAndGet( buf.readableBytes() );
-            ctx.write( buf.retain() );
+        if (aggregateFields != null) {
+            ResultSetFieldPacket fieldPacket = new ResultSetFieldPacket();
+            fieldPacket.readPayLoad( buf.duplicate() );
+            aggregateFields.add( fieldPacket );
+            List<SqlParseResult.AggregateItem> aggregateList = parseResult.getAggregateList();
+            if (leaderFieldPos < aggregateList.size()) {
+                if (aggregateList.get( leaderFieldPos ).getFunction() == SqlParseResult.AggregateItem.FUNC_AVG) {
+                    patchAvgField( buf, fieldPacket );
+                }
+                writePacket( buf.retain() );
+            }
         } else {
-            logger.warn( "receiveFieldDataPacket丢弃数据包: 期望packetSeq={}, 实际packetId={}", packetSeq.get(), packetId );
+            if (fieldList != null) {
+                ResultSetFieldPacket fieldPacket = new ResultSetFieldPacket();
+                fieldPacket.readPayLoad( buf.duplicate() );
+                fieldList.add( fieldPacket );
+            }
+            writePacket( buf.retain() );
+        }
+        leaderFieldPos++;
+        if (expectedFieldCount > 0 && leaderFieldPos >= expectedFieldCount) {
+            startDataStep();
         }
     }
 
     /**
-     * 后端回调：收到字段定义结束的 EOF 包。CAS 将 packetStep 从 INIT 推进到 EOF_FIELD（只生效一次），透传该 EOF 后递增 packetSeq。
+     * AVG 列的字段定义：节点返回的是 SUM 的定义，定点数的小数位数与显示长度按 AVG 的精度增加。直接改写原始字段包。
      *
-     * @param packetId MySQL 协议 packetId
-     * @param buf      EOF 包 ByteBuf
+     * @param buf        字段定义包 ByteBuf
+     * @param fieldPacket 已解码的字段定义
      */
-    @Override
-    public synchronized void receiveFieldDataEOFPacket(byte packetId, ByteBuf buf) {
-        if (packetStep.compareAndSet( PACKET_STEP_INIT, PACKET_STEP_EOF_FIELD )) {
-            txBytes.addAndGet( buf.readableBytes() );
-            ctx.write( buf.retain() );
-            packetSeq.incrementAndGet();
+    private void patchAvgField(ByteBuf buf, ResultSetFieldPacket fieldPacket) {
+        if (fieldPacket.type != 0 && fieldPacket.type != 246) {
+            return;
         }
+        //定位org_name之后的定长区：filler(1) charset(2) length(4) type(1) flags(2) decimals(1)。
+        int[] offsets = new int[1];
+        int[] lengths = new int[1];
+        RowDataReader.locateColumns( buf, new int[]{5}, offsets, lengths );
+        int pos = offsets[0] + Math.max( lengths[0], 0 );
+        if (pos + 11 > buf.writerIndex()) {
+            return;
+        }
+        int decimals = Math.min( fieldPacket.decimals + AggregateMerger.AVG_SCALE_INCREMENT, 30 );
+        buf.setIntLE( pos + 3, (int) (fieldPacket.length + decimals - fieldPacket.decimals) );
+        buf.setByte( pos + 10, decimals );
+        fieldPacket.decimals = (byte) decimals;
     }
 
     /**
-     * 后端回调：收到行数据包。累加行计数，重写 packetId（buf 第 4 字节）为 packetSeq 递增值后透传前端，
-     * 使多节点行数据在客户端看来是一个连续的结果集。
+     * 收到字段定义结束的 EOF 包（未开启 CLIENT_DEPRECATE_EOF 的后端）。leader 节点的 EOF 透传并进入数据阶段。
      *
-     * @param packetId 原始 packetId（会被重写）
-     * @param buf      行数据包 ByteBuf
+     * @param shard 节点序号
+     * @param buf   EOF 包 ByteBuf
      */
-    @Override
-    public synchronized void receiveRowDataPacket(byte packetId, ByteBuf buf) {
-        txBytes.addAndGet( buf.readableBytes() );
-        dataRowsCount.incrementAndGet();
-        packetId = (byte) (packetSeq.incrementAndGet());
-        buf.setByte( 3, packetId );
-        ctx.write( buf.retain() );
+    private void receiveFieldDataEOFPacket(int shard, ByteBuf buf) {
+        if (closed || shard != leaderShard || packetStep != PACKET_STEP_FIELD) {
+            return;
+        }
+        writePacket( buf.retain() );
+        startDataStep();
     }
 
     /**
-     * 后端回调：收到行数据结束 EOF 包。空实现：最终 EOF/OK 包由 {@link #run} 在所有节点收尾后统一输出，
-     * 这里不做处理避免与 {@code run()} 末尾产生双重写入。
+     * 字段定义透传完毕，进入数据阶段：能解析出排序键则切换为有序归并，随后输出已暂存的行。
+     */
+    private void startDataStep() {
+        packetStep = PACKET_STEP_DATA;
+        if (aggregateFields != null) {
+            //聚合合并：已暂存的行直接合并，不再输出原始行。
+            if (parseResult.hasGroupBy()) {
+                MydbProxyProperties properties = MydbProxyConfigService.getMydbProperties();
+                long memoryBudget = properties != null ? properties.getGroupMemoryBudget() : 64L * 1024 * 1024;
+                String spillDir = properties != null ? properties.getSpillDir() : null;
+                if (spillDir == null || spillDir.isEmpty()) {
+                    spillDir = System.getProperty( "java.io.tmpdir" );
+                }
+                groupAggregator = new GroupAggregator( parseResult.getAggregateList(), parseResult.getAggregateHiddenCount(), aggregateFields,
+                        parseResult.getGroupByList(), memoryBudget, Paths.get( spillDir ), ctx.alloc() );
+                groupSortKeys = SortKey.resolve( parseResult.getOrderByList(), aggregateFields.subList( 0, parseResult.getAggregateList().size() ) );
+                if (groupSortKeys == null && parseResult.hasOrderBy()) {
+                    disableGlobalLimit();
+                }
+            } else {
+                aggregateMerger = new AggregateMerger( parseResult.getAggregateList(), parseResult.getAggregateHiddenCount(), aggregateFields );
+                aggregateState = aggregateMerger.newState();
+            }
+            aggregateFields = null;
+            ByteBuf row;
+            while ((row = rowMerger.poll()) != null) {
+                accumulateRow( row );
+                row.release();
+            }
+            return;
+        }
+        if (fieldList != null) {
+            SortKey[] sortKeys = SortKey.resolve( parseResult.getOrderByList(), fieldList );
+            if (sortKeys != null) {
+                rowMerger.sortBy( sortKeys );
+            } else {
+                disableGlobalLimit();
+            }
+            fieldList = null;
+        }
+        drainRows();
+    }
+
+    /**
+     * ORDER BY 列无法匹配结果集时按到达顺序输出，此时不能按全局 LIMIT 截断（截出来的不是前 N 行），改为输出全部行。
+     */
+    private void disableGlobalLimit() {
+        logger.warn( "ORDER BY列无法匹配结果集，按到达顺序输出且不执行全局LIMIT，SQL: {}", parseResult.getSourceSql() );
+        limitOffset = 0;
+        limitCount = -1;
+    }
+
+    /**
+     * 收到行数据包。字段定义写完前或有序归并时进入归并器，否则直接以 packetSeq 重写 packetId 后透传。
      *
-     * @param packetId MySQL 协议 packetId
-     * @param buf      EOF 包 ByteBuf
+     * @param shard 节点序号
+     * @param buf   行数据包 ByteBuf（所有权转移）
      */
-    @Override
-    public void receiveRowDataEOFPacket(byte packetId, ByteBuf buf) {
-        //在最后汇总输出，可以不用管了。
+    private void receiveRowDataPacket(int shard, ByteBuf buf) {
+        dataRowsCount++;
+        if (closed || resultSent || mergeFailed) {
+            buf.release();
+            return;
+        }
+        if (aggregateMerger != null || groupAggregator != null) {
+            accumulateRow( buf );
+            buf.release();
+            return;
+        }
+        if (packetStep == PACKET_STEP_DATA && !rowMerger.isSorted()) {
+            sendRow( buf );
+            return;
+        }
+        rowMerger.offer( shard, buf );
+        if (rowMerger.isSorted()) {
+            ShardCallback callback = shardCallbacks[shard];
+            if (!callback.readPaused && rowMerger.getBufferedRows( shard ) >= SHARD_BUFFER_HIGH_WATER && callback.session != null) {
+                callback.readPaused = true;
+                callback.session.setAutoRead( false );
+            }
+            drainRows();
+        }
+    }
+
+    /**
+     * 聚合合并模式下合并一行，溢写失败时标记合并失败并释放已有状态。
+     *
+     * @param row 行数据包（不转移所有权）
+     */
+    private void accumulateRow(ByteBuf row) {
+        if (mergeFailed) {
+            return;
+        }
+        if (groupAggregator == null) {
+            aggregateMerger.accumulate( aggregateState, row );
+            return;
+        }
+        try {
+            groupAggregator.accumulate( row );
+        } catch (IOException e) {
+            onMergeFailed( e );
+        }
+    }
+
+    /**
+     * 分组合并失败：释放合并状态，记录错误。
+     *
+     * @param e 异常
+     */
+    private void onMergeFailed(Exception e) {
+        logger.error( "多节点GROUP BY合并失败: {}, client={}", e.getMessage(), clientInfo );
+        mergeFailed = true;
+        if (groupAggregator != null) {
+            groupAggregator.release();
+            groupAggregator = null;
+        }
+        onMysqlFailMessage( MySqlErrorCode.ERR_CONN_NOT_ALIVE, "Multi-node group merge failed: " + e.getMessage() );
+        requestCancel();
+    }
+
+    /**
+     * 输出分组合并结果，满足全局 LIMIT 后立即停止。前端不可写时暂停并返回 false，由 {@link #onClientWritable} 继续；
+     * 输出完毕、合并失败或前端已断开时释放分组合并器并返回 true。
+     *
+     * @return 是否已输出完毕
+     */
+    private boolean sendGroupRows() {
+        try {
+            ByteBuf row;
+            while (!resultSent && ctx.channel().isActive()) {
+                if (!ctx.channel().isWritable()) {
+                    flush();
+                    groupDraining = true;
+                    return false;
+                }
+                if ((row = groupAggregator.nextRow()) == null) {
+                    break;
+                }
+                sendRow( row );
+            }
+        } catch (IOException e) {
+            onMergeFailed( e );
+        }
+        groupDraining = false;
+        if (groupAggregator != null) {
+            groupAggregator.release();
+            groupAggregator = null;
+        }
+        return true;
+    }
+
+    /**
+     * 节点结束（结果集结束、出错或连接异常）。通知归并器该节点不再有数据并尝试输出。
+     *
+     * @param shard 节点序号
+     */
+    private void finishShard(int shard) {
+        if (closed) {
+            return;
+        }
+        rowMerger.finish( shard );
+        drainRows();
+    }
+
+    /**
+     * 输出归并器中当前可输出的行，并恢复缓冲已回落的节点的后端读取。仅在数据阶段输出。
+     */
+    private void drainRows() {
+        if (packetStep != PACKET_STEP_DATA) {
+            return;
+        }
+        ByteBuf row;
+        while (!resultSent && (row = rowMerger.poll()) != null) {
+            sendRow( row );
+        }
+        if (limitCount == 0 && !resultSent) {
+            finishResultSet();
+        }
+        if (rowMerger.isSorted()) {
+            for (int i = 0; i < shardCallbacks.length; i++) {
+                ShardCallback callback = shardCallbacks[i];
+                if (callback.readPaused && (resultSent || rowMerger.getBufferedRows( i ) < SHARD_BUFFER_LOW_WATER)) {
+                    callback.readPaused = false;
+                    if (!writePaused && !callback.queuePaused) {
+                        callback.session.setAutoRead( true );
+                    }
+                }
+            }
+        }
     }
 
     /**
-     * 后端回调：收到非 ErrorPacket 形式的失败信息（如连接异常）。
+     * 按全局 LIMIT 输出一行：offset 内的行丢弃，输出满 count 行后立即结束结果集。
+     *
+     * @param row 行数据包（所有权转移）
+     */
+    private void sendRow(ByteBuf row) {
+        if (skippedRows < limitOffset) {
+            skippedRows++;
+            row.release();
+            return;
+        }
+        writePacket( row );
+        sentRows++;
+        if (limitCount >= 0 && sentRows >= limitCount) {
+            finishResultSet();
+        }
+    }
+
+    /**
+     * 输出结果集结束包（CLIENT_DEPRECATE_EOF 下为 0xFE 开头的 OK 包）并 flush。全局 LIMIT 满足时提前调用，
+     * 释放归并器中剩余缓冲，之后到达的行直接丢弃。
+     */
+    private void finishResultSet() {
+        resultSent = true;
+        rowMerger.release();
+        OkPacket eofPacket = new OkPacket();
+        eofPacket.packetType = MySqlPacket.PACKET_EOF;
+        eofPacket.packetId = (byte) ++packetSeq;
+        eofPacket.warningCount = errorCount.get();
+        eofPacket.serverStatus = 0x22;
+        eofPacket.writeToChannel( ctx );
+        txBytes.addAndGet( eofPacket.getPacketLength() );
+        flush();
+    }
+
+    /**
+     * 以 packetSeq 重写 packetId 后写入前端（不 flush）。buf 所有权转移给 channel。
+     *
+     * @param buf 完整包 ByteBuf
+     */
+    private void writePacket(ByteBuf buf) {
+        buf.setByte( 3, ++packetSeq );
+        int bytes = buf.readableBytes();
+        txBytes.addAndGet( bytes );
+        ctx.write( buf );
+        unflushedBytes += bytes;
+        unflushedPackets++;
+        if (unflushedBytes >= flushBytes || unflushedPackets >= flushPackets) {
+            flush();
+        }
+        if (!writePaused && !ctx.channel().isWritable() && ctx.channel().isActive()) {
+            pauseForWrite();
+        }
+    }
+
+    /**
+     * flush 前端 channel 并清零计数。
+     */
+    private void flush() {
+        unflushedBytes = 0;
+        unflushedPackets = 0;
+        ctx.flush();
+    }
+
+    /**
+     * 前端不可写：flush 已写入的数据并暂停全部节点的后端读取。
+     */
+    private void pauseForWrite() {
+        flush();
+        writePaused = true;
+        for (ShardCallback callback : shardCallbacks) {
+            MySqlSession session = callback.session;
+            if (session != null) {
+                session.setAutoRead( false );
+            }
+        }
+        //暂停期间可能已错过可写事件，再检查一次。
+        if (ctx.channel().isWritable()) {
+            resumeForWrite();
+        }
+    }
+
+    /**
+     * 前端恢复可写：恢复未因归并积压而暂停的节点的后端读取。
+     */
+    private void resumeForWrite() {
+        writePaused = false;
+        for (ShardCallback callback : shardCallbacks) {
+            MySqlSession session = callback.session;
+            if (session != null && !callback.readPaused && !callback.queuePaused) {
+                session.setAutoRead( true );
+            }
+        }
+    }
+
+    /**
+     * 客户端断开时由 {@link ProxySession#onWritabilityChanged()} 调用：查询语句的结果已无人读取，取消其余节点。
+     */
+    public void onClientClosed() {
+        if (cancellable) {
+            requestCancel();
+        }
+    }
+
+    /**
+     * 前端恢复可写（或已断开）时由 {@link ProxySession#onWritabilityChanged()} 调用：恢复后端读取，并继续输出暂停中的分组合并结果。
+     */
+    public void onClientWritable() {
+        if (writePaused) {
+            resumeForWrite();
+        }
+        if (!groupDraining || !sendGroupRows()) {
+            return;
+        }
+        writeTail( true );
+        reportAndFlush();
+    }
+
+    /**
+     * 收到非 ErrorPacket 形式的失败信息（如连接异常）。
      * <p>
      * 多节点场景下：仅记录第一个错误信息，不立即写入客户端。
-     * 最终的错误包由 {@link #run} 在所有节点收尾后统一输出，避免与 {@code run()} 末尾的包产生双重写入。
+     * 最终的错误包由 {@link #complete} 在所有节点收尾后统一输出，避免产生双重写入。
      *
      * @param errorNo MySQL 错误号
      * @param info    错误信息
      */
-    @Override
-    public void onMysqlFailMessage(int errorNo, String info) {
+    private void onMysqlFailMessage(int errorNo, String info) {
         isExeSuccess = false;
         if (errorPacket == null) {
             errorPacket = new ErrorPacket();
@@ -349,76 +984,230 @@ public class ProxyMultiNodeHandler implements MySqlSessionCallback, Runnable {
     }
 
     /**
-     * 后端回调：单节点命令完成。将 {@link #countDownLatch} 减 1，全部完成时唤醒 {@link #run} 中的 await。
-     */
-    @Override
-    public void onFinish() {
-        countDownLatch.countDown();
-    }
-
-    /**
-     * 多节点查询执行主体，由 {@link ProxySession#query} 提交到异步线程池调用。
+     * 多节点查询派发入口，由 {@link ProxySession#query} 在前端 EventLoop 上直接调用，不阻塞。
      * <p>
      * 流程：
      * <ol>
-     *   <li>遍历 sqlInfoList 逐个获取后端 session、记录到 {@link #dispatchedSessions}、下发命令；获取失败则直接 countDown。</li>
-     *   <li>{@code countDownLatch.await(180s)} 等待全部回调。</li>
-     *   <li>超时未完成：遍历 dispatchedSessions 调用 {@code forceClose} 强制关闭未完成的后端连接，并构造 timeout Error。</li>
-     *   <li>根据 packetStep 输出收尾包：已进入结果集（packetStep > INIT）则补写 EOF/OK；否则按 OK / Error / 默认 Error 回传。</li>
-     *   <li>失败时上报错误 SQL，最后 {@code ctx.flush()} 一次性把积攒的包发往前端。</li>
+     *   <li>调度超时任务 {@link #onTimeout}。</li>
+     *   <li>先派发不超过 {@link #concurrency} 个节点，其余节点在前面的节点结束时依次派发（{@link #dispatchNext}）。</li>
+     *   <li>全部节点结束后在前端 EventLoop 上执行 {@link #complete}。</li>
      * </ol>
      */
     @Override
     public void run() {
-        for (SqlParseResult.SqlInfo sqlInfo : parseResult.getSqlInfoList()) {
-            MySqlSession mySqlSession = MySqlClient.getMySqlSession( sqlInfo.getClusterId(), parseResult.isMasterQuery() );
-            if (mySqlSession == null) {
-                logger.warn( "无法找到合适的mysqlSession!" );
-                countDownLatch.countDown();
-                continue;
+        timeoutFuture = ctx.executor().schedule( this::onTimeout, QUERY_TIMEOUT_SECONDS, TimeUnit.SECONDS );
+        for (int i = 0; i < concurrency; i++) {
+            dispatchNext();
+        }
+    }
+
+    /**
+     * 派发下一个排队节点：异步获取连接，listener 中以对应节点的 {@link ShardCallback} 下发命令；
+     * 获取失败则记录错误并直接结束该节点。已取消时不再派发，排队节点由 {@link #cancel} 统一结束。
+     * listener 在后端 EventLoop 上回调，结束节点的处理投递回前端 EventLoop。
+     */
+    private void dispatchNext() {
+        if (cancelled || nextShard >= shardCallbacks.length) {
+            return;
+        }
+        final int shard = nextShard++;
+        final SqlParseResult.SqlInfo sqlInfo = parseResult.getSqlInfoList().get( shard );
+        Future<MySqlSession> future = MySqlClient.acquireMySqlSession( sqlInfo.getClusterId(), parseResult.isMasterQuery(), ctx.channel().eventLoop() );
+        acquireFutures[shard] = future;
+        future.addListener( (FutureListener<MySqlSession>) f -> {
+            if (!f.isSuccess()) {
+                if (!f.isCancelled()) {
+                    logger.warn( "MySQL Cluster[{}]无法找到合适的mysqlSession! cause={}", sqlInfo.getClusterId(), f.cause().getMessage() );
+                }
+                ctx.executor().execute( () -> {
+                    if (!f.isCancelled()) {
+                        onMysqlFailMessage( MySqlErrorCode.ERR_NO_ROUTE_NODE, "Can't route to mysqlCluster!" );
+                        if (cancellable) {
+                            requestCancel();
+                        }
+                    }
+                    finishShard( shard );
+                    shardDone( shard );
+                } );
+                return;
+            }
+            MySqlSession mySqlSession = f.getNow();
+            if (cancelled) {
+                //已取消，连接上没有命令在执行，直接关闭即可。
+                mySqlSession.forceClose();
+                ctx.executor().execute( () -> {
+                    finishShard( shard );
+                    shardDone( shard );
+                } );
+                return;
+            }
+            shardCallbacks[shard].session = mySqlSession;
+            if (sqlInfo.getNewSqlBytes() != null) {
+                //字节形式的SQL由后端session持有一份引用，命令结束时释放。
+                mySqlSession.addCommand( shardCallbacks[shard], sqlInfo.getDatabase(), sqlInfo.getTable(), sqlInfo.getNewSqlBytes().retainedDuplicate(), parseResult.getSqlType() );
+            } else {
+                mySqlSession.addCommand( shardCallbacks[shard], sqlInfo.getDatabase(), sqlInfo.getTable(), sqlInfo.getNewSql(), parseResult.getSqlType() );
             }
-            dispatchedSessions.put( mySqlSession, Boolean.TRUE );
-            mySqlSession.addCommand( this, sqlInfo.getDatabase(), sqlInfo.getTable(), sqlInfo.getNewSql(), parseResult.getSqlType() );
+        } );
+    }
+
+    /**
+     * 一个节点结束：派发下一个排队节点，全部结束时收尾。每个节点只计一次。
+     *
+     * @param shard 节点序号
+     */
+    private void shardDone(int shard) {
+        ShardCallback callback = shardCallbacks[shard];
+        if (callback.done) {
+            return;
         }
-        //等待最长180s
-        boolean completed;
-        try {
-            completed = countDownLatch.await( 180, TimeUnit.SECONDS );
-        } catch (InterruptedException e) {
-            logger.error( e.getLocalizedMessage(), e );
-            completed = false;
-        }
-        //超时未完成的节点，强制关闭后端连接，避免连接泄漏与延迟回调的野指针写入。
-        if (!completed) {
-            logger.warn( "多节点查询超时(180s)，强制关闭{}个未完成的后端连接，client={}", dispatchedSessions.size(), clientInfo );
-            for (MySqlSession session : dispatchedSessions.keySet()) {
+        callback.done = true;
+        dispatchNext();
+        if (--pendingShards == 0 && !finished) {
+            finished = true;
+            if (timeoutFuture != null) {
+                timeoutFuture.cancel( false );
+            }
+            complete( !cancelled );
+        }
+    }
+
+    /**
+     * 投递到前端 EventLoop 执行取消，避免在节点事件处理中途重入收尾。
+     */
+    private void requestCancel() {
+        if (!cancelled) {
+            ctx.executor().execute( () -> cancel( false ) );
+        }
+    }
+
+    /**
+     * 取消本次查询：结束全部排队节点，取消尚未完成的连接获取，强制关闭执行中的后端连接并结束这些节点。
+     * 已收到 Error 包的节点会自行回调结束，除超时外不关闭。
+     *
+     * @param force 是否同时关闭已出错但尚未回调结束的节点（超时时使用）
+     */
+    private void cancel(boolean force) {
+        if (cancelled && !force) {
+            return;
+        }
+        cancelled = true;
+        isExeSuccess = false;
+        if (errorPacket == null) {
+            errorPacket = new ErrorPacket();
+            errorPacket.packetId = 1;
+            errorPacket.errorNo = MySqlErrorCode.ERR_CONN_NOT_ALIVE;
+            errorPacket.message = "Multi-node query cancelled!";
+        }
+        while (nextShard < shardCallbacks.length) {
+            int shard = nextShard++;
+            finishShard( shard );
+            shardDone( shard );
+        }
+        for (int i = 0; i < shardCallbacks.length; i++) {
+            Future<?> future = acquireFutures[i];
+            if (future != null) {
+                future.cancel( false );
+            }
+            ShardCallback callback = shardCallbacks[i];
+            MySqlSession session = callback.session;
+            if (session != null && !callback.done && (force || !callback.errored)) {
                 try {
                     session.forceClose();
                 } catch (Throwable e) {
                     logger.warn( "强制关闭后端连接失败: {}", e.getMessage() );
                 }
+                finishShard( i );
+                shardDone( i );
             }
-            isExeSuccess = false;
-            if (errorPacket == null) {
-                errorPacket = new ErrorPacket();
-                errorPacket.packetId = 1;
-                errorPacket.errorNo = MySqlErrorCode.ERR_CONN_NOT_ALIVE;
-                errorPacket.message = "Multi-node query timeout!";
+        }
+    }
+
+    /**
+     * 超时任务：以超时错误取消全部未完成节点并收尾。
+     */
+    private void onTimeout() {
+        if (finished) {
+            return;
+        }
+        logger.warn( "多节点查询超时({}s)，强制关闭未完成的后端连接，client={}", QUERY_TIMEOUT_SECONDS, clientInfo );
+        if (errorPacket == null) {
+            errorPacket = new ErrorPacket();
+            errorPacket.packetId = 1;
+            errorPacket.errorNo = MySqlErrorCode.ERR_CONN_NOT_ALIVE;
+            errorPacket.message = "Multi-node query timeout!";
+        }
+        cancel( true );
+        //仍有节点未计数结束（如获取连接迟迟未返回），直接收尾。
+        if (!finished) {
+            finished = true;
+            complete( false );
+        }
+    }
+
+    /**
+     * 收尾：全部节点结束（completed=true）或超时（completed=false）时执行一次。
+     * 分组合并结果在前端不可写时暂停输出，由 {@link #onClientWritable} 继续并完成收尾。
+     *
+     * @param completed 是否全部节点正常结束
+     */
+    private void complete(boolean completed) {
+        closed = true;
+        if (completed && !resultSent && packetStep == PACKET_STEP_DATA && groupAggregator != null) {
+            rowMerger.release();
+            try {
+                groupAggregator.finishInput( groupSortKeys );
+            } catch (IOException e) {
+                onMergeFailed( e );
+            }
+            if (groupAggregator != null && !sendGroupRows()) {
+                return;
             }
         }
-        dispatchedSessions.clear();
-        //如下代码必须要异步线程中跑，否则会出问题。
-        //开始返回最后的包。
-        if (packetStep.get() > PACKET_STEP_INIT) {
-            //输出eof包。
-            OkPacket eofPacket = new OkPacket();
-            eofPacket.packetId = (byte) packetSeq.incrementAndGet();
-            eofPacket.warningCount = errorCount.get();
-            eofPacket.serverStatus = 0x22;
-            eofPacket.writeToChannel( ctx );
-            txBytes.addAndGet( eofPacket.getPacketLength() );
+        writeTail( completed );
+        reportAndFlush();
+    }
+
+    /**
+     * 根据 packetStep 输出收尾包：
+     * <ul>
+     *   <li>结果集完整则补写聚合行与 EOF；结果集未完成（超时、合并失败或 leader 字段区中断）补写 Error。</li>
+     *   <li>未进入结果集则按 OK / Error / 默认 Error 回传。</li>
+     * </ul>
+     *
+     * @param completed 是否全部节点正常结束
+     */
+    private void writeTail(boolean completed) {
+        if (resultSent) {
+            //全局LIMIT已满足，结果集已提前输出。
+        } else if (packetStep > PACKET_STEP_INIT) {
+            //正常结束时所有节点都已finish，归并器已全部输出；未完成时丢弃剩余缓冲。
+            rowMerger.release();
+            if (completed && packetStep == PACKET_STEP_DATA && !mergeFailed) {
+                if (aggregateMerger != null && aggregateState.getRows() > 0) {
+                    //输出合并后的聚合行。
+                    ByteBuf rowBuf = ctx.alloc().buffer();
+                    aggregateMerger.buildRow( aggregateState ).writePayLoad( rowBuf );
+                    sendRow( rowBuf );
+                }
+                if (!resultSent) {
+                    finishResultSet();
+                }
+            } else {
+                //结果集中途失败，以错误包结束。
+                ErrorPacket abortError = errorPacket;
+                if (abortError == null) {
+                    abortError = new ErrorPacket();
+                    abortError.errorNo = MySqlErrorCode.ERR_CONN_NOT_ALIVE;
+                    abortError.message = "Multi-node result set aborted!";
+                }
+                abortError.packetId = (byte) ++packetSeq;
+                abortError.writeToChannel( ctx );
+                txBytes.addAndGet( abortError.getPacketLength() );
+                isExeSuccess = false;
+            }
         } else {
-            if (affectRowsCount.get() > -1) {
+            if (!cancelled && affectRowsCount.get() > -1) {
                 //说明有ok包。
                 OkPacket okPacket = new OkPacket();
                 okPacket.packetId = 1;
@@ -442,12 +1231,244 @@ public class ProxyMultiNodeHandler implements MySqlSessionCallback, Runnable {
                 isExeSuccess = false;
             }
         }
-        //开始统计数据了。
+        //超时或失败时分组合并未输出，释放内存状态与溢写文件。
+        if (groupAggregator != null) {
+            groupAggregator.release();
+            groupAggregator = null;
+        }
+    }
+
+    /**
+     * 失败时上报错误 SQL，释放解析结果引用的包片段，最后 {@code ctx.flush()} 把积攒的包发往前端。
+     */
+    private void reportAndFlush() {
         if (!isExeSuccess) {
             long now = SystemClock.now();
             StatsManager.reportErrorSql( this.clientInfo, 0, 0, parseResult.getSourceDatabase(), null, parseResult.getSourceSql(), SQLType.OTHER.getValue(),
-                    Math.max( dataRowsCount.get(), this.affectRowsCount.get() ), 0, txBytes.get(), now - createTime, now, 0, "Proxy Multi Node Error!", null );
+                    Math.max( dataRowsCount, this.affectRowsCount.get() ), 0, txBytes.get(), now - createTime, now, 0, "Proxy Multi Node Error!", null );
         }
+        //已派发的节点各自持有SQL字节的引用，这里释放解析结果持有的包片段。
+        parseResult.release();
         ctx.flush();
     }
+
+    /**
+     * 单个目标节点的后端回调：在后端 EventLoop 上把事件连同包（retain 后）写入该节点的事件队列，由前端 EventLoop 处理。
+     */
+    private class ShardCallback implements MySqlSessionCallback {
+
+        /**
+         * 节点序号（sqlInfoList 下标）。
+         */
+        private final int shard;
+
+        /**
+         * 执行该节点命令的后端 session，用于读背压。
+         */
+        private volatile MySqlSession session;
+
+        /**
+         * 是否已因归并积压暂停后端读取，仅在前端 EventLoop 上读写。
+         */
+        private boolean readPaused;
+
+        /**
+         * 是否已因事件队列积压暂停后端读取：生产者置位，消费者处理到 {@link ShardEvent#QUEUE_DRAINED} 时清除。
+         */
+        private volatile boolean queuePaused;
+
+        /**
+         * 该节点是否已结束计数，保证每个节点只递减一次 {@link #pendingShards}，仅在前端 EventLoop 上读写。
+         */
+        private boolean done;
+
+        /**
+         * 是否收到 Error 包：此后后端 session 会自行回调 onFinish 并归还连接，取消时不再关闭。
+         */
+        private volatile boolean errored;
+
+        /**
+         * @param shard 节点序号
+         */
+        ShardCallback(int shard) {
+            this.shard = shard;
+        }
+
+        /**
+         * @return 客户端 IP
+         */
+        @Override
+        public String getClientInfo() {
+            return clientInfo;
+        }
+
+        @Override
+        public void receiveOkPacket(byte packetId, ByteBuf buf) {
+            drainer.offer( shard, new ShardEvent( ShardEvent.OK, buf.retain() ) );
+        }
+
+        @Override
+        public void receiveErrorPacket(byte packetId, ByteBuf buf) {
+            errored = true;
+            drainer.offer( shard, new ShardEvent( ShardEvent.ERROR, buf.retain() ) );
+        }
+
+        @Override
+        public void receiveResultSetHeaderPacket(byte packetId, ByteBuf buf) {
+            drainer.offer( shard, new ShardEvent( ShardEvent.HEADER, buf.retain() ) );
+        }
+
+        @Override
+        public void receiveFieldDataPacket(byte packetId, ByteBuf buf) {
+            drainer.offer( shard, new ShardEvent( ShardEvent.FIELD, buf.retain() ) );
+        }
+
+        @Override
+        public void receiveFieldDataEOFPacket(byte packetId, ByteBuf buf) {
+            drainer.offer( shard, new ShardEvent( ShardEvent.FIELD_EOF, buf.retain() ) );
+        }
+
+        /**
+         * 行数据包直接以 ByteBuf 入队；积压超过 {@link #SHARD_QUEUE_HIGH_WATER} 时暂停该节点的后端读取，
+         * 并写入 {@link ShardEvent#QUEUE_DRAINED} 标记，由消费者处理到标记时恢复。
+         */
+        @Override
+        public void receiveRowDataPacket(byte packetId, ByteBuf buf) {
+            drainer.offer( shard, buf.retain() );
+            if (!queuePaused && drainer.backlog( shard ) >= SHARD_QUEUE_HIGH_WATER) {
+                queuePaused = true;
+                session.setAutoRead( false );
+                drainer.offer( shard, ShardEvent.QUEUE_DRAINED_EVENT );
+            }
+        }
+
+        /**
+         * 行数据结束 EOF 包不透传：最终 EOF 由 {@link #complete} 在所有节点收尾后统一输出，这里只通知归并器该节点已结束。
+         */
+        @Override
+        public void receiveRowDataEOFPacket(byte packetId, ByteBuf buf) {
+            drainer.offer( shard, ShardEvent.ROW_EOF_EVENT );
+        }
+
+        @Override
+        public void onMysqlFailMessage(int errorNo, String info) {
+            drainer.offer( shard, new ShardEvent( errorNo, info ) );
+        }
+
+        /**
+         * 单节点命令完成：通知归并器并将 {@link #pendingShards} 减 1，全部完成时收尾。
+         */
+        @Override
+        public void onFinish() {
+            drainer.offer( shard, ShardEvent.FINISH_EVENT );
+        }
+    }
+
+    /**
+     * 节点事件（行数据包以外），由后端 EventLoop 创建、前端 EventLoop 处理后释放携带的包。
+     */
+    private static final class ShardEvent {
+
+        /**
+         * OK 包。
+         */
+        static final int OK = 1;
+
+        /**
+         * Error 包。
+         */
+        static final int ERROR = 2;
+
+        /**
+         * ResultSetHeader 包。
+         */
+        static final int HEADER = 3;
+
+        /**
+         * 字段定义包。
+         */
+        static final int FIELD = 4;
+
+        /**
+         * 字段定义结束 EOF 包。
+         */
+        static final int FIELD_EOF = 5;
+
+        /**
+         * 行数据结束 EOF 包。
+         */
+        static final int ROW_EOF = 6;
+
+        /**
+         * 非 ErrorPacket 形式的失败信息。
+         */
+        static final int FAIL = 7;
+
+        /**
+         * 节点命令完成。
+         */
+        static final int FINISH = 8;
+
+        /**
+         * 队列积压暂停标记。
+         */
+        static final int QUEUE_DRAINED = 9;
+
+        /**
+         * 行数据结束事件（无携带数据，共享实例）。
+         */
+        static final ShardEvent ROW_EOF_EVENT = new ShardEvent( ROW_EOF, (ByteBuf) null );
+
+        /**
+         * 节点命令完成事件（共享实例）。
+         */
+        static final ShardEvent FINISH_EVENT = new ShardEvent( FINISH, (ByteBuf) null );
+
+        /**
+         * 队列积压暂停标记（共享实例）。
+         */
+        static final ShardEvent QUEUE_DRAINED_EVENT = new ShardEvent( QUEUE_DRAINED, (ByteBuf) null );
+
+        /**
+         * 事件类型。
+         */
+        final int type;
+
+        /**
+         * 携带的包（已 retain），处理后释放。
+         */
+        final ByteBuf buf;
+
+        /**
+         * FAIL 事件的错误号。
+         */
+        final int errorNo;
+
+        /**
+         * FAIL 事件的错误信息。
+         */
+        final String info;
+
+        /**
+         * @param type 事件类型
+         * @param buf  携带的包
+         */
+        ShardEvent(int type, ByteBuf buf) {
+            this.type = type;
+            this.buf = buf;
+            this.errorNo = 0;
+            this.info = null;
+        }
+
+        /**
+         * @param errorNo 错误号
+         * @param info    错误信息
+         */
+        ShardEvent(int errorNo, String info) {
+            this.type = FAIL;
+            this.buf = null;
+            this.errorNo = errorNo;
+            this.info = info;
+        }
+    }
 }
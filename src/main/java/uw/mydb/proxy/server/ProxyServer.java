@@ -5,10 +5,12 @@ import io.netty.bootstrap.ServerBootstrap;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import org.slf4j.LoggerFactory;
 import uw.mydb.proxy.conf.MydbProxyConfigService;
+import uw.mydb.proxy.mysql.MySqlClient;
 import uw.mydb.proxy.stats.StatsManager;
 
 import java.util.concurrent.Executors;
@@ -22,7 +24,8 @@ import java.util.concurrent.TimeUnit;
  * 线程模型：
  * <ul>
  *   <li>{@link #bossGroup}：acceptor 线程组，负责接收客户端 TCP 连接（NIO）。</li>
- *   <li>{@link #workerGroup}：reactor 线程组，负责已接入连接的读写与协议解码；同一连接的全部 IO 事件均由其中单个 EventLoop 线程串行处理，因此 IO 线程禁止执行阻塞操作（见 {@link ProxySession} 中的异步派发设计）。</li>
+ *   <li>{@link #workerGroup}：reactor 线程组，负责已接入连接的读写与协议解码；同一连接的全部 IO 事件均由其中单个 EventLoop 线程串行处理，因此 IO 线程禁止执行阻塞操作（见 {@link ProxySession} 中的异步派发设计）。
+ *       共享 EventLoop 模式下直接复用 {@link MySqlClient#getEventLoopGroup()}，前后端 channel 落在同一组线程上。</li>
  *   <li>{@link #scheduledExecutorService}：daemon 定时线程池（size=2），周期性向 mydb-center 上报代理运行统计与 schema 统计。</li>
  * </ul>
  * 生命周期：{@link #start()} 在 Spring 容器启动后由 {@code UwMydbProxyApplication} 调用一次；
@@ -53,6 +56,11 @@ public class ProxyServer {
      */
     private static EventLoopGroup workerGroup = null;
 
+    /**
+     * workerGroup 是否复用自 {@link MySqlClient}（共享 EventLoop 模式）。为 true 时 {@link #stop()} 不关闭它，由 MySqlClient 负责关闭。
+     */
+    private static boolean workerGroupShared = false;
+
     /**
      * 后台定时调度线程池（daemon，size=2），用于周期上报 proxy/schema 运行统计。{@link #stop()} 时 {@code shutdownNow}。
      */
@@ -69,12 +77,19 @@ public class ProxyServer {
     public static void start() throws InterruptedException {
         // acceptor
         bossGroup = new NioEventLoopGroup( 0, new ThreadFactoryBuilder().setNameFormat( "mydb-boss-%d" ).build() );
-        // worker
-        workerGroup = new NioEventLoopGroup( 0, new ThreadFactoryBuilder().setNameFormat( "mydb-worker-%d" ).build() );
+        // worker，共享模式下复用MySqlClient的EventLoopGroup。
+        workerGroupShared = MySqlClient.isShareEventLoop() && MySqlClient.getEventLoopGroup() != null;
+        if (workerGroupShared) {
+            workerGroup = MySqlClient.getEventLoopGroup();
+        } else {
+            workerGroup = new NioEventLoopGroup( 0, new ThreadFactoryBuilder().setNameFormat( "mydb-worker-%d" ).build() );
+        }
+        //写缓冲水位：超过高水位时前端channel不可写，ProxySession据此暂停后端读取。
+        int highWaterMark = Math.max( MydbProxyConfigService.getMydbProperties().getWriteBufferHighWaterMark(), 2 );
         ServerBootstrap bootstrap = new ServerBootstrap();
         bootstrap.group( bossGroup, workerGroup ).channel( NioServerSocketChannel.class ).option( ChannelOption.SO_BACKLOG, 100_000 ).childOption( ChannelOption.TCP_NODELAY,
                 true ).childOption( ChannelOption.SO_KEEPALIVE, true ).option( ChannelOption.SO_RCVBUF, 32 * 1024 * 1024 ).childOption( ChannelOption.SO_SNDBUF, 32 * 1024 * 1024 ).option( ChannelOption.ALLOCATOR,
-                PooledByteBufAllocator.DEFAULT ).childHandler( new ProxyHandlerFactory() );
+                PooledByteBufAllocator.DEFAULT ).childOption( ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark( highWaterMark / 2, highWaterMark ) ).childHandler( new ProxyHandlerFactory() );
         String proxyHost = MydbProxyConfigService.getMydbProperties().getProxyHost();
         if (proxyHost == null || proxyHost.isEmpty()) {
             proxyHost = "0.0.0.0";
@@ -107,7 +122,7 @@ public class ProxyServer {
     }
 
     /**
-     * 关闭代理服务器，释放全部资源：停止统计上报任务、优雅关闭 acceptor / reactor 线程组。
+     * 关闭代理服务器，释放全部资源：停止统计上报任务、优雅关闭 acceptor / reactor 线程组（共享模式下 reactor 线程组由 MySqlClient 关闭）。
      * 幂等：对 null 引用做了保护，可重复调用。
      */
     public static void stop() {
@@ -118,7 +133,7 @@ public class ProxyServer {
         if (bossGroup != null) {
             bossGroup.shutdownGracefully();
         }
-        if (workerGroup != null) {
+        if (workerGroup != null && !workerGroupShared) {
             workerGroup.shutdownGracefully();
         }
     }
@@ -1,9 +1,9 @@
 package uw.mydb.proxy.server;
 
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.concurrent.FutureListener;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Strings;
 import org.slf4j.Logger;
@@ -11,6 +11,7 @@ import org.slf4j.LoggerFactory;
 import uw.common.util.SystemClock;
 import uw.mydb.common.conf.MydbProxyConfig;
 import uw.mydb.proxy.conf.MydbProxyConfigService;
+import uw.mydb.proxy.conf.MydbProxyProperties;
 import uw.mydb.proxy.constant.GlobalConstants;
 import uw.mydb.proxy.mysql.MySqlClient;
 import uw.mydb.proxy.mysql.MySqlSession;
@@ -18,6 +19,7 @@ import uw.mydb.proxy.mysql.MySqlSessionCallback;
 import uw.mydb.proxy.protocol.constant.MySQLCapability;
 import uw.mydb.proxy.protocol.constant.MySqlErrorCode;
 import uw.mydb.proxy.protocol.packet.*;
+import uw.mydb.proxy.server.merge.SpillFile;
 import uw.mydb.proxy.sqlparse.SqlParseResult;
 import uw.mydb.proxy.sqlparse.SqlParser;
 import uw.mydb.proxy.stats.StatsManager;
@@ -25,10 +27,13 @@ import uw.mydb.proxy.util.CachingSha2PasswordPlugin;
 import uw.mydb.proxy.util.MySqlNativePasswordPlugin;
 import uw.mydb.proxy.util.RandomUtils;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.MessageDigest;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
@@ -39,18 +44,29 @@ import java.util.concurrent.atomic.AtomicLong;
  *   <li>由 {@link ProxyDataHandler#channelActive} 在连接建立时创建，绑定到 channel 的 {@code AttributeKey<ProxySession>} 上。</li>
  *   <li>实现 {@link MySqlSessionCallback}，作为后端 {@code MySqlSession} 执行结果回写到前端 channel 的回调入口。
  *       后端线程在工作线程中调用 {@link #receiveOkPacket}/{@link #receiveErrorPacket}/{@link #receiveResultSetHeaderPacket} 等方法，
- *       这些方法通过 {@code ctx.write()} 写入前端 channel（Netty 线程安全）。</li>
+ *       这些方法通过 {@code ctx.write()} 写入前端 channel（Netty 线程安全），按字节数/包数阈值增量 flush，
+ *       前端不可写时暂停后端读取（写背压）。</li>
+ *   <li>结果集转存（spool）：hint {@code spool=true}，或结果集超过 {@link MydbProxyProperties#getSpoolThreshold()} 后前端不可写时，
+ *       剩余结果包改为追加到内存映射临时文件（{@link SpillFile}），不再暂停后端读取；后端读完即归还连接池，
+ *       转存内容随后在前端 EventLoop 上按客户端的消费速度发送，发完才结算本次命令。慢客户端因此不会长期占住后端连接。</li>
+ *   <li>事务：BEGIN/START TRANSACTION 只在会话上打标记，事务内首条语句获取目标集群的后端 session 后先下发 START TRANSACTION，
+ *       再下发该语句，并把 session 钉住（{@link MySqlSession#pin()}）直到 COMMIT/ROLLBACK，期间的语句都复用它，省去每条语句一次连接池借还。
+ *       事务内路由到其它集群或多个节点的语句直接拒绝；前端断开时关闭钉住的连接，由 MySQL 回滚未提交的事务。</li>
+ *   <li>预编译语句：COM_STMT_PREPARE 由 proxy 自行应答，语句只解析一次并记录 routeKey 的参数位置（{@link SqlParser#prepare()}）；
+ *       每次 COM_STMT_EXECUTE 解码绑定参数后只重新计算路由（{@link SqlParser#bind}），再由服务它的后端 session 按语句文本懒预编译并执行，
+ *       结果以二进制协议透传。只支持路由到单节点的预编译语句，不支持游标与 COM_STMT_SEND_LONG_DATA。</li>
  *   <li>连接断开时由 {@link ProxyDataHandler#channelInactive} 从 {@link ProxySessionManager} 移除。</li>
  * </ul>
  * <p>
  * 状态机（{@link #isLogon}）：
  * <ol>
  *   <li>false：尚未通过认证，此时收到的包由 {@link #auth} 处理握手；认证成功置为 true。</li>
- *   <li>true：已登录，根据 MySQL 命令类型分发到 {@link #query}/{@link #ping}/{@link #initDB}/{@link #close}/{@link #kill}/{@link #stmtPrepare}/{@link #stmtExecute}/{@link #stmtClose}/{@link #heartbeat}。</li>
+ *   <li>true：已登录，根据 MySQL 命令类型分发到 {@link #query}/{@link #ping}/{@link #initDB}/{@link #close}/{@link #kill}/{@link #stmtPrepare}/{@link #stmtExecute}/{@link #stmtClose}/{@link #stmtSendLongData}/{@link #stmtReset}/{@link #heartbeat}。</li>
  * </ol>
  * <p>
- * 异步执行模型：所有可能阻塞的后端操作（获取 {@code MySqlSession}、下发命令、多节点聚合）均提交到 {@link #multiNodeExecutor} 异步执行，
- * 严禁在 Netty EventLoop 线程中阻塞等待，否则会拖垮整个 worker 线程组。线程池满时捕获 {@code RejectedExecutionException} 回写错误给客户端。
+ * 异步执行模型：单节点命令与 USE 通过 {@link MySqlClient#acquireMySqlSession} 以 listener 方式获取后端 session 并下发命令，全程运行在 Netty EventLoop 上，
+ * 无线程切换；多节点命令由 {@link ProxyMultiNodeHandler#run} 并发异步获取各节点连接并下发，同样不占用等待线程。
+ * 严禁在 Netty EventLoop 线程中阻塞等待，否则会拖垮整个 worker 线程组。
  * <p>
  * 单次命令的中间状态（{@link #sqlParseResult}/{@link #sqlInfo}/{@link #dataRowsCount}/{@link #affectRowsCount}/{@link #txBytes}/{@link #rxBytes}/{@link #isExeSuccess}）
  * 在命令开始时初始化，{@link #onFinish()} 时统一结算统计并归零，为下一条命令复用同一会话做准备。
@@ -62,17 +78,29 @@ public class ProxySession implements MySqlSessionCallback {
     private static final Logger logger = LoggerFactory.getLogger(ProxySession.class);
 
     /**
-     * 多节点执行的异步线程池。
-     * 拒绝策略使用AbortPolicy（抛异常），避免CallerRunsPolicy在前端Netty EventLoop线程中同步执行导致整个eventLoop阻塞180秒。
-     * 满载时上层会捕获RejectedExecutionException并返回错误给客户端。
+     * 全局统一的 sessionId 生成器（AtomicLong），保证进程内唯一递增。
      */
-    private static final ThreadPoolExecutor multiNodeExecutor = new ThreadPoolExecutor(5, 100, 180L, TimeUnit.SECONDS, new SynchronousQueue<>(),
-            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("multi_node_executor-%d").build(), new ThreadPoolExecutor.AbortPolicy());
+    private static final AtomicLong sessionIdGenerator = new AtomicLong();
 
     /**
-     * 全局统一的 sessionId 生成器（AtomicLong），保证进程内唯一递增。
+     * 未加载配置时单个前端会话可同时保持的预编译语句上限。
      */
-    private static final AtomicLong sessionIdGenerator = new AtomicLong();
+    private static final int DEFAULT_MAX_PREPARED_STMTS = 4096;
+
+    /**
+     * 预编译语句参数定义包中的参数名。
+     */
+    private static final byte[] PARAM_NAME = "?".getBytes();
+
+    /**
+     * 参数定义包中的类型：MYSQL_TYPE_VAR_STRING。
+     */
+    private static final int PARAM_TYPE = 0xfd;
+
+    /**
+     * 参数定义包中的字符集：binary。
+     */
+    private static final int PARAM_CHARSET = 63;
 
     /**
      * 会话创建时间（{@code SystemClock.now()}，毫秒），用于统计与超时判定。
@@ -171,6 +199,101 @@ public class ProxySession implements MySqlSessionCallback {
      */
     private int charsetIndex;
 
+    /**
+     * 结果集透传的 flush 字节阈值（来自 {@link MydbProxyProperties#getFlushBytes()}）。
+     */
+    private final int flushBytes;
+
+    /**
+     * 结果集透传的 flush 包数阈值（来自 {@link MydbProxyProperties#getFlushPackets()}）。
+     */
+    private final int flushPackets;
+
+    /**
+     * 自上次 flush 以来写入前端的字节数，仅在后端回调线程中读写。
+     */
+    private int unflushedBytes;
+
+    /**
+     * 自上次 flush 以来写入前端的包数，仅在后端回调线程中读写。
+     */
+    private int unflushedPackets;
+
+    /**
+     * 当前单节点命令的后端 session，前端不可写时据此暂停后端读取。{@link #onFinish()} 时置 null。
+     */
+    private volatile MySqlSession backendSession;
+
+    /**
+     * 是否因前端不可写暂停了后端读取。
+     */
+    private volatile boolean backendReadPaused;
+
+    /**
+     * 当前多节点命令的处理器，前端恢复可写时通知其恢复各节点的后端读取。
+     */
+    private volatile ProxyMultiNodeHandler multiNodeHandler;
+
+    /**
+     * 结果集转存阈值（字节，来自 {@link MydbProxyProperties#getSpoolThreshold()}），0 表示不按大小转存。
+     */
+    private final long spoolThreshold;
+
+    /**
+     * 转存临时文件目录。
+     */
+    private final Path spoolDir;
+
+    /**
+     * 当前命令是否通过 hint 要求转存结果集。
+     */
+    private volatile boolean spoolRequested;
+
+    /**
+     * 当前命令的转存文件，非 null 表示后续结果包写入转存文件而不是前端 channel。
+     */
+    private volatile SpillFile spoolFile;
+
+    /**
+     * 后端已执行完毕，正在把转存文件发往前端。
+     */
+    private volatile boolean spoolDraining;
+
+    /**
+     * 是否处于显式事务中（BEGIN/START TRANSACTION 之后，COMMIT/ROLLBACK 之前）。
+     */
+    private volatile boolean inTransaction;
+
+    /**
+     * 事务钉住的后端 session，事务内首条语句时获取，null 表示事务尚未在后端开始。
+     */
+    private volatile MySqlSession txSession;
+
+    /**
+     * 事务钉住的后端 session 所属集群。
+     */
+    private volatile long txClusterId;
+
+    /**
+     * 正在执行 COMMIT/ROLLBACK 的后端 session，命令结束时解除钉住归还连接池。
+     */
+    private volatile MySqlSession txEndingSession;
+
+    /**
+     * 本会话的预编译语句：前端语句 ID -> 语句。只在前端 EventLoop 上访问。
+     */
+    private final Map<Long, PreparedStmt> stmtMap = new HashMap<>();
+
+    /**
+     * 最近分配的前端语句 ID。
+     */
+    private long lastStmtId;
+
+    /**
+     * 当前命令为预编译语句执行时的执行包，{@link #finishCommand()} 时置 null。
+     */
+    private volatile StmtExecutePacket stmtExecutePacket;
+
     /**
      * 构造会话，分配全局唯一 sessionId 并绑定前端 channel 上下文。
      *
@@ -179,6 +302,12 @@ public class ProxySession implements MySqlSessionCallback {
     public ProxySession(ChannelHandlerContext ctx) {
         this.ctx = ctx;
         this.id = sessionIdGenerator.incrementAndGet();
+        MydbProxyProperties properties = MydbProxyConfigService.getMydbProperties();
+        this.flushBytes = properties != null ? properties.getFlushBytes() : 64 * 1024;
+        this.flushPackets = properties != null ? properties.getFlushPackets() : 256;
+        this.spoolThreshold = properties != null ? properties.getSpoolThreshold() : 0;
+        String spillDir = properties != null ? properties.getSpillDir() : null;
+        this.spoolDir = Paths.get(StringUtils.isNotBlank(spillDir) ? spillDir : System.getProperty("java.io.tmpdir"));
     }
 
     /**
@@ -276,12 +405,11 @@ public class ProxySession implements MySqlSessionCallback {
      */
     @Override
     public void receiveOkPacket(byte packetId, ByteBuf buf) {
-        txBytes += buf.readableBytes();
         OkPacket okPacket = new OkPacket();
         okPacket.readPayLoad(buf);
         affectRowsCount += okPacket.affectedRows;
         buf.resetReaderIndex();
-        ctx.write(buf.retain());
+        forward(buf);
     }
 
     /**
@@ -292,21 +420,22 @@ public class ProxySession implements MySqlSessionCallback {
      */
     @Override
     public void receiveErrorPacket(byte packetId, ByteBuf buf) {
-        txBytes += buf.readableBytes();
-        ctx.write(buf.retain());
+        forward(buf);
         isExeSuccess = false;
     }
 
     /**
-     * 后端回调：收到 ResultSet Header 包（结果集开头，携带列数）。透传给前端。
+     * 后端回调：收到 ResultSet Header 包（结果集开头，携带列数）。透传给前端；hint 要求转存时从这里开始转存。
      *
      * @param packetId MySQL 协议 packetId
      * @param buf      包含完整包的 ByteBuf
      */
     @Override
     public void receiveResultSetHeaderPacket(byte packetId, ByteBuf buf) {
-        txBytes += buf.readableBytes();
-        ctx.write(buf.retain());
+        if (spoolRequested && spoolFile == null) {
+            startSpool();
+        }
+        forward(buf);
     }
 
     /**
@@ -317,8 +446,7 @@ public class ProxySession implements MySqlSessionCallback {
      */
     @Override
     public void receiveFieldDataPacket(byte packetId, ByteBuf buf) {
-        txBytes += buf.readableBytes();
-        ctx.write(buf.retain());
+        forward(buf);
     }
 
     /**
@@ -329,8 +457,7 @@ public class ProxySession implements MySqlSessionCallback {
      */
     @Override
     public void receiveFieldDataEOFPacket(byte packetId, ByteBuf buf) {
-        txBytes += buf.readableBytes();
-        ctx.write(buf.retain());
+        forward(buf);
     }
 
     /**
@@ -341,9 +468,8 @@ public class ProxySession implements MySqlSessionCallback {
      */
     @Override
     public void receiveRowDataPacket(byte packetId, ByteBuf buf) {
-        txBytes += buf.readableBytes();
         dataRowsCount++;
-        ctx.write(buf.retain());
+        forward(buf);
     }
 
     /**
@@ -354,8 +480,172 @@ public class ProxySession implements MySqlSessionCallback {
      */
     @Override
     public void receiveRowDataEOFPacket(byte packetId, ByteBuf buf) {
-        txBytes += buf.readableBytes();
-        ctx.write(buf.retain());
+        forward(buf);
+    }
+
+    /**
+     * 转发一个后端包：转存中追加到转存文件，否则透传给前端。转存文件写入失败时结果已不完整，只能断开前端连接。
+     *
+     * @param buf 完整包 ByteBuf（不转移所有权）
+     */
+    private void forward(ByteBuf buf) {
+        SpillFile spool = spoolFile;
+        if (spool == null) {
+            writeToClient(buf.retain());
+            return;
+        }
+        try {
+            spool.append(buf);
+        } catch (IOException e) {
+            logger.error("结果集转存失败，断开客户端[{}]: {}", clientHost, e.getMessage());
+            isExeSuccess = false;
+            ctx.close();
+        }
+    }
+
+    /**
+     * 透传一个包给前端：累计 tx 字节数，达到 flush 阈值（字节数或包数）时立即 flush，使大结果集边读边发；
+     * 写入后前端 channel 不可写（超过写缓冲高水位）时暂停后端读取，由 {@link #onWritabilityChanged()} 恢复，
+     * 直接内存占用因此与结果集大小无关。结果集已超过转存阈值时改为开始转存，不再暂停后端读取。
+     *
+     * @param buf 完整包 ByteBuf（所有权转移给 channel）
+     */
+    private void writeToClient(ByteBuf buf) {
+        int bytes = buf.readableBytes();
+        txBytes += bytes;
+        ctx.write(buf);
+        unflushedBytes += bytes;
+        unflushedPackets++;
+        if (unflushedBytes >= flushBytes || unflushedPackets >= flushPackets) {
+            unflushedBytes = 0;
+            unflushedPackets = 0;
+            ctx.flush();
+        }
+        if (!ctx.channel().isWritable() && spoolFile == null) {
+            if (spoolThreshold > 0 && txBytes >= spoolThreshold && startSpool()) {
+                return;
+            }
+            pauseBackendRead();
+        }
+    }
+
+    /**
+     * 开始转存当前单节点命令的后续结果包。先 flush 已写入的数据；临时文件创建失败时返回 false，回落到暂停后端读取。
+     *
+     * @return 是否已开始转存
+     */
+    private boolean startSpool() {
+        if (backendSession == null || !ctx.channel().isActive()) {
+            return false;
+        }
+        try {
+            spoolFile = new SpillFile(spoolDir);
+        } catch (IOException e) {
+            logger.warn("创建结果集转存文件失败: {}", e.getMessage());
+            return false;
+        }
+        unflushedBytes = 0;
+        unflushedPackets = 0;
+        ctx.flush();
+        resumeBackendRead();
+        return true;
+    }
+
+    /**
+     * 把转存文件发往前端，在前端 EventLoop 上执行。前端不可写时停下，由 {@link #onWritabilityChanged()} 继续；
+     * 发完或前端已断开时释放转存文件并结算本次命令。映射内存在释放后失效，因此每个包都拷贝后再写入 channel。
+     */
+    private void drainSpool() {
+        SpillFile spool = spoolFile;
+        if (spool == null) {
+            return;
+        }
+        if (ctx.channel().isActive()) {
+            while (ctx.channel().isWritable()) {
+                ByteBuf packet = spool.next();
+                if (packet == null) {
+                    finishSpool(spool);
+                    return;
+                }
+                writeToClient(ctx.alloc().buffer(packet.readableBytes()).writeBytes(packet));
+                //flush 可能同步触发可写事件并重入，重入时可能已发完。
+                if (spoolFile != spool) {
+                    return;
+                }
+            }
+            unflushedBytes = 0;
+            unflushedPackets = 0;
+            ctx.flush();
+            return;
+        }
+        finishSpool(spool);
+    }
+
+    /**
+     * 转存发送结束：释放转存文件并结算本次命令。
+     *
+     * @param spool 转存文件
+     */
+    private void finishSpool(SpillFile spool) {
+        spoolFile = null;
+        spoolDraining = false;
+        spool.release();
+        finishCommand();
+    }
+
+    /**
+     * 前端不可写时暂停当前后端 session 的读取。暂停前先 flush，保证已写入的数据能排空并触发可写事件；
+     * 暂停后再检查一次可写性，避免与可写事件竞争导致永久暂停。前端已断开时不暂停，让后端结果尽快读完释放连接。
+     */
+    private synchronized void pauseBackendRead() {
+        MySqlSession session = backendSession;
+        if (session == null || backendReadPaused || !ctx.channel().isActive()) {
+            return;
+        }
+        unflushedBytes = 0;
+        unflushedPackets = 0;
+        ctx.flush();
+        backendReadPaused = true;
+        session.setAutoRead(false);
+        if (ctx.channel().isWritable()) {
+            resumeBackendRead();
+        }
+    }
+
+    /**
+     * 恢复被暂停的后端读取。
+     */
+    private synchronized void resumeBackendRead() {
+        if (!backendReadPaused) {
+            return;
+        }
+        backendReadPaused = false;
+        MySqlSession session = backendSession;
+        if (session != null) {
+            session.setAutoRead(true);
+        }
+    }
+
+    /**
+     * 前端 channel 可写性变化（由 {@link ProxyDataHandler#channelWritabilityChanged} 与 channelInactive 调用）。
+     * 恢复可写或连接已断开时，继续发送转存文件，或恢复单节点命令与多节点命令被暂停的后端读取；连接已断开时取消多节点查询。
+     */
+    public void onWritabilityChanged() {
+        if (!ctx.channel().isWritable() && ctx.channel().isActive()) {
+            return;
+        }
+        if (spoolDraining) {
+            drainSpool();
+            return;
+        }
+        resumeBackendRead();
+        ProxyMultiNodeHandler handler = multiNodeHandler;
+        if (handler != null) {
+            if (!ctx.channel().isActive()) {
+                handler.onClientClosed();
+            }
+            handler.onClientWritable();
+        }
     }
 
     /**
@@ -375,11 +665,25 @@ public class ProxySession implements MySqlSessionCallback {
     /**
      * 后端回调：当前命令在所有后端节点上执行完毕。
      * <p>
-     * 若执行失败，上报错误 SQL；随后将本次命令的统计计数器与中间状态全部归零以复用会话。
-     * 最后调用 {@code ctx.flush()} 将积攒的 write 一次性发往前端（必须最后调用，否则会在统计归零前把后续包计入下一条命令）。
+     * 结果集转存中时，后端连接此后即归还连接池，转交前端 EventLoop 发送转存文件，发完再结算；否则直接结算本次命令。
      */
     @Override
     public void onFinish() {
+        if (spoolFile != null && !spoolDraining) {
+            spoolDraining = true;
+            backendSession = null;
+            backendReadPaused = false;
+            ctx.channel().eventLoop().execute(this::drainSpool);
+            return;
+        }
+        finishCommand();
+    }
+
+    /**
+     * 结算本次命令：若执行失败，上报错误 SQL；随后将本次命令的统计计数器与中间状态全部归零以复用会话。
+     * 最后调用 {@code ctx.flush()} 将积攒的 write 一次性发往前端（必须最后调用，否则会在统计归零前把后续包计入下一条命令）。
+     */
+    private void finishCommand() {
         //开始统计数据了。
         if (!isExeSuccess && sqlInfo != null) {
             long now = SystemClock.now();
@@ -387,9 +691,24 @@ public class ProxySession implements MySqlSessionCallback {
                     Math.max(dataRowsCount, affectRowsCount), txBytes, rxBytes, now - lastRequestTime, now, this.sqlParseResult.getErrorCode(),
                     this.sqlParseResult.getErrorMessage(), null);
         }
-        //数据归零
+        //事务已提交或回滚，解除钉住，由后端session在命令收尾时归还连接池。
+        MySqlSession endingSession = txEndingSession;
+        if (endingSession != null) {
+            txEndingSession = null;
+            endingSession.unpin();
+        }
+        //释放sqlInfo引用的包片段，数据归零，后端session归还连接池时会自行恢复读取。
+        if (sqlParseResult != null) {
+            sqlParseResult.release();
+        }
         sqlParseResult = null;
         sqlInfo = null;
+        stmtExecutePacket = null;
+        backendSession = null;
+        backendReadPaused = false;
+        spoolRequested = false;
+        unflushedBytes = 0;
+        unflushedPackets = 0;
         isExeSuccess = true;
         this.dataRowsCount = 0;
         this.affectRowsCount = 0;
@@ -408,7 +727,7 @@ public class ProxySession implements MySqlSessionCallback {
 
     /**
      * 设置 database。
-     * database 名只允许合法标识符字符（防止 "use xxx" 拼接的 SQL 注入），获取连接 + 下发命令异步执行避免阻塞 EventLoop。
+     * database 名只允许合法标识符字符（防止 "use xxx" 拼接的 SQL 注入），获取连接 + 下发命令通过 acquire listener 异步执行，不阻塞 EventLoop。
      *
      * @param database 新的 database 名（仅允许 [A-Za-z0-9_]+，否则拒绝并告警）
      */
@@ -421,18 +740,13 @@ public class ProxySession implements MySqlSessionCallback {
             }
             this.database = database;
             final String dbName = this.database;
-            try {
-                multiNodeExecutor.execute(() -> {
-                    MySqlSession mySqlSession = MySqlClient.getMySqlSession(MydbProxyConfigService.getProxyConfig().getBaseCluster(), true);
-                    if (mySqlSession != null) {
-                        mySqlSession.addCommand(this, "use " + dbName);
-                    } else {
-                        logger.warn("setDatabase(): 无法获取基础集群的mysqlSession, database={}", dbName);
-                    }
-                });
-            } catch (java.util.concurrent.RejectedExecutionException e) {
-                logger.warn("setDatabase(): 线程池满，database={}", dbName);
-            }
+            MySqlClient.acquireMySqlSession(MydbProxyConfigService.getProxyConfig().getBaseCluster(), true, ctx.channel().eventLoop()).addListener((FutureListener<MySqlSession>) future -> {
+                if (future.isSuccess()) {
+                    future.getNow().addCommand(this, "use " + dbName);
+                } else {
+                    logger.warn("setDatabase(): 无法获取基础集群的mysqlSession, database={}, cause={}", dbName, future.cause().getMessage());
+                }
+            });
         }
     }
 
@@ -552,13 +866,14 @@ public class ProxySession implements MySqlSessionCallback {
     /**
      * 处理 COM_QUERY 命令（核心入口）。
      * <p>
-     * 流程：读取 SQL -> {@link SqlParser#parse()} 路由解析 ->
+     * 流程：直接在包上 {@link SqlParser#parse()} 路由解析（按字节扫描，不解码整条 SQL） ->
      * <ul>
      *   <li>解析出错：回写 Error 并 {@link #onFinish}。</li>
-     *   <li>单节点（sqlInfo 非空）：提交到 {@link #multiNodeExecutor} 异步获取 MySqlSession 并下发命令；线程池满则回写 "Proxy busy"。</li>
-     *   <li>多节点（sqlInfoList 非空）：提交 {@link ProxyMultiNodeHandler} 到异步线程池聚合结果。</li>
+     *   <li>单节点（sqlInfo 非空）：{@link MySqlClient#acquireMySqlSession} 异步获取 MySqlSession，在 acquire listener 中直接下发命令；
+     *       获取失败回写 "Can't route to mysqlCluster"。</li>
+     *   <li>多节点（sqlInfoList 非空）：由 {@link ProxyMultiNodeHandler#run} 并发异步派发各节点并聚合结果。</li>
      * </ul>
-     * 异步化的目的：避免 getMySqlSession()（可能等待空闲连接）阻塞 Netty EventLoop。
+     * 两条路径都不经过线程池：acquire 完成后 listener 在后端 channel 的 EventLoop 上回调，避免每条 SQL 一次线程切换。
      *
      * @param ctx 前端 channel 上下文
      * @param buf 命令包（payload 为 SQL 文本）
@@ -567,12 +882,10 @@ public class ProxySession implements MySqlSessionCallback {
         rxBytes += buf.readableBytes();
         lastRequestTime = SystemClock.now();
         //如果schema没有任何表分区定义，则直接转发到默认库。
-        //读取sql
-        CommandPacket cmd = new CommandPacket();
-        cmd.readPayLoad(buf);
-        String sql = cmd.arg;
+        //跳过4字节包头和1字节命令，直接在包上解析sql，不预先解码成字符串。
+        ByteBuf sql = buf.slice(buf.readerIndex() + 5, buf.readableBytes() - 5);
         if (logger.isTraceEnabled()) {
-            logger.trace("Receive client[{}] SQL: {}", this.clientHost, sql);
+            logger.trace("Receive client[{}] SQL: {}", this.clientHost, sql.toString(StandardCharsets.UTF_8));
         }
         //根据解析结果判定，当前支持1.单实例执行；2.多实例执行
         SqlParser parser = new SqlParser(this, sql);
@@ -586,38 +899,176 @@ public class ProxySession implements MySqlSessionCallback {
             onFinish();
             return;
         }
+        if (sqlParseResult.getTransactionCmd() != SqlParseResult.TX_NONE) {
+            transactionCommand(ctx, sqlParseResult.getTransactionCmd());
+            return;
+        }
+        dispatch(ctx);
+    }
+
+    /**
+     * 按解析结果下发当前命令：事务中只能在钉住的 session 上执行单节点语句；否则单节点语句异步获取后端 session 下发，
+     * 多节点语句交给 {@link ProxyMultiNodeHandler}。
+     *
+     * @param ctx 前端 channel 上下文
+     */
+    private void dispatch(ChannelHandlerContext ctx) {
+        if (inTransaction) {
+            //事务只能在钉住的单个后端session上执行。
+            SqlParseResult.SqlInfo txSqlInfo = sqlParseResult.getSqlInfo();
+            if (txSqlInfo == null) {
+                onProxyFailMessage(ctx, MySqlErrorCode.ERR_NOT_SUPPORTED, "Multi-node statement is not supported in transaction!");
+                onFinish();
+            } else if (txSession != null && txSqlInfo.getClusterId() != txClusterId) {
+                onProxyFailMessage(ctx, MySqlErrorCode.ERR_NOT_SUPPORTED, "Statement routes to mysqlCluster[" + txSqlInfo.getClusterId() + "] outside of transaction mysqlCluster[" + txClusterId + "]!");
+                onFinish();
+            } else {
+                executeInTransaction(txSqlInfo);
+            }
+            return;
+        }
         //压测时，可直接返回ok包的。
         if (sqlParseResult.getSqlInfo() != null) {
-            //单实例执行：获取连接+下发命令必须异步执行，禁止在Netty EventLoop线程中阻塞getMySqlSession()。
+            //单实例执行：获取连接+下发命令以listener方式异步执行，禁止在Netty EventLoop线程中阻塞getMySqlSession()。
             this.sqlInfo = sqlParseResult.getSqlInfo();
+            this.multiNodeHandler = null;
+            this.spoolRequested = sqlParseResult.isSpool();
             final SqlParseResult.SqlInfo sqlInfo = this.sqlInfo;
-            final boolean isMasterQuery = sqlParseResult.isMasterQuery();
             final int sqlType = sqlParseResult.getSqlType();
-            try {
-                multiNodeExecutor.execute(() -> {
-                    MySqlSession mySqlSession = MySqlClient.getMySqlSession(sqlInfo.getClusterId(), isMasterQuery);
-                    if (mySqlSession == null) {
-                        logger.warn("MySQL Cluster[{}]无法找到合适的mysqlSession!", sqlInfo.getClusterId());
-                        onProxyFailMessage(ctx, MySqlErrorCode.ERR_NO_ROUTE_NODE, "Can't route to mysqlCluster!");
-                        onFinish();
-                        return;
-                    }
-                    mySqlSession.addCommand(this, sqlInfo.getDatabase(), sqlInfo.getTable(), sqlInfo.getNewSql(), sqlType);
-                });
-            } catch (java.util.concurrent.RejectedExecutionException e) {
-                logger.warn("单节点SQL执行被拒绝（线程池满），client={}", this.clientHost);
-                onProxyFailMessage(ctx, MySqlErrorCode.ERR_CONN_NOT_ALIVE, "Proxy busy, try again later!");
+            //共享EventLoop模式下优先借用与前端channel同一EventLoop上的后端连接。
+            MySqlClient.acquireMySqlSession(sqlInfo.getClusterId(), sqlParseResult.isMasterQuery(), ctx.channel().eventLoop()).addListener((FutureListener<MySqlSession>) future -> {
+                if (!future.isSuccess()) {
+                    logger.warn("MySQL Cluster[{}]无法找到合适的mysqlSession! cause={}", sqlInfo.getClusterId(), future.cause().getMessage());
+                    onProxyFailMessage(ctx, MySqlErrorCode.ERR_NO_ROUTE_NODE, "Can't route to mysqlCluster!");
+                    onFinish();
+                    return;
+                }
+                MySqlSession mySqlSession = future.getNow();
+                this.backendSession = mySqlSession;
+                sendCommand(mySqlSession, sqlInfo, sqlType);
+            });
+        } else {
+            //多实例执行：并发异步获取各节点连接并下发，全部节点回调结束后由handler收尾，不阻塞EventLoop。
+            ProxyMultiNodeHandler handler = new ProxyMultiNodeHandler(this.clientHost, this.ctx, sqlParseResult);
+            this.multiNodeHandler = handler;
+            handler.run();
+        }
+    }
+
+    /**
+     * 向后端 session 下发单节点命令：预编译语句执行走二进制协议，其余走 COM_QUERY，字节形式的 SQL 直接转交后端 session 写出。
+     *
+     * @param session 后端 session
+     * @param sqlInfo 单节点 sqlInfo
+     * @param sqlType SQL 类型
+     */
+    private void sendCommand(MySqlSession session, SqlParseResult.SqlInfo sqlInfo, int sqlType) {
+        StmtExecutePacket executePacket = this.stmtExecutePacket;
+        if (executePacket != null) {
+            session.addStmtCommand(this, sqlInfo.getDatabase(), sqlInfo.getTable(), sqlInfo.getNewSql(), sqlType, executePacket);
+        } else if (sqlInfo.getNewSqlBytes() != null) {
+            session.addCommand(this, sqlInfo.getDatabase(), sqlInfo.getTable(), sqlInfo.getNewSqlBytes().retainedDuplicate(), sqlType);
+        } else {
+            session.addCommand(this, sqlInfo.getDatabase(), sqlInfo.getTable(), sqlInfo.getNewSql(), sqlType);
+        }
+    }
+
+    /**
+     * 处理事务控制语句。
+     * <ul>
+     *   <li>BEGIN：只标记事务开始并回写 OK，后端事务延迟到首条语句确定集群后再开始；已在事务中时拒绝。</li>
+     *   <li>COMMIT/ROLLBACK：事务已在后端开始时下发到钉住的 session，命令结束后解除钉住；否则直接回写 OK。</li>
+     * </ul>
+     *
+     * @param ctx            前端 channel 上下文
+     * @param transactionCmd 事务控制语句类型
+     */
+    private void transactionCommand(ChannelHandlerContext ctx, int transactionCmd) {
+        if (transactionCmd == SqlParseResult.TX_BEGIN) {
+            if (inTransaction) {
+                onProxyFailMessage(ctx, MySqlErrorCode.ERR_NOT_SUPPORTED, "Nested transaction is not supported, COMMIT or ROLLBACK first!");
+            } else {
+                inTransaction = true;
+                OkPacket.writeOkToChannel(ctx);
+            }
+            onFinish();
+            return;
+        }
+        inTransaction = false;
+        MySqlSession session = txSession;
+        txSession = null;
+        if (session == null) {
+            //事务内没有执行过语句。
+            OkPacket.writeOkToChannel(ctx);
+            onFinish();
+            return;
+        }
+        if (session.isClosed()) {
+            onProxyFailMessage(ctx, MySqlErrorCode.ERR_CONN_NOT_ALIVE, "Transaction connection lost!");
+            onFinish();
+            return;
+        }
+        this.backendSession = session;
+        this.txEndingSession = session;
+        final String sql = transactionCmd == SqlParseResult.TX_COMMIT ? "COMMIT" : "ROLLBACK";
+        session.eventLoop().execute(() -> session.addCommand(this, sql));
+    }
+
+    /**
+     * 在事务中执行单节点语句。已钉住后端 session 时直接在其 EventLoop 上下发（排在上一条命令收尾之后）；
+     * 否则从主库获取 session 并钉住，先下发 START TRANSACTION，成功后再下发该语句。
+     *
+     * @param sqlInfo 单节点 sqlInfo
+     */
+    private void executeInTransaction(final SqlParseResult.SqlInfo sqlInfo) {
+        this.sqlInfo = sqlInfo;
+        this.multiNodeHandler = null;
+        this.spoolRequested = sqlParseResult.isSpool();
+        final int sqlType = sqlParseResult.getSqlType();
+        MySqlSession session = txSession;
+        if (session != null) {
+            if (session.isClosed()) {
+                txSession = null;
+                inTransaction = false;
+                onProxyFailMessage(ctx, MySqlErrorCode.ERR_CONN_NOT_ALIVE, "Transaction connection lost!");
                 onFinish();
+                return;
             }
-        } else {
-            //多实例执行使用CountDownLatch同步返回所有结果后，再执行转发，可能会导致阻塞。
-            try {
-                multiNodeExecutor.submit(new ProxyMultiNodeHandler(this.clientHost, this.ctx, sqlParseResult));
-            } catch (java.util.concurrent.RejectedExecutionException e) {
-                logger.warn("多节点SQL执行被拒绝（线程池满），client={}", this.clientHost);
-                onProxyFailMessage(ctx, MySqlErrorCode.ERR_CONN_NOT_ALIVE, "Proxy busy, try again later!");
+            this.backendSession = session;
+            session.eventLoop().execute(() -> sendCommand(session, sqlInfo, sqlType));
+            return;
+        }
+        MySqlClient.acquireMySqlSession(sqlInfo.getClusterId(), true, ctx.channel().eventLoop()).addListener((FutureListener<MySqlSession>) future -> {
+            if (!future.isSuccess()) {
+                logger.warn("MySQL Cluster[{}]无法找到合适的mysqlSession! cause={}", sqlInfo.getClusterId(), future.cause().getMessage());
+                onProxyFailMessage(ctx, MySqlErrorCode.ERR_NO_ROUTE_NODE, "Can't route to mysqlCluster!");
                 onFinish();
+                return;
             }
+            MySqlSession mySqlSession = future.getNow();
+            mySqlSession.pin();
+            this.txClusterId = sqlInfo.getClusterId();
+            this.txSession = mySqlSession;
+            if (!ctx.channel().isActive()) {
+                //获取期间前端已断开，onClientClosed 已错过这个 session。
+                onClientClosed();
+                return;
+            }
+            this.backendSession = mySqlSession;
+            mySqlSession.addCommand(new TransactionBeginCallback(mySqlSession, sqlInfo, sqlType), "START TRANSACTION");
+        });
+    }
+
+    /**
+     * 前端连接断开时由 {@link ProxyDataHandler#channelInactive} 调用：关闭事务钉住的后端连接，由 MySQL 回滚未提交的事务。
+     * 直接断开比下发 ROLLBACK 后归还更稳妥，不会把带着事务状态的连接放回连接池。
+     */
+    public void onClientClosed() {
+        inTransaction = false;
+        MySqlSession session = txSession;
+        if (session != null) {
+            txSession = null;
+            session.forceClose();
         }
     }
 
@@ -651,35 +1102,152 @@ public class ProxySession implements MySqlSessionCallback {
     }
 
     /**
-     * 处理 COM_STMT_PREPARE（预编译），当前实现直接返回不支持。
+     * @return 单个前端会话可同时保持的预编译语句上限
+     */
+    private static int maxPreparedStmts() {
+        MydbProxyProperties properties = MydbProxyConfigService.getMydbProperties();
+        return properties != null ? properties.getMaxPreparedStmts() : DEFAULT_MAX_PREPARED_STMTS;
+    }
+
+    /**
+     * 处理 COM_STMT_PREPARE（预编译）。语句只在 proxy 上解析一次（不计算路由），由 proxy 直接应答 PREPARE_OK：
+     * 列数固定为 0（执行前无法确定目标节点，列定义随执行结果返回），参数定义包按占位符个数生成。
+     * 因此结果集元数据只有执行后才能拿到，执行前调用 getMetaData() 的客户端得到的是空列定义。
      *
      * @param ctx 前端 channel 上下文
-     * @param buf 命令包
+     * @param buf 命令包（payload 为 SQL 文本）
      */
     public void stmtPrepare(ChannelHandlerContext ctx, ByteBuf buf) {
-        onProxyFailMessage(ctx, MySqlErrorCode.ERR_NOT_SUPPORTED, "NOT SUPPORT STMT_PREPARE!");
+        rxBytes += buf.readableBytes();
+        lastRequestTime = SystemClock.now();
+        CommandPacket cmd = new CommandPacket();
+        cmd.readPayLoad(buf);
+        String sql = cmd.arg;
+        if (logger.isTraceEnabled()) {
+            logger.trace("Receive client[{}] PREPARE: {}", this.clientHost, sql);
+        }
+        int maxPreparedStmts = maxPreparedStmts();
+        if (stmtMap.size() >= maxPreparedStmts) {
+            onProxyFailMessage(ctx, MySqlErrorCode.ER_OUT_OF_RESOURCES, "Too many prepared statements, max is " + maxPreparedStmts + "!");
+            onFinish();
+            return;
+        }
+        SqlParser parser = new SqlParser(this, sql);
+        SqlParseResult prepared = parser.prepare();
+        if (prepared.hasError()) {
+            onProxyFailMessage(ctx, prepared.getErrorCode(), prepared.getErrorMessage());
+            onFinish();
+            return;
+        }
+        long stmtId = ++lastStmtId;
+        int paramCount = parser.getParamCount();
+        stmtMap.put(stmtId, new PreparedStmt(parser, paramCount));
+        StmtPrepareOkPacket okPacket = new StmtPrepareOkPacket();
+        okPacket.packetId = 1;
+        okPacket.statementId = stmtId;
+        okPacket.parametersNumber = paramCount;
+        okPacket.writeToChannel(ctx);
+        for (int i = 0; i < paramCount; i++) {
+            ResultSetFieldPacket paramPacket = new ResultSetFieldPacket();
+            paramPacket.packetId = (byte) (i + 2);
+            paramPacket.name = PARAM_NAME;
+            paramPacket.type = PARAM_TYPE;
+            paramPacket.charsetIndex = PARAM_CHARSET;
+            paramPacket.writeToChannel(ctx);
+        }
         onFinish();
     }
 
     /**
-     * 处理 COM_STMT_EXECUTE（执行预编译），当前实现直接返回不支持。
+     * 处理 COM_STMT_EXECUTE（执行预编译）。解码绑定参数后只重新计算路由，再按单节点命令下发：
+     * 后端 session 以语句文本懒预编译，执行包改写为后端语句 ID 转发，结果以二进制协议透传。
+     * 后端语句可能刚预编译，转发时总是带上参数类型（客户端通常只在首次执行时发送）；不支持游标，请求游标时返回错误。
      *
      * @param ctx 前端 channel 上下文
      * @param buf 命令包
      */
     public void stmtExecute(ChannelHandlerContext ctx, ByteBuf buf) {
-        onProxyFailMessage(ctx, MySqlErrorCode.ERR_NOT_SUPPORTED, "NOT SUPPORT STMT_EXECUTE!");
-        onFinish();
+        rxBytes += buf.readableBytes();
+        lastRequestTime = SystemClock.now();
+        PreparedStmt stmt = stmtMap.get(StmtExecutePacket.peekStatementId(buf));
+        if (stmt == null) {
+            onProxyFailMessage(ctx, MySqlErrorCode.ER_UNKNOWN_STMT_HANDLER, "Unknown prepared statement handler given to EXECUTE!");
+            onFinish();
+            return;
+        }
+        if (stmt.longData) {
+            onProxyFailMessage(ctx, MySqlErrorCode.ERR_NOT_SUPPORTED, "NOT SUPPORT STMT_SEND_LONG_DATA!");
+            onFinish();
+            return;
+        }
+        StmtExecutePacket packet = new StmtExecutePacket();
+        packet.paramCount = stmt.paramCount;
+        packet.readPayLoad(buf);
+        if (packet.paramTypes != null) {
+            stmt.paramTypes = packet.paramTypes;
+        } else if (stmt.paramCount > 0) {
+            if (stmt.paramTypes == null) {
+                onProxyFailMessage(ctx, MySqlErrorCode.ER_WRONG_ARGUMENTS, "Missing parameter types for prepared statement!");
+                onFinish();
+                return;
+            }
+            packet.newParamsBound = 1;
+            packet.paramTypes = stmt.paramTypes;
+        }
+        if ((packet.flags & StmtExecutePacket.CURSOR_TYPE_MASK) != 0) {
+            onProxyFailMessage(ctx, MySqlErrorCode.ERR_NOT_SUPPORTED, "NOT SUPPORT CURSOR!");
+            onFinish();
+            return;
+        }
+        //其余标记位（如 PARAMETER_COUNT_AVAILABLE）不转发给后端。
+        packet.flags = 0;
+        sqlParseResult = stmt.parser.bind(packet.decodeParams(stmt.paramTypes));
+        if (sqlParseResult.hasError()) {
+            onProxyFailMessage(ctx, sqlParseResult.getErrorCode(), sqlParseResult.getErrorMessage());
+            onFinish();
+            return;
+        }
+        this.stmtExecutePacket = packet;
+        dispatch(ctx);
     }
 
     /**
-     * 处理 COM_STMT_CLOSE（关闭预编译），当前实现直接返回不支持。
+     * 处理 COM_STMT_CLOSE（关闭预编译）。只移除前端语句，该命令没有响应；后端连接上的预编译语句按语句文本缓存，留给后续复用。
      *
      * @param ctx 前端 channel 上下文
      * @param buf 命令包
      */
     public void stmtClose(ChannelHandlerContext ctx, ByteBuf buf) {
-        onProxyFailMessage(ctx, MySqlErrorCode.ERR_NOT_SUPPORTED, "NOT SUPPORT STMT_CLOSE!");
+        stmtMap.remove(StmtExecutePacket.peekStatementId(buf));
+    }
+
+    /**
+     * 处理 COM_STMT_SEND_LONG_DATA。该命令没有响应，当前不支持分块发送参数，只标记语句，执行时返回不支持。
+     *
+     * @param ctx 前端 channel 上下文
+     * @param buf 命令包
+     */
+    public void stmtSendLongData(ChannelHandlerContext ctx, ByteBuf buf) {
+        PreparedStmt stmt = stmtMap.get(StmtExecutePacket.peekStatementId(buf));
+        if (stmt != null) {
+            stmt.longData = true;
+        }
+    }
+
+    /**
+     * 处理 COM_STMT_RESET：清除 COM_STMT_SEND_LONG_DATA 的标记并回写 OK。
+     *
+     * @param ctx 前端 channel 上下文
+     * @param buf 命令包
+     */
+    public void stmtReset(ChannelHandlerContext ctx, ByteBuf buf) {
+        PreparedStmt stmt = stmtMap.get(StmtExecutePacket.peekStatementId(buf));
+        if (stmt == null) {
+            onProxyFailMessage(ctx, MySqlErrorCode.ER_UNKNOWN_STMT_HANDLER, "Unknown prepared statement handler given to RESET!");
+        } else {
+            stmt.longData = false;
+            OkPacket.writeOkToChannel(ctx);
+        }
         onFinish();
     }
 
@@ -717,4 +1285,133 @@ public class ProxySession implements MySqlSessionCallback {
     public void updateLastResponseTime() {
         this.lastResponseTime = SystemClock.now();
     }
+
+    /**
+     * 事务首条语句前在钉住的后端 session 上执行 START TRANSACTION 的回调：成功后投递到后端 EventLoop 下发该语句，
+     * 失败时把错误回传客户端并解除钉住，事务保持打开，下一条语句重新获取连接。
+     */
+    private class TransactionBeginCallback implements MySqlSessionCallback {
+
+        /**
+         * 钉住的后端 session。
+         */
+        private final MySqlSession session;
+
+        /**
+         * 事务首条语句。
+         */
+        private final SqlParseResult.SqlInfo sqlInfo;
+
+        /**
+         * 事务首条语句的 SQL 类型。
+         */
+        private final int sqlType;
+
+        /**
+         * START TRANSACTION 是否失败。
+         */
+        private boolean failed;
+
+        /**
+         * @param session 钉住的后端 session
+         * @param sqlInfo 事务首条语句
+         * @param sqlType SQL 类型
+         */
+        TransactionBeginCallback(MySqlSession session, SqlParseResult.SqlInfo sqlInfo, int sqlType) {
+            this.session = session;
+            this.sqlInfo = sqlInfo;
+            this.sqlType = sqlType;
+        }
+
+        @Override
+        public String getClientInfo() {
+            return clientHost;
+        }
+
+        @Override
+        public void receiveOkPacket(byte packetId, ByteBuf buf) {
+        }
+
+        @Override
+        public void receiveErrorPacket(byte packetId, ByteBuf buf) {
+            failed = true;
+            ProxySession.this.receiveErrorPacket(packetId, buf);
+        }
+
+        @Override
+        public void receiveResultSetHeaderPacket(byte packetId, ByteBuf buf) {
+        }
+
+        @Override
+        public void receiveFieldDataPacket(byte packetId, ByteBuf buf) {
+        }
+
+        @Override
+        public void receiveFieldDataEOFPacket(byte packetId, ByteBuf buf) {
+        }
+
+        @Override
+        public void receiveRowDataPacket(byte packetId, ByteBuf buf) {
+        }
+
+        @Override
+        public void receiveRowDataEOFPacket(byte packetId, ByteBuf buf) {
+        }
+
+        @Override
+        public void onMysqlFailMessage(int errorNo, String info) {
+            ProxySession.this.onMysqlFailMessage(errorNo, info);
+        }
+
+        /**
+         * START TRANSACTION 结束：当前仍在 unbindCallback 中，新命令必须投递到后端 EventLoop，排在其收尾之后执行。
+         */
+        @Override
+        public void onFinish() {
+            if (failed) {
+                if (txSession == session) {
+                    txSession = null;
+                }
+                session.unpin();
+                ProxySession.this.onFinish();
+                return;
+            }
+            session.eventLoop().execute(() -> sendCommand(session, sqlInfo, sqlType));
+        }
+    }
+
+    /**
+     * 前端预编译语句：解析器保留语句解析结果与 routeKey 的参数位置，每次执行只重新绑定参数计算路由。
+     */
+    private static class PreparedStmt {
+
+        /**
+         * 已完成语句解析的解析器。
+         */
+        private final SqlParser parser;
+
+        /**
+         * ? 占位符个数。
+         */
+        private final int paramCount;
+
+        /**
+         * 客户端首次执行时发送的参数类型，后续执行未携带类型时沿用。
+         */
+        private byte[] paramTypes;
+
+        /**
+         * 是否收到过 COM_STMT_SEND_LONG_DATA。
+         */
+        private boolean longData;
+
+        /**
+         * @param parser     已完成语句解析的解析器
+         * @param paramCount 占位符个数
+         */
+        PreparedStmt(SqlParser parser, int paramCount) {
+            this.parser = parser;
+            this.paramCount = paramCount;
+        }
+    }
 }
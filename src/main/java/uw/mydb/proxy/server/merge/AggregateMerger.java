@@ -0,0 +1,315 @@
+package uw.mydb.proxy.server.merge;
+
+import io.netty.buffer.ByteBuf;
+import uw.mydb.proxy.protocol.packet.ResultSetFieldPacket;
+import uw.mydb.proxy.protocol.packet.ResultSetRowDataPacket;
+import uw.mydb.proxy.sqlparse.SqlParseResult;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 多节点聚合结果的合并器：把各节点返回的部分聚合值（COUNT/SUM/MIN/MAX，AVG 已在节点侧改写为 SUM + 隐藏 COUNT）
+ * 合并为一行。
+ * <p>
+ * 合并规则：
+ * <ul>
+ *   <li>COUNT：各节点求和。</li>
+ *   <li>SUM：非 NULL 值求和，全部为 NULL 时结果为 NULL。</li>
+ *   <li>MIN/MAX：数值列按 BigDecimal 比较，其余按字节序比较（文本忽略 ASCII 大小写），保留原始字节。</li>
+ *   <li>AVG：合并 SUM 与隐藏 COUNT 后相除，定点数保留原精度 + 4 位小数（与 MySQL div_precision_increment 默认值一致）。</li>
+ *   <li>非聚合列：取首个非 NULL 值。</li>
+ * </ul>
+ * 合并状态由 {@link State} 承载，与合并器分离，便于按分组维护多份状态。行包只按偏移解码，不改动 readerIndex。
+ * <p>
+ * 非线程安全：由 ProxyMultiNodeHandler 在前端 EventLoop 上串行调用。
+ *
+ * @author axeon
+ */
+public class AggregateMerger {
+
+    /**
+     * MySQL AVG 结果在参数精度基础上增加的小数位数（div_precision_increment 默认值）。
+     */
+    public static final int AVG_SCALE_INCREMENT = 4;
+
+    /**
+     * 定点数最大小数位数。
+     */
+    private static final int MAX_DECIMAL_SCALE = 30;
+
+    /**
+     * 字段类型：FLOAT。
+     */
+    private static final int TYPE_FLOAT = 4;
+
+    /**
+     * 字段类型：DOUBLE。
+     */
+    private static final int TYPE_DOUBLE = 5;
+
+    /**
+     * 聚合项（下标即结果列号）。
+     */
+    private final SqlParseResult.AggregateItem[] items;
+
+    /**
+     * 各可见列的比较方式（SortKey.VALUE_*）。
+     */
+    private final int[] valueTypes;
+
+    /**
+     * 各可见列的字段类型。
+     */
+    private final int[] fieldTypes;
+
+    /**
+     * 各可见列的小数位数。
+     */
+    private final int[] fieldDecimals;
+
+    /**
+     * 需要定位的列号：可见列 + 隐藏列。
+     */
+    private final int[] columns;
+
+    /**
+     * 列值偏移（复用）。
+     */
+    private final int[] offsets;
+
+    /**
+     * 列值长度（复用）。
+     */
+    private final int[] lengths;
+
+    /**
+     * @param aggregateList 聚合项（可见列）
+     * @param hiddenCount   隐藏列数
+     * @param fieldList     节点返回的全部字段定义（可见列 + 隐藏列）
+     */
+    public AggregateMerger(List<SqlParseResult.AggregateItem> aggregateList, int hiddenCount, List<ResultSetFieldPacket> fieldList) {
+        int visibleCount = aggregateList.size();
+        this.items = aggregateList.toArray( new SqlParseResult.AggregateItem[0] );
+        this.valueTypes = new int[visibleCount];
+        this.fieldTypes = new int[visibleCount];
+        this.fieldDecimals = new int[visibleCount];
+        for (int i = 0; i < visibleCount; i++) {
+            ResultSetFieldPacket field = fieldList.get( i );
+            valueTypes[i] = SortKey.guessValueType( field );
+            fieldTypes[i] = field.type;
+            fieldDecimals[i] = field.decimals;
+        }
+        int columnCount = visibleCount + hiddenCount;
+        this.columns = new int[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            columns[i] = i;
+        }
+        this.offsets = new int[columnCount];
+        this.lengths = new int[columnCount];
+    }
+
+    /**
+     * @return 新的空合并状态
+     */
+    public State newState() {
+        return new State( items.length );
+    }
+
+    /**
+     * 把一行部分聚合值合并进状态。
+     *
+     * @param state 合并状态
+     * @param row   行数据包（不转移所有权）
+     */
+    public void accumulate(State state, ByteBuf row) {
+        RowDataReader.locateColumns( row, columns, offsets, lengths );
+        state.rows++;
+        for (int i = 0; i < items.length; i++) {
+            int length = lengths[i];
+            int offset = offsets[i];
+            switch (items[i].getFunction()) {
+                case SqlParseResult.AggregateItem.FUNC_COUNT:
+                    if (length > 0) {
+                        state.counts[i] += readLong( row, offset, length );
+                    }
+                    break;
+                case SqlParseResult.AggregateItem.FUNC_SUM:
+                    if (length > 0) {
+                        state.sums[i] = add( state.sums[i], RowDataReader.parseDecimal( row, offset, length ) );
+                    }
+                    break;
+                case SqlParseResult.AggregateItem.FUNC_AVG:
+                    if (length > 0) {
+                        state.sums[i] = add( state.sums[i], RowDataReader.parseDecimal( row, offset, length ) );
+                    }
+                    int countIndex = items[i].getCountIndex();
+                    if (lengths[countIndex] > 0) {
+                        state.counts[i] += readLong( row, offsets[countIndex], lengths[countIndex] );
+                    }
+                    break;
+                case SqlParseResult.AggregateItem.FUNC_MIN:
+                    accumulateExtreme( state, i, row, offset, length, false );
+                    break;
+                case SqlParseResult.AggregateItem.FUNC_MAX:
+                    accumulateExtreme( state, i, row, offset, length, true );
+                    break;
+                default:
+                    if (state.values[i] == null && length >= 0) {
+                        state.values[i] = RowDataReader.copyValue( row, offset, length );
+                    }
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 用合并状态生成结果行（只含可见列）。
+     *
+     * @param state 合并状态
+     * @return 结果行
+     */
+    public ResultSetRowDataPacket buildRow(State state) {
+        List<byte[]> values = new ArrayList<>( items.length );
+        for (int i = 0; i < items.length; i++) {
+            switch (items[i].getFunction()) {
+                case SqlParseResult.AggregateItem.FUNC_COUNT:
+                    values.add( ascii( Long.toString( state.counts[i] ) ) );
+                    break;
+                case SqlParseResult.AggregateItem.FUNC_SUM:
+                    values.add( state.sums[i] == null ? null : ascii( formatDecimal( state.sums[i], fieldTypes[i] ) ) );
+                    break;
+                case SqlParseResult.AggregateItem.FUNC_AVG:
+                    values.add( average( state.sums[i], state.counts[i], i ) );
+                    break;
+                default:
+                    values.add( state.values[i] );
+                    break;
+            }
+        }
+        ResultSetRowDataPacket packet = new ResultSetRowDataPacket();
+        packet.fieldValues = values;
+        packet.fieldCount = values.size();
+        return packet;
+    }
+
+    /**
+     * MIN/MAX 合并。
+     */
+    private void accumulateExtreme(State state, int i, ByteBuf row, int offset, int length, boolean max) {
+        if (length < 0) {
+            return;
+        }
+        int valueType = valueTypes[i];
+        boolean numeric = (valueType == SortKey.VALUE_LONG || valueType == SortKey.VALUE_DECIMAL) && length > 0;
+        BigDecimal decimal = null;
+        if (state.values[i] != null) {
+            int result;
+            if (numeric && state.sums[i] != null) {
+                decimal = RowDataReader.parseDecimal( row, offset, length );
+                result = decimal.compareTo( state.sums[i] );
+            } else {
+                result = -RowDataReader.compareBytes( state.values[i], row, offset, length, valueType == SortKey.VALUE_TEXT );
+            }
+            if (max ? result <= 0 : result >= 0) {
+                return;
+            }
+        } else if (numeric) {
+            decimal = RowDataReader.parseDecimal( row, offset, length );
+        }
+        state.values[i] = RowDataReader.copyValue( row, offset, length );
+        state.sums[i] = decimal;
+    }
+
+    /**
+     * 计算 AVG。
+     */
+    private byte[] average(BigDecimal sum, long count, int i) {
+        if (sum == null || count == 0) {
+            return null;
+        }
+        BigDecimal divisor = BigDecimal.valueOf( count );
+        if (fieldTypes[i] == TYPE_FLOAT || fieldTypes[i] == TYPE_DOUBLE) {
+            return ascii( sum.divide( divisor, MathContext.DECIMAL64 ).stripTrailingZeros().toPlainString() );
+        }
+        int scale = Math.min( Math.max( fieldDecimals[i], 0 ) + AVG_SCALE_INCREMENT, MAX_DECIMAL_SCALE );
+        return ascii( sum.divide( divisor, scale, RoundingMode.HALF_UP ).toPlainString() );
+    }
+
+    /**
+     * 数值格式化：浮点数去掉多余的 0，定点数保留原有精度。
+     */
+    private static String formatDecimal(BigDecimal value, int fieldType) {
+        if (fieldType == TYPE_FLOAT || fieldType == TYPE_DOUBLE) {
+            return value.stripTrailingZeros().toPlainString();
+        }
+        return value.toPlainString();
+    }
+
+    /**
+     * 读取整数值，超长时按 BigDecimal 解析后截断。
+     */
+    private static long readLong(ByteBuf row, int offset, int length) {
+        if (RowDataReader.isLongValue( length )) {
+            return RowDataReader.parseLong( row, offset, length );
+        }
+        return RowDataReader.parseDecimal( row, offset, length ).longValue();
+    }
+
+    /**
+     * NULL 安全的加法。
+     */
+    private static BigDecimal add(BigDecimal sum, BigDecimal value) {
+        return sum == null ? value : sum.add( value );
+    }
+
+    /**
+     * 文本转 ASCII 字节。
+     */
+    private static byte[] ascii(String text) {
+        return text.getBytes( StandardCharsets.US_ASCII );
+    }
+
+    /**
+     * 一组聚合值的合并状态，下标与结果列号一致。
+     */
+    public static final class State {
+
+        /**
+         * COUNT 与 AVG 的累计行数。
+         */
+        private final long[] counts;
+
+        /**
+         * SUM 与 AVG 的累计和；MIN/MAX 数值列的当前极值。
+         */
+        private final BigDecimal[] sums;
+
+        /**
+         * MIN/MAX 与非聚合列的原始字节。
+         */
+        private final byte[][] values;
+
+        /**
+         * 已合并的行数。
+         */
+        private long rows;
+
+        State(int columnCount) {
+            this.counts = new long[columnCount];
+            this.sums = new BigDecimal[columnCount];
+            this.values = new byte[columnCount][];
+        }
+
+        /**
+         * @return 已合并的行数
+         */
+        public long getRows() {
+            return rows;
+        }
+    }
+}
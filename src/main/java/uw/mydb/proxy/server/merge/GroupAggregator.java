@@ -0,0 +1,558 @@
+package uw.mydb.proxy.server.merge;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uw.mydb.proxy.protocol.packet.ResultSetFieldPacket;
+import uw.mydb.proxy.sqlparse.SqlParseResult;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 多节点 GROUP BY 的哈希聚合：各节点返回按组的部分聚合行，代理层按分组键合并为最终结果。
+ * <p>
+ * 内存控制：
+ * <ul>
+ *   <li>分组状态（{@link AggregateMerger.State}）保存在哈希表中，按分组键长度 + 行长度 + 固定开销估算内存。</li>
+ *   <li>估算值超过单查询内存预算后进入溢写模式：已在内存中的分组继续原地合并，新分组的行按分组键哈希写入
+ *       {@link #SPILL_PARTITIONS} 个内存映射临时文件（{@link SpillFile}），同一分组的行必定落在同一分区。</li>
+ *   <li>输出时先输出内存中的分组，再逐个分区读回重新聚合；分区仍超出预算时以新的哈希种子递归再分区，
+ *       超过 {@link #MAX_SPILL_DEPTH} 层后不再溢写（极端倾斜的单一分组无法再拆分）。</li>
+ *   <li>带 ORDER BY 且发生溢写时，内存表与每个分区各自排序后写成有序段，再用 {@link ShardRowMerger} 做 k 路归并，
+ *       任一时刻每段只有一行在内存中。</li>
+ * </ul>
+ * 输出采用拉取方式（{@link #nextRow}），调用方可随时停止（如全局 LIMIT 已满足）。
+ * <p>
+ * 非线程安全：由 ProxyMultiNodeHandler 在前端 EventLoop 上串行调用。
+ *
+ * @author axeon
+ */
+public class GroupAggregator {
+
+    private static final Logger logger = LoggerFactory.getLogger( GroupAggregator.class );
+
+    /**
+     * 溢写分区数。
+     */
+    private static final int SPILL_PARTITIONS = 16;
+
+    /**
+     * 最大递归溢写层数。
+     */
+    private static final int MAX_SPILL_DEPTH = 3;
+
+    /**
+     * 每个分组的固定内存开销估算（哈希表节点、分组键与状态对象）。
+     */
+    private static final int GROUP_OVERHEAD = 128;
+
+    /**
+     * 每个聚合列的内存开销估算。
+     */
+    private static final int COLUMN_OVERHEAD = 32;
+
+    /**
+     * 聚合合并器。
+     */
+    private final AggregateMerger merger;
+
+    /**
+     * 分组键所在列号。
+     */
+    private final int[] keyColumns;
+
+    /**
+     * 分组键是否按忽略 ASCII 大小写比较（文本列）。
+     */
+    private final boolean[] keyIgnoreCase;
+
+    /**
+     * 单查询内存预算（字节）。
+     */
+    private final long memoryBudget;
+
+    /**
+     * 溢写文件目录。
+     */
+    private final Path spillDir;
+
+    /**
+     * 输出行的分配器。
+     */
+    private final ByteBufAllocator allocator;
+
+    /**
+     * 递归溢写层数，决定分区哈希种子。
+     */
+    private final int depth;
+
+    /**
+     * 分组键值偏移（复用）。
+     */
+    private final int[] keyOffsets;
+
+    /**
+     * 分组键值长度（复用）。
+     */
+    private final int[] keyLengths;
+
+    /**
+     * 分组状态表。
+     */
+    private HashMap<GroupKey, AggregateMerger.State> groupMap = new HashMap<>();
+
+    /**
+     * 分组状态表的估算内存。
+     */
+    private long memoryUsed;
+
+    /**
+     * 溢写分区，null 表示未发生溢写。
+     */
+    private SpillFile[] partitions;
+
+    /**
+     * 排序键，null 表示无序输出。
+     */
+    private SortKey[] sortKeys;
+
+    /**
+     * 无序输出：内存分组的迭代器。
+     */
+    private Iterator<AggregateMerger.State> groupIterator;
+
+    /**
+     * 无序输出：下一个待处理的分区。
+     */
+    private int partitionCursor;
+
+    /**
+     * 无序输出：正在输出的分区聚合器。
+     */
+    private GroupAggregator child;
+
+    /**
+     * 有序输出且未溢写：已排序的结果行。
+     */
+    private List<SortRow> sortedRows;
+
+    /**
+     * 有序输出且未溢写：输出游标。
+     */
+    private int sortedCursor;
+
+    /**
+     * 有序输出且已溢写：各有序段。
+     */
+    private SpillFile[] runs;
+
+    /**
+     * 有序输出且已溢写：有序段的 k 路归并器。
+     */
+    private ShardRowMerger runMerger;
+
+    /**
+     * 有序输出且已溢写：已读完的有序段。
+     */
+    private boolean[] runFinished;
+
+    /**
+     * @param aggregateList 聚合项（可见列）
+     * @param hiddenCount   隐藏列数
+     * @param fieldList     节点返回的全部字段定义（可见列 + 隐藏列）
+     * @param groupByList   分组项
+     * @param memoryBudget  单查询内存预算（字节）
+     * @param spillDir      溢写文件目录
+     * @param allocator     输出行的分配器
+     */
+    public GroupAggregator(List<SqlParseResult.AggregateItem> aggregateList, int hiddenCount, List<ResultSetFieldPacket> fieldList,
+                           List<SqlParseResult.OrderByItem> groupByList, long memoryBudget, Path spillDir, ByteBufAllocator allocator) {
+        this.merger = new AggregateMerger( aggregateList, hiddenCount, fieldList );
+        List<ResultSetFieldPacket> visibleFields = fieldList.subList( 0, aggregateList.size() );
+        SortKey[] groupKeys = SortKey.resolve( groupByList, visibleFields );
+        if (groupKeys == null) {
+            //分组列已在解析时校验过都在结果中，这里匹配不上时退化为按全部非聚合列分组（ONLY_FULL_GROUP_BY 下两者等价）。
+            List<SortKey> keyList = new ArrayList<>();
+            for (int i = 0; i < aggregateList.size(); i++) {
+                if (aggregateList.get( i ).getFunction() == SqlParseResult.AggregateItem.FUNC_NONE) {
+                    keyList.add( new SortKey( i, false, SortKey.guessValueType( visibleFields.get( i ) ) ) );
+                }
+            }
+            groupKeys = keyList.toArray( new SortKey[0] );
+        }
+        this.keyColumns = new int[groupKeys.length];
+        this.keyIgnoreCase = new boolean[groupKeys.length];
+        for (int i = 0; i < groupKeys.length; i++) {
+            keyColumns[i] = groupKeys[i].getColumnIndex();
+            keyIgnoreCase[i] = groupKeys[i].getValueType() == SortKey.VALUE_TEXT;
+        }
+        this.memoryBudget = memoryBudget;
+        this.spillDir = spillDir;
+        this.allocator = allocator;
+        this.depth = 0;
+        this.keyOffsets = new int[keyColumns.length];
+        this.keyLengths = new int[keyColumns.length];
+    }
+
+    /**
+     * 构造分区的子聚合器，共享合并器与分组键定义。
+     */
+    private GroupAggregator(GroupAggregator parent) {
+        this.merger = parent.merger;
+        this.keyColumns = parent.keyColumns;
+        this.keyIgnoreCase = parent.keyIgnoreCase;
+        this.memoryBudget = parent.memoryBudget;
+        this.spillDir = parent.spillDir;
+        this.allocator = parent.allocator;
+        this.depth = parent.depth + 1;
+        this.keyOffsets = new int[keyColumns.length];
+        this.keyLengths = new int[keyColumns.length];
+    }
+
+    /**
+     * 合并一行部分聚合值。
+     *
+     * @param row 行数据包（不转移所有权）
+     * @throws IOException 溢写失败
+     */
+    public void accumulate(ByteBuf row) throws IOException {
+        GroupKey key = buildKey( row );
+        AggregateMerger.State state = groupMap.get( key );
+        if (state == null) {
+            if (partitions != null) {
+                partitions[partitionOf( key.hash )].append( row );
+                return;
+            }
+            state = merger.newState();
+            groupMap.put( key, state );
+            memoryUsed += GROUP_OVERHEAD + key.data.length + row.readableBytes() + (long) keyColumns.length * COLUMN_OVERHEAD;
+            if (memoryUsed > memoryBudget && depth < MAX_SPILL_DEPTH) {
+                startSpill();
+            }
+        }
+        merger.accumulate( state, row );
+    }
+
+    /**
+     * 输入结束，准备输出。
+     *
+     * @param sortKeys 排序键（按可见列解析），null 表示无序输出
+     * @throws IOException 溢写失败
+     */
+    public void finishInput(SortKey[] sortKeys) throws IOException {
+        this.sortKeys = sortKeys;
+        if (sortKeys == null) {
+            groupIterator = groupMap.values().iterator();
+            return;
+        }
+        List<SortRow> rows = sortGroups();
+        if (partitions == null) {
+            sortedRows = rows;
+            return;
+        }
+        //内存表与每个分区各自排序成有序段，再k路归并。
+        runs = new SpillFile[partitions.length + 1];
+        runs[0] = writeRun( rows );
+        for (int i = 0; i < partitions.length; i++) {
+            GroupAggregator partition = loadPartition( i );
+            try {
+                partition.finishInput( sortKeys );
+                SpillFile run = new SpillFile( spillDir );
+                runs[i + 1] = run;
+                ByteBuf row;
+                while ((row = partition.nextRow()) != null) {
+                    try {
+                        run.append( row );
+                    } finally {
+                        row.release();
+                    }
+                }
+            } finally {
+                partition.release();
+            }
+        }
+        runMerger = new ShardRowMerger( runs.length );
+        runMerger.sortBy( sortKeys );
+        runFinished = new boolean[runs.length];
+    }
+
+    /**
+     * 取出下一行结果。
+     *
+     * @return 结果行（所有权转移给调用方），输出完毕返回 null
+     * @throws IOException 读取溢写分区失败
+     */
+    public ByteBuf nextRow() throws IOException {
+        if (sortKeys == null) {
+            return nextUnsortedRow();
+        }
+        if (sortedRows != null) {
+            if (sortedCursor >= sortedRows.size()) {
+                return null;
+            }
+            SortRow sortRow = sortedRows.get( sortedCursor );
+            sortedRows.set( sortedCursor++, null );
+            return sortRow.row;
+        }
+        for (int i = 0; i < runs.length; i++) {
+            if (!runFinished[i] && runMerger.getBufferedRows( i ) == 0) {
+                ByteBuf row = runs[i].next();
+                if (row == null) {
+                    runFinished[i] = true;
+                    runMerger.finish( i );
+                } else {
+                    runMerger.offer( i, row.retain() );
+                }
+            }
+        }
+        ByteBuf row = runMerger.poll();
+        if (row == null) {
+            return null;
+        }
+        //有序段是映射内存的切片，输出前拷贝，避免段释放后仍被前端channel引用。
+        ByteBuf copy = allocator.buffer( row.readableBytes() );
+        copy.writeBytes( row, row.readerIndex(), row.readableBytes() );
+        row.release();
+        return copy;
+    }
+
+    /**
+     * 释放全部内存状态与溢写文件。
+     */
+    public void release() {
+        groupMap = null;
+        groupIterator = null;
+        if (child != null) {
+            child.release();
+            child = null;
+        }
+        if (sortedRows != null) {
+            for (int i = sortedCursor; i < sortedRows.size(); i++) {
+                SortRow sortRow = sortedRows.get( i );
+                if (sortRow != null) {
+                    sortRow.row.release();
+                }
+            }
+            sortedRows = null;
+        }
+        if (runMerger != null) {
+            runMerger.release();
+            runMerger = null;
+        }
+        releaseFiles( partitions );
+        partitions = null;
+        releaseFiles( runs );
+        runs = null;
+    }
+
+    /**
+     * @return 是否发生过溢写
+     */
+    public boolean isSpilled() {
+        return partitions != null || runs != null;
+    }
+
+    /**
+     * 无序输出：先输出内存中的分组，再逐个分区读回聚合后输出。
+     */
+    private ByteBuf nextUnsortedRow() throws IOException {
+        while (true) {
+            if (groupIterator != null && groupIterator.hasNext()) {
+                return buildRow( groupIterator.next() );
+            }
+            if (child != null) {
+                ByteBuf row = child.nextRow();
+                if (row != null) {
+                    return row;
+                }
+                child.release();
+                child = null;
+            }
+            groupIterator = null;
+            groupMap = null;
+            if (partitions == null || partitionCursor >= partitions.length) {
+                return null;
+            }
+            child = loadPartition( partitionCursor++ );
+            child.finishInput( null );
+        }
+    }
+
+    /**
+     * 读回一个溢写分区，聚合到新的子聚合器中，分区文件随即释放。
+     */
+    private GroupAggregator loadPartition(int index) throws IOException {
+        SpillFile partition = partitions[index];
+        partitions[index] = null;
+        GroupAggregator aggregator = new GroupAggregator( this );
+        try {
+            ByteBuf row;
+            while ((row = partition.next()) != null) {
+                aggregator.accumulate( row );
+            }
+        } catch (IOException | RuntimeException e) {
+            aggregator.release();
+            throw e;
+        } finally {
+            partition.release();
+        }
+        return aggregator;
+    }
+
+    /**
+     * 内存中的分组生成结果行并排序，随后清空分组表。
+     */
+    private List<SortRow> sortGroups() {
+        int[] sortColumns = new int[sortKeys.length];
+        for (int i = 0; i < sortKeys.length; i++) {
+            sortColumns[i] = sortKeys[i].getColumnIndex();
+        }
+        List<SortRow> rows = new ArrayList<>( groupMap.size() );
+        for (AggregateMerger.State state : groupMap.values()) {
+            rows.add( new SortRow( 0, buildRow( state ), sortKeys, sortColumns ) );
+        }
+        groupMap = null;
+        rows.sort( (a, b) -> SortRow.compare( sortKeys, a, b ) );
+        return rows;
+    }
+
+    /**
+     * 有序行写入新的有序段，写入后释放。
+     */
+    private SpillFile writeRun(List<SortRow> rows) throws IOException {
+        SpillFile run = new SpillFile( spillDir );
+        try {
+            for (SortRow sortRow : rows) {
+                run.append( sortRow.row );
+            }
+        } finally {
+            for (SortRow sortRow : rows) {
+                sortRow.row.release();
+            }
+        }
+        return run;
+    }
+
+    /**
+     * 进入溢写模式。
+     */
+    private void startSpill() throws IOException {
+        logger.info( "GROUP BY合并超出内存预算[{}]字节（{}个分组），开始溢写，depth={}", memoryBudget, groupMap.size(), depth );
+        SpillFile[] files = new SpillFile[SPILL_PARTITIONS];
+        try {
+            for (int i = 0; i < files.length; i++) {
+                files[i] = new SpillFile( spillDir );
+            }
+        } catch (IOException e) {
+            releaseFiles( files );
+            throw e;
+        }
+        partitions = files;
+    }
+
+    /**
+     * 分组状态生成结果行。
+     */
+    private ByteBuf buildRow(AggregateMerger.State state) {
+        ByteBuf buf = allocator.buffer();
+        merger.buildRow( state ).writePayLoad( buf );
+        return buf;
+    }
+
+    /**
+     * 按层数选择哈希种子计算分区，避免递归再分区时所有行落到同一个子分区。
+     */
+    private int partitionOf(int hash) {
+        int mixed = Integer.rotateLeft( hash * 0x9E3779B9, depth * 8 + 7 );
+        return (mixed ^ (mixed >>> 16)) & (SPILL_PARTITIONS - 1);
+    }
+
+    /**
+     * 读取分组键：每列为 4 字节长度（NULL 为 -1）+ 值，文本列转为小写以匹配 *_ci 排序规则。
+     */
+    private GroupKey buildKey(ByteBuf row) {
+        RowDataReader.locateColumns( row, keyColumns, keyOffsets, keyLengths );
+        int size = 0;
+        for (int length : keyLengths) {
+            size += 4 + Math.max( length, 0 );
+        }
+        byte[] data = new byte[size];
+        int pos = 0;
+        for (int i = 0; i < keyColumns.length; i++) {
+            int length = keyLengths[i];
+            data[pos++] = (byte) (length >>> 24);
+            data[pos++] = (byte) (length >>> 16);
+            data[pos++] = (byte) (length >>> 8);
+            data[pos++] = (byte) length;
+            if (length > 0) {
+                row.getBytes( keyOffsets[i], data, pos, length );
+                if (keyIgnoreCase[i]) {
+                    for (int j = pos; j < pos + length; j++) {
+                        if (data[j] >= 'A' && data[j] <= 'Z') {
+                            data[j] += 32;
+                        }
+                    }
+                }
+                pos += length;
+            }
+        }
+        return new GroupKey( data );
+    }
+
+    /**
+     * 释放溢写文件。
+     */
+    private static void releaseFiles(SpillFile[] files) {
+        if (files == null) {
+            return;
+        }
+        for (int i = 0; i < files.length; i++) {
+            if (files[i] != null) {
+                files[i].release();
+                files[i] = null;
+            }
+        }
+    }
+
+    /**
+     * 分组键，FNV-1a 哈希。
+     */
+    private static final class GroupKey {
+
+        /**
+         * 编码后的分组键。
+         */
+        private final byte[] data;
+
+        /**
+         * 哈希值。
+         */
+        private final int hash;
+
+        GroupKey(byte[] data) {
+            this.data = data;
+            int h = 0x811C9DC5;
+            for (byte b : data) {
+                h = (h ^ (b & 0xFF)) * 0x01000193;
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof GroupKey && Arrays.equals( data, ((GroupKey) obj).data );
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package uw.mydb.proxy.server.merge;
+
+import io.netty.buffer.ByteBuf;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 文本协议行数据包（ResultSetRow）的按需解码工具，全静态方法。
+ * <p>
+ * 行数据包的每一列都是 LenEnc 字符串（0xFB 表示 NULL）。多节点归并只关心少量列（排序键、聚合列），
+ * 因此这里直接按偏移读取原始 ByteBuf，不构造 {@link uw.mydb.proxy.protocol.packet.ResultSetRowDataPacket}，
+ * 也不改动 readerIndex，解码后的行包仍可原样转发给客户端。
+ * <p>
+ * 传入的 buf 均为完整包（4 字节包头 + payload），readerIndex 位于包头起始处。
+ *
+ * @author axeon
+ */
+public class RowDataReader {
+
+    /**
+     * MySQL 包头长度（3 字节长度 + 1 字节 packetId）。
+     */
+    public static final int PACKET_HEADER_SIZE = 4;
+
+    /**
+     * LenEnc 中表示 NULL 的首字节。
+     */
+    private static final int LEN_ENC_NULL = 0xFB;
+
+    /**
+     * 可以安全按 long 解析的最大十进制位数（含符号位也不会溢出）。
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    /**
+     * 定位指定列的值区间。一次顺序扫描，扫到最大列号即停止。
+     *
+     * @param row           行数据包
+     * @param columnIndexes 需要定位的列号（0 起始，可重复、无序）
+     * @param offsets       输出：值起始偏移（绝对 index）
+     * @param lengths       输出：值长度，-1 表示 NULL；列号越界时同样为 -1
+     */
+    public static void locateColumns(ByteBuf row, int[] columnIndexes, int[] offsets, int[] lengths) {
+        int maxIndex = -1;
+        for (int i = 0; i < columnIndexes.length; i++) {
+            lengths[i] = -1;
+            offsets[i] = 0;
+            if (columnIndexes[i] > maxIndex) {
+                maxIndex = columnIndexes[i];
+            }
+        }
+        int offset = row.readerIndex() + PACKET_HEADER_SIZE;
+        int end = row.writerIndex();
+        for (int col = 0; col <= maxIndex && offset < end; col++) {
+            int first = row.getUnsignedByte( offset );
+            int headerSize;
+            long length;
+            if (first < LEN_ENC_NULL) {
+                headerSize = 1;
+                length = first;
+            } else if (first == LEN_ENC_NULL) {
+                headerSize = 1;
+                length = -1;
+            } else if (first == 0xFC) {
+                headerSize = 3;
+                length = row.getUnsignedShortLE( offset + 1 );
+            } else if (first == 0xFD) {
+                headerSize = 4;
+                length = row.getUnsignedMediumLE( offset + 1 );
+            } else {
+                headerSize = 9;
+                length = row.getLongLE( offset + 1 );
+            }
+            int valueStart = offset + headerSize;
+            for (int i = 0; i < columnIndexes.length; i++) {
+                if (columnIndexes[i] == col) {
+                    offsets[i] = valueStart;
+                    lengths[i] = (int) length;
+                }
+            }
+            offset = valueStart + (int) Math.max( length, 0 );
+        }
+    }
+
+    /**
+     * 值长度是否可以直接按 long 解析而不溢出。
+     *
+     * @param length 值长度
+     * @return true 表示可用 {@link #parseLong}
+     */
+    public static boolean isLongValue(int length) {
+        return length > 0 && length <= MAX_LONG_DIGITS;
+    }
+
+    /**
+     * 解析十进制整数文本（可带符号），不产生对象分配。
+     *
+     * @param buf    行数据包
+     * @param offset 值起始偏移
+     * @param length 值长度（需满足 {@link #isLongValue}）
+     * @return 整数值
+     */
+    public static long parseLong(ByteBuf buf, int offset, int length) {
+        int pos = offset;
+        int end = offset + length;
+        boolean negative = false;
+        byte first = buf.getByte( pos );
+        if (first == '-') {
+            negative = true;
+            pos++;
+        } else if (first == '+') {
+            pos++;
+        }
+        long value = 0;
+        for (; pos < end; pos++) {
+            value = value * 10 + (buf.getByte( pos ) - '0');
+        }
+        return negative ? -value : value;
+    }
+
+    /**
+     * 解析十进制数值文本（DECIMAL/FLOAT/DOUBLE 及超长整数）。
+     *
+     * @param buf    行数据包
+     * @param offset 值起始偏移
+     * @param length 值长度
+     * @return 数值
+     */
+    public static BigDecimal parseDecimal(ByteBuf buf, int offset, int length) {
+        return new BigDecimal( buf.toString( offset, length, StandardCharsets.US_ASCII ) );
+    }
+
+    /**
+     * 按无符号字节序比较两个值，可选忽略 ASCII 大小写（近似 MySQL 的 *_ci 排序规则，多字节字符按编码字节序比较）。
+     *
+     * @param a          值 a 所在 buf
+     * @param aOffset    值 a 偏移
+     * @param aLength    值 a 长度
+     * @param b          值 b 所在 buf
+     * @param bOffset    值 b 偏移
+     * @param bLength    值 b 长度
+     * @param ignoreCase 是否忽略 ASCII 大小写
+     * @return 比较结果
+     */
+    public static int compareBytes(ByteBuf a, int aOffset, int aLength, ByteBuf b, int bOffset, int bLength, boolean ignoreCase) {
+        int len = Math.min( aLength, bLength );
+        for (int i = 0; i < len; i++) {
+            int ca = a.getUnsignedByte( aOffset + i );
+            int cb = b.getUnsignedByte( bOffset + i );
+            if (ignoreCase) {
+                if (ca >= 'A' && ca <= 'Z') {
+                    ca += 32;
+                }
+                if (cb >= 'A' && cb <= 'Z') {
+                    cb += 32;
+                }
+            }
+            if (ca != cb) {
+                return ca - cb;
+            }
+        }
+        return aLength - bLength;
+    }
+
+    /**
+     * 比较已拷贝出的值与行包中的值，规则同 {@link #compareBytes(ByteBuf, int, int, ByteBuf, int, int, boolean)}。
+     *
+     * @param a          值 a
+     * @param b          值 b 所在 buf
+     * @param bOffset    值 b 偏移
+     * @param bLength    值 b 长度
+     * @param ignoreCase 是否忽略 ASCII 大小写
+     * @return 比较结果
+     */
+    public static int compareBytes(byte[] a, ByteBuf b, int bOffset, int bLength, boolean ignoreCase) {
+        int len = Math.min( a.length, bLength );
+        for (int i = 0; i < len; i++) {
+            int ca = a[i] & 0xFF;
+            int cb = b.getUnsignedByte( bOffset + i );
+            if (ignoreCase) {
+                if (ca >= 'A' && ca <= 'Z') {
+                    ca += 32;
+                }
+                if (cb >= 'A' && cb <= 'Z') {
+                    cb += 32;
+                }
+            }
+            if (ca != cb) {
+                return ca - cb;
+            }
+        }
+        return a.length - bLength;
+    }
+
+    /**
+     * 拷贝出值的字节。
+     *
+     * @param buf    行数据包
+     * @param offset 值起始偏移
+     * @param length 值长度，-1 表示 NULL
+     * @return 值字节，NULL 返回 null
+     */
+    public static byte[] copyValue(ByteBuf buf, int offset, int length) {
+        if (length < 0) {
+            return null;
+        }
+        byte[] data = new byte[length];
+        buf.getBytes( offset, data );
+        return data;
+    }
+
+}
@@ -0,0 +1,167 @@
+package uw.mydb.proxy.server.merge;
+
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.internal.PlatformDependent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 多节点结果的事件汇聚器：每个节点一个单生产者单消费者无锁队列，由该节点后端 session 所在的 EventLoop 写入，
+ * 在单一消费者（前端 channel 的 EventLoop）上按节点轮转批量取出并交给 {@link Handler} 处理。
+ * <p>
+ * 唤醒协议：生产者 offer 后递增 {@link #wip}，从 0 变为 1 的一方向消费者提交一次 drain；drain 处理完当前可见的事件后
+ * 扣减本轮观察到的计数，期间又有新事件则继续，保证不丢唤醒且同一时刻只有一个 drain 在运行。
+ * 消费者线程上的处理因此天然串行，无需加锁；各节点之间也不再互相阻塞后端 EventLoop。
+ * 单次 drain 处理的事件数超过 {@link #MAX_EVENTS_PER_RUN} 时让出 EventLoop，重新提交自身继续。
+ * <p>
+ * 每个节点只能有一个生产者线程（后端 channel 绑定单一 EventLoop，天然满足）。
+ *
+ * @author axeon
+ */
+public class ShardEventDrainer implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger( ShardEventDrainer.class );
+
+    /**
+     * 每个节点每轮最多取出的事件数，保证节点之间轮转公平。
+     */
+    private static final int DRAIN_BATCH = 64;
+
+    /**
+     * 单次 drain 最多处理的事件数，超过后让出 EventLoop。
+     */
+    private static final int MAX_EVENTS_PER_RUN = 4096;
+
+    /**
+     * 各节点的事件队列，下标即节点序号。
+     */
+    private final Queue<Object>[] queues;
+
+    /**
+     * 各节点已写入的事件数，只由该节点的生产者线程读写。
+     */
+    private final long[] offered;
+
+    /**
+     * 各节点已处理的事件数，由消费者写入、生产者读取。
+     */
+    private final AtomicLongArray consumed;
+
+    /**
+     * 消费者执行器（前端 channel 的 EventLoop）。
+     */
+    private final EventExecutor executor;
+
+    /**
+     * 事件处理器。
+     */
+    private final Handler handler;
+
+    /**
+     * 待处理的唤醒计数。
+     */
+    private final AtomicInteger wip = new AtomicInteger();
+
+    /**
+     * @param shardCount 节点数
+     * @param executor   消费者执行器
+     * @param handler    事件处理器
+     */
+    @SuppressWarnings("unchecked")
+    public ShardEventDrainer(int shardCount, EventExecutor executor, Handler handler) {
+        this.queues = new Queue[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            queues[i] = PlatformDependent.newSpscQueue();
+        }
+        this.offered = new long[shardCount];
+        this.consumed = new AtomicLongArray( shardCount );
+        this.executor = executor;
+        this.handler = handler;
+    }
+
+    /**
+     * 写入一个事件，只能由该节点的生产者线程调用。
+     *
+     * @param shard 节点序号
+     * @param event 事件（所有权转移给处理器）
+     */
+    public void offer(int shard, Object event) {
+        queues[shard].offer( event );
+        offered[shard]++;
+        if (wip.getAndIncrement() == 0) {
+            executor.execute( this );
+        }
+    }
+
+    /**
+     * 节点队列中尚未处理的事件数，只能由该节点的生产者线程调用。
+     *
+     * @param shard 节点序号
+     * @return 积压事件数
+     */
+    public long backlog(int shard) {
+        return offered[shard] - consumed.get( shard );
+    }
+
+    /**
+     * 消费者：按节点轮转取出事件处理，直至没有新的唤醒。
+     */
+    @Override
+    public void run() {
+        int missed = wip.get();
+        int processed = 0;
+        for (; ; ) {
+            boolean more;
+            do {
+                more = false;
+                for (int shard = 0; shard < queues.length; shard++) {
+                    Queue<Object> queue = queues[shard];
+                    int count = 0;
+                    Object event;
+                    while (count < DRAIN_BATCH && (event = queue.poll()) != null) {
+                        count++;
+                        try {
+                            handler.onEvent( shard, event );
+                        } catch (Throwable e) {
+                            logger.error( "处理节点[{}]事件出错: {}", shard, e.getMessage(), e );
+                        }
+                    }
+                    if (count > 0) {
+                        consumed.lazySet( shard, consumed.get( shard ) + count );
+                        processed += count;
+                        if (count == DRAIN_BATCH) {
+                            more = true;
+                        }
+                    }
+                }
+                if (more && processed >= MAX_EVENTS_PER_RUN) {
+                    //让出EventLoop，wip保持非0，生产者不会重复提交。
+                    executor.execute( this );
+                    return;
+                }
+            } while (more);
+            missed = wip.addAndGet( -missed );
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 事件处理器，在消费者线程上串行调用。
+     */
+    public interface Handler {
+
+        /**
+         * 处理一个节点事件。
+         *
+         * @param shard 节点序号
+         * @param event 事件（所有权转移）
+         */
+        void onEvent(int shard, Object event);
+    }
+}
@@ -0,0 +1,226 @@
+package uw.mydb.proxy.server.merge;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayDeque;
+import java.util.PriorityQueue;
+
+/**
+ * 多节点行数据的流式归并器。
+ * <p>
+ * 每个节点一条行队列，各节点返回的行本身已按 ORDER BY 有序（排序随 SQL 下推到各节点执行），
+ * 归并时只需用一个小顶堆维护各节点的队首行：
+ * <ul>
+ *   <li>有序模式（sortKeys 非空）：只有当所有未结束节点都有队首行时才能弹出堆顶，保证全局有序；
+ *       队首行入堆时只解码排序键所在列（{@link RowDataReader}），行包本身不做拷贝，弹出后原样转发。</li>
+ *   <li>无序模式（sortKeys 为 null）：按节点轮询弹出，用作字段定义写完前的暂存，或无法有序归并时直接透传。</li>
+ * </ul>
+ * 内存占用由调用方通过 {@link #getBufferedRows} 感知：某节点积压过多时暂停其后端读取，
+ * 使缓冲行数与节点数成正比而与结果集大小无关。
+ * <p>
+ * 非线程安全：由 ProxyMultiNodeHandler 在前端 EventLoop 上串行调用。放入的 ByteBuf 所有权转移给归并器，
+ * {@link #poll} 取出后所有权转移给调用方，{@link #release} 释放剩余缓冲。
+ *
+ * @author axeon
+ */
+public class ShardRowMerger {
+
+    /**
+     * 排序键，null 表示无序模式。
+     */
+    private SortKey[] sortKeys;
+
+    /**
+     * 排序键对应的列号，用于一次扫描定位。
+     */
+    private int[] keyColumns;
+
+    /**
+     * 各节点的待归并行队列（不含已入堆的队首行）。
+     */
+    private final ArrayDeque<ByteBuf>[] shardQueues;
+
+    /**
+     * 各节点已入堆的队首行，null 表示该节点当前没有可比较的行。
+     */
+    private final SortRow[] heads;
+
+    /**
+     * 各节点是否已结束（收到结果集结束包、出错或被取消）。
+     */
+    private final boolean[] finished;
+
+    /**
+     * 各节点缓冲行数（含队首行）。
+     */
+    private final int[] bufferedRows;
+
+    /**
+     * 队首行小顶堆（有序模式）。
+     */
+    private PriorityQueue<SortRow> heap;
+
+    /**
+     * 未结束且没有队首行的节点数，大于 0 时有序模式不能输出。
+     */
+    private int starving;
+
+    /**
+     * 无序模式的轮询游标。
+     */
+    private int cursor;
+
+    /**
+     * 构造无序模式的归并器，字段定义解析完成后可通过 {@link #sortBy} 切换为有序模式。
+     *
+     * @param shardCount 节点数
+     */
+    @SuppressWarnings("unchecked")
+    public ShardRowMerger(int shardCount) {
+        this.shardQueues = new ArrayDeque[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shardQueues[i] = new ArrayDeque<>();
+        }
+        this.heads = new SortRow[shardCount];
+        this.finished = new boolean[shardCount];
+        this.bufferedRows = new int[shardCount];
+    }
+
+    /**
+     * 切换为有序模式。必须在首次 {@link #poll} 之前调用，已暂存的行按节点顺序重新入堆。
+     *
+     * @param sortKeys 排序键
+     */
+    public void sortBy(SortKey[] sortKeys) {
+        this.sortKeys = sortKeys;
+        this.keyColumns = new int[sortKeys.length];
+        for (int i = 0; i < sortKeys.length; i++) {
+            keyColumns[i] = sortKeys[i].getColumnIndex();
+        }
+        this.heap = new PriorityQueue<>( shardQueues.length, (a, b) -> SortRow.compare( this.sortKeys, a, b ) );
+        this.starving = 0;
+        for (int shard = 0; shard < shardQueues.length; shard++) {
+            ByteBuf row = shardQueues[shard].poll();
+            if (row != null) {
+                pushHead( shard, row );
+            } else if (!finished[shard]) {
+                starving++;
+            }
+        }
+    }
+
+    /**
+     * 是否为有序模式。
+     *
+     * @return true 表示按排序键归并
+     */
+    public boolean isSorted() {
+        return sortKeys != null;
+    }
+
+    /**
+     * 放入一行。
+     *
+     * @param shard 节点序号
+     * @param row   行数据包（所有权转移给归并器）
+     */
+    public void offer(int shard, ByteBuf row) {
+        bufferedRows[shard]++;
+        if (heap != null && heads[shard] == null) {
+            if (!finished[shard]) {
+                starving--;
+            }
+            pushHead( shard, row );
+        } else {
+            shardQueues[shard].add( row );
+        }
+    }
+
+    /**
+     * 标记节点结束。之后该节点不再参与"所有节点都有队首行"的判断。
+     *
+     * @param shard 节点序号
+     */
+    public void finish(int shard) {
+        if (finished[shard]) {
+            return;
+        }
+        finished[shard] = true;
+        if (heap != null && heads[shard] == null) {
+            starving--;
+        }
+    }
+
+    /**
+     * 取出下一行可输出的行。
+     *
+     * @return 行数据包（所有权转移给调用方），暂无可输出行时返回 null
+     */
+    public ByteBuf poll() {
+        if (heap == null) {
+            for (int i = 0; i < shardQueues.length; i++) {
+                int shard = (cursor + i) % shardQueues.length;
+                ByteBuf row = shardQueues[shard].poll();
+                if (row != null) {
+                    cursor = shard;
+                    bufferedRows[shard]--;
+                    return row;
+                }
+            }
+            return null;
+        }
+        if (starving > 0 || heap.isEmpty()) {
+            return null;
+        }
+        SortRow entry = heap.poll();
+        int shard = entry.source;
+        ByteBuf row = entry.row;
+        heads[shard] = null;
+        bufferedRows[shard]--;
+        ByteBuf next = shardQueues[shard].poll();
+        if (next != null) {
+            pushHead( shard, next );
+        } else if (!finished[shard]) {
+            starving++;
+        }
+        return row;
+    }
+
+    /**
+     * @param shard 节点序号
+     * @return 该节点缓冲行数
+     */
+    public int getBufferedRows(int shard) {
+        return bufferedRows[shard];
+    }
+
+    /**
+     * 释放全部缓冲行，用于异常、超时与取消。
+     */
+    public void release() {
+        for (int i = 0; i < shardQueues.length; i++) {
+            ByteBuf row;
+            while ((row = shardQueues[i].poll()) != null) {
+                ReferenceCountUtil.safeRelease( row );
+            }
+            if (heads[i] != null) {
+                ReferenceCountUtil.safeRelease( heads[i].row );
+                heads[i] = null;
+            }
+            bufferedRows[i] = 0;
+        }
+        if (heap != null) {
+            heap.clear();
+        }
+    }
+
+    /**
+     * 解码队首行的排序键并入堆。
+     */
+    private void pushHead(int shard, ByteBuf row) {
+        SortRow entry = new SortRow( shard, row, sortKeys, keyColumns );
+        heads[shard] = entry;
+        heap.add( entry );
+    }
+}
@@ -0,0 +1,192 @@
+package uw.mydb.proxy.server.merge;
+
+import uw.mydb.proxy.protocol.packet.ResultSetFieldPacket;
+import uw.mydb.proxy.sqlparse.SqlParseResult;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 多节点归并使用的排序键：把 SQL 中的 ORDER BY 项解析为结果集列号 + 比较方式。
+ * <p>
+ * 列号通过首个节点返回的字段定义包匹配：列序号直接定位；列名依次与字段别名（name）、原始列名（orgName）
+ * 忽略大小写比较，带表限定时优先匹配表名一致的列。比较方式由字段类型决定：整型按 long、
+ * 定点/浮点按 BigDecimal、二进制字符集按字节序、其余文本按忽略 ASCII 大小写的字节序。
+ *
+ * @author axeon
+ */
+public class SortKey {
+
+    /**
+     * 比较方式：整数（TINYINT ~ BIGINT、YEAR）。
+     */
+    public static final int VALUE_LONG = 1;
+
+    /**
+     * 比较方式：定点/浮点数（DECIMAL、FLOAT、DOUBLE）。
+     */
+    public static final int VALUE_DECIMAL = 2;
+
+    /**
+     * 比较方式：文本，忽略 ASCII 大小写。
+     */
+    public static final int VALUE_TEXT = 3;
+
+    /**
+     * 比较方式：二进制字节序（binary 字符集、日期时间等定长格式）。
+     */
+    public static final int VALUE_BINARY = 4;
+
+    /**
+     * binary 字符集编号。
+     */
+    private static final int CHARSET_BINARY = 63;
+
+    /**
+     * 结果集列号（0 起始）。
+     */
+    private final int columnIndex;
+
+    /**
+     * 是否降序。
+     */
+    private final boolean desc;
+
+    /**
+     * 比较方式（VALUE_*）。
+     */
+    private final int valueType;
+
+    /**
+     * @param columnIndex 结果集列号（0 起始）
+     * @param desc        是否降序
+     * @param valueType   比较方式
+     */
+    public SortKey(int columnIndex, boolean desc, int valueType) {
+        this.columnIndex = columnIndex;
+        this.desc = desc;
+        this.valueType = valueType;
+    }
+
+    /**
+     * 根据 ORDER BY 项与字段定义解析排序键。
+     *
+     * @param orderByList ORDER BY 项
+     * @param fieldList   首个节点的字段定义包
+     * @return 排序键数组；任一项无法匹配到结果列时返回 null（放弃有序归并）
+     */
+    public static SortKey[] resolve(List<SqlParseResult.OrderByItem> orderByList, List<ResultSetFieldPacket> fieldList) {
+        if (orderByList == null || orderByList.isEmpty() || fieldList == null) {
+            return null;
+        }
+        SortKey[] keys = new SortKey[orderByList.size()];
+        for (int i = 0; i < keys.length; i++) {
+            SqlParseResult.OrderByItem item = orderByList.get( i );
+            int index = findColumnIndex( item, fieldList );
+            if (index < 0) {
+                return null;
+            }
+            keys[i] = new SortKey( index, item.isDesc(), guessValueType( fieldList.get( index ) ) );
+        }
+        return keys;
+    }
+
+    /**
+     * 查找 ORDER BY 项对应的结果列号。
+     *
+     * @param item      ORDER BY 项
+     * @param fieldList 字段定义包
+     * @return 列号，-1 表示未匹配
+     */
+    static int findColumnIndex(SqlParseResult.OrderByItem item, List<ResultSetFieldPacket> fieldList) {
+        if (item.getColumnName() == null) {
+            int index = item.getColumnIndex() - 1;
+            return index >= 0 && index < fieldList.size() ? index : -1;
+        }
+        //依次按 别名+表限定、原始列名+表限定、别名、原始列名 匹配；分表改写后字段的表名为物理表名，表限定可能匹配不上。
+        for (int pass = 0; pass < 4; pass++) {
+            boolean checkTable = pass < 2;
+            for (int i = 0; i < fieldList.size(); i++) {
+                ResultSetFieldPacket field = fieldList.get( i );
+                byte[] name = pass % 2 == 0 ? field.name : field.orgName;
+                if (matchName( item.getColumnName(), name ) && (!checkTable || matchTable( item.getTableName(), field ))) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 根据字段类型推断比较方式。
+     *
+     * @param field 字段定义包
+     * @return 比较方式
+     */
+    static int guessValueType(ResultSetFieldPacket field) {
+        switch (field.type) {
+            //TINY, SHORT, LONG, LONGLONG, INT24, YEAR
+            case 1:
+            case 2:
+            case 3:
+            case 8:
+            case 9:
+            case 13:
+                return VALUE_LONG;
+            //DECIMAL, FLOAT, DOUBLE, NEWDECIMAL
+            case 0:
+            case 4:
+            case 5:
+            case 246:
+                return VALUE_DECIMAL;
+            //TIMESTAMP, DATE, TIME, DATETIME, NEWDATE, BIT
+            case 7:
+            case 10:
+            case 11:
+            case 12:
+            case 14:
+            case 16:
+                return VALUE_BINARY;
+            default:
+                return field.charsetIndex == CHARSET_BINARY ? VALUE_BINARY : VALUE_TEXT;
+        }
+    }
+
+    /**
+     * 名称忽略大小写比较。
+     */
+    private static boolean matchName(String name, byte[] data) {
+        return data != null && name.equalsIgnoreCase( new String( data, StandardCharsets.UTF_8 ) );
+    }
+
+    /**
+     * 表限定校验：无限定时直接通过，否则匹配字段的表别名或原始表名。
+     */
+    private static boolean matchTable(String tableName, ResultSetFieldPacket field) {
+        if (tableName == null) {
+            return true;
+        }
+        return matchName( tableName, field.table ) || matchName( tableName, field.orgTable );
+    }
+
+    /**
+     * @return 结果集列号（0 起始）
+     */
+    public int getColumnIndex() {
+        return columnIndex;
+    }
+
+    /**
+     * @return 是否降序
+     */
+    public boolean isDesc() {
+        return desc;
+    }
+
+    /**
+     * @return 比较方式（VALUE_*）
+     */
+    public int getValueType() {
+        return valueType;
+    }
+}
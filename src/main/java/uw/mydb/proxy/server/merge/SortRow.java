@@ -0,0 +1,120 @@
+package uw.mydb.proxy.server.merge;
+
+import io.netty.buffer.ByteBuf;
+
+import java.math.BigDecimal;
+
+/**
+ * 已解码排序键的行，供 {@link ShardRowMerger} 的堆归并与 {@link GroupAggregator} 的分组结果排序共用。
+ * 行包本身不做拷贝，只记录排序键所在列的偏移与数值。
+ *
+ * @author axeon
+ */
+final class SortRow {
+
+    /**
+     * 来源序号（节点序号或溢写段序号），排序键相等时按它保证稳定。
+     */
+    final int source;
+
+    /**
+     * 行数据包。
+     */
+    final ByteBuf row;
+
+    /**
+     * 排序键值的偏移。
+     */
+    private final int[] offsets;
+
+    /**
+     * 排序键值的长度，-1 表示 NULL。
+     */
+    private final int[] lengths;
+
+    /**
+     * 整数排序键的值。
+     */
+    private final long[] longs;
+
+    /**
+     * 定点/浮点/超长整数排序键的值，null 表示使用 {@link #longs}。
+     */
+    private final BigDecimal[] decimals;
+
+    /**
+     * 解码行的排序键。
+     *
+     * @param source     来源序号
+     * @param row        行数据包
+     * @param sortKeys   排序键
+     * @param keyColumns 排序键对应的列号
+     */
+    SortRow(int source, ByteBuf row, SortKey[] sortKeys, int[] keyColumns) {
+        this.source = source;
+        this.row = row;
+        this.offsets = new int[sortKeys.length];
+        this.lengths = new int[sortKeys.length];
+        this.longs = new long[sortKeys.length];
+        this.decimals = new BigDecimal[sortKeys.length];
+        RowDataReader.locateColumns( row, keyColumns, offsets, lengths );
+        for (int i = 0; i < sortKeys.length; i++) {
+            int length = lengths[i];
+            if (length <= 0) {
+                continue;
+            }
+            int valueType = sortKeys[i].getValueType();
+            if (valueType == SortKey.VALUE_LONG && RowDataReader.isLongValue( length )) {
+                longs[i] = RowDataReader.parseLong( row, offsets[i], length );
+            } else if (valueType == SortKey.VALUE_LONG || valueType == SortKey.VALUE_DECIMAL) {
+                decimals[i] = RowDataReader.parseDecimal( row, offsets[i], length );
+            }
+        }
+    }
+
+    /**
+     * 按排序键比较两行。NULL 视为最小值（与 MySQL 一致），相等时按来源序号保证稳定。
+     *
+     * @param sortKeys 排序键
+     * @param a        行 a
+     * @param b        行 b
+     * @return 比较结果
+     */
+    static int compare(SortKey[] sortKeys, SortRow a, SortRow b) {
+        for (int i = 0; i < sortKeys.length; i++) {
+            int result = compareValue( sortKeys[i].getValueType(), a, b, i );
+            if (result != 0) {
+                return sortKeys[i].isDesc() ? -result : result;
+            }
+        }
+        return Integer.compare( a.source, b.source );
+    }
+
+    /**
+     * 比较单个排序键。
+     */
+    private static int compareValue(int valueType, SortRow a, SortRow b, int i) {
+        int aLength = a.lengths[i];
+        int bLength = b.lengths[i];
+        if (aLength < 0 || bLength < 0) {
+            return Boolean.compare( aLength >= 0, bLength >= 0 );
+        }
+        switch (valueType) {
+            case SortKey.VALUE_LONG:
+            case SortKey.VALUE_DECIMAL:
+                if (a.decimals[i] == null && b.decimals[i] == null) {
+                    return Long.compare( a.longs[i], b.longs[i] );
+                }
+                return a.decimalValue( i ).compareTo( b.decimalValue( i ) );
+            default:
+                return RowDataReader.compareBytes( a.row, a.offsets[i], aLength, b.row, b.offsets[i], bLength, valueType == SortKey.VALUE_TEXT );
+        }
+    }
+
+    /**
+     * 数值排序键统一转为 BigDecimal 比较（仅在混合了超长整数时使用）。
+     */
+    private BigDecimal decimalValue(int i) {
+        return decimals[i] != null ? decimals[i] : BigDecimal.valueOf( longs[i] );
+    }
+}
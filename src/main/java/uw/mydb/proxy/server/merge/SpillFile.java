@@ -0,0 +1,168 @@
+package uw.mydb.proxy.server.merge;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.internal.PlatformDependent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 行数据包的溢写文件：追加写入内存映射的临时文件，写完后按写入顺序读回。
+ * <p>
+ * 文件按段（默认 8MB）映射，每条记录为 4 字节长度 + 完整行包，记录不跨段。映射内存由操作系统页缓存承载，
+ * 不占用 JVM 堆与 Netty 直接内存，内存紧张时可被换出。{@link #release} 时解除映射并删除文件。
+ * <p>
+ * 除多节点合并溢写外，也用于单节点结果集转存（{@code ProxySession}），此时记录的是后端原样返回的各类包。
+ * <p>
+ * 非线程安全。读出的行是映射内存的切片，只在 {@link #release} 之前有效，需要跨越释放时必须拷贝。
+ *
+ * @author axeon
+ */
+public class SpillFile {
+
+    private static final Logger logger = LoggerFactory.getLogger( SpillFile.class );
+
+    /**
+     * 单个映射段大小。
+     */
+    private static final int SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * 记录长度前缀的字节数。
+     */
+    private static final int RECORD_HEADER_SIZE = 4;
+
+    /**
+     * 临时文件路径。
+     */
+    private final Path path;
+
+    /**
+     * 文件通道。
+     */
+    private final FileChannel channel;
+
+    /**
+     * 已映射的段，position 即该段已写入的字节数。
+     */
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    /**
+     * 已映射的文件长度。
+     */
+    private long mappedSize;
+
+    /**
+     * 已写入的行数。
+     */
+    private long rows;
+
+    /**
+     * 读游标：段序号。
+     */
+    private int readSegment;
+
+    /**
+     * 读游标：当前段的只读视图。
+     */
+    private ByteBuf readBuf;
+
+    /**
+     * 创建溢写文件。
+     *
+     * @param dir 临时文件目录
+     * @throws IOException 创建失败
+     */
+    public SpillFile(Path dir) throws IOException {
+        this.path = Files.createTempFile( dir, "mydb-spill-", ".tmp" );
+        this.channel = FileChannel.open( path, StandardOpenOption.READ, StandardOpenOption.WRITE );
+    }
+
+    /**
+     * 追加一行。
+     *
+     * @param row 行数据包（不转移所有权）
+     * @throws IOException 映射失败
+     */
+    public void append(ByteBuf row) throws IOException {
+        int length = row.readableBytes();
+        MappedByteBuffer segment = segments.isEmpty() ? null : segments.get( segments.size() - 1 );
+        if (segment == null || segment.remaining() < RECORD_HEADER_SIZE + length) {
+            int size = Math.max( SEGMENT_SIZE, RECORD_HEADER_SIZE + length );
+            segment = channel.map( FileChannel.MapMode.READ_WRITE, mappedSize, size );
+            mappedSize += size;
+            segments.add( segment );
+        }
+        segment.putInt( length );
+        int limit = segment.limit();
+        segment.limit( segment.position() + length );
+        row.getBytes( row.readerIndex(), segment );
+        segment.limit( limit );
+        rows++;
+    }
+
+    /**
+     * 按写入顺序读出下一行，首次调用前必须写完全部数据。
+     *
+     * @return 行数据包切片（不需要释放，{@link #release} 后失效），读完返回 null
+     */
+    public ByteBuf next() {
+        while (readBuf == null || !readBuf.isReadable()) {
+            if (readSegment >= segments.size()) {
+                return null;
+            }
+            ByteBuffer view = segments.get( readSegment++ ).duplicate();
+            view.flip();
+            readBuf = Unpooled.wrappedBuffer( view );
+        }
+        int length = readBuf.readInt();
+        ByteBuf row = readBuf.slice( readBuf.readerIndex(), length );
+        readBuf.skipBytes( length );
+        return row;
+    }
+
+    /**
+     * @return 已写入的行数
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * @return 已映射的文件长度
+     */
+    public long getMappedSize() {
+        return mappedSize;
+    }
+
+    /**
+     * 解除映射并删除临时文件。
+     */
+    public void release() {
+        readBuf = null;
+        for (MappedByteBuffer segment : segments) {
+            PlatformDependent.freeDirectBuffer( segment );
+        }
+        segments.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn( "关闭溢写文件失败: {}", e.getMessage() );
+        }
+        try {
+            Files.deleteIfExists( path );
+        } catch (IOException e) {
+            logger.warn( "删除溢写文件[{}]失败: {}", path, e.getMessage() );
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package uw.mydb.proxy.sqlparse;
+
+import uw.mydb.proxy.sqlparse.parser.ByteLexer;
+import uw.mydb.proxy.sqlparse.parser.FnvHash;
+import uw.mydb.proxy.sqlparse.parser.SqlLexer;
+import uw.mydb.proxy.sqlparse.parser.Token;
+
+import java.util.Arrays;
+
+/**
+ * SQL 指纹：把字面量替换为占位后的 token 序列的 fnv1a_64 哈希，与 {@link uw.mydb.proxy.sqlparse.parser.Lexer#parameterize} 的归一化规则一致。
+ * <p>
+ * 一次完整扫描同时记录每个 token 的起止位置与字面量所在的 token 序号，
+ * 命中 {@link SqlPlanCache} 时据此把缓存的解析计划（按 token 序号记录的切分点、按字面量序号记录的 routeKey 取值）映射回当前 SQL。
+ * <p>
+ * 参与哈希的内容：token 类型；标识符、关键字与 HINT 的原文（区分大小写，表名、hint 路由都取自原文）；末尾是否有空白（影响 isEOF 的判定时机）；lexer 实现类型。
+ * 注释只按类型参与，内容不影响解析。
+ * <p>
+ * 非线程安全，随 {@link SqlParser} 单次使用。
+ *
+ * @author axeon
+ */
+public class SqlFingerprint {
+
+    /**
+     * 按 token 序号标记是否为参数化的字面量。
+     */
+    private static final boolean[] LITERAL_TOKENS = new boolean[Token.values().length];
+
+    /**
+     * 按 token 序号标记原文是否参与哈希：标识符、HINT 与关键字。
+     */
+    private static final boolean[] TEXT_TOKENS = new boolean[Token.values().length];
+
+    static {
+        for (Token token : new Token[]{Token.LITERAL_INT, Token.LITERAL_FLOAT, Token.LITERAL_HEX, Token.LITERAL_CHARS, Token.LITERAL_NCHARS, Token.LITERAL_ALIAS,
+                Token.VARIANT}) {
+            LITERAL_TOKENS[token.ordinal()] = true;
+        }
+        for (Token token : Token.values()) {
+            TEXT_TOKENS[token.ordinal()] = token == Token.IDENTIFIER || token == Token.HINT || (token.name != null && Character.isLetter( token.name.charAt( 0 ) ));
+        }
+    }
+
+    /**
+     * 指纹哈希。
+     */
+    private long hash;
+
+    /**
+     * 各 token 的起始位置（lexer 的 currentMark），最后一项为 EOF。
+     */
+    private int[] marks = new int[64];
+
+    /**
+     * 各 token 的结束位置（lexer 的 currentPos），最后一项为 EOF。
+     */
+    private int[] ends = new int[64];
+
+    /**
+     * token 数（含末尾的 EOF）。
+     */
+    private int tokenCount;
+
+    /**
+     * 各字面量所在的 token 序号。
+     */
+    private int[] literalTokens = new int[16];
+
+    /**
+     * 字面量个数。
+     */
+    private int literalCount;
+
+    /**
+     * 扫描整条 SQL 计算指纹，扫描结束后 lexer 停在 EOF，调用方需自行 reset。
+     *
+     * @param lexer 词法分析器（从头开始）
+     * @return 是否可以使用指纹：出现词法错误或不允许的注释时返回 false
+     */
+    public boolean scan(SqlLexer lexer) {
+        long h = FnvHash.BASIC;
+        try {
+            for (; ; ) {
+                lexer.nextToken();
+                Token token = lexer.token();
+                if (token == Token.ERROR || (token != Token.EOF && tokenCount > 0 && lexer.currentPos() <= ends[tokenCount - 1])) {
+                    //词法错误，或扫描没有前进。
+                    return false;
+                }
+                addToken( lexer.currentMark(), lexer.currentPos() );
+                h ^= token.ordinal();
+                h *= FnvHash.PRIME;
+                if (token == Token.EOF) {
+                    break;
+                }
+                if (LITERAL_TOKENS[token.ordinal()]) {
+                    addLiteral( tokenCount - 1 );
+                } else if (TEXT_TOKENS[token.ordinal()]) {
+                    h ^= lexer.tokenHash();
+                    h *= FnvHash.PRIME;
+                }
+            }
+        } catch (RuntimeException e) {
+            //交给正常解析流程报错。
+            return false;
+        }
+        //末尾有无空白决定最后一个token处是否已isEOF。
+        boolean trailing = tokenCount > 1 && ends[tokenCount - 2] < lexer.length();
+        h ^= trailing ? 1 : 2;
+        h *= FnvHash.PRIME;
+        //两种lexer的位置单位与非标识符token的mark取值不同，计划不能混用。
+        h ^= lexer instanceof ByteLexer ? 3 : 4;
+        h *= FnvHash.PRIME;
+        this.hash = h;
+        return true;
+    }
+
+    /**
+     * @return 指纹哈希
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * @return token 数（含 EOF）
+     */
+    public int getTokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * @return 字面量个数
+     */
+    public int getLiteralCount() {
+        return literalCount;
+    }
+
+    /**
+     * @param index token 序号
+     * @return token 起始位置
+     */
+    public int mark(int index) {
+        return marks[index];
+    }
+
+    /**
+     * @param index token 序号
+     * @return token 结束位置
+     */
+    public int end(int index) {
+        return ends[index];
+    }
+
+    /**
+     * @param literalIndex 字面量序号
+     * @return 字面量所在的 token 序号
+     */
+    public int literalToken(int literalIndex) {
+        return literalTokens[literalIndex];
+    }
+
+    /**
+     * 按起始位置查找 token 序号。
+     *
+     * @param mark 起始位置
+     * @return token 序号，找不到时返回 -1
+     */
+    public int indexOfMark(int mark) {
+        int index = Arrays.binarySearch( marks, 0, tokenCount, mark );
+        return index < 0 ? -1 : index;
+    }
+
+    /**
+     * 按结束位置查找 token 序号。末尾无空白时最后一个 token 与 EOF 的结束位置相同，优先返回前者。
+     *
+     * @param pos 结束位置
+     * @return token 序号，找不到时返回 -1
+     */
+    public int indexOfEnd(int pos) {
+        if (tokenCount == 0) {
+            return -1;
+        }
+        int index = Arrays.binarySearch( ends, 0, tokenCount - 1, pos );
+        if (index >= 0) {
+            return index;
+        }
+        return ends[tokenCount - 1] == pos ? tokenCount - 1 : -1;
+    }
+
+    /**
+     * 按 token 序号查找字面量序号。
+     *
+     * @param tokenIndex token 序号
+     * @return 字面量序号，该 token 不是字面量时返回 -1
+     */
+    public int indexOfLiteral(int tokenIndex) {
+        int index = Arrays.binarySearch( literalTokens, 0, literalCount, tokenIndex );
+        return index < 0 ? -1 : index;
+    }
+
+    private void addToken(int mark, int end) {
+        if (tokenCount == marks.length) {
+            marks = Arrays.copyOf( marks, tokenCount * 2 );
+            ends = Arrays.copyOf( ends, tokenCount * 2 );
+        }
+        marks[tokenCount] = mark;
+        ends[tokenCount] = end;
+        tokenCount++;
+    }
+
+    private void addLiteral(int tokenIndex) {
+        if (literalCount == literalTokens.length) {
+            literalTokens = Arrays.copyOf( literalTokens, literalCount * 2 );
+        }
+        literalTokens[literalCount++] = tokenIndex;
+    }
+}
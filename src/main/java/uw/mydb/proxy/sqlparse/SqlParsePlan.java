@@ -0,0 +1,206 @@
+package uw.mydb.proxy.sqlparse;
+
+import uw.mydb.common.conf.TableConfig;
+
+import java.util.Arrays;
+
+/**
+ * SQL 解析计划：一次完整解析中与字面量取值无关的结论，供指纹相同的 SQL 复用（见 {@link SqlPlanCache}）。
+ * <p>
+ * 计划内容：语句类型与 hint 信息；按出现顺序的表名、别名与解析时的 {@link TableConfig}；
+ * routeKey 取值所在的字面量序号与取值方式；子 SQL 切分点（以 token 序号记录，命中时映射回当前 SQL 的实际位置）。
+ * <p>
+ * 表配置按引用比较：配置刷新后对象不同，计划自动失效，回退到完整解析并重新生成计划。
+ * <p>
+ * 发布到缓存后只读，可被多个解析线程共享。
+ *
+ * @author axeon
+ */
+public class SqlParsePlan {
+
+    /**
+     * 切分事件类型：setLexerPos（只移动切分起点，不产生片段）。
+     */
+    static final int SET_POS = -2;
+
+    /**
+     * 指纹哈希。
+     */
+    final long hash;
+
+    /**
+     * token 数，命中时与哈希一起校验，降低哈希碰撞的风险。
+     */
+    final int tokenCount;
+
+    /**
+     * 字面量个数。
+     */
+    final int literalCount;
+
+    /**
+     * 语句类型。
+     */
+    final int sqlType;
+
+    /**
+     * 是否走主库。
+     */
+    final boolean masterQuery;
+
+    /**
+     * 是否转存结果集。
+     */
+    final boolean spool;
+
+    /**
+     * hint 中的 route 信息。
+     */
+    final String hintRouteInfo;
+
+    /**
+     * 按出现顺序的表名，第一个为主表。
+     */
+    final String[] tableNames;
+
+    /**
+     * 按出现顺序的表别名。
+     */
+    final String[] aliasNames;
+
+    /**
+     * 解析时使用的表配置，命中时按引用校验。
+     */
+    final TableConfig[] tableConfigs;
+
+    /**
+     * routeKey 取值记录，每项 4 个元素：表序号、routeKey 槽位、取值方式、字面量序号。
+     */
+    final int[] bindings;
+
+    /**
+     * 切分事件，每项 2 个元素：当前 token 起始位置所在的 token 序号（{@link #SET_POS} 表示 setLexerPos）、当前位置所在的 token 序号。
+     */
+    final int[] splits;
+
+    /**
+     * @param recorder     解析过程的记录
+     * @param fingerprint  SQL 指纹
+     * @param parseResult  解析结果
+     * @param hintRouteInfo hint 中的 route 信息
+     * @param aliasNames   按出现顺序的表别名
+     * @param tableConfigs 按出现顺序的表配置
+     */
+    SqlParsePlan(Recorder recorder, SqlFingerprint fingerprint, SqlParseResult parseResult, String hintRouteInfo, String[] aliasNames, TableConfig[] tableConfigs) {
+        this.hash = fingerprint.getHash();
+        this.tokenCount = fingerprint.getTokenCount();
+        this.literalCount = fingerprint.getLiteralCount();
+        this.sqlType = parseResult.getSqlType();
+        this.masterQuery = parseResult.isMasterQuery();
+        this.spool = parseResult.isSpool();
+        this.hintRouteInfo = hintRouteInfo;
+        this.tableNames = Arrays.copyOf( recorder.tableNames, recorder.tableCount );
+        this.aliasNames = aliasNames;
+        this.tableConfigs = tableConfigs;
+        this.bindings = Arrays.copyOf( recorder.bindings, recorder.bindingCount * 4 );
+        this.splits = Arrays.copyOf( recorder.splits, recorder.splitCount * 2 );
+    }
+
+    /**
+     * 判断计划是否适用于该指纹。
+     *
+     * @param fingerprint SQL 指纹
+     * @return 哈希、token 数与字面量个数是否一致
+     */
+    boolean matches(SqlFingerprint fingerprint) {
+        return hash == fingerprint.getHash() && tokenCount == fingerprint.getTokenCount() && literalCount == fingerprint.getLiteralCount();
+    }
+
+    /**
+     * 完整解析过程中的记录，解析成功且可缓存时生成 {@link SqlParsePlan}。非线程安全。
+     */
+    static class Recorder {
+
+        /**
+         * 是否可以缓存，出现无法按 token 序号复现的取值（非字面量的 routeKey 取值、无法映射的位置等）时置为 false。
+         */
+        boolean cacheable = true;
+
+        /**
+         * 按出现顺序的表名。
+         */
+        String[] tableNames = new String[4];
+
+        /**
+         * 表数量。
+         */
+        int tableCount;
+
+        /**
+         * routeKey 取值记录。
+         */
+        int[] bindings = new int[16];
+
+        /**
+         * routeKey 取值记录数。
+         */
+        int bindingCount;
+
+        /**
+         * 切分事件。
+         */
+        int[] splits = new int[16];
+
+        /**
+         * 切分事件数。
+         */
+        int splitCount;
+
+        /**
+         * 记录一张表。
+         *
+         * @param tableName 表名
+         */
+        void addTable(String tableName) {
+            if (tableCount == tableNames.length) {
+                tableNames = Arrays.copyOf( tableNames, tableCount * 2 );
+            }
+            tableNames[tableCount++] = tableName;
+        }
+
+        /**
+         * 记录一次 routeKey 取值。
+         *
+         * @param tableIndex   表序号
+         * @param slot         routeKey 槽位
+         * @param kind         取值方式
+         * @param literalIndex 字面量序号
+         */
+        void addBinding(int tableIndex, int slot, int kind, int literalIndex) {
+            if ((bindingCount + 1) * 4 > bindings.length) {
+                bindings = Arrays.copyOf( bindings, bindings.length * 2 );
+            }
+            int offset = bindingCount * 4;
+            bindings[offset] = tableIndex;
+            bindings[offset + 1] = slot;
+            bindings[offset + 2] = kind;
+            bindings[offset + 3] = literalIndex;
+            bindingCount++;
+        }
+
+        /**
+         * 记录一次切分事件。
+         *
+         * @param markToken 当前 token 起始位置所在的 token 序号，{@link #SET_POS} 表示 setLexerPos
+         * @param posToken  当前位置所在的 token 序号
+         */
+        void addSplit(int markToken, int posToken) {
+            if ((splitCount + 1) * 2 > splits.length) {
+                splits = Arrays.copyOf( splits, splits.length * 2 );
+            }
+            splits[splitCount * 2] = markToken;
+            splits[splitCount * 2 + 1] = posToken;
+            splitCount++;
+        }
+    }
+}
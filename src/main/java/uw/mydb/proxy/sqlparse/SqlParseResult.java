@@ -1,10 +1,14 @@
 package uw.mydb.proxy.sqlparse;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
 import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.commons.lang3.builder.ToStringStyle;
 import org.slf4j.LoggerFactory;
 import uw.mydb.common.conf.DataTable;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 /**
@@ -21,16 +25,41 @@ public class SqlParseResult {
 
     private static final org.slf4j.Logger logger = LoggerFactory.getLogger( SqlParseResult.class );
 
+    /**
+     * 事务控制语句类型：非事务控制语句。
+     */
+    public static final int TX_NONE = 0;
+
+    /**
+     * 事务控制语句类型：BEGIN / START TRANSACTION。
+     */
+    public static final int TX_BEGIN = 1;
+
+    /**
+     * 事务控制语句类型：COMMIT。
+     */
+    public static final int TX_COMMIT = 2;
+
+    /**
+     * 事务控制语句类型：ROLLBACK。
+     */
+    public static final int TX_ROLLBACK = 3;
+
     /**
      * SQL 中解析出的主表名（多表场景下仅记录第一个表），用于路由配置查找与错误 SQL 上报。
      */
     protected String sourceTable;
 
     /**
-     * 原始 SQL 文本（客户端发来的未经改写的 SQL）。
+     * 原始 SQL 文本（客户端发来的未经改写的 SQL）。直接在包上解析时懒解码，见 {@link #sourceBuf}。
      */
     protected String sourceSql;
 
+    /**
+     * 直接在包上解析时的 SQL 字节，仅在解析期间有效，解析结束时由 {@link #detachSourceBuf()} 断开。
+     */
+    private ByteBuf sourceBuf;
+
     /**
      * 当前会话的默认 database（USE 切换前的 schema）。
      */
@@ -46,6 +75,16 @@ public class SqlParseResult {
      */
     protected boolean isMasterQuery = true;
 
+    /**
+     * 是否转存结果集（hint spool=true），单节点查询有效。
+     */
+    protected boolean isSpool;
+
+    /**
+     * 事务控制语句类型（TX_*），由前端会话处理，不参与路由。
+     */
+    protected int transactionCmd = TX_NONE;
+
     /**
      * SQL 类型枚举值（{@link SQLType#getValue()}）。
      */
@@ -71,6 +110,40 @@ public class SqlParseResult {
      */
     protected List<SqlInfo> sqlInfoList;
 
+    /**
+     * 多节点 SELECT 的顶层 ORDER BY 排序项，仅在多路由时由 {@link SqlParser} 解析填充，供 ProxyMultiNodeHandler 做多路归并。
+     * null 表示无排序，或排序表达式（函数、运算等）无法在代理层归并。
+     */
+    protected List<OrderByItem> orderByList;
+
+    /**
+     * 多节点 SELECT 的顶层 LIMIT 偏移量（LIMIT offset, count / LIMIT count OFFSET offset），无 LIMIT 时为 0。
+     */
+    protected long limitOffset;
+
+    /**
+     * 多节点 SELECT 的顶层 LIMIT 行数，-1 表示无 LIMIT 或无法在代理层执行全局 LIMIT。
+     * 各节点 SQL 已改写为 LIMIT offset+count，由 ProxyMultiNodeHandler 在归并输出时跳过 offset 行、截取 count 行。
+     */
+    protected long limitCount = -1;
+
+    /**
+     * 多节点 SELECT 的聚合归并信息，与客户端可见的结果列一一对应；null 表示不做聚合归并。
+     * 仅当顶层 SELECT 列表含 COUNT/SUM/MIN/MAX/AVG 且全部可合并时由 {@link SqlParser} 填充。
+     */
+    protected List<AggregateItem> aggregateList;
+
+    /**
+     * 为聚合归并追加在各节点 SELECT 列表末尾的隐藏列数（AVG 改写为 SUM 后补充的 COUNT 列），不返回给客户端。
+     */
+    protected int aggregateHiddenCount;
+
+    /**
+     * 多节点 SELECT 的顶层 GROUP BY 分组项，非 null 时由 ProxyMultiNodeHandler 按分组合并各节点的部分聚合结果，
+     * 此时 {@link #aggregateList} 必定非空（分组列为 FUNC_NONE）。带 HAVING、WITH ROLLUP 或分组表达式时为 null。
+     */
+    protected List<OrderByItem> groupByList;
+
     /**
      * @param sourceDatabase 当前 schema
      * @param sourceSql      原始 SQL
@@ -80,6 +153,61 @@ public class SqlParseResult {
         this.sourceSql = sourceSql;
     }
 
+    /**
+     * 直接在包上解析时使用，原始 SQL 只在需要时（报错、多节点归并、无分片表转发默认库）才解码。
+     *
+     * @param sourceDatabase 当前 schema
+     * @param sourceBuf      原始 SQL 字节
+     */
+    public SqlParseResult(String sourceDatabase, ByteBuf sourceBuf) {
+        this.sourceDatabase = sourceDatabase;
+        this.sourceBuf = sourceBuf;
+    }
+
+    /**
+     * 解析结束时断开与包的关联。多节点执行时结果在包释放后仍会用到原始 SQL（日志、错误上报），此时先解码保留；
+     * 单节点执行只使用生成的 sqlInfo，不再保留原始 SQL。
+     */
+    void detachSourceBuf() {
+        if (sourceBuf == null) {
+            return;
+        }
+        if (sourceSql == null && sqlInfoList != null) {
+            sourceSql = sourceBuf.toString( StandardCharsets.UTF_8 );
+        }
+        sourceBuf = null;
+    }
+
+    /**
+     * 释放 sqlInfo / sqlInfoList 持有的包字节（见 {@link SqlInfo#release()}），命令结束时调用，可重复调用。
+     */
+    public void release() {
+        if (sqlInfo != null) {
+            sqlInfo.release();
+        }
+        if (sqlInfoList != null) {
+            for (SqlInfo info : sqlInfoList) {
+                info.release();
+            }
+        }
+    }
+
+    /**
+     * 复制语句级信息（源 SQL/schema/table、SQL 类型、主库与转存标记），不含路由与错误信息。
+     * 预编译语句每次执行以解析结果为模板生成新的结果对象。
+     *
+     * @return 新的解析结果
+     */
+    SqlParseResult copyStatementInfo() {
+        SqlParseResult result = new SqlParseResult( sourceDatabase, getSourceSql() );
+        result.sourceTable = sourceTable;
+        result.isDML = isDML;
+        result.isMasterQuery = isMasterQuery;
+        result.isSpool = isSpool;
+        result.sqlType = sqlType;
+        return result;
+    }
+
     @Override
     public String toString() {
         return new ToStringBuilder( this, ToStringStyle.MULTI_LINE_STYLE )
@@ -88,11 +216,19 @@ public class SqlParseResult {
                 .append( "sourceDatabase", sourceDatabase )
                 .append( "isDML", isDML )
                 .append( "isMasterQuery", isMasterQuery )
+                .append( "isSpool", isSpool )
+                .append( "transactionCmd", transactionCmd )
                 .append( "sqlType", sqlType )
                 .append( "errorCode", errorCode )
                 .append( "errorMessage", errorMessage )
                 .append( "sqlInfo", sqlInfo )
                 .append( "sqlInfoList", sqlInfoList )
+                .append( "orderByList", orderByList )
+                .append( "limitOffset", limitOffset )
+                .append( "limitCount", limitCount )
+                .append( "aggregateList", aggregateList )
+                .append( "aggregateHiddenCount", aggregateHiddenCount )
+                .append( "groupByList", groupByList )
                 .toString();
     }
 
@@ -111,12 +247,29 @@ public class SqlParseResult {
     }
 
     /**
-     * @return 原始 SQL 文本
+     * 获取原始 SQL 文本，直接在包上解析时首次调用才解码。
+     *
+     * @return 原始 SQL 文本；包上解析的单节点结果在解析结束后为 null
      */
     public String getSourceSql() {
+        if (sourceSql == null && sourceBuf != null) {
+            sourceSql = sourceBuf.toString( StandardCharsets.UTF_8 );
+        }
         return sourceSql;
     }
 
+    /**
+     * 原始 SQL 的长度，用于预估改写后 SQL 的容量，包上解析时为字节数，不触发解码。
+     *
+     * @return 原始 SQL 长度
+     */
+    public int getSourceLength() {
+        if (sourceSql != null) {
+            return sourceSql.length();
+        }
+        return sourceBuf == null ? 0 : sourceBuf.readableBytes();
+    }
+
     /**
      * @return 当前 schema
      */
@@ -203,6 +356,34 @@ public class SqlParseResult {
         isMasterQuery = master;
     }
 
+    /**
+     * @return 是否转存结果集
+     */
+    public boolean isSpool() {
+        return isSpool;
+    }
+
+    /**
+     * @param spool 是否转存结果集
+     */
+    public void setSpool(boolean spool) {
+        isSpool = spool;
+    }
+
+    /**
+     * @return 事务控制语句类型（TX_*）
+     */
+    public int getTransactionCmd() {
+        return transactionCmd;
+    }
+
+    /**
+     * @param transactionCmd 事务控制语句类型（TX_*）
+     */
+    public void setTransactionCmd(int transactionCmd) {
+        this.transactionCmd = transactionCmd;
+    }
+
     /**
      * @return 单节点 sqlInfo（多节点场景为 null）
      */
@@ -231,9 +412,124 @@ public class SqlParseResult {
         this.sqlInfoList = sqlInfoList;
     }
 
+    /**
+     * @return 顶层 ORDER BY 排序项（无排序或无法归并时为 null）
+     */
+    public List<OrderByItem> getOrderByList() {
+        return orderByList;
+    }
+
+    /**
+     * @param orderByList 顶层 ORDER BY 排序项
+     */
+    public void setOrderByList(List<OrderByItem> orderByList) {
+        this.orderByList = orderByList;
+    }
+
+    /**
+     * 是否需要多节点有序归并。
+     *
+     * @return true 表示存在可归并的 ORDER BY
+     */
+    public boolean hasOrderBy() {
+        return orderByList != null && !orderByList.isEmpty();
+    }
+
+    /**
+     * 设置全局 LIMIT。
+     *
+     * @param limitOffset 偏移量
+     * @param limitCount  行数，-1 表示无 LIMIT
+     */
+    public void setLimit(long limitOffset, long limitCount) {
+        this.limitOffset = limitOffset;
+        this.limitCount = limitCount;
+    }
+
+    /**
+     * @return 全局 LIMIT 偏移量
+     */
+    public long getLimitOffset() {
+        return limitOffset;
+    }
+
+    /**
+     * @return 全局 LIMIT 行数，-1 表示无 LIMIT
+     */
+    public long getLimitCount() {
+        return limitCount;
+    }
+
+    /**
+     * 是否需要在代理层执行全局 LIMIT。
+     *
+     * @return true 表示存在可下推的 LIMIT
+     */
+    public boolean hasLimit() {
+        return limitCount >= 0;
+    }
+
+    /**
+     * @return 聚合归并信息（不做聚合归并时为 null）
+     */
+    public List<AggregateItem> getAggregateList() {
+        return aggregateList;
+    }
+
+    /**
+     * @param aggregateList  聚合归并信息
+     * @param hiddenCount    各节点追加的隐藏列数
+     */
+    public void setAggregateList(List<AggregateItem> aggregateList, int hiddenCount) {
+        this.aggregateList = aggregateList;
+        this.aggregateHiddenCount = hiddenCount;
+    }
+
+    /**
+     * @return 各节点追加的隐藏列数
+     */
+    public int getAggregateHiddenCount() {
+        return aggregateHiddenCount;
+    }
+
+    /**
+     * 是否需要多节点聚合归并。
+     *
+     * @return true 表示各节点结果需按聚合函数合并
+     */
+    public boolean hasAggregate() {
+        return aggregateList != null && !aggregateList.isEmpty();
+    }
+
+    /**
+     * @return 顶层 GROUP BY 分组项（不做分组合并时为 null）
+     */
+    public List<OrderByItem> getGroupByList() {
+        return groupByList;
+    }
+
+    /**
+     * @param groupByList 顶层 GROUP BY 分组项
+     */
+    public void setGroupByList(List<OrderByItem> groupByList) {
+        this.groupByList = groupByList;
+    }
+
+    /**
+     * 是否需要多节点分组合并。
+     *
+     * @return true 表示各节点结果需按分组合并
+     */
+    public boolean hasGroupBy() {
+        return groupByList != null && !groupByList.isEmpty();
+    }
+
     /**
      * 单条可执行 SQL 信息，绑定目标 {@link DataTable} 与改写后的 SQL 文本。
      * 由 {@link SqlParser#generateSqlInfo()} 构造，传给 {@link uw.mydb.proxy.mysql.MySqlSession#addCommand} 执行。
+     * <p>
+     * 直接在包上解析时改写结果为字节形式（{@link #newSqlBytes}）：原包中表名之间片段的 retained slice 与预编码的表名标识符
+     * 拼接成 CompositeByteBuf，发往后端时不复制也不重新编码 SQL。字节形式持有包的引用，命令结束时必须 {@link #release()}。
      */
     public static class SqlInfo {
 
@@ -252,6 +548,11 @@ public class SqlParseResult {
          */
         private String newSql;
 
+        /**
+         * 字节形式的改写结果（COM_QUERY 的 SQL 部分），非 null 时不使用 {@link #newSqlBuf}。
+         */
+        private CompositeByteBuf newSqlBytes;
+
         /**
          * @param sqlSize 预分配 StringBuilder 容量（通常为 sourceSql.length + 余量）
          */
@@ -268,6 +569,45 @@ public class SqlParseResult {
             this.newSql = newSql;
         }
 
+        /**
+         * 字节形式，整条 SQL 原样转发。
+         *
+         * @param dataTable 目标数据表
+         * @param sqlBytes  SQL 字节（所有权转移）
+         */
+        public SqlInfo(DataTable dataTable, ByteBuf sqlBytes) {
+            this.dataTable = dataTable;
+            this.newSqlBytes = Unpooled.compositeBuffer().addComponent( true, sqlBytes );
+        }
+
+        /**
+         * 字节形式，由 {@link #appendSql(ByteBuf)} / {@link #appendSqlIdentity} 逐段拼接。
+         *
+         * @param newSqlBytes 空的 CompositeByteBuf（最大片段数需覆盖全部片段，避免合并复制）
+         */
+        public SqlInfo(CompositeByteBuf newSqlBytes) {
+            this.newSqlBytes = newSqlBytes;
+        }
+
+        /**
+         * 复制出一个同形式的 SqlInfo，内容为当前已拼接的 SQL 与目标数据表，用于多表多路由的笛卡尔积展开。
+         *
+         * @param sqlSize 文本形式预分配的容量
+         * @return 新的 SqlInfo
+         */
+        public SqlInfo copy(int sqlSize) {
+            SqlInfo sqlInfo;
+            if (newSqlBytes != null) {
+                sqlInfo = new SqlInfo( Unpooled.compositeBuffer( newSqlBytes.maxNumComponents() ) );
+                sqlInfo.newSqlBytes.addComponent( true, newSqlBytes.retainedDuplicate() );
+            } else {
+                sqlInfo = new SqlInfo( sqlSize );
+                sqlInfo.appendSql( getNewSql() );
+            }
+            sqlInfo.setDataTable( dataTable );
+            return sqlInfo;
+        }
+
         @Override
         public String toString() {
             return new ToStringBuilder( this, ToStringStyle.MULTI_LINE_STYLE )
@@ -318,12 +658,60 @@ public class SqlParseResult {
          */
         public String getNewSql() {
             if (newSql == null) {
-                newSql = newSqlBuf.toString();
-                newSqlBuf = null;
+                if (newSqlBytes != null) {
+                    //字节形式只在上报错误、慢SQL等少数场景解码。
+                    newSql = newSqlBytes.toString( StandardCharsets.UTF_8 );
+                } else {
+                    newSql = newSqlBuf.toString();
+                    newSqlBuf = null;
+                }
             }
             return newSql;
         }
 
+        /**
+         * @return 字节形式的改写结果，文本形式时为 null；调用方发送时需 retainedDuplicate，不能直接转移所有权
+         */
+        public ByteBuf getNewSqlBytes() {
+            return newSqlBytes;
+        }
+
+        /**
+         * 释放字节形式持有的包引用，可重复调用。
+         */
+        public void release() {
+            if (newSqlBytes != null) {
+                newSqlBytes.release();
+                newSqlBytes = null;
+            }
+        }
+
+        /**
+         * 向字节形式追加原包中的一段 SQL。
+         *
+         * @param fragment SQL 片段（所有权转移，通常为原包的 retained slice）
+         * @return 当前 SqlInfo（链式调用）
+         */
+        public SqlInfo appendSql(ByteBuf fragment) {
+            this.newSqlBytes.addComponent( true, fragment );
+            return this;
+        }
+
+        /**
+         * 追加数据表的 SQL 标识符（database.table），字节形式直接拼接预编码的字节。
+         *
+         * @param dataTable 数据表
+         * @return 当前 SqlInfo（链式调用）
+         */
+        public SqlInfo appendSqlIdentity(DataTable dataTable) {
+            if (newSqlBytes != null) {
+                newSqlBytes.addComponent( true, Unpooled.wrappedBuffer( dataTable.genSqlIdentityBytes() ) );
+            } else {
+                newSqlBuf.append( dataTable.genSqlIdentity() );
+            }
+            return this;
+        }
+
         /**
          * 向 SQL 缓冲追加文本片段。
          *
@@ -335,8 +723,203 @@ public class SqlParseResult {
             return this;
         }
 
+        /**
+         * 替换 SQL 末尾的片段（如 LIMIT 子句改写）。
+         *
+         * @param tail        期望的末尾片段
+         * @param replacement 替换内容
+         * @return 末尾与 tail 一致并完成替换时返回 true
+         */
+        public boolean replaceSqlTail(String tail, String replacement) {
+            if (!canReplaceSqlTail( tail )) {
+                return false;
+            }
+            if (newSqlBuf == null) {
+                newSql = newSql.substring( 0, newSql.length() - tail.length() ) + replacement;
+            } else {
+                newSqlBuf.replace( newSqlBuf.length() - tail.length(), newSqlBuf.length(), replacement );
+            }
+            return true;
+        }
+
+        /**
+         * 判断 SQL 末尾是否为 tail，即能否用 {@link #replaceSqlTail} 改写。
+         *
+         * @param tail 源 SQL 末尾片段
+         * @return 是否可以替换
+         */
+        public boolean canReplaceSqlTail(String tail) {
+            if (newSqlBytes != null) {
+                //字节形式不做文本改写，需要改写的SQL在生成时即使用文本形式。
+                return false;
+            }
+            if (newSqlBuf == null) {
+                return newSql != null && newSql.endsWith( tail );
+            }
+            int start = newSqlBuf.length() - tail.length();
+            return start >= 0 && newSqlBuf.indexOf( tail, start ) == start;
+        }
+
+
+    }
+
+    /**
+     * ORDER BY 排序项（GROUP BY 分组项复用）。列名与结果集字段名（别名优先，其次原始列名）匹配，或直接使用 1 起始的列序号（ORDER BY 2）。
+     */
+    public static class OrderByItem {
+
+        /**
+         * 列名限定的表名或别名（如 a.id 中的 a），可为 null，仅用于辅助匹配。
+         */
+        private String tableName;
+
+        /**
+         * 列名或别名；按列序号排序时为 null。
+         */
+        private String columnName;
+
+        /**
+         * 1 起始的列序号；按列名排序时为 0。
+         */
+        private int columnIndex;
+
+        /**
+         * 是否降序。
+         */
+        private boolean desc;
+
+        /**
+         * @param tableName   限定表名（可 null）
+         * @param columnName  列名（按序号排序时为 null）
+         * @param columnIndex 1 起始的列序号（按列名排序时为 0）
+         * @param desc        是否降序
+         */
+        public OrderByItem(String tableName, String columnName, int columnIndex, boolean desc) {
+            this.tableName = tableName;
+            this.columnName = columnName;
+            this.columnIndex = columnIndex;
+            this.desc = desc;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder( this, ToStringStyle.SHORT_PREFIX_STYLE )
+                    .append( "tableName", tableName )
+                    .append( "columnName", columnName )
+                    .append( "columnIndex", columnIndex )
+                    .append( "desc", desc )
+                    .toString();
+        }
+
+        /**
+         * @return 限定表名（可能为 null）
+         */
+        public String getTableName() {
+            return tableName;
+        }
+
+        /**
+         * @return 列名（按序号排序时为 null）
+         */
+        public String getColumnName() {
+            return columnName;
+        }
 
+        /**
+         * @return 1 起始的列序号（按列名排序时为 0）
+         */
+        public int getColumnIndex() {
+            return columnIndex;
+        }
+
+        /**
+         * @return 是否降序
+         */
+        public boolean isDesc() {
+            return desc;
+        }
     }
 
+    /**
+     * 聚合归并的输出列：记录该列的聚合函数，AVG 额外记录对应隐藏 COUNT 列在节点结果中的列号。
+     */
+    public static class AggregateItem {
+
+        /**
+         * 非聚合列（常量或普通列），取首个非 NULL 值。
+         */
+        public static final int FUNC_NONE = 0;
+
+        /**
+         * COUNT：各节点求和。
+         */
+        public static final int FUNC_COUNT = 1;
+
+        /**
+         * SUM：各节点求和，全为 NULL 时为 NULL。
+         */
+        public static final int FUNC_SUM = 2;
+
+        /**
+         * MIN：取各节点最小值。
+         */
+        public static final int FUNC_MIN = 3;
+
+        /**
+         * MAX：取各节点最大值。
+         */
+        public static final int FUNC_MAX = 4;
+
+        /**
+         * AVG：节点侧改写为 SUM + COUNT，合并后相除。
+         */
+        public static final int FUNC_AVG = 5;
+
+        /**
+         * 聚合函数（FUNC_*）。
+         */
+        private int function;
+
+        /**
+         * AVG 对应的隐藏 COUNT 列在节点结果中的列号（0 起始），其它函数为 -1。
+         */
+        private int countIndex = -1;
+
+        /**
+         * @param function 聚合函数
+         */
+        public AggregateItem(int function) {
+            this.function = function;
+        }
+
+        @Override
+        public String toString() {
+            return new ToStringBuilder( this, ToStringStyle.SHORT_PREFIX_STYLE )
+                    .append( "function", function )
+                    .append( "countIndex", countIndex )
+                    .toString();
+        }
+
+        /**
+         * @return 聚合函数（FUNC_*）
+         */
+        public int getFunction() {
+            return function;
+        }
+
+        /**
+         * @return 隐藏 COUNT 列的列号，非 AVG 为 -1
+         */
+        public int getCountIndex() {
+            return countIndex;
+        }
+
+        /**
+         * @param countIndex 隐藏 COUNT 列的列号
+         */
+        public void setCountIndex(int countIndex) {
+            this.countIndex = countIndex;
+        }
+    }
 
 }
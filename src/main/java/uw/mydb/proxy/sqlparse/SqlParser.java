@@ -1,24 +1,33 @@
 package uw.mydb.proxy.sqlparse;
 
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import uw.mydb.common.conf.DataNode;
 import uw.mydb.common.conf.DataTable;
 import uw.mydb.common.conf.TableConfig;
 import uw.mydb.proxy.conf.MydbProxyConfigService;
+import uw.mydb.proxy.conf.TableConfigIndex;
 import uw.mydb.proxy.constant.SQLType;
 import uw.mydb.proxy.protocol.constant.MySqlErrorCode;
 import uw.mydb.proxy.route.RouteAlgorithm;
 import uw.mydb.proxy.route.RouteManager;
 import uw.mydb.proxy.server.ProxySession;
+import uw.mydb.proxy.sqlparse.parser.ByteLexer;
 import uw.mydb.proxy.sqlparse.parser.HintTypes;
 import uw.mydb.proxy.sqlparse.parser.Lexer;
+import uw.mydb.proxy.sqlparse.parser.SqlLexer;
 import uw.mydb.proxy.sqlparse.parser.Token;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static uw.mydb.proxy.sqlparse.parser.Token.*;
@@ -28,16 +37,31 @@ import static uw.mydb.proxy.sqlparse.parser.Token.*;
  * <p>
  * 主要流程（{@link #parse()}）：
  * <ol>
- *   <li>读取首个 token：若为 HINT 则调用 {@link #parseHint} 提取 mydb 专有注解（master/slave、route 列表）。</li>
+ *   <li>读取首个 token：若为 HINT 则调用 {@link #parseHint} 提取 mydb 专有注解（master/slave、route 列表、spool 结果集转存）。</li>
  *   <li>跳过 COMMENT / LINE_COMMENT / MULTI_LINE_COMMENT。</li>
- *   <li>按首关键字分发：SELECT / INSERT / UPDATE / DELETE / USE 走对应解析方法；SET/SHOW/EXPLAIN/DESCRIBE 等放行到默认库；其余返回不支持。</li>
+ *   <li>按首关键字分发：SELECT / INSERT / UPDATE / DELETE / USE 走对应解析方法；BEGIN/START TRANSACTION/COMMIT/ROLLBACK 只标记事务控制类型，
+ *       由前端会话处理；SET/SHOW/EXPLAIN/DESCRIBE 等放行到默认库；其余返回不支持。</li>
  *   <li>{@link #calculateAllRouteInfo}：hint 路由优先级最高，其次按 routeKey 路由算法计算，无匹配时回落到 baseNode。</li>
  *   <li>{@link #generateSqlInfo}：将路由结果与子 SQL 片段重新拼接为每个目标节点上的可执行 SQL（单一路由 -> sqlInfo，多路由 -> sqlInfoList）。
- *       多表多路由的笛卡尔积受 {@link #MAX_CARTESIAN_PRODUCT} 限制，超限时返回错误。</li>
+ *       多表多路由的笛卡尔积受 {@link #MAX_CARTESIAN_PRODUCT} 限制，超限时返回错误。
+ *       多行 INSERT 按行计算路由，每个目标表生成一条只含本表元组的 INSERT（{@link #generateInsertRowsSqlInfo}）；
+ *       主表 routeKey 的 IN 列表按路由裁剪，每个目标表只带落在本表上的取值（{@link #appendInListSubSql}）。</li>
  * </ol>
  * <p>
+ * 预编译语句：{@link #prepare()} 只做一次语句解析，routeKey 取值为 ? 占位符时记录参数序号（{@link #paramBindingList}），不计算路由；
+ * 每次执行由 {@link #bind} 把绑定参数回填到对应的 routeKey 后重新计算路由并生成 sqlInfo，生成的 SQL 仍保留占位符。
+ * <p>
  * 内部状态：{@link #tableRouteDataMain} 为 SQL 中第一个出现的可分片表（主表），{@link #tableRouteDataList} 为其余子表。
- * {@link #subSqlList} 存放按表名位置切分出的 SQL 片段（两个表名之间的静态文本），用于生成多节点 SQL 时复用避免重复字符串替换。
+ * {@link #subSqlPos} 记录按表名位置切分出的 SQL 片段（两个表名之间的静态文本）的位置，用于生成多节点 SQL 时复用避免重复字符串替换。
+ * 直接在包上解析时，生成的 SQL 为原包片段的 retained slice 与预编码表名拼接成的字节形式（见 {@link SqlParseResult.SqlInfo}），
+ * 片段不解码、不复制；多节点 SELECT 需要文本改写（AVG 改写、LIMIT 改写）时才解码为文本拼接。
+ * <p>
+ * COM_QUERY 直接以包的 ByteBuf 构造（{@link ByteLexer} 按字节扫描），语句类型、表名与 routeKey 字面量的识别不解码整条 SQL；
+ * 其余场景（预编译、测试）使用 String 构造（{@link Lexer}）。
+ * <p>
+ * 解析计划缓存：不超过长度限制的 SQL 先扫描一遍计算指纹（{@link SqlFingerprint}），命中 {@link SqlPlanCache} 时按缓存的 {@link SqlParsePlan}
+ * 直接还原表信息与子 SQL 切分点，只从字面量位置取出 routeKey 取值，不再走 parseTableInfo/parseWhereInfo；
+ * 未命中时完整解析并记录各步骤对应的 token 序号，语句可复现时生成计划放入缓存。
  * <p>
  * 非线程安全：实例仅供单条 SQL 解析使用，解析完成后丢弃。
  *
@@ -53,9 +77,9 @@ public class SqlParser {
     private ProxySession proxySession;
 
     /**
-     * 词法分析器，逐 token 推进解析。
+     * 词法分析器，逐 token 推进解析：String 构造时为 {@link Lexer}，ByteBuf 构造时为直接扫描字节的 {@link ByteLexer}。
      */
-    private Lexer lexer;
+    private SqlLexer lexer;
 
     /**
      * 上次切分子 SQL 的 lexer 位置，配合 {@link #splitSubSql} 在表名边界切片。
@@ -68,9 +92,24 @@ public class SqlParser {
     private String hintRouteInfo = null;
 
     /**
-     * 按表名位置切分的子 SQL 片段列表，用于多节点 SQL 拼接，减少字符串替换的 IO 开销。
+     * 按表名位置切分的子 SQL 片段在源 SQL 中的 [起始, 结束) 位置，每个片段占两个元素，用于多节点 SQL 拼接，减少字符串替换的 IO 开销。
+     */
+    private int[] subSqlPos = new int[8];
+
+    /**
+     * 子 SQL 片段数。
+     */
+    private int subSqlCount;
+
+    /**
+     * 已解码（或被归并改写）的子 SQL 片段文本，按需构造。
+     */
+    private String[] subSqlText;
+
+    /**
+     * 直接在包上解析时的 SQL 字节，字节形式改写从中切片；String 构造时为 null。
      */
-    private List<String> subSqlList = new ArrayList<>();
+    private ByteBuf sqlBuf;
 
     /**
      * 主表（SQL 中第一个出现的表）的路由数据，含表配置、别名与路由输入/结果。
@@ -87,6 +126,111 @@ public class SqlParser {
      */
     private SqlParseResult parseResult;
 
+    /**
+     * 聚合归并时改写后的首个子 SQL 片段（AVG 改写为 SUM 并追加隐藏 COUNT 列），null 表示无需改写。
+     */
+    private String selectListRewrite;
+
+    /**
+     * 顶层 SELECT 列表的归并信息，列表不可归并（含 *、聚合表达式等）时为 null。
+     */
+    private List<SqlParseResult.AggregateItem> selectItemList;
+
+    /**
+     * 顶层 SELECT 列表各列的名称（别名或简单列名），表达式列为 null，用于校验 GROUP BY 分组列是否都在结果中。
+     */
+    private List<String> selectNameList;
+
+    /**
+     * 顶层 SELECT 列表中可用于 ORDER BY 匹配的名称（别名与简单列名，小写），不论列表是否可归并都会记录。
+     */
+    private Set<String> selectColumnNames;
+
+    /**
+     * 顶层 SELECT 列表的列数。
+     */
+    private int selectColumnCount;
+
+    /**
+     * 顶层 SELECT 列表是否含 *（此时结果列无法在解析期确定）。
+     */
+    private boolean selectHasStar;
+
+    /**
+     * 顶层 SELECT 列表是否含聚合函数。
+     */
+    private boolean selectHasAggregate;
+
+    /**
+     * 为 AVG 改写追加的隐藏列数。
+     */
+    private int selectHiddenCount;
+
+    /**
+     * 是否去掉各节点 SQL 中的 LIMIT 子句（分组合并时 LIMIT 只能在代理层执行）。
+     */
+    private boolean limitStripped;
+
+    /**
+     * 顶层 LIMIT 子句在源 SQL 中的起始位置，-1 表示没有 LIMIT。
+     */
+    private int limitClauseStart = -1;
+
+    /**
+     * 顶层 LIMIT 子句在源 SQL 中的结束位置（不含）。
+     */
+    private int limitClauseEnd = -1;
+
+    /**
+     * 预编译语句中 routeKey 取值的记录（含字面量与 ? 占位符），按解析顺序排列，{@link #bind} 时据此回放；非预编译解析时为 null。
+     */
+    private List<ParamBinding> paramBindingList;
+
+    /**
+     * 预编译语句解析完成时的结果，{@link #bind} 每次以它为模板生成新的解析结果。
+     */
+    private SqlParseResult preparedResult;
+
+    /**
+     * 预编译语句的 ? 占位符个数。
+     */
+    private int paramCount;
+
+    /**
+     * 多行 INSERT 各行 VALUES 元组在源 SQL 中的 [起始, 结束) 位置，每行占两个元素；单行时为 null。
+     */
+    private int[] insertRowPos;
+
+    /**
+     * 多行 INSERT 各行的 routeKey 取值，按主表 routeKey 槽位排列，未出现的槽位为 null。
+     */
+    private List<String[]> insertRowValues;
+
+    /**
+     * 参与分片裁剪的 IN 列表对应的 routeKey，没有时为 null。
+     */
+    private RouteAlgorithm.RouteValue inListRouteValue;
+
+    /**
+     * IN 列表各项的位置，每项两个元素：前一个分隔符（左括号或逗号）之后的位置、该项的结束位置。
+     */
+    private int[] inListPos;
+
+    /**
+     * IN 列表的项数。
+     */
+    private int inListCount;
+
+    /**
+     * 本次解析的 SQL 指纹，记录解析计划时使用。
+     */
+    private SqlFingerprint fingerprint;
+
+    /**
+     * 解析计划的记录，未命中缓存且参与缓存时非 null。
+     */
+    private SqlParsePlan.Recorder planRecorder;
+
     /**
      * 构造解析器，绑定前端会话（USE 语句可回写 setDatabase）。
      *
@@ -110,12 +254,340 @@ public class SqlParser {
         this.parseResult = new SqlParseResult( databaseSource, sqlSource );
     }
 
+    /**
+     * 直接在 COM_QUERY 包上构造解析器，词法分析按字节扫描，不预先解码整条 SQL。
+     * 包只在 {@link #parse()} 期间有效，解析结束后解析结果不再引用它。
+     *
+     * @param proxySession 前端会话
+     * @param sqlBuf       SQL 文本所在的 ByteBuf（readerIndex 到 writerIndex）
+     */
+    public SqlParser(ProxySession proxySession, ByteBuf sqlBuf) {
+        this.proxySession = proxySession;
+        this.sqlBuf = sqlBuf;
+        this.lexer = new ByteLexer( sqlBuf );
+        this.parseResult = new SqlParseResult( proxySession.getDatabase(), sqlBuf );
+    }
+
+    /**
+     * 直接在 SQL 字节上构造解析器，仅指定默认 database（无会话场景，如测试）。
+     *
+     * @param databaseSource 默认 database
+     * @param sqlBuf         SQL 文本所在的 ByteBuf（readerIndex 到 writerIndex）
+     */
+    public SqlParser(String databaseSource, ByteBuf sqlBuf) {
+        this.sqlBuf = sqlBuf;
+        this.lexer = new ByteLexer( sqlBuf );
+        this.parseResult = new SqlParseResult( databaseSource, sqlBuf );
+    }
+
     /**
      * 解析 SQL 的主入口，依次完成 hint 解析、注释跳过、语句类型分发、路由计算与 sqlInfo 生成。
      *
      * @return 解析结果（含错误信息或生成的 sqlInfo/sqlInfoList）
      */
     public SqlParseResult parse() {
+        try {
+            if (!replayPlan()) {
+                parseStatement();
+                savePlan();
+            }
+            if (parseResult.getTransactionCmd() != SqlParseResult.TX_NONE) {
+                //事务控制语句由前端会话处理，不参与路由。
+                return parseResult;
+            }
+            if (!parseResult.hasError()) {
+                //计算路由信息。
+                calculateAllRouteInfo();
+            }
+            if (!parseResult.hasError()) {
+                generateSqlInfo();
+            }
+            return parseResult;
+        } finally {
+            //包在解析结束后即被释放，解析结果不能再引用它。
+            parseResult.detachSourceBuf();
+        }
+    }
+
+    /**
+     * 解析预编译语句（COM_STMT_PREPARE）：只做语句解析并记录 routeKey 的参数位置，不计算路由。
+     * USE 与事务控制语句不能预编译，直接返回错误。
+     *
+     * @return 解析结果（只含语句类型、主库标记等，不含 sqlInfo）
+     */
+    public SqlParseResult prepare() {
+        this.paramBindingList = new ArrayList<>();
+        parseStatement();
+        if (!parseResult.hasError() && parseResult.getTransactionCmd() != SqlParseResult.TX_NONE) {
+            parseResult.setErrorInfo( MySqlErrorCode.ERR_NOT_SUPPORTED, "NOT SUPPORTED PREPARED CMD: " + parseResult.getSourceSql() );
+        }
+        if (!parseResult.hasError()) {
+            //解析过程可能跳过了语句尾部，占位符个数用独立的lexer完整扫描一遍。
+            Lexer counter = new Lexer( parseResult.getSourceSql(), true, false );
+            while (!counter.isEOF()) {
+                counter.nextToken();
+            }
+            this.paramCount = counter.quesIndex() + 1;
+            this.preparedResult = parseResult;
+        }
+        return parseResult;
+    }
+
+    /**
+     * 绑定一次执行的参数（COM_STMT_EXECUTE）：按 {@link #prepare()} 记录的位置把参数回填到 routeKey，重新计算路由并生成 sqlInfo。
+     * 预编译语句只支持单节点执行，路由到多个节点时返回错误。
+     *
+     * @param params 按占位符顺序排列的参数文本，NULL 参数为 null
+     * @return 本次执行的解析结果
+     */
+    public SqlParseResult bind(String[] params) {
+        this.parseResult = preparedResult.copyStatementInfo();
+        //先清空涉及的routeKey，再按解析顺序回放，避免上次路由计算留下的状态。
+        for (ParamBinding binding : paramBindingList) {
+            binding.routeValue.clear();
+        }
+        for (ParamBinding binding : paramBindingList) {
+            String value = binding.value;
+            if (binding.paramIndex >= 0) {
+                if (binding.paramIndex >= params.length) {
+                    parseResult.setErrorInfo( MySqlErrorCode.ERR_ROUTE_CALC, "MISSING PARAM[" + binding.paramIndex + "], SQL: " + parseResult.getSourceSql() );
+                    return parseResult;
+                }
+                value = params[binding.paramIndex];
+            }
+            applyBinding( binding.routeValue, binding.kind, value );
+        }
+        calculateAllRouteInfo();
+        if (parseResult.hasError()) {
+            return parseResult;
+        }
+        if (tableRouteDataMain != null && subSqlCount > 1 && !checkSingleRoute()) {
+            parseResult.setErrorInfo( MySqlErrorCode.ERR_NOT_SUPPORTED, "Multi-node prepared statement is not supported! SQL: " + parseResult.getSourceSql() );
+            return parseResult;
+        }
+        generateSqlInfo();
+        return parseResult;
+    }
+
+    /**
+     * 按取值方式把一个取值放入 routeKey，用于预编译语句与解析计划的回放。
+     *
+     * @param routeValue 目标 routeKey
+     * @param kind       取值方式
+     * @param value      取值
+     */
+    private static void applyBinding(RouteAlgorithm.RouteValue routeValue, int kind, String value) {
+        switch (kind) {
+            case ParamBinding.RANGE_START:
+                routeValue.putRangeStart( value );
+                break;
+            case ParamBinding.RANGE_END:
+                routeValue.putRangeEnd( value );
+                break;
+            case ParamBinding.MULTI:
+                if (routeValue.getType() != RouteAlgorithm.RouteValue.MULTI) {
+                    routeValue.putValues( new ArrayList<>() );
+                }
+                routeValue.getValues().add( value );
+                break;
+            default:
+                routeValue.putValue( value );
+                break;
+        }
+    }
+
+    /**
+     * 计算指纹并查找解析计划，命中时按计划还原解析状态。
+     * 未命中且参与缓存时开启记录，由 {@link #savePlan} 在解析完成后生成计划。
+     *
+     * @return 是否已按计划完成语句解析
+     */
+    private boolean replayPlan() {
+        if (!SqlPlanCache.accept( lexer.length() )) {
+            return false;
+        }
+        SqlFingerprint fingerprint = new SqlFingerprint();
+        boolean scanned = fingerprint.scan( lexer );
+        lexer.reset( 0 );
+        if (!scanned) {
+            return false;
+        }
+        SqlParsePlan plan = SqlPlanCache.get( fingerprint );
+        if (plan != null && applyPlan( plan, fingerprint )) {
+            return true;
+        }
+        //还原中途失败时丢弃已记录的IN列表位置，由完整解析重新记录。
+        this.inListRouteValue = null;
+        this.inListCount = 0;
+        this.fingerprint = fingerprint;
+        this.planRecorder = new SqlParsePlan.Recorder();
+        return false;
+    }
+
+    /**
+     * 按计划还原解析状态：校验表配置、取出 routeKey 字面量、映射切分点，全部成功后才写入解析器状态。
+     *
+     * @param plan        解析计划
+     * @param fingerprint 当前 SQL 的指纹
+     * @return 是否还原成功，失败时解析器状态不变
+     */
+    private boolean applyPlan(SqlParsePlan plan, SqlFingerprint fingerprint) {
+        int tableCount = plan.tableNames.length;
+        TableRouteData[] tables = new TableRouteData[tableCount];
+        for (int i = 0; i < tableCount; i++) {
+            TableConfig tableConfig = MydbProxyConfigService.getTableConfig( plan.tableNames[i] );
+            if (tableConfig != plan.tableConfigs[i]) {
+                //配置已刷新，计划失效。
+                return false;
+            }
+            tables[i] = newTableRouteData( tableConfig, plan.aliasNames[i] );
+        }
+        int[] bindings = plan.bindings;
+        for (int i = 0; i < bindings.length; i += 4) {
+            String value = literalValue( fingerprint, bindings[i + 3] );
+            if (value == null) {
+                return false;
+            }
+            RouteAlgorithm.RouteValue routeValue = tables[bindings[i]].routeData.getValues()[bindings[i + 1]];
+            applyBinding( routeValue, bindings[i + 2], value );
+            if (bindings[i + 2] == ParamBinding.MULTI) {
+                int token = fingerprint.literalToken( bindings[i + 3] );
+                addInListItem( routeValue, fingerprint.end( token - 1 ), fingerprint.end( token ) );
+            }
+        }
+        //按实际位置重放splitSubSql/setLexerPos，字面量长度不同时切分判断也随之变化。
+        int length = lexer.length();
+        int[] splits = plan.splits;
+        for (int i = 0; i < splits.length; i += 2) {
+            int pos = fingerprint.end( splits[i + 1] );
+            if (splits[i] == SqlParsePlan.SET_POS) {
+                lexerPos = pos;
+                continue;
+            }
+            if (lexerPos >= length - 1) {
+                continue;
+            }
+            if (pos >= length && lexerPos > 0) {
+                addSubSql( lexerPos, length );
+            } else if (splits[i] >= 0) {
+                addSubSql( lexerPos, fingerprint.mark( splits[i] ) );
+            } else {
+                lexerPos = 0;
+                subSqlCount = 0;
+                return false;
+            }
+            lexerPos = pos;
+        }
+        for (int i = 0; i < tableCount; i++) {
+            registerTableRouteData( plan.tableNames[i], tables[i] );
+        }
+        this.hintRouteInfo = plan.hintRouteInfo;
+        this.parseResult.setSqlType( plan.sqlType );
+        this.parseResult.setMasterQuery( plan.masterQuery );
+        this.parseResult.setSpool( plan.spool );
+        return true;
+    }
+
+    /**
+     * 重新扫描一个字面量，取出作为参数值的文本。
+     * 从前一个 token 的结束位置开始扫描：{@link Lexer} 对字符串等 token 不更新 mark，结束位置才是准确的。
+     *
+     * @param fingerprint  当前 SQL 的指纹
+     * @param literalIndex 字面量序号
+     * @return 取值，扫描结果与指纹不一致时为 null
+     */
+    private String literalValue(SqlFingerprint fingerprint, int literalIndex) {
+        int token = fingerprint.literalToken( literalIndex );
+        lexer.reset( token > 0 ? fingerprint.end( token - 1 ) : 0 );
+        lexer.nextToken();
+        if (lexer.currentPos() != fingerprint.end( token )) {
+            return null;
+        }
+        return lexer.paramValueString();
+    }
+
+    /**
+     * 解析完成后生成计划放入缓存：只缓存没有错误的 SELECT/INSERT/UPDATE/DELETE，且 routeKey 的取值状态能由字面量完全复现。
+     */
+    private void savePlan() {
+        if (planRecorder == null || !planRecorder.cacheable || parseResult.hasError() || parseResult.getTransactionCmd() != SqlParseResult.TX_NONE) {
+            return;
+        }
+        int sqlType = parseResult.getSqlType();
+        if (sqlType != SQLType.SELECT.getValue() && sqlType != SQLType.INSERT.getValue() && sqlType != SQLType.UPDATE.getValue() && sqlType != SQLType.DELETE.getValue()) {
+            return;
+        }
+        int tableCount = planRecorder.tableCount;
+        String[] aliasNames = new String[tableCount];
+        TableConfig[] tableConfigs = new TableConfig[tableCount];
+        for (int i = 0; i < tableCount; i++) {
+            TableRouteData tableRouteData = i == 0 ? tableRouteDataMain : tableRouteDataList.get( i - 1 );
+            aliasNames[i] = tableRouteData.tableAliasName;
+            tableConfigs[i] = tableRouteData.tableConfig;
+            if (tableRouteData.routeData != null) {
+                for (RouteAlgorithm.RouteValue routeValue : tableRouteData.routeData.getValues()) {
+                    //insert未取到值的列序号标记、空的IN列表，都无法由字面量复现。
+                    if (routeValue.getType() > RouteAlgorithm.RouteValue.MULTI || (routeValue.getType() == RouteAlgorithm.RouteValue.MULTI && routeValue.getValues().isEmpty())) {
+                        return;
+                    }
+                }
+            }
+        }
+        SqlPlanCache.put( new SqlParsePlan( planRecorder, fingerprint, parseResult, hintRouteInfo, aliasNames, tableConfigs ) );
+    }
+
+    /**
+     * 记录一次切分事件：当前位置必须能映射到 token 序号；会用到当前 token 起始位置时，它也必须能映射。
+     *
+     * @param markToken 当前 token 起始位置所在的 token 序号，{@link SqlParsePlan#SET_POS} 表示 setLexerPos
+     */
+    private void recordSplit(int markToken) {
+        int posToken = fingerprint.indexOfEnd( lexer.currentPos() );
+        if (posToken < 0 || (markToken == -1 && lexerPos < lexer.length() - 1 && !(lexer.isEOF() && lexerPos > 0))) {
+            planRecorder.cacheable = false;
+            return;
+        }
+        planRecorder.addSplit( markToken, posToken );
+    }
+
+    /**
+     * 记录一次 routeKey 取值：当前 token 必须是字面量，并能定位到所属表的 routeKey 槽位。
+     *
+     * @param lexer
+     * @param routeValue 目标 routeKey
+     * @param kind       取值方式
+     */
+    private void recordPlanBinding(SqlLexer lexer, RouteAlgorithm.RouteValue routeValue, int kind) {
+        int literalIndex = fingerprint.indexOfLiteral( fingerprint.indexOfEnd( lexer.currentPos() ) );
+        if (literalIndex >= 0) {
+            for (int i = 0; i < planRecorder.tableCount; i++) {
+                TableRouteData tableRouteData = i == 0 ? tableRouteDataMain : tableRouteDataList.get( i - 1 );
+                if (tableRouteData.routeData == null) {
+                    continue;
+                }
+                RouteAlgorithm.RouteValue[] routeValues = tableRouteData.routeData.getValues();
+                for (int slot = 0; slot < routeValues.length; slot++) {
+                    if (routeValues[slot] == routeValue) {
+                        planRecorder.addBinding( i, slot, kind, literalIndex );
+                        return;
+                    }
+                }
+            }
+        }
+        planRecorder.cacheable = false;
+    }
+
+    /**
+     * @return 预编译语句的 ? 占位符个数
+     */
+    public int getParamCount() {
+        return paramCount;
+    }
+
+    /**
+     * 解析语句：hint 解析、注释跳过与语句类型分发，填充路由输入数据与子 SQL 片段。
+     */
+    private void parseStatement() {
         if (!lexer.isEOF()) {
             lexer.nextToken();
             //处理注解
@@ -151,10 +623,17 @@ public class SqlParser {
                     break;
                 case USE:
                     this.parseResult.setSqlType( SQLType.OTHER.getValue() );
+                    if (paramBindingList != null) {
+                        parseResult.setErrorInfo( MySqlErrorCode.ERR_NOT_SUPPORTED, "NOT SUPPORTED PREPARED CMD: " + parseResult.getSourceSql() );
+                        break;
+                    }
                     parseUse( lexer );
                     break;
                 default:
                     this.parseResult.setSqlType( SQLType.OTHER.getValue() );
+                    if (parseTransaction( lexer )) {
+                        return;
+                    }
                     if (lexer.token() == SET || lexer.token() == SHOW || lexer.token() == EXPLAIN || lexer.token() == DESCRIBE || lexer.token() == EOF) {
                         //有些类型需要通过虚拟schema上支持的,，这些类型必须可以过。
                     } else {
@@ -164,15 +643,6 @@ public class SqlParser {
                     break;
             }
         }
-
-        if (!parseResult.hasError()) {
-            //计算路由信息。
-            calculateAllRouteInfo();
-        }
-        if (!parseResult.hasError()) {
-            generateSqlInfo();
-        }
-        return parseResult;
     }
 
     /**
@@ -180,7 +650,7 @@ public class SqlParser {
      *
      * @param lexer
      */
-    private void parseUse(Lexer lexer) {
+    private void parseUse(SqlLexer lexer) {
         lexer.check( Token.USE );
         lexer.nextToken();
         if (lexer.token() == Token.IDENTIFIER) {
@@ -195,12 +665,57 @@ public class SqlParser {
     }
 
 
+    /**
+     * 解析事务控制语句：BEGIN [WORK]、START TRANSACTION、COMMIT [WORK]、ROLLBACK [WORK]。
+     * 带其它修饰（如 START TRANSACTION READ ONLY、ROLLBACK TO SAVEPOINT）的视为不支持。
+     *
+     * @param lexer
+     * @return 是否为事务控制语句
+     */
+    private boolean parseTransaction(SqlLexer lexer) {
+        int transactionCmd;
+        if (lexer.token() == Token.BEGIN) {
+            transactionCmd = SqlParseResult.TX_BEGIN;
+        } else if (lexer.token() == Token.IDENTIFIER) {
+            String word = lexer.stringVal();
+            if ("START".equalsIgnoreCase( word )) {
+                transactionCmd = SqlParseResult.TX_BEGIN;
+            } else if ("COMMIT".equalsIgnoreCase( word )) {
+                transactionCmd = SqlParseResult.TX_COMMIT;
+            } else if ("ROLLBACK".equalsIgnoreCase( word )) {
+                transactionCmd = SqlParseResult.TX_ROLLBACK;
+            } else {
+                return false;
+            }
+        } else {
+            return false;
+        }
+        boolean start = lexer.token() == Token.IDENTIFIER && transactionCmd == SqlParseResult.TX_BEGIN;
+        lexer.nextToken();
+        if (lexer.token() == Token.IDENTIFIER && (start ? "TRANSACTION" : "WORK").equalsIgnoreCase( lexer.stringVal() )) {
+            lexer.nextToken();
+        } else if (start) {
+            //START 之后不是 TRANSACTION（如 START SLAVE），不支持。
+            parseResult.setErrorInfo( MySqlErrorCode.ERR_NOT_SUPPORTED, "NOT SUPPORTED CMD: " + parseResult.getSourceSql() );
+            return true;
+        }
+        if (lexer.token() == Token.SEMI) {
+            lexer.nextToken();
+        }
+        if (lexer.token() != Token.EOF) {
+            parseResult.setErrorInfo( MySqlErrorCode.ERR_NOT_SUPPORTED, "NOT SUPPORTED TRANSACTION CMD: " + parseResult.getSourceSql() );
+            return true;
+        }
+        parseResult.setTransactionCmd( transactionCmd );
+        return true;
+    }
+
     /**
      * 解析mydb专有hint。
      *
      * @param lexer
      */
-    private void parseHint(Lexer lexer) {
+    private void parseHint(SqlLexer lexer) {
         lexer.check( Token.HINT );
         String hint = lexer.stringVal();
         if (hint.startsWith( HintTypes.MYDB_HINT )) {
@@ -215,7 +730,7 @@ public class SqlParser {
                 //属性值
                 String name = hint.substring( mark, pos ).trim();
                 //寻找数值结尾。
-                mark = hint.indexOf( ';' );
+                mark = hint.indexOf( ';', pos );
                 if (mark == -1) {
                     //说明已经到结尾了
                     mark = hint.length();
@@ -230,8 +745,11 @@ public class SqlParser {
                     }
                 } else if (HintTypes.ROUTE.equalsIgnoreCase( name )) {
                     hintRouteInfo = value;
+                } else if (HintTypes.SPOOL.equalsIgnoreCase( name )) {
+                    parseResult.setSpool( "true".equalsIgnoreCase( value ) );
                 }
-                //进入下一批次处理。
+                //进入下一批次处理，跳过分号。
+                mark++;
                 pos = mark;
             }
         }
@@ -243,7 +761,7 @@ public class SqlParser {
      *
      * @param lexer
      */
-    private void parseSelect(Lexer lexer) {
+    private void parseSelect(SqlLexer lexer) {
         //直接找到From。
         lexer.skipTo( Token.FROM );
         //解析表内容
@@ -265,32 +783,34 @@ public class SqlParser {
      *
      * @param lexer
      */
-    private void parseTableName(Lexer lexer) {
+    private void parseTableName(SqlLexer lexer) {
         if (lexer.token() == Token.IDENTIFIER) {
             splitSubSql( lexer );
             String database = null;
-            String tableName = lexer.stringVal();
+            TableConfigIndex.Entry tableEntry = TableConfigIndex.lookup( lexer );
+            String tableName = tableEntry != null ? tableEntry.getTableName() : lexer.stringVal();
             lexer.nextToken();
             if (lexer.token() == Token.DOT) {
                 lexer.nextToken();
                 //刚刚是库名，现在是表名了
                 database = tableName;
                 setLexerPos();
-                tableName = lexer.stringVal();
+                tableEntry = TableConfigIndex.lookup( lexer );
+                tableName = tableEntry != null ? tableEntry.getTableName() : lexer.stringVal();
                 lexer.nextToken();
             }
-            putTableRouteData( database, tableName, null );
+            putTableRouteData( database, tableName, null, tableEntry );
         }
     }
 
     /**
      * 解析insert语句。
      * 先匹配table，然后匹配字段位置。
-     * 根据字段位置来取参。
+     * 根据字段位置来取参，多行 VALUES 逐行取参（{@link #parseInsertRows}）。
      *
      * @param lexer
      */
-    private void parseInsert(Lexer lexer) {
+    private void parseInsert(SqlLexer lexer) {
         lexer.check( Token.INSERT );
         lexer.nextToken();
         lexer.check( Token.INTO );
@@ -333,38 +853,90 @@ public class SqlParser {
             lexer.skipTo( Token.VALUES );
             lexer.nextToken();
             lexer.check( Token.LPAREN );
-            pos = 0;
+            parseInsertRows( lexer );
+        }
+        if (!lexer.isEOF()) {
+            lexer.skipToEOF();
+        }
+        splitSubSql( lexer );
+    }
+
+    /**
+     * 解析 INSERT 的 VALUES 元组列表，lexer 停在第一个元组的左括号上。
+     * <p>
+     * 第一行的 routeKey 取值直接放入主表路由数据（与单行 INSERT、预编译一致）；多行时逐行记录元组位置与 routeKey 取值，
+     * 由 {@link #generateInsertRowsSqlInfo} 按行计算路由、按目标表拆分。预编译语句只解析第一行。
+     *
+     * @param lexer
+     */
+    private void parseInsertRows(SqlLexer lexer) {
+        RouteAlgorithm.RouteValue[] routeValues = tableRouteDataMain.routeData.getValues();
+        //列序号暂存在routeValue的type里，取值后即被覆盖，先记下各routeKey对应的列序号。
+        int[] keyPos = new int[routeValues.length];
+        boolean hasKey = false;
+        for (int i = 0; i < routeValues.length; i++) {
+            keyPos[i] = routeValues[i].getType() >= 1000 ? routeValues[i].getType() - 1000 : -1;
+            hasKey = hasKey || keyPos[i] >= 0;
+        }
+        int[] rowPos = new int[8];
+        List<String[]> rowValues = new ArrayList<>();
+        while (lexer.token() == Token.LPAREN) {
+            boolean firstRow = rowValues.isEmpty();
+            String[] values = new String[routeValues.length];
+            int rowStart = lexer.currentPos() - 1;
+            int pos = 0;
+            int depth = 0;
+            //是否位于某一列取值的第一个token。
+            boolean valueStart = true;
             while (!lexer.isEOF()) {
                 lexer.nextToken();
-                if (lexer.token() == Token.COMMA) {
-                    pos++;
+                if (lexer.token() == Token.LPAREN) {
+                    depth++;
                 } else if (lexer.token() == Token.RPAREN) {
-                    //可以直接退了
-                    break;
-                } else {
-                    if (tableRouteDataMain.routeData.isSingle()) {
-                        RouteAlgorithm.RouteValue rkv = tableRouteDataMain.routeData.getValue();
-                        if (rkv.getType() == pos + 1000) {
-                            rkv.putValue( lexer.paramValueString() );
-                            //匹配完了，直接退
-                            break;
-                        }
-                    } else {
-                        RouteAlgorithm.RouteValue[] rkvs = tableRouteDataMain.routeData.getValues();
-                        for (RouteAlgorithm.RouteValue rkv : rkvs) {
-                            if (rkv.getType() == pos + 1000) {
-                                rkv.putValue( lexer.paramValueString() );
-                                break;
+                    if (depth == 0) {
+                        break;
+                    }
+                    depth--;
+                } else if (lexer.token() == Token.COMMA && depth == 0) {
+                    pos++;
+                    valueStart = true;
+                    continue;
+                } else if (valueStart && depth == 0) {
+                    for (int i = 0; i < keyPos.length; i++) {
+                        if (keyPos[i] == pos) {
+                            if (firstRow) {
+                                putRouteValue( lexer, routeValues[i], ParamBinding.VALUE );
                             }
+                            values[i] = lexer.paramValueString();
                         }
                     }
                 }
+                valueStart = false;
+            }
+            if (rowValues.size() * 2 == rowPos.length) {
+                rowPos = Arrays.copyOf( rowPos, rowPos.length * 2 );
+            }
+            rowPos[rowValues.size() * 2] = rowStart;
+            rowPos[rowValues.size() * 2 + 1] = lexer.currentPos();
+            rowValues.add( values );
+            //预编译语句与未写出routeKey列的语句只需要第一行。
+            if (paramBindingList != null || !hasKey || lexer.isEOF()) {
+                break;
             }
+            lexer.nextToken();
+            if (lexer.token() != Token.COMMA) {
+                break;
+            }
+            lexer.nextToken();
         }
-        if (!lexer.isEOF()) {
-            lexer.skipToEOF();
+        if (rowValues.size() > 1) {
+            this.insertRowPos = rowPos;
+            this.insertRowValues = rowValues;
+            //按行拆分的结果依赖每一行的取值，不进入解析计划缓存。
+            if (planRecorder != null) {
+                planRecorder.cacheable = false;
+            }
         }
-        splitSubSql( lexer );
     }
 
     /**
@@ -372,7 +944,7 @@ public class SqlParser {
      *
      * @param lexer
      */
-    private void parseUpdate(Lexer lexer) {
+    private void parseUpdate(SqlLexer lexer) {
         lexer.check( Token.UPDATE );
         //解析表内容
         parseTableInfo( lexer );
@@ -390,7 +962,7 @@ public class SqlParser {
      *
      * @param lexer
      */
-    private void parseDelete(Lexer lexer) {
+    private void parseDelete(SqlLexer lexer) {
         lexer.check( Token.DELETE );
         lexer.nextToken();
         lexer.check( Token.FROM );
@@ -410,7 +982,7 @@ public class SqlParser {
      *
      * @param lexer
      */
-    private void parseWhereInfo(Lexer lexer) {
+    private void parseWhereInfo(SqlLexer lexer) {
         //开始尝试匹配routeKey
         while (!lexer.isEOF()) {
             lexer.nextToken();
@@ -435,7 +1007,7 @@ public class SqlParser {
                                 if (lexer.token() == Token.IDENTIFIER) {
                                     break;
                                 }
-                                routeValue.putValue( lexer.paramValueString() );
+                                putRouteValue( lexer, routeValue, ParamBinding.VALUE );
                                 break;
                             case GT:
                             case GTEQ:
@@ -443,7 +1015,7 @@ public class SqlParser {
                                 if (lexer.token() == Token.IDENTIFIER) {
                                     break;
                                 }
-                                routeValue.putRangeStart( lexer.paramValueString() );
+                                putRouteValue( lexer, routeValue, ParamBinding.RANGE_START );
                                 break;
                             case LT:
                             case LTEQ:
@@ -451,45 +1023,32 @@ public class SqlParser {
                                 if (lexer.token() == Token.IDENTIFIER) {
                                     break;
                                 }
-                                routeValue.putRangeEnd( lexer.paramValueString() );
+                                putRouteValue( lexer, routeValue, ParamBinding.RANGE_END );
                                 break;
                             case BETWEEN:
                                 lexer.nextToken();
-                                routeValue.putRangeStart( lexer.paramValueString() );
+                                putRouteValue( lexer, routeValue, ParamBinding.RANGE_START );
                                 lexer.nextToken();
                                 if (lexer.token() == AND) {
                                     lexer.nextToken();
-                                    routeValue.putRangeEnd( lexer.paramValueString() );
+                                    putRouteValue( lexer, routeValue, ParamBinding.RANGE_END );
                                 }
                                 break;
                             case BANGEQ:
+                                //不等条件无法缩小路由范围，不作为取值。
                                 lexer.nextToken();
-                                if (lexer.token() == Token.IDENTIFIER) {
-                                    break;
-                                }
-                                routeValue.putRangeEnd( lexer.paramValueString() );
                                 break;
                             case IN:
                                 lexer.nextToken();
                                 lexer.check( Token.LPAREN );
+                                int listStart = lexer.currentPos();
                                 lexer.nextToken();
                                 //处理子查询的情况。
                                 if (lexer.token() == Token.SELECT) {
                                     parseSelect( lexer );
                                     break;
                                 }
-                                ArrayList<String> vs = new ArrayList<>();
-                                while (!lexer.isEOF()) {
-                                    if (lexer.token() == Token.RPAREN) {
-                                        break;
-                                    } else if (lexer.token() == Token.COMMA) {
-                                        break;
-                                    } else {
-                                        vs.add( lexer.paramValueString() );
-                                    }
-                                    lexer.nextToken();
-                                }
-                                routeValue.putValues( vs );
+                                parseInList( lexer, routeValue, listStart );
                                 break;
                             default:
                                 break;
@@ -509,13 +1068,133 @@ public class SqlParser {
 
     }
 
+    /**
+     * 解析 IN 列表的全部取值放入 routeKey（MULTI），lexer 停在第一项上。
+     * 每一项只能是单个字面量或占位符；出现表达式等其它写法时撤销已记录的取值，该 IN 不参与路由。
+     * 非预编译时同时记录各项位置，生成多节点 SQL 时按路由裁剪（见 {@link #appendInListSubSql}）。
+     *
+     * @param lexer
+     * @param routeValue 目标 routeKey
+     * @param listStart  左括号之后的位置
+     */
+    private void parseInList(SqlLexer lexer, RouteAlgorithm.RouteValue routeValue, int listStart) {
+        int paramBindingNum = paramBindingList != null ? paramBindingList.size() : 0;
+        int planBindingNum = planRecorder != null ? planRecorder.bindingCount : 0;
+        int inListNum = inListCount;
+        //前一个分隔符（左括号或逗号）之后的位置。
+        int sepEnd = listStart;
+        ArrayList<String> vs = new ArrayList<>();
+        boolean valid = true;
+        while (!lexer.isEOF() && lexer.token() != Token.RPAREN) {
+            Token token = lexer.token();
+            if (token != Token.LITERAL_INT && token != Token.LITERAL_CHARS && token != Token.LITERAL_NCHARS && token != Token.LITERAL_HEX
+                    && token != Token.LITERAL_FLOAT && token != Token.QUES) {
+                valid = false;
+                break;
+            }
+            vs.add( lexer.paramValueString() );
+            recordRouteValue( lexer, routeValue, ParamBinding.MULTI );
+            addInListItem( routeValue, sepEnd, lexer.currentPos() );
+            lexer.nextToken();
+            if (lexer.token() == Token.COMMA) {
+                sepEnd = lexer.currentPos();
+                lexer.nextToken();
+            } else if (lexer.token() != Token.RPAREN) {
+                valid = false;
+                break;
+            }
+        }
+        if (valid && !vs.isEmpty()) {
+            routeValue.putValues( vs );
+            return;
+        }
+        //撤销已记录的取值。
+        if (paramBindingList != null) {
+            paramBindingList.subList( paramBindingNum, paramBindingList.size() ).clear();
+        }
+        if (planRecorder != null) {
+            planRecorder.bindingCount = planBindingNum;
+        }
+        inListCount = inListNum;
+        if (inListCount == 0) {
+            inListRouteValue = null;
+        }
+    }
+
+    /**
+     * 记录 IN 列表的一项。只记录第一个参与路由的 IN 列表，预编译语句（改写会打乱参数序号）不记录。
+     *
+     * @param routeValue 该 IN 列表对应的 routeKey
+     * @param sepEnd     前一个分隔符（左括号或逗号）之后的位置
+     * @param end        该项的结束位置
+     */
+    private void addInListItem(RouteAlgorithm.RouteValue routeValue, int sepEnd, int end) {
+        if (paramBindingList != null || (inListRouteValue != null && inListRouteValue != routeValue)) {
+            return;
+        }
+        inListRouteValue = routeValue;
+        if (inListPos == null) {
+            inListPos = new int[32];
+        } else if (inListCount * 2 == inListPos.length) {
+            inListPos = Arrays.copyOf( inListPos, inListPos.length * 2 );
+        }
+        inListPos[inListCount * 2] = sepEnd;
+        inListPos[inListCount * 2 + 1] = end;
+        inListCount++;
+    }
+
+    /**
+     * 把当前 token 的取值放入 routeKey，预编译解析时同时记录下来供 {@link #bind} 回放。
+     *
+     * @param lexer
+     * @param routeValue 目标 routeKey
+     * @param kind       取值方式（ParamBinding.VALUE/RANGE_START/RANGE_END）
+     */
+    private void putRouteValue(SqlLexer lexer, RouteAlgorithm.RouteValue routeValue, int kind) {
+        //占位符先放入非空值，使后续的isEmpty判断与字面量一致。
+        String value = lexer.token() == Token.QUES ? "?" : lexer.paramValueString();
+        switch (kind) {
+            case ParamBinding.RANGE_START:
+                routeValue.putRangeStart( value );
+                break;
+            case ParamBinding.RANGE_END:
+                routeValue.putRangeEnd( value );
+                break;
+            default:
+                routeValue.putValue( value );
+                break;
+        }
+        recordRouteValue( lexer, routeValue, kind );
+    }
+
+    /**
+     * 预编译解析时记录 routeKey 的一次取值：当前 token 为 ? 时记录参数序号，否则记录字面量。
+     *
+     * @param lexer
+     * @param routeValue 目标 routeKey
+     * @param kind       取值方式
+     */
+    private void recordRouteValue(SqlLexer lexer, RouteAlgorithm.RouteValue routeValue, int kind) {
+        if (planRecorder != null && planRecorder.cacheable) {
+            recordPlanBinding( lexer, routeValue, kind );
+        }
+        if (paramBindingList == null) {
+            return;
+        }
+        if (lexer.token() == Token.QUES) {
+            paramBindingList.add( new ParamBinding( routeValue, kind, lexer.quesIndex(), null ) );
+        } else {
+            paramBindingList.add( new ParamBinding( routeValue, kind, -1, lexer.paramValueString() ) );
+        }
+    }
+
     /**
      * 解析TableInfo。
      * 包含表名和别名。
      *
      * @param lexer
      */
-    private void parseTableInfo(Lexer lexer) {
+    private void parseTableInfo(SqlLexer lexer) {
         while (!lexer.isEOF()) {
             lexer.nextToken();
             switch (lexer.token()) {
@@ -524,14 +1203,16 @@ public class SqlParser {
                     splitSubSql( lexer );
                     String database = null, tableName = null, aliasName = null;
                     //说明是表名，进入检查。
-                    tableName = lexer.stringVal();
+                    TableConfigIndex.Entry tableEntry = TableConfigIndex.lookup( lexer );
+                    tableName = tableEntry != null ? tableEntry.getTableName() : lexer.stringVal();
                     lexer.nextToken();
                     if (lexer.token() == Token.DOT) {
                         lexer.nextToken();
                         //刚刚是库名，现在是表名了
                         database = tableName;
                         setLexerPos();
-                        tableName = lexer.stringVal();
+                        tableEntry = TableConfigIndex.lookup( lexer );
+                        tableName = tableEntry != null ? tableEntry.getTableName() : lexer.stringVal();
                         lexer.nextToken();
                     }
                     if (lexer.token() == Token.AS) {
@@ -541,7 +1222,7 @@ public class SqlParser {
                         aliasName = lexer.stringVal();
                     }
                     //注册表到routeData
-                    putTableRouteData( database, tableName, aliasName );
+                    putTableRouteData( database, tableName, aliasName, tableEntry );
                     lexer.skipTo( Token.SET, Token.WHERE, Token.JOIN, Token.COMMA );
                     break;
                 case JOIN:
@@ -549,14 +1230,16 @@ public class SqlParser {
                     splitSubSql( lexer );
                     String databaseJoin = null, tableJoin = null, aliasJoin = null;
                     //说明是表名，进入检查。
-                    tableJoin = lexer.stringVal();
+                    TableConfigIndex.Entry tableEntryJoin = TableConfigIndex.lookup( lexer );
+                    tableJoin = tableEntryJoin != null ? tableEntryJoin.getTableName() : lexer.stringVal();
                     lexer.nextToken();
                     if (lexer.token() == Token.DOT) {
                         lexer.nextToken();
                         databaseJoin = tableJoin;
                         setLexerPos();
                         //刚刚是库名，现在是表名了
-                        tableJoin = lexer.stringVal();
+                        tableEntryJoin = TableConfigIndex.lookup( lexer );
+                        tableJoin = tableEntryJoin != null ? tableEntryJoin.getTableName() : lexer.stringVal();
                         lexer.nextToken();
                     }
                     //判断as
@@ -568,7 +1251,7 @@ public class SqlParser {
                         aliasJoin = lexer.stringVal();
                     }
 
-                    putTableRouteData( databaseJoin, tableJoin, aliasJoin );
+                    putTableRouteData( databaseJoin, tableJoin, aliasJoin, tableEntryJoin );
                     //其他的就跳走吧，不管了。
                     lexer.skipTo( Token.SET, Token.WHERE, Token.JOIN, Token.COMMA );
                     break;
@@ -588,23 +1271,91 @@ public class SqlParser {
     /**
      * 增加子sql
      */
-    private void splitSubSql(Lexer lexer) {
-        String sqlSource = parseResult.getSourceSql();
-        if (lexerPos >= sqlSource.length() - 1) {
+    private void splitSubSql(SqlLexer lexer) {
+        if (planRecorder != null && planRecorder.cacheable) {
+            recordSplit( fingerprint.indexOfMark( lexer.currentMark() ) );
+        }
+        int length = lexer.length();
+        if (lexerPos >= length - 1) {
             return;
         }
         if (lexer.isEOF() && lexerPos > 0) {
-            subSqlList.add( sqlSource.substring( lexerPos ) );
+            addSubSql( lexerPos, length );
         } else {
-            subSqlList.add( sqlSource.substring( lexerPos, lexer.currentMark() ) );
+            addSubSql( lexerPos, lexer.currentMark() );
         }
         lexerPos = lexer.currentPos();
     }
 
+    /**
+     * 记录一个子 SQL 片段的位置。
+     *
+     * @param start 起始位置（含）
+     * @param end   结束位置（不含）
+     */
+    private void addSubSql(int start, int end) {
+        if (subSqlCount * 2 == subSqlPos.length) {
+            subSqlPos = Arrays.copyOf( subSqlPos, subSqlPos.length * 2 );
+        }
+        subSqlPos[subSqlCount * 2] = start;
+        subSqlPos[subSqlCount * 2 + 1] = end;
+        subSqlCount++;
+    }
+
+    /**
+     * 获取子 SQL 片段的文本，首次获取时解码。
+     *
+     * @param index 片段序号
+     * @return 片段文本
+     */
+    private String subSql(int index) {
+        if (subSqlText == null) {
+            subSqlText = new String[subSqlCount];
+        }
+        String text = subSqlText[index];
+        if (text == null) {
+            text = lexer.subText( subSqlPos[index * 2], subSqlPos[index * 2 + 1] );
+            subSqlText[index] = text;
+        }
+        return text;
+    }
+
+    /**
+     * 向 sqlInfo 追加一个子 SQL 片段：字节形式追加原包的 retained slice，文本形式追加片段文本。
+     *
+     * @param sqlInfo 目标 sqlInfo
+     * @param index   片段序号
+     */
+    private void appendSubSql(SqlParseResult.SqlInfo sqlInfo, int index) {
+        if (sqlInfo.getNewSqlBytes() != null) {
+            appendSqlRange( sqlInfo, subSqlPos[index * 2], subSqlPos[index * 2 + 1] );
+        } else {
+            sqlInfo.appendSql( subSql( index ) );
+        }
+    }
+
+    /**
+     * 新建一个待拼接的 sqlInfo：直接在包上解析且无需文本改写时为字节形式，否则为文本形式。
+     *
+     * @param textRewrite 是否需要文本改写
+     * @param sqlSize     文本形式预分配的容量
+     * @return 新的 sqlInfo
+     */
+    private SqlParseResult.SqlInfo newSqlInfo(boolean textRewrite, int sqlSize) {
+        if (sqlBuf != null && !textRewrite) {
+            //每个片段与表名各占一个组件，IN列表裁剪后每段取值占一个组件，预留足够的组件数避免CompositeByteBuf合并复制。
+            return new SqlParseResult.SqlInfo( Unpooled.compositeBuffer( subSqlCount * 2 + inListCount + 16 ) );
+        }
+        return new SqlParseResult.SqlInfo( sqlSize );
+    }
+
     /**
      * 设置LexerPos
      */
     private void setLexerPos() {
+        if (planRecorder != null && planRecorder.cacheable) {
+            recordSplit( SqlParsePlan.SET_POS );
+        }
         lexerPos = lexer.currentPos();
     }
 
@@ -663,21 +1414,50 @@ public class SqlParser {
 
     /**
      * 放置RouteData信息。
+     *
+     * @param database   库名，可为 null
+     * @param tableName  表名
+     * @param aliasName  别名，可为 null
+     * @param tableEntry 解析表名时从 {@link TableConfigIndex} 命中的条目，未命中时为 null
      */
-    private void putTableRouteData(String database, String tableName, String aliasName) {
-        //从配置中拉取table配置
-        TableConfig tableConfig = MydbProxyConfigService.getTableConfig( tableName );
+    private void putTableRouteData(String database, String tableName, String aliasName, TableConfigIndex.Entry tableEntry) {
+        //从配置中拉取table配置，索引已命中时不再查缓存。
+        TableConfig tableConfig = tableEntry != null ? tableEntry.getTableConfig() : MydbProxyConfigService.getTableConfig( tableName );
         //如果没有配置的，直接返回吧。
         if (tableConfig == null) {
             tableConfig = new TableConfig( tableName, MydbProxyConfigService.getBaseClusterId(), database );
-            //加入本地缓存，减少不必要的落地查询。
+            //加入本地缓存并登记索引，之后引用该表直接命中索引，不再查缓存。索引有条目上限，被淘汰后重新走缓存。
             MydbProxyConfigService.putTableConfigToLocalCache( tableName, tableConfig );
         }
+        if (planRecorder != null) {
+            planRecorder.addTable( tableName );
+        }
+        registerTableRouteData( tableName, newTableRouteData( tableConfig, aliasName ) );
+    }
+
+    /**
+     * 按表配置构造路由数据，有 route 配置时初始化 routeKey。
+     *
+     * @param tableConfig 表配置
+     * @param aliasName   别名
+     * @return 表路由数据
+     */
+    private static TableRouteData newTableRouteData(TableConfig tableConfig, String aliasName) {
         TableRouteData tableRouteData = new TableRouteData( tableConfig, aliasName );
         //如果有route信息的，拉一下routeKeyData。
         if (tableConfig.getRouteId() > 0) {
             tableRouteData.setRouteData( RouteManager.initRouteData( tableConfig ) );
         }
+        return tableRouteData;
+    }
+
+    /**
+     * 登记表路由数据：第一个为主表，其余为子表。
+     *
+     * @param tableName      表名
+     * @param tableRouteData 表路由数据
+     */
+    private void registerTableRouteData(String tableName, TableRouteData tableRouteData) {
         //优先放mainRouteData
         if (this.tableRouteDataMain == null) {
             this.tableRouteDataMain = tableRouteData;
@@ -790,56 +1570,823 @@ public class SqlParser {
      */
     private void generateSqlInfo() {
         //没有匹配到表名，直接给默认schema了。
-        if (subSqlList.size() <= 1 || tableRouteDataMain == null) {
-            this.parseResult.setSqlInfo( new SqlParseResult.SqlInfo( DataTable.newDataWithClusterId( MydbProxyConfigService.getBaseClusterId() ), parseResult.sourceSql ) );
+        if (subSqlCount <= 1 || tableRouteDataMain == null) {
+            DataTable baseTable = DataTable.newDataWithClusterId( MydbProxyConfigService.getBaseClusterId() );
+            if (sqlBuf != null) {
+                //原样转发，直接引用包内的SQL字节。
+                this.parseResult.setSqlInfo( new SqlParseResult.SqlInfo( baseTable, sqlBuf.retainedSlice() ) );
+            } else {
+                this.parseResult.setSqlInfo( new SqlParseResult.SqlInfo( baseTable, parseResult.getSourceSql() ) );
+            }
+            return;
+        }
+        //多行INSERT按行拆分到各目标表；hint指定路由时整条语句按hint下发。
+        if (insertRowValues != null && hintRouteInfo == null && generateInsertRowsSqlInfo()) {
             return;
         }
         //每个mainRouteInfoData对应一个mysqlGroup
         if (checkSingleRoute()) {
-            SqlParseResult.SqlInfo sqlInfo = new SqlParseResult.SqlInfo( parseResult.getSourceSql().length() + 64 );
+            SqlParseResult.SqlInfo sqlInfo = newSqlInfo( false, parseResult.getSourceLength() + 64 );
             //开始循环加表名
-            for (int i = 0; i < subSqlList.size(); i++) {
-                sqlInfo.appendSql( subSqlList.get( i ) );
+            for (int i = 0; i < subSqlCount; i++) {
+                appendSubSql( sqlInfo, i );
                 if (i == 0) {
                     //把主表路由加上。
                     DataTable dataTable = tableRouteDataMain.getSingleRouteResult();
                     if (dataTable != null) {
-                        sqlInfo.appendSql( dataTable.genSqlIdentity() );
+                        sqlInfo.appendSqlIdentity( dataTable );
                         sqlInfo.setDataTable( dataTable );
                     }
-                } else if (i < subSqlList.size() - 1) {
+                } else if (i < subSqlCount - 1) {
                     //开始处理从表路由。
                     if (tableRouteDataList != null) {
                         DataTable dataTable = tableRouteDataList.get( i - 1 ).getSingleRouteResult();
                         if (dataTable != null) {
-                            sqlInfo.appendSql( dataTable.genSqlIdentity() );
+                            sqlInfo.appendSqlIdentity( dataTable );
                         }
                     }
                 }
             }
             this.parseResult.setSqlInfo( sqlInfo );
         } else {
+            //多节点查询需要在代理层归并结果，归并信息可能改写首个子SQL片段（如AVG改写），需在拼接前解析。
+            boolean isSelect = parseResult.getSqlType() == SQLType.SELECT.getValue();
+            if (isSelect) {
+                parseMergeInfo();
+            }
             List<SqlParseResult.SqlInfo> sqlInfoList = new ArrayList<>();
-            SqlParseResult.SqlInfo sb = new SqlParseResult.SqlInfo( parseResult.getSourceSql().length() + 64 );
+            //AVG改写与LIMIT改写需要编辑文本，只有这时才解码片段按文本拼接。
+            boolean textRewrite = isSelect && (parseResult.hasAggregate() && selectListRewrite != null || hasLimitRewrite());
+            SqlParseResult.SqlInfo sb = newSqlInfo( textRewrite, parseResult.getSourceLength() + 64 );
             sqlInfoList.add( sb );
+            //appendRouteInfoData会按笛卡尔积替换parseResult.sqlInfoList，循环内必须使用最新的列表。
+            this.parseResult.sqlInfoList = sqlInfoList;
+            //IN列表所在的片段按主表路由裁剪。
+            int inListSubSql = findInListSubSql();
             //开始循环加表名
-            for (int i = 0; i < subSqlList.size(); i++) {
-                for (SqlParseResult.SqlInfo sqlInfo : sqlInfoList) {
-                    sqlInfo.appendSql( subSqlList.get( i ) );
+            for (int i = 0; i < subSqlCount; i++) {
+                for (SqlParseResult.SqlInfo sqlInfo : this.parseResult.sqlInfoList) {
+                    if (i == inListSubSql) {
+                        appendInListSubSql( sqlInfo, i );
+                    } else {
+                        appendSubSql( sqlInfo, i );
+                    }
                 }
                 if (i == 0) {
                     //把主表路由加上。
                     appendRouteInfoData( true, tableRouteDataMain );
-                } else if (i < subSqlList.size() - 1) {
+                } else if (i < subSqlCount - 1) {
                     //开始处理从表路由。
                     if (tableRouteDataList != null) {
                         appendRouteInfoData( false, tableRouteDataList.get( i - 1 ) );
                     }
                 }
+                if (parseResult.hasError()) {
+                    return;
+                }
             }
-            this.parseResult.sqlInfoList = sqlInfoList;
+            if (isSelect) {
+                rewriteLimit();
+            }
+        }
+
+    }
+
+    /**
+     * 多行 INSERT 按行计算路由，按目标表分组，每组生成一条只含本组元组的多行 INSERT，走多节点下发，影响行数由多节点处理累加。
+     * 元组及其间的分隔符直接引用源 SQL 片段，同组相邻的行合并为一个片段。路由到多个表的行（如 MATCH_ALL）写入每个目标表。
+     *
+     * @return 是否已生成 sqlInfo（或已设置错误）；所有行都落在同一个表时返回 false，按整条语句下发
+     */
+    private boolean generateInsertRowsSqlInfo() {
+        if (subSqlCount != 2 || tableRouteDataMain.tableConfig.getRouteId() <= 0) {
+            return false;
+        }
+        TableConfig tableConfig = tableRouteDataMain.tableConfig;
+        RouteAlgorithm.RouteData routeData = tableRouteDataMain.routeData;
+        RouteAlgorithm.RouteValue[] routeValues = routeData.getValues();
+        int rowCount = insertRowValues.size();
+        //各行的目标表。
+        List<Set<DataTable>> rowTables = new ArrayList<>( rowCount );
+        Set<DataTable> allTables = new HashSet<>();
+        for (int row = 0; row < rowCount; row++) {
+            String[] values = insertRowValues.get( row );
+            for (int i = 0; i < routeValues.length; i++) {
+                routeValues[i].clear();
+                if (values[i] != null) {
+                    routeValues[i].putValue( values[i] );
+                }
+            }
+            RouteAlgorithm.RouteResult routeResult;
+            try {
+                routeResult = RouteManager.calculate( tableConfig, routeData );
+            } catch (Throwable e) {
+                this.parseResult.setErrorInfo( MySqlErrorCode.ERR_ROUTE_CALC, "ROUTE CALC ERROR: " + e.getMessage() + ", ROW: " + (row + 1) + ", SQL: " + parseResult.getSourceSql() );
+                return true;
+            }
+            Set<DataTable> tables;
+            if (routeResult.isSingle()) {
+                tables = new HashSet<>();
+                tables.add( routeResult.getDataTable() != null ? routeResult.getDataTable() : tableConfig.genDataTable() );
+            } else {
+                tables = routeResult.getDataTables();
+            }
+            rowTables.add( tables );
+            allTables.addAll( tables );
+        }
+        if (allTables.size() == 1 && tableRouteDataMain.isSingleRoute()) {
+            return false;
+        }
+        //tableEnd为表名之后的位置，valuesStart为第一个元组的位置。
+        int tableEnd = subSqlPos[2];
+        int valuesStart = insertRowPos[0];
+        int valuesEnd = insertRowPos[rowCount * 2 - 1];
+        Map<DataTable, InsertRowGroup> groupMap = new LinkedHashMap<>();
+        for (int row = 0; row < rowCount; row++) {
+            int rowStart = insertRowPos[row * 2];
+            int rowEnd = insertRowPos[row * 2 + 1];
+            for (DataTable dataTable : rowTables.get( row )) {
+                InsertRowGroup group = groupMap.get( dataTable );
+                if (group == null) {
+                    SqlParseResult.SqlInfo sqlInfo = newInsertSqlInfo( rowCount );
+                    appendSubSql( sqlInfo, 0 );
+                    sqlInfo.appendSqlIdentity( dataTable );
+                    sqlInfo.setDataTable( dataTable );
+                    //表名之后到第一个元组之前（列清单、VALUES）直接输出，本组从当前行开始，不能带上前面属于其它表的行。
+                    appendSqlRange( sqlInfo, tableEnd, valuesStart );
+                    group = new InsertRowGroup( sqlInfo );
+                    group.pendingStart = rowStart;
+                    groupMap.put( dataTable, group );
+                } else if (group.lastRow == row - 1) {
+                    //与上一行相邻，连同中间的分隔符一起并入同一个片段。
+                    group.pendingEnd = rowEnd;
+                    group.lastRow = row;
+                    continue;
+                } else {
+                    //不相邻，先输出已合并的片段，再以第一、二行之间的分隔符衔接。
+                    appendSqlRange( group.sqlInfo, group.pendingStart, group.pendingEnd );
+                    appendSqlRange( group.sqlInfo, insertRowPos[1], insertRowPos[2] );
+                    group.pendingStart = rowStart;
+                    group.pendingEnd = rowEnd;
+                    group.lastRow = row;
+                    continue;
+                }
+                group.pendingEnd = rowEnd;
+                group.lastRow = row;
+            }
+        }
+        List<SqlParseResult.SqlInfo> sqlInfoList = new ArrayList<>( groupMap.size() );
+        for (InsertRowGroup group : groupMap.values()) {
+            appendSqlRange( group.sqlInfo, group.pendingStart, group.pendingEnd );
+            //最后一个元组之后的部分（如 ON DUPLICATE KEY UPDATE）。
+            appendSqlRange( group.sqlInfo, valuesEnd, parseResult.getSourceLength() );
+            sqlInfoList.add( group.sqlInfo );
+        }
+        this.parseResult.sqlInfoList = sqlInfoList;
+        return true;
+    }
+
+    /**
+     * 查找可按路由裁剪的 IN 列表所在的片段：IN 列表取值为主表的 routeKey，主表路由为多条且有取值分组。
+     *
+     * @return 片段序号，不能裁剪时返回 -1
+     */
+    private int findInListSubSql() {
+        if (inListCount == 0 || tableRouteDataMain.routeResult == null || tableRouteDataMain.routeResult.isSingle()) {
+            return -1;
+        }
+        boolean mainKey = false;
+        for (RouteAlgorithm.RouteValue routeValue : tableRouteDataMain.routeData.getValues()) {
+            mainKey = mainKey || routeValue == inListRouteValue;
+        }
+        if (!mainKey) {
+            return -1;
+        }
+        int listStart = inListPos[0];
+        int listEnd = inListPos[inListCount * 2 - 1];
+        //第一个片段在主表名之前，不会包含WHERE条件。
+        for (int i = 1; i < subSqlCount; i++) {
+            if (subSqlPos[i * 2] <= listStart && listEnd <= subSqlPos[i * 2 + 1]) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 追加包含 IN 列表的片段，IN 列表只保留落在该 sqlInfo 主表路由上的取值；同一路由上相邻的取值连同分隔符作为一段追加。
+     *
+     * @param sqlInfo 目标 sqlInfo，主表路由已设置
+     * @param index   片段序号
+     */
+    private void appendInListSubSql(SqlParseResult.SqlInfo sqlInfo, int index) {
+        BitSet indexes = sqlInfo.getDataTable() != null ? tableRouteDataMain.routeResult.getMultiValueIndexes( sqlInfo.getDataTable() ) : null;
+        if (indexes == null || indexes.cardinality() == inListCount) {
+            appendSubSql( sqlInfo, index );
+            return;
+        }
+        appendSqlRange( sqlInfo, subSqlPos[index * 2], inListPos[0] );
+        int pendingStart = -1;
+        int pendingEnd = -1;
+        int last = -1;
+        for (int i = indexes.nextSetBit( 0 ); i >= 0; i = indexes.nextSetBit( i + 1 )) {
+            if (last < 0) {
+                //第一项不带分隔符。
+                pendingStart = inListPos[i * 2];
+            } else if (i != last + 1) {
+                appendSqlRange( sqlInfo, pendingStart, pendingEnd );
+                //从前面的逗号开始。
+                pendingStart = inListPos[i * 2] - 1;
+            }
+            pendingEnd = inListPos[i * 2 + 1];
+            last = i;
+        }
+        appendSqlRange( sqlInfo, pendingStart, pendingEnd );
+        appendSqlRange( sqlInfo, inListPos[inListCount * 2 - 1], subSqlPos[index * 2 + 1] );
+    }
+
+    /**
+     * 新建多行 INSERT 拆分用的 sqlInfo，字节形式按行数预留组件数。
+     *
+     * @param rowCount 行数
+     * @return 新的 sqlInfo
+     */
+    private SqlParseResult.SqlInfo newInsertSqlInfo(int rowCount) {
+        if (sqlBuf != null) {
+            return new SqlParseResult.SqlInfo( Unpooled.compositeBuffer( rowCount * 2 + 8 ) );
         }
+        return new SqlParseResult.SqlInfo( parseResult.getSourceLength() + 64 );
+    }
 
+    /**
+     * 向 sqlInfo 追加源 SQL 的一段：字节形式追加原包的 retained slice，文本形式追加解码后的文本。
+     *
+     * @param sqlInfo 目标 sqlInfo
+     * @param start   起始位置（含）
+     * @param end     结束位置（不含）
+     */
+    private void appendSqlRange(SqlParseResult.SqlInfo sqlInfo, int start, int end) {
+        if (end <= start) {
+            return;
+        }
+        if (sqlInfo.getNewSqlBytes() != null) {
+            sqlInfo.appendSql( sqlBuf.retainedSlice( sqlBuf.readerIndex() + start, end - start ) );
+        } else {
+            sqlInfo.appendSql( lexer.subText( start, end ) );
+        }
+    }
+
+    /**
+     * 解析多节点 SELECT 的归并信息（顶层 SELECT 列表中的聚合函数、GROUP BY、ORDER BY、LIMIT）。
+     * <p>
+     * 仅在多路由时调用，使用独立的 lexer 重新扫描源 SQL，单节点查询不承担额外开销。
+     * 通过括号深度只识别最外层子句，子查询、窗口函数内的 ORDER BY 不参与；顶层 UNION 或无法识别的排序表达式直接放弃归并。
+     * 顶层存在 DISTINCT、GROUP BY、HAVING 时各节点的行不能直接截断：可分组合并时 LIMIT 从节点 SQL 中去掉、只在代理层执行，
+     * 否则不记录 LIMIT。
+     */
+    private void parseMergeInfo() {
+        Lexer mergeLexer = new Lexer( parseResult.getSourceSql(), true, false );
+        int depth = 0;
+        boolean limitable = true;
+        boolean selectParsed = false;
+        boolean grouped = false;
+        boolean groupable = true;
+        //子解析停在尚未处理的token上时，下一轮不再前进。
+        boolean advance = true;
+        boolean orderByPresent = false;
+        List<SqlParseResult.OrderByItem> groupByList = null;
+        try {
+            while (!mergeLexer.isEOF()) {
+                if (advance) {
+                    mergeLexer.nextToken();
+                }
+                advance = true;
+                switch (mergeLexer.token()) {
+                    case LPAREN:
+                        depth++;
+                        break;
+                    case RPAREN:
+                        depth--;
+                        break;
+                    case UNION:
+                        if (depth == 0) {
+                            parseResult.setOrderByList( null );
+                            parseResult.setLimit( 0, -1 );
+                            limitClauseStart = -1;
+                            return;
+                        }
+                        break;
+                    case SELECT:
+                        if (depth == 0 && !selectParsed) {
+                            selectParsed = true;
+                            if (parseSelectList( mergeLexer )) {
+                                limitable = false;
+                                groupable = false;
+                            }
+                            advance = false;
+                        }
+                        break;
+                    case DISTINCT:
+                        if (depth == 0) {
+                            limitable = false;
+                            groupable = false;
+                        }
+                        break;
+                    case GROUP:
+                        if (depth == 0) {
+                            limitable = false;
+                            grouped = true;
+                            mergeLexer.nextToken();
+                            if (mergeLexer.token() == Token.BY) {
+                                groupByList = parseOrderByList( mergeLexer );
+                                advance = false;
+                            }
+                            if (groupByList == null) {
+                                groupable = false;
+                            }
+                        }
+                        break;
+                    case HAVING:
+                        if (depth == 0) {
+                            //HAVING 在各节点按部分聚合值过滤，合并后的结果不正确。
+                            limitable = false;
+                            grouped = true;
+                            groupable = false;
+                        }
+                        break;
+                    case LIMIT:
+                        if (depth == 0 && (limitable || grouped)) {
+                            parseLimit( mergeLexer );
+                        }
+                        break;
+                    case ORDER:
+                        if (depth == 0) {
+                            mergeLexer.nextToken();
+                            if (mergeLexer.token() == Token.BY) {
+                                orderByPresent = true;
+                                parseResult.setOrderByList( parseOrderByList( mergeLexer ) );
+                                //排序项以 LIMIT 等结尾时，lexer 已停在该 token 上。
+                                advance = false;
+                            }
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (orderByPresent && !matchOrderByList( parseResult.getOrderByList() )) {
+                //排序列不在结果中时代理层无法排序，各节点执行原 LIMIT、代理层不截断，客户端拿到的是包含正确结果的超集。
+                parseResult.setOrderByList( null );
+                groupable = false;
+                if (!grouped) {
+                    parseResult.setLimit( 0, -1 );
+                    limitClauseStart = -1;
+                }
+            }
+            if (grouped) {
+                if (groupable && selectItemList != null && matchGroupByList( groupByList )) {
+                    //分组合并：各节点返回全部分组，LIMIT 只在代理层执行。
+                    parseResult.setAggregateList( selectItemList, selectHiddenCount );
+                    parseResult.setGroupByList( groupByList );
+                    limitStripped = parseResult.hasLimit();
+                } else {
+                    parseResult.setLimit( 0, -1 );
+                    limitClauseStart = -1;
+                }
+            } else if (selectHasAggregate) {
+                parseResult.setAggregateList( selectItemList, selectHiddenCount );
+            }
+            if (parseResult.hasAggregate() && selectListRewrite != null) {
+                subSql( 0 );
+                subSqlText[0] = selectListRewrite;
+            }
+        } catch (Throwable e) {
+            //归并信息仅用于优化结果输出，解析失败时放弃归并。
+            log.debug( "parse merge info failed: {}, SQL: {}", e.getMessage(), parseResult.getSourceSql() );
+            parseResult.setOrderByList( null );
+            parseResult.setLimit( 0, -1 );
+            parseResult.setAggregateList( null, 0 );
+            parseResult.setGroupByList( null );
+            limitClauseStart = -1;
+            limitStripped = false;
+        }
+    }
+
+    /**
+     * 解析顶层 SELECT 列表中的聚合函数，lexer 当前位于 SELECT，结束时停在顶层 FROM（或 EOF）。
+     * <p>
+     * 每一列要么是单个 COUNT/SUM/MIN/MAX/AVG 调用（可带别名），要么是不含聚合函数的普通列，才能做聚合归并；
+     * 出现 COUNT(DISTINCT)/SUM(DISTINCT)、聚合表达式（如 SUM(a)/COUNT(b)）或 * 时放弃。
+     * 可归并时结果记录到 {@link #selectItemList}，是否启用由 {@link #parseMergeInfo} 结合 GROUP BY 决定。
+     * AVG(x) 在各节点改写为 SUM(x)，并在列表末尾追加隐藏列 COUNT(x)，改写后的首个子 SQL 片段暂存到 {@link #selectListRewrite}。
+     *
+     * @param lexer 归并解析用的 lexer
+     * @return 是否为 SELECT DISTINCT
+     */
+    private boolean parseSelectList(Lexer lexer) {
+        String sourceSql = parseResult.getSourceSql();
+        List<SqlParseResult.AggregateItem> itemList = new ArrayList<>();
+        List<String> nameList = new ArrayList<>();
+        Set<String> columnNames = new HashSet<>();
+        boolean hasStar = false;
+        StringBuilder rewrite = new StringBuilder( sourceSql.length() + 32 );
+        List<String> hiddenList = new ArrayList<>();
+        boolean hasAggregate = false, mergeable = true, rewritten = false;
+        int copyPos = 0;
+        lexer.nextToken();
+        boolean distinct = lexer.token() == Token.DISTINCT;
+        if (distinct) {
+            mergeable = false;
+            lexer.nextToken();
+        }
+        //逐列解析
+        while (!lexer.isEOF() && lexer.token() != Token.FROM) {
+            int itemStart = lexer.currentMark();
+            int itemEnd = itemStart;
+            int depth = 0, tokenCount = 0, function = SqlParseResult.AggregateItem.FUNC_NONE;
+            int argStart = -1, argEnd = -1, callEnd = -1;
+            boolean containsAggregate = false, aliased = false, star = false, pure = false, afterAs = false;
+            String prevName = null, aliasName = null;
+            int aliasTokenIndex = -1;
+            //前几个token的形状，用于识别简单列名（col、t.col 及其别名）。
+            Token[] shape = new Token[4];
+            String[] shapeNames = new String[4];
+            while (!lexer.isEOF()) {
+                Token token = lexer.token();
+                if (depth == 0 && (token == Token.COMMA || token == Token.FROM)) {
+                    break;
+                }
+                if (tokenCount < shape.length) {
+                    shape[tokenCount] = token;
+                    shapeNames[tokenCount] = lexer.stringVal();
+                }
+                if (depth == 0) {
+                    if (afterAs) {
+                        aliasName = lexer.stringVal();
+                        aliasTokenIndex = tokenCount;
+                    }
+                    afterAs = token == Token.AS;
+                }
+                if (token == Token.LPAREN) {
+                    if (prevName != null && aggregateFunction( prevName ) != SqlParseResult.AggregateItem.FUNC_NONE) {
+                        containsAggregate = true;
+                        if (tokenCount == 1) {
+                            function = aggregateFunction( prevName );
+                            argStart = lexer.currentPos();
+                        }
+                    }
+                    depth++;
+                } else if (token == Token.RPAREN) {
+                    depth--;
+                    if (depth == 0 && argStart >= 0 && callEnd < 0) {
+                        argEnd = lexer.currentMark();
+                        callEnd = lexer.currentPos();
+                        pure = true;
+                    }
+                } else if (token == Token.DISTINCT && depth == 1 && argStart >= 0 && callEnd < 0
+                        && function != SqlParseResult.AggregateItem.FUNC_MIN && function != SqlParseResult.AggregateItem.FUNC_MAX) {
+                    mergeable = false;
+                } else if (token == Token.STAR && depth == 0) {
+                    star = true;
+                } else if (depth == 0 && callEnd >= 0) {
+                    //聚合调用之后只允许出现别名。
+                    if (token == Token.AS || (!aliased && (token == Token.IDENTIFIER || token == Token.LITERAL_CHARS || token == Token.LITERAL_ALIAS))) {
+                        if (token != Token.AS && !aliased) {
+                            aliased = true;
+                            aliasName = lexer.stringVal();
+                            aliasTokenIndex = tokenCount;
+                        }
+                    } else {
+                        pure = false;
+                    }
+                }
+                prevName = token == Token.IDENTIFIER ? lexer.stringVal() : null;
+                itemEnd = lexer.currentPos();
+                tokenCount++;
+                lexer.nextToken();
+            }
+            boolean aliasLast = aliasName != null && aliasTokenIndex == tokenCount - 1;
+            if (aliasLast) {
+                columnNames.add( aliasName.toLowerCase() );
+            }
+            String columnName = simpleColumnName( aliasLast && tokenCount > 2 ? tokenCount - 2 : tokenCount, shape, shapeNames );
+            if (columnName != null) {
+                columnNames.add( columnName.toLowerCase() );
+            }
+            hasStar |= star;
+            if (pure) {
+                hasAggregate = true;
+                SqlParseResult.AggregateItem item = new SqlParseResult.AggregateItem( function );
+                if (function == SqlParseResult.AggregateItem.FUNC_AVG) {
+                    String arg = sourceSql.substring( argStart, argEnd );
+                    rewrite.append( sourceSql, copyPos, itemStart ).append( "SUM(" ).append( arg ).append( ')' );
+                    if (!aliased) {
+                        //保持客户端看到的列名与原SQL一致。
+                        rewrite.append( " AS `" ).append( sourceSql.substring( itemStart, itemEnd ).replace( "`", "``" ) ).append( '`' );
+                    }
+                    copyPos = callEnd;
+                    hiddenList.add( "COUNT(" + arg + ")" );
+                    item.setCountIndex( -hiddenList.size() );
+                    rewritten = true;
+                }
+                nameList.add( null );
+                itemList.add( item );
+            } else {
+                if (containsAggregate || star) {
+                    mergeable = false;
+                }
+                nameList.add( aliasLast ? aliasName : simpleColumnName( tokenCount, shape, shapeNames ) );
+                itemList.add( new SqlParseResult.AggregateItem( SqlParseResult.AggregateItem.FUNC_NONE ) );
+            }
+            if (lexer.token() == Token.COMMA) {
+                lexer.nextToken();
+            }
+        }
+        selectColumnNames = columnNames;
+        selectColumnCount = nameList.size();
+        selectHasStar = hasStar;
+        if (!mergeable || lexer.token() != Token.FROM) {
+            return distinct;
+        }
+        //隐藏COUNT列排在可见列之后。
+        for (SqlParseResult.AggregateItem item : itemList) {
+            if (item.getCountIndex() < 0) {
+                item.setCountIndex( itemList.size() - item.getCountIndex() - 1 );
+            }
+        }
+        if (rewritten) {
+            int fromPos = lexer.currentMark();
+            String firstSubSql = subSql( 0 );
+            if (fromPos > firstSubSql.length()) {
+                return distinct;
+            }
+            rewrite.append( sourceSql, copyPos, fromPos );
+            for (String hidden : hiddenList) {
+                rewrite.append( ", " ).append( hidden );
+            }
+            rewrite.append( ' ' ).append( firstSubSql, fromPos, firstSubSql.length() );
+            selectListRewrite = rewrite.toString();
+        }
+        selectItemList = itemList;
+        selectNameList = nameList;
+        selectHasAggregate = hasAggregate;
+        selectHiddenCount = hiddenList.size();
+        return distinct;
+    }
+
+    /**
+     * 识别简单列的名称：col、t.col、col alias、t.col alias，其余表达式返回 null。
+     *
+     * @param tokenCount 列的 token 数
+     * @param shape      前几个 token
+     * @param names      前几个 token 的文本
+     * @return 列名或别名
+     */
+    private static String simpleColumnName(int tokenCount, Token[] shape, String[] names) {
+        if (tokenCount == 0 || tokenCount > shape.length || shape[0] != Token.IDENTIFIER) {
+            return null;
+        }
+        int nameIndex = 0;
+        if (tokenCount >= 3 && shape[1] == Token.DOT && shape[2] == Token.IDENTIFIER) {
+            nameIndex = 2;
+        }
+        if (tokenCount == nameIndex + 1) {
+            return names[nameIndex];
+        }
+        //列名后紧跟的省略AS别名。
+        Token alias = shape[nameIndex + 1];
+        if (tokenCount == nameIndex + 2 && (alias == Token.IDENTIFIER || alias == Token.LITERAL_CHARS || alias == Token.LITERAL_ALIAS)) {
+            return names[nameIndex + 1];
+        }
+        return null;
+    }
+
+    /**
+     * 校验 GROUP BY 分组项都对应 SELECT 列表中的非聚合列：分组列不在结果中时代理层无法区分分组。
+     *
+     * @param groupByList 分组项
+     * @return 是否可分组合并
+     */
+    private boolean matchGroupByList(List<SqlParseResult.OrderByItem> groupByList) {
+        for (SqlParseResult.OrderByItem groupItem : groupByList) {
+            boolean matched = false;
+            for (int i = 0; i < selectItemList.size() && !matched; i++) {
+                if (selectItemList.get( i ).getFunction() != SqlParseResult.AggregateItem.FUNC_NONE) {
+                    continue;
+                }
+                if (groupItem.getColumnName() == null) {
+                    matched = groupItem.getColumnIndex() == i + 1;
+                } else {
+                    matched = groupItem.getColumnName().equalsIgnoreCase( selectNameList.get( i ) );
+                }
+            }
+            if (!matched) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 校验 ORDER BY 排序项都能对应到结果列：排序列不在 SELECT 列表中时，代理层拿不到排序值，无法按全局顺序截断。
+     * SELECT 列表含 * 时按名称的排序项无法在解析期确定，交给执行期按字段定义匹配。
+     *
+     * @param orderByList 排序项，null 表示排序表达式无法识别
+     * @return 是否可在代理层排序
+     */
+    private boolean matchOrderByList(List<SqlParseResult.OrderByItem> orderByList) {
+        if (orderByList == null || selectColumnNames == null) {
+            return false;
+        }
+        for (SqlParseResult.OrderByItem item : orderByList) {
+            if (item.getColumnName() == null) {
+                if (item.getColumnIndex() < 1 || item.getColumnIndex() > selectColumnCount) {
+                    return false;
+                }
+            } else if (!selectHasStar && !selectColumnNames.contains( item.getColumnName().toLowerCase() )) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 识别可归并的聚合函数名。
+     *
+     * @param name 函数名
+     * @return 聚合函数（FUNC_*），非聚合函数返回 FUNC_NONE
+     */
+    private static int aggregateFunction(String name) {
+        if ("COUNT".equalsIgnoreCase( name )) {
+            return SqlParseResult.AggregateItem.FUNC_COUNT;
+        } else if ("SUM".equalsIgnoreCase( name )) {
+            return SqlParseResult.AggregateItem.FUNC_SUM;
+        } else if ("MIN".equalsIgnoreCase( name )) {
+            return SqlParseResult.AggregateItem.FUNC_MIN;
+        } else if ("MAX".equalsIgnoreCase( name )) {
+            return SqlParseResult.AggregateItem.FUNC_MAX;
+        } else if ("AVG".equalsIgnoreCase( name )) {
+            return SqlParseResult.AggregateItem.FUNC_AVG;
+        }
+        return SqlParseResult.AggregateItem.FUNC_NONE;
+    }
+
+    /**
+     * 解析顶层 LIMIT 子句，lexer 当前位于 LIMIT。支持 LIMIT count、LIMIT offset, count、LIMIT count OFFSET offset，
+     * 参数非整数常量时不记录。
+     *
+     * @param lexer 归并解析用的 lexer
+     */
+    private void parseLimit(Lexer lexer) {
+        int start = lexer.currentMark();
+        lexer.nextToken();
+        if (lexer.token() != Token.LITERAL_INT) {
+            return;
+        }
+        long offset = 0;
+        long count = Long.parseLong( lexer.paramValueString() );
+        int end = lexer.currentPos();
+        lexer.nextToken();
+        if (lexer.token() == Token.COMMA || lexer.token() == Token.OFFSET) {
+            boolean isOffset = lexer.token() == Token.OFFSET;
+            lexer.nextToken();
+            if (lexer.token() != Token.LITERAL_INT) {
+                return;
+            }
+            long value = Long.parseLong( lexer.paramValueString() );
+            end = lexer.currentPos();
+            if (isOffset) {
+                offset = value;
+            } else {
+                offset = count;
+                count = value;
+            }
+        }
+        parseResult.setLimit( offset, count );
+        limitClauseStart = start;
+        limitClauseEnd = end;
+    }
+
+    /**
+     * LIMIT 下推改写：多节点时每个节点都可能贡献全局前 offset+count 行，因此各节点 SQL 改写为 LIMIT offset+count，
+     * 由代理层归并后再跳过 offset 行。LIMIT 子句位于最后一个子 SQL 片段内，按源 SQL 末尾片段替换。
+     * 分组合并时各节点必须返回全部分组，LIMIT 子句整体去掉。
+     * 先确认全部节点 SQL 都能替换再逐个改写，避免部分节点已改写：无法替换时各节点保持原 SQL 并放弃全局 LIMIT；
+     * 分组合并时节点 SQL 带 LIMIT 会得到不完整的分组，直接拒绝执行。
+     */
+    private void rewriteLimit() {
+        if (!hasLimitRewrite()) {
+            return;
+        }
+        String sourceSql = parseResult.getSourceSql();
+        String tail = sourceSql.substring( limitClauseStart );
+        String replacement = sourceSql.substring( limitClauseEnd );
+        if (!limitStripped) {
+            replacement = "LIMIT " + (parseResult.getLimitOffset() + parseResult.getLimitCount()) + replacement;
+        }
+        for (SqlParseResult.SqlInfo sqlInfo : parseResult.getSqlInfoList()) {
+            if (!sqlInfo.canReplaceSqlTail( tail )) {
+                if (limitStripped) {
+                    parseResult.setErrorInfo( MySqlErrorCode.ERR_NOT_SUPPORTED, "NOT SUPPORTED GROUP LIMIT: " + sourceSql );
+                } else {
+                    parseResult.setLimit( 0, -1 );
+                }
+                return;
+            }
+        }
+        for (SqlParseResult.SqlInfo sqlInfo : parseResult.getSqlInfoList()) {
+            sqlInfo.replaceSqlTail( tail, replacement );
+        }
+    }
+
+    /**
+     * @return 各节点 SQL 的 LIMIT 子句是否需要改写（带 offset 或需要去掉）
+     */
+    private boolean hasLimitRewrite() {
+        return parseResult.hasLimit() && limitClauseStart >= 0 && (parseResult.getLimitOffset() != 0 || limitStripped);
+    }
+
+    /**
+     * 解析 ORDER BY 排序项（或 GROUP BY 分组项）列表，lexer 当前位于 BY，结束时停在列表之后的首个 token 上。
+     * 仅支持 [table.]column、别名与列序号，可带 ASC/DESC；遇到表达式等复杂情形返回 null 表示放弃归并。
+     *
+     * @param lexer 归并解析用的 lexer
+     * @return 排序项列表，无法归并时返回 null
+     */
+    private List<SqlParseResult.OrderByItem> parseOrderByList(Lexer lexer) {
+        List<SqlParseResult.OrderByItem> list = new ArrayList<>();
+        while (!lexer.isEOF()) {
+            lexer.nextToken();
+            String tableName = null, columnName = null;
+            int columnIndex = 0;
+            if (lexer.token() == Token.LITERAL_INT) {
+                columnIndex = Integer.parseInt( lexer.paramValueString() );
+                lexer.nextToken();
+            } else if (isOrderByIdentifier( lexer.token() )) {
+                columnName = lexer.stringVal();
+                lexer.nextToken();
+                if (lexer.token() == Token.DOT) {
+                    lexer.nextToken();
+                    tableName = columnName;
+                    columnName = lexer.stringVal();
+                    lexer.nextToken();
+                }
+            } else {
+                return null;
+            }
+            boolean desc = false;
+            if (lexer.token() == Token.ASC) {
+                lexer.nextToken();
+            } else if (lexer.token() == Token.DESC) {
+                desc = true;
+                lexer.nextToken();
+            }
+            list.add( new SqlParseResult.OrderByItem( tableName, columnName, columnIndex, desc ) );
+            switch (lexer.token()) {
+                case COMMA:
+                    break;
+                case EOF:
+                case LIMIT:
+                case FOR:
+                case LOCK:
+                case SEMI:
+                case ORDER:
+                case HAVING:
+                    return list;
+                default:
+                    //排序项后跟运算符、函数参数等，说明是表达式，放弃归并。
+                    return null;
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 判断 ORDER BY 中的 token 是否可视为列名。标识符直接可用；与关键字同名的列（如 status、date）按关键字 token 返回，
+     * 只要不是排序子句自身的关键字也视为列名。
+     *
+     * @param token 当前 token
+     * @return 是否可作为列名
+     */
+    private static boolean isOrderByIdentifier(Token token) {
+        if (token == Token.IDENTIFIER) {
+            return true;
+        }
+        if (token.name == null || !Character.isLetter( token.name.charAt( 0 ) )) {
+            return false;
+        }
+        switch (token) {
+            case ASC:
+            case DESC:
+            case LIMIT:
+            case FOR:
+            case LOCK:
+            case SELECT:
+            case CASE:
+                return false;
+            default:
+                return true;
+        }
     }
 
     /**
@@ -863,7 +2410,7 @@ public class SqlParser {
             //匹配单个结果。
             DataTable dataTable = tableRouteData.getSingleRouteResult();
             for (SqlParseResult.SqlInfo sqlInfo : this.parseResult.sqlInfoList) {
-                sqlInfo.appendSql( dataTable.genSqlIdentity() );
+                sqlInfo.appendSqlIdentity( dataTable );
                 if (isMain) {
                     sqlInfo.setDataTable( dataTable );
                 }
@@ -872,25 +2419,113 @@ public class SqlParser {
             ArrayList<SqlParseResult.SqlInfo> sqlInfoList = new ArrayList<>();
             for (DataTable dataTable : tableRouteData.routeResult.getDataTables()) {
                 for (SqlParseResult.SqlInfo sqlInfo : this.parseResult.sqlInfoList) {
-                    SqlParseResult.SqlInfo sqlInfo1 = new SqlParseResult.SqlInfo( parseResult.getSourceSql().length() + 32 );
-                    sqlInfo1.appendSql( sqlInfo.getNewSql() );
-                    sqlInfo1.setDataTable( sqlInfo.getDataTable() );
-                    sqlInfo1.appendSql( dataTable.genSqlIdentity() );
+                    SqlParseResult.SqlInfo sqlInfo1 = sqlInfo.copy( parseResult.getSourceLength() + 32 );
+                    sqlInfo1.appendSqlIdentity( dataTable );
                     if (isMain) {
                         sqlInfo1.setDataTable( dataTable );
                     }
                     sqlInfoList.add( sqlInfo1 );
                 }
                 if (sqlInfoList.size() > MAX_CARTESIAN_PRODUCT) {
+                    for (SqlParseResult.SqlInfo sqlInfo : sqlInfoList) {
+                        sqlInfo.release();
+                    }
                     this.parseResult.setErrorInfo( MySqlErrorCode.ERR_NO_ROUTE_INFO,
                             "笛卡尔积路由数量超过限制[" + MAX_CARTESIAN_PRODUCT + "], SQL: " + parseResult.getSourceSql() );
                     return;
                 }
             }
+            //被展开的旧sqlInfo不再使用，释放其引用的包片段。
+            for (SqlParseResult.SqlInfo sqlInfo : this.parseResult.sqlInfoList) {
+                sqlInfo.release();
+            }
             this.parseResult.sqlInfoList = sqlInfoList;
         }
     }
 
+    /**
+     * 多行 INSERT 拆分时一个目标表的拼接状态。
+     */
+    private static class InsertRowGroup {
+
+        /**
+         * 目标表的 sqlInfo。
+         */
+        final SqlParseResult.SqlInfo sqlInfo;
+
+        /**
+         * 尚未输出的源 SQL 片段起始位置（含）。
+         */
+        int pendingStart;
+
+        /**
+         * 尚未输出的源 SQL 片段结束位置（不含）。
+         */
+        int pendingEnd;
+
+        /**
+         * 最近并入的行号。
+         */
+        int lastRow = -1;
+
+        InsertRowGroup(SqlParseResult.SqlInfo sqlInfo) {
+            this.sqlInfo = sqlInfo;
+        }
+    }
+
+    /**
+     * 预编译语句中 routeKey 的一次取值记录。
+     */
+    private static class ParamBinding {
+
+        /**
+         * 取值方式：等值。
+         */
+        static final int VALUE = 0;
+
+        /**
+         * 取值方式：范围起始。
+         */
+        static final int RANGE_START = 1;
+
+        /**
+         * 取值方式：范围结束。
+         */
+        static final int RANGE_END = 2;
+
+        /**
+         * 取值方式：IN 列表中的一项。
+         */
+        static final int MULTI = 3;
+
+        /**
+         * 目标 routeKey。
+         */
+        final RouteAlgorithm.RouteValue routeValue;
+
+        /**
+         * 取值方式。
+         */
+        final int kind;
+
+        /**
+         * 占位符序号，-1 表示字面量。
+         */
+        final int paramIndex;
+
+        /**
+         * 字面量取值，占位符时为 null。
+         */
+        final String value;
+
+        ParamBinding(RouteAlgorithm.RouteValue routeValue, int kind, int paramIndex, String value) {
+            this.routeValue = routeValue;
+            this.kind = kind;
+            this.paramIndex = paramIndex;
+            this.value = value;
+        }
+    }
+
     /**
      * 表路由数据载体，承载 SQL 中某张表的配置、别名、路由输入（{@link uw.mydb.proxy.route.RouteAlgorithm.RouteData}）
      * 与路由计算结果（{@link uw.mydb.proxy.route.RouteAlgorithm.RouteResult}）。
@@ -0,0 +1,221 @@
+package uw.mydb.proxy.sqlparse;
+
+import uw.mydb.proxy.conf.MydbProxyConfigService;
+import uw.mydb.proxy.conf.MydbProxyProperties;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SQL 解析计划缓存：按 SQL 指纹（{@link SqlFingerprint}）缓存 {@link SqlParsePlan}，有界 LRU。
+ * <p>
+ * 按哈希分为 {@link #SEGMENT_NUM} 段，每段是 accessOrder 的 {@link LinkedHashMap}，段内同步，超过段容量时淘汰最久未访问的计划。
+ * 容量与参与缓存的 SQL 最大长度取自 {@link MydbProxyProperties}，首次使用时初始化；无配置（如测试）时使用默认值。
+ *
+ * @author axeon
+ */
+public class SqlPlanCache {
+
+    /**
+     * 分段数。
+     */
+    private static final int SEGMENT_NUM = 16;
+
+    /**
+     * 默认容量。
+     */
+    private static final int DEFAULT_CAPACITY = 1024;
+
+    /**
+     * 默认参与缓存的 SQL 最大长度。
+     */
+    private static final int DEFAULT_MAX_SQL_LENGTH = 4096;
+
+    /**
+     * 命中次数。
+     */
+    private static final AtomicLong hitNum = new AtomicLong();
+
+    /**
+     * 未命中次数。
+     */
+    private static final AtomicLong missNum = new AtomicLong();
+
+    /**
+     * 分段，容量为 0 时为 null。
+     */
+    private static volatile Segment[] segments;
+
+    /**
+     * 参与缓存的 SQL 最大长度。
+     */
+    private static volatile int maxSqlLength;
+
+    /**
+     * 是否已初始化。
+     */
+    private static volatile boolean inited;
+
+    /**
+     * 指定容量与 SQL 最大长度，清空已有计划。
+     *
+     * @param capacity     条目上限，0 表示关闭
+     * @param maxSqlLength 参与缓存的 SQL 最大长度
+     */
+    public static synchronized void config(int capacity, int maxSqlLength) {
+        if (capacity > 0) {
+            int segmentCapacity = Math.max( 1, capacity / SEGMENT_NUM );
+            Segment[] newSegments = new Segment[SEGMENT_NUM];
+            for (int i = 0; i < SEGMENT_NUM; i++) {
+                newSegments[i] = new Segment( segmentCapacity );
+            }
+            segments = newSegments;
+        } else {
+            segments = null;
+        }
+        SqlPlanCache.maxSqlLength = maxSqlLength;
+        inited = true;
+    }
+
+    /**
+     * 判断该长度的 SQL 是否参与缓存。
+     *
+     * @param sqlLength SQL 长度
+     * @return 缓存开启且长度不超限
+     */
+    public static boolean accept(int sqlLength) {
+        if (!inited) {
+            init();
+        }
+        return segments != null && sqlLength <= maxSqlLength;
+    }
+
+    /**
+     * 查找计划，同时计入命中/未命中次数。
+     *
+     * @param fingerprint SQL 指纹
+     * @return 计划，未命中时为 null
+     */
+    public static SqlParsePlan get(SqlFingerprint fingerprint) {
+        Segment[] segments = SqlPlanCache.segments;
+        SqlParsePlan plan = null;
+        if (segments != null) {
+            Segment segment = segments[segmentIndex( fingerprint.getHash() )];
+            synchronized (segment) {
+                plan = segment.get( fingerprint.getHash() );
+            }
+        }
+        if (plan != null && plan.matches( fingerprint )) {
+            hitNum.incrementAndGet();
+            return plan;
+        }
+        missNum.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 放入计划。
+     *
+     * @param plan 计划
+     */
+    public static void put(SqlParsePlan plan) {
+        Segment[] segments = SqlPlanCache.segments;
+        if (segments == null) {
+            return;
+        }
+        Segment segment = segments[segmentIndex( plan.hash )];
+        synchronized (segment) {
+            segment.put( plan.hash, plan );
+        }
+    }
+
+    /**
+     * 清空全部计划。
+     */
+    public static void clear() {
+        Segment[] segments = SqlPlanCache.segments;
+        if (segments == null) {
+            return;
+        }
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * @return 当前计划数
+     */
+    public static int size() {
+        Segment[] segments = SqlPlanCache.segments;
+        if (segments == null) {
+            return 0;
+        }
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return 命中次数
+     */
+    public static long getHitNum() {
+        return hitNum.get();
+    }
+
+    /**
+     * @return 未命中次数
+     */
+    public static long getMissNum() {
+        return missNum.get();
+    }
+
+    /**
+     * 按配置初始化。
+     */
+    private static synchronized void init() {
+        if (inited) {
+            return;
+        }
+        MydbProxyProperties properties = MydbProxyConfigService.getMydbProperties();
+        if (properties != null) {
+            config( properties.getSqlPlanCacheSize(), properties.getSqlPlanCacheMaxSqlLength() );
+        } else {
+            config( DEFAULT_CAPACITY, DEFAULT_MAX_SQL_LENGTH );
+        }
+    }
+
+    /**
+     * 按哈希高位选段，低位已被 LinkedHashMap 用于桶定位。
+     */
+    private static int segmentIndex(long hash) {
+        return (int) (hash >>> 60) & (SEGMENT_NUM - 1);
+    }
+
+    /**
+     * 缓存分段，按访问顺序淘汰。
+     */
+    private static class Segment extends LinkedHashMap<Long, SqlParsePlan> {
+
+        /**
+         * 段容量。
+         */
+        private final int capacity;
+
+        Segment(int capacity) {
+            super( 16, 0.75f, true );
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, SqlParsePlan> eldest) {
+            return size() > capacity;
+        }
+    }
+}
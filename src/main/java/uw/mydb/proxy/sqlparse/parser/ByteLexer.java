@@ -0,0 +1,1124 @@
+package uw.mydb.proxy.sqlparse.parser;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.charset.StandardCharsets;
+
+import static uw.mydb.proxy.sqlparse.parser.Token.*;
+
+/**
+ * 直接在 COM_QUERY 包的 ByteBuf 上按 UTF-8 字节扫描的词法分析器，产出与 {@link Lexer} 相同的 token 序列。
+ * <p>
+ * 位置均为相对 SQL 起始的字节偏移，每个 token 只记录起止偏移与取值区间；关键字按 fnv1a_64 小写哈希直接在字节上识别，
+ * 只有调用 {@link #stringVal()}、{@link #paramValueString()}、{@link #subText} 时才解码对应的字节。
+ * 识别语句类型、跳过子句时不构造任何字符串，表名、routeKey 字面量只解码自身的几个字节。
+ * <p>
+ * UTF-8 多字节字符只会出现在标识符、字符串和注释中：非 ASCII 字节一律按标识符字符处理，
+ * 全角逗号、括号与空格按 {@link Lexer} 的规则识别。
+ * <p>
+ * 非线程安全；不持有 ByteBuf 的引用计数，只能在包有效期间使用。
+ *
+ * @author axeon
+ */
+public class ByteLexer implements SqlLexer {
+
+    /**
+     * 越界时返回的结束标记。
+     */
+    private static final int EOI = -1;
+
+    /**
+     * 全角逗号 U+FF0C 的 UTF-8 编码为 EF BC 8C，全角括号 U+FF08/U+FF09 为 EF BC 88/89。
+     */
+    private static final int FULL_WIDTH_COMMA = 0x8C;
+
+    private static final int FULL_WIDTH_LPAREN = 0x88;
+
+    private static final int FULL_WIDTH_RPAREN = 0x89;
+
+    /**
+     * 源 SQL 所在的 ByteBuf。
+     */
+    private final ByteBuf buf;
+
+    /**
+     * SQL 在 ByteBuf 中的起始下标。
+     */
+    private final int offset;
+
+    /**
+     * SQL 字节长度。
+     */
+    private final int length;
+
+    /**
+     * 当前位置。
+     */
+    private int pos;
+
+    /**
+     * 当前 token 的起始位置。
+     */
+    private int mark;
+
+    /**
+     * 当前字节（0-255），越界时为 {@link #EOI}。
+     */
+    private int ch;
+
+    /**
+     * 当前解析的 token。
+     */
+    private Token token;
+
+    /**
+     * 当前 token 取值的起始位置，-1 表示与 token 区间相同。
+     */
+    private int valueStart;
+
+    /**
+     * 当前 token 取值的结束位置（不含）。
+     */
+    private int valueEnd;
+
+    /**
+     * 取值中含转义，解码时需要反转义，值为所在字符串的引号。
+     */
+    private int escapeQuote;
+
+    /**
+     * 当前标识符是否为纯 ASCII（此时 {@link #hash} 与 {@link Lexer} 一致，可直接使用全局符号表）。
+     */
+    private boolean symbol;
+
+    /**
+     * 当前 token 已解码的取值，懒构造。
+     */
+    private String stringVal;
+
+    /**
+     * 当前标识符的 fnv1a_64 小写哈希。
+     */
+    private long hash_lower;
+
+    /**
+     * 当前标识符的 fnv1a_64 哈希。
+     */
+    private long hash;
+
+    /**
+     * 已扫描到的 ? 占位符个数。
+     */
+    private int quesCount = 0;
+
+    /**
+     * @param buf SQL 文本（readerIndex 到 writerIndex），扫描过程中不移动读写指针
+     */
+    public ByteLexer(ByteBuf buf) {
+        this.buf = buf;
+        this.offset = buf.readerIndex();
+        this.length = buf.readableBytes();
+        this.pos = 0;
+        this.ch = byteAt(0);
+    }
+
+    private int byteAt(int index) {
+        if (index >= length || index < 0) {
+            return EOI;
+        }
+        return buf.getUnsignedByte(offset + index);
+    }
+
+    private void scanChar() {
+        ch = byteAt(++pos);
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHex(int c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    /**
+     * 返回指定位置的空白字符占用的字节数，不是空白时返回0。
+     * 与 {@link CharTypes#isWhitespace} 一致：控制字符、空格、U+007F~U+00A0 与全角空格 U+3000。
+     */
+    private int whitespaceAt(int index) {
+        int c = byteAt(index);
+        if (c == EOI) {
+            return 0;
+        }
+        if (c <= 32 || c == 0x7F) {
+            return c == 0x1A ? 0 : 1;
+        }
+        if (c == 0xC2) {
+            int c1 = byteAt(index + 1);
+            return c1 >= 0x80 && c1 <= 0xA0 ? 2 : 0;
+        }
+        if (c == 0xE3 && byteAt(index + 1) == 0x80 && byteAt(index + 2) == 0x80) {
+            return 3;
+        }
+        return 0;
+    }
+
+    /**
+     * 返回指定位置的全角逗号、括号的 UTF-8 末字节，不是时返回0。
+     */
+    private int fullWidthAt(int index) {
+        if (byteAt(index) == 0xEF && byteAt(index + 1) == 0xBC) {
+            int c = byteAt(index + 2);
+            if (c == FULL_WIDTH_COMMA || c == FULL_WIDTH_LPAREN || c == FULL_WIDTH_RPAREN) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+    private static boolean isFirstIdentifierByte(int c) {
+        return isLetter(c) || c == '_' || c == '$' || c == '`' || c >= 0x80;
+    }
+
+    /**
+     * 指定位置的字节能否作为标识符的后续字符：字母、数字、下划线与非 ASCII 字节（全角标点与空白除外）。
+     */
+    private boolean isIdentifierAt(int index) {
+        int c = byteAt(index);
+        if (c >= 0x80) {
+            return whitespaceAt(index) == 0 && fullWidthAt(index) != FULL_WIDTH_COMMA;
+        }
+        return isLetter(c) || isDigit(c) || c == '_';
+    }
+
+    @Override
+    public final void nextToken() {
+        stringVal = null;
+        valueStart = -1;
+        escapeQuote = 0;
+        symbol = false;
+        for (; ; ) {
+            //空白跳过
+            int ws = whitespaceAt(pos);
+            if (ws > 0) {
+                pos += ws;
+                ch = byteAt(pos);
+                continue;
+            }
+            mark = pos;
+
+            //变量
+            if (ch == '$' && byteAt(pos + 1) == '{') {
+                scanVariable();
+                return;
+            }
+
+            if (ch >= 0x80) {
+                int fw = fullWidthAt(pos);
+                if (fw != 0) {
+                    pos += 3;
+                    ch = byteAt(pos);
+                    token = fw == FULL_WIDTH_COMMA ? COMMA : (fw == FULL_WIDTH_LPAREN ? LPAREN : RPAREN);
+                    return;
+                }
+            }
+
+            if (isFirstIdentifierByte(ch)) {
+                if ((ch == 'N' || ch == 'n') && byteAt(pos + 1) == '\'') {
+                    scanChar();
+                    scanString();
+                    token = LITERAL_NCHARS;
+                    return;
+                }
+                if ((ch == 'b' || ch == 'B') && byteAt(pos + 1) == '\'' && scanBits()) {
+                    return;
+                }
+                scanIdentifier();
+                return;
+            }
+
+            switch (ch) {
+                case '0':
+                    if (byteAt(pos + 1) == 'x') {
+                        scanChar();
+                        scanChar();
+                        scanHexaDecimal();
+                    } else {
+                        scanNumber();
+                    }
+                    return;
+                case '1':
+                case '2':
+                case '3':
+                case '4':
+                case '5':
+                case '6':
+                case '7':
+                case '8':
+                case '9':
+                    scanNumber();
+                    return;
+                case ',':
+                    scanChar();
+                    token = COMMA;
+                    return;
+                case '(':
+                    scanChar();
+                    token = LPAREN;
+                    return;
+                case ')':
+                    scanChar();
+                    token = RPAREN;
+                    return;
+                case '[':
+                    scanChar();
+                    token = LBRACKET;
+                    return;
+                case ']':
+                    scanChar();
+                    token = RBRACKET;
+                    return;
+                case '{':
+                    scanChar();
+                    token = LBRACE;
+                    return;
+                case '}':
+                    scanChar();
+                    token = RBRACE;
+                    return;
+                case ':':
+                    scanChar();
+                    if (ch == '=') {
+                        scanChar();
+                        token = COLONEQ;
+                    } else if (ch == ':') {
+                        scanChar();
+                        token = COLONCOLON;
+                    } else {
+                        pos = mark;
+                        ch = ':';
+                        scanVariable();
+                    }
+                    return;
+                case '#':
+                    if (byteAt(pos + 1) == '{') {
+                        scanVariable();
+                    } else {
+                        scanLineComment();
+                    }
+                    return;
+                case '.':
+                    scanChar();
+                    if (isDigit(ch) && !isFirstIdentifierByte(byteAt(pos - 2))) {
+                        pos = mark;
+                        ch = '.';
+                        scanNumber();
+                    } else if (ch == '.') {
+                        scanChar();
+                        if (ch == '.') {
+                            scanChar();
+                            token = DOTDOTDOT;
+                        } else {
+                            token = DOTDOT;
+                        }
+                    } else {
+                        token = DOT;
+                    }
+                    return;
+                case '\'':
+                    scanString();
+                    return;
+                case '"':
+                    scanAlias();
+                    return;
+                case '*':
+                    scanChar();
+                    token = STAR;
+                    return;
+                case '?':
+                    scanChar();
+                    token = QUES;
+                    quesCount++;
+                    return;
+                case ';':
+                    scanChar();
+                    token = SEMI;
+                    return;
+                case '@':
+                    scanVariableAt();
+                    return;
+                case '-':
+                    if (byteAt(pos + 1) == '-') {
+                        if (isDigit(byteAt(pos + 2))) {
+                            scanChar();
+                            token = SUB;
+                        } else {
+                            scanLineComment();
+                        }
+                    } else {
+                        scanOperator();
+                    }
+                    return;
+                case '/':
+                    int next = byteAt(pos + 1);
+                    if (next == '*') {
+                        scanMultiLineComment();
+                    } else if (next == '/') {
+                        scanLineComment();
+                    } else {
+                        scanChar();
+                        token = SLASH;
+                    }
+                    return;
+                case '!':
+                case '%':
+                case '&':
+                case '+':
+                case '<':
+                case '=':
+                case '>':
+                case '^':
+                case '|':
+                case '~':
+                    scanOperator();
+                    return;
+                default:
+                    if (ch == '\\' && byteAt(pos + 1) == 'N') {
+                        scanChar();
+                        scanChar();
+                        token = NULL;
+                        return;
+                    }
+                    if (isEOF()) {
+                        token = EOF;
+                    } else {
+                        token = ERROR;
+                        scanChar();
+                    }
+                    return;
+            }
+        }
+    }
+
+    /**
+     * 扫描标识符或关键字，反引号标识符的取值不含反引号。单字符标识符不查关键字，与 {@link Lexer} 一致。
+     */
+    private void scanIdentifier() {
+        hash_lower = FnvHash.BASIC;
+        hash = FnvHash.BASIC;
+        boolean ascii = true;
+        if (ch == '`') {
+            int start = pos + 1;
+            int end = start;
+            for (; ; end++) {
+                int c = byteAt(end);
+                if (c == '`') {
+                    break;
+                }
+                if (c == EOI) {
+                    throw new ParserException("illegal identifier. " + info());
+                }
+                if (c >= 0x80) {
+                    ascii = false;
+                }
+                hash_lower ^= ((c >= 'A' && c <= 'Z') ? (c + 32) : c);
+                hash_lower *= FnvHash.PRIME;
+                hash ^= c;
+                hash *= FnvHash.PRIME;
+            }
+            valueStart = start;
+            valueEnd = end;
+            pos = end + 1;
+            ch = byteAt(pos);
+            symbol = ascii;
+            token = IDENTIFIER;
+            return;
+        }
+        for (; ; ) {
+            if (ch >= 0x80) {
+                ascii = false;
+            }
+            hash_lower ^= ((ch >= 'A' && ch <= 'Z') ? (ch + 32) : ch);
+            hash_lower *= FnvHash.PRIME;
+            hash ^= ch;
+            hash *= FnvHash.PRIME;
+            if (!isIdentifierAt(pos + 1)) {
+                break;
+            }
+            scanChar();
+        }
+        scanChar();
+        symbol = ascii;
+        if (pos - mark == 1) {
+            token = IDENTIFIER;
+            return;
+        }
+        Token tok = Keywords.DEFAULT_KEYWORDS.getKeyword(hash_lower);
+        token = tok != null ? tok : IDENTIFIER;
+    }
+
+    /**
+     * 扫描 b'0101' 形式的位串，不符合时返回 false 按标识符处理。
+     */
+    private boolean scanBits() {
+        int i = pos + 2;
+        for (; ; i++) {
+            int c = byteAt(i);
+            if (c == '0' || c == '1') {
+                continue;
+            }
+            if (c == '\'') {
+                valueStart = pos + 2;
+                valueEnd = i;
+                pos = i + 1;
+                ch = byteAt(pos);
+                token = BITS;
+                return true;
+            }
+            if (c == EOI) {
+                throw new ParserException("illegal identifier. " + info());
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 扫描数字：整数、小数、科学计数法、0b 位串；数字后紧跟标识符字符时整体作为标识符。
+     */
+    private void scanNumber() {
+        if (ch == '0' && byteAt(pos + 1) == 'b') {
+            int i = pos + 2;
+            for (; ; i++) {
+                int c = byteAt(i);
+                if (c == '0' || c == '1') {
+                    continue;
+                }
+                if (isDigit(c)) {
+                    break;
+                }
+                valueStart = pos + 2;
+                valueEnd = i;
+                pos = i;
+                ch = byteAt(pos);
+                token = BITS;
+                return;
+            }
+        }
+        while (isDigit(ch)) {
+            scanChar();
+        }
+        boolean isDouble = false;
+        if (ch == '.') {
+            if (byteAt(pos + 1) == '.') {
+                token = LITERAL_INT;
+                return;
+            }
+            scanChar();
+            isDouble = true;
+            while (isDigit(ch)) {
+                scanChar();
+            }
+        }
+        if (ch == 'e' || ch == 'E') {
+            scanChar();
+            if (ch == '+' || ch == '-') {
+                scanChar();
+            }
+            while (isDigit(ch)) {
+                scanChar();
+            }
+            isDouble = true;
+        }
+        if (isDouble) {
+            token = LITERAL_FLOAT;
+        } else if (isFirstIdentifierByte(ch) && ch != '`' && !(ch == 'b' && pos - mark == 1 && byteAt(pos - 1) == '0')) {
+            while (isIdentifierAt(pos)) {
+                scanChar();
+            }
+            token = IDENTIFIER;
+        } else {
+            token = LITERAL_INT;
+        }
+    }
+
+    /**
+     * 扫描 0x 之后的十六进制数字，取值不含 0x 前缀。
+     */
+    private void scanHexaDecimal() {
+        valueStart = pos;
+        while (isHex(ch)) {
+            scanChar();
+        }
+        valueEnd = pos;
+        token = LITERAL_HEX;
+    }
+
+    /**
+     * 扫描单引号字符串，取值不含引号；含反斜杠转义或连续两个单引号时在解码时反转义。
+     */
+    private void scanString() {
+        int start = pos + 1;
+        int p = start;
+        for (; ; ) {
+            int c = byteAt(p);
+            if (c == EOI) {
+                throw new ParserException("unclosed str. " + info());
+            }
+            if (c == '\\') {
+                escapeQuote = '\'';
+                p += 2;
+                continue;
+            }
+            if (c == '\'') {
+                if (byteAt(p + 1) == '\'') {
+                    escapeQuote = '\'';
+                    p += 2;
+                    continue;
+                }
+                break;
+            }
+            p++;
+        }
+        valueStart = start;
+        valueEnd = p;
+        pos = p + 1;
+        ch = byteAt(pos);
+        token = LITERAL_CHARS;
+    }
+
+    /**
+     * 扫描双引号文本：不含转义时为 LITERAL_ALIAS，取值含引号；含转义时为 LITERAL_CHARS，取值为反转义后的内容。
+     */
+    private void scanAlias() {
+        int start = pos + 1;
+        int p = start;
+        for (; ; ) {
+            int c = byteAt(p);
+            if (c == EOI) {
+                throw new ParserException("unclosed str. " + info());
+            }
+            if (c == '\\') {
+                escapeQuote = '"';
+                p += 2;
+                continue;
+            }
+            if (c == '"') {
+                if (byteAt(p + 1) == '"') {
+                    escapeQuote = '"';
+                    p += 2;
+                    continue;
+                }
+                break;
+            }
+            p++;
+        }
+        if (escapeQuote == 0) {
+            valueStart = mark;
+            valueEnd = p + 1;
+            token = LITERAL_ALIAS;
+        } else {
+            valueStart = start;
+            valueEnd = p;
+            token = LITERAL_CHARS;
+        }
+        pos = p + 1;
+        ch = byteAt(pos);
+    }
+
+    /**
+     * 扫描 --、//、# 单行注释（含行尾换行符）。与 {@link Lexer} 一致，位于结尾或内容不安全的单行注释直接拒绝。
+     */
+    private void scanLineComment() {
+        for (; ; ) {
+            if (ch == '\n') {
+                scanChar();
+                break;
+            }
+            if (ch == '\r') {
+                scanChar();
+                if (ch == '\n') {
+                    scanChar();
+                }
+                break;
+            }
+            if (ch == EOI) {
+                break;
+            }
+            scanChar();
+        }
+        token = LINE_COMMENT;
+        if (isEOF() || !Lexer.isSafeCommentText(stringVal())) {
+            throw new NotAllowCommentException();
+        }
+    }
+
+    /**
+     * 扫描多行注释；以 /*! 或 /*# 开头时为 HINT，取值从 ! 或 # 开始到 *&#47; 之前。未闭合时吞掉剩余文本返回 ERROR。
+     */
+    private void scanMultiLineComment() {
+        int p = pos + 2;
+        while (byteAt(p) == ' ') {
+            p++;
+        }
+        int c = byteAt(p);
+        boolean isHint = c == '!' || c == '#';
+        int hintStart = p;
+        for (; ; p++) {
+            c = byteAt(p);
+            if (c == EOI) {
+                pos = length;
+                ch = EOI;
+                token = ERROR;
+                return;
+            }
+            if (c == '*' && byteAt(p + 1) == '/') {
+                break;
+            }
+        }
+        if (isHint) {
+            valueStart = hintStart;
+            valueEnd = p;
+            token = HINT;
+        } else {
+            token = MULTI_LINE_COMMENT;
+        }
+        pos = p + 2;
+        ch = byteAt(pos);
+    }
+
+    /**
+     * 扫描 :name、${...}、#{...} 变量。
+     */
+    private void scanVariable() {
+        int next = byteAt(pos + 1);
+        if (next == '`' || next == '{') {
+            int close = next == '`' ? '`' : '}';
+            int p = pos + 2;
+            for (; ; p++) {
+                int c = byteAt(p);
+                if (c == close) {
+                    break;
+                }
+                if (c == EOI) {
+                    throw new ParserException("illegal identifier. " + info());
+                }
+            }
+            pos = p + 1;
+            ch = byteAt(pos);
+        } else {
+            scanChar();
+            while (isIdentifierAt(pos)) {
+                scanChar();
+            }
+        }
+        token = VARIANT;
+    }
+
+    /**
+     * 扫描 @var、@@var、@`var` 变量。
+     */
+    private void scanVariableAt() {
+        if (byteAt(pos + 1) == '@') {
+            scanChar();
+        }
+        if (byteAt(pos + 1) == '`') {
+            int p = pos + 2;
+            for (; ; p++) {
+                int c = byteAt(p);
+                if (c == '`') {
+                    break;
+                }
+                if (c == EOI) {
+                    throw new ParserException("illegal identifier. " + info());
+                }
+            }
+            pos = p + 1;
+            ch = byteAt(pos);
+        } else {
+            scanChar();
+            while (isIdentifierAt(pos)) {
+                scanChar();
+            }
+        }
+        token = VARIANT;
+    }
+
+    /**
+     * 扫描操作符，规则与 {@link Lexer} 的 scanOperator 相同。
+     */
+    private void scanOperator() {
+        switch (ch) {
+            case '+':
+                scanChar();
+                token = PLUS;
+                break;
+            case '-':
+                scanChar();
+                if (ch == '>') {
+                    scanChar();
+                    if (ch == '>') {
+                        scanChar();
+                        token = SUBGTGT;
+                    } else {
+                        token = SUBGT;
+                    }
+                } else {
+                    token = SUB;
+                }
+                break;
+            case '&':
+                scanChar();
+                if (ch == '&') {
+                    scanChar();
+                    token = AMPAMP;
+                } else {
+                    token = AMP;
+                }
+                break;
+            case '|':
+                scanChar();
+                if (ch == '|') {
+                    scanChar();
+                    if (ch == '/') {
+                        scanChar();
+                        token = BARBARSLASH;
+                    } else {
+                        token = BARBAR;
+                    }
+                } else if (ch == '/') {
+                    scanChar();
+                    token = BARSLASH;
+                } else {
+                    token = BAR;
+                }
+                break;
+            case '^':
+                scanChar();
+                if (ch == '=') {
+                    scanChar();
+                    token = CARETEQ;
+                } else {
+                    token = CARET;
+                }
+                break;
+            case '%':
+                scanChar();
+                token = PERCENT;
+                break;
+            case '=':
+                scanChar();
+                if (ch == '=') {
+                    scanChar();
+                    token = EQEQ;
+                } else if (ch == '>') {
+                    scanChar();
+                    token = EQGT;
+                } else {
+                    token = EQ;
+                }
+                break;
+            case '>':
+                scanChar();
+                if (ch == '=') {
+                    scanChar();
+                    token = GTEQ;
+                } else if (ch == '>') {
+                    scanChar();
+                    token = GTGT;
+                } else {
+                    token = GT;
+                }
+                break;
+            case '<':
+                scanChar();
+                //与Lexer一致，允许 "< =" 之类中间带一个空格的写法。
+                if (ch == ' ' && (byteAt(pos + 1) == '=' || byteAt(pos + 1) == '>' || byteAt(pos + 1) == '<' || byteAt(pos + 1) == '@'
+                        || (byteAt(pos + 1) == '-' && byteAt(pos + 2) == '>'))) {
+                    scanChar();
+                }
+                if (ch == '=') {
+                    scanChar();
+                    if (ch == '>') {
+                        scanChar();
+                        token = LTEQGT;
+                    } else {
+                        token = LTEQ;
+                    }
+                } else if (ch == '>') {
+                    scanChar();
+                    token = LTGT;
+                } else if (ch == '<') {
+                    scanChar();
+                    token = LTLT;
+                } else if (ch == '@') {
+                    scanChar();
+                    token = LT_MONKEYS_AT;
+                } else if (ch == '-' && byteAt(pos + 1) == '>') {
+                    scanChar();
+                    scanChar();
+                    token = LT_SUB_GT;
+                } else {
+                    token = LT;
+                }
+                break;
+            case '!':
+                scanChar();
+                while (whitespaceAt(pos) > 0) {
+                    pos += whitespaceAt(pos);
+                    ch = byteAt(pos);
+                }
+                if (ch == '=') {
+                    scanChar();
+                    token = BANGEQ;
+                } else if (ch == '>') {
+                    scanChar();
+                    token = BANGGT;
+                } else if (ch == '<') {
+                    scanChar();
+                    token = BANGLT;
+                } else if (ch == '!') {
+                    scanChar();
+                    token = BANGBANG;
+                } else if (ch == '~') {
+                    scanChar();
+                    if (ch == '*') {
+                        scanChar();
+                        token = BANG_TILDE_STAR;
+                    } else {
+                        token = BANG_TILDE;
+                    }
+                } else {
+                    token = BANG;
+                }
+                break;
+            case '~':
+                scanChar();
+                if (ch == '*') {
+                    scanChar();
+                    token = TILDE_STAR;
+                } else if (ch == '=') {
+                    scanChar();
+                    token = TILDE_EQ;
+                } else {
+                    token = TILDE;
+                }
+                break;
+            default:
+                //ch 为 UTF-8 字节，非可打印 ASCII 只给出十六进制值。
+                String charText = ch >= 0x20 && ch < 0x7f ? "'" + (char) ch + "' " : "";
+                throw new ParserException("illegal char " + charText + "(0x" + Integer.toHexString(ch) + "). " + info());
+        }
+    }
+
+    @Override
+    public final Token token() {
+        return token;
+    }
+
+    /**
+     * 懒解码当前 token 的取值。纯 ASCII 的标识符优先取全局符号表中的字符串，重复出现的表名、列名不再分配。
+     */
+    @Override
+    public final String stringVal() {
+        if (stringVal == null) {
+            int start = valueStart < 0 ? mark : valueStart;
+            int end = valueStart < 0 ? pos : valueEnd;
+            if (escapeQuote != 0) {
+                stringVal = unescape(start, end);
+            } else if (symbol) {
+                stringVal = SymbolTable.global.findSymbol(hash);
+                if (stringVal == null) {
+                    stringVal = SymbolTable.global.addSymbol(subText(start, end), hash);
+                }
+            } else {
+                stringVal = subText(start, end);
+            }
+        }
+        return stringVal;
+    }
+
+    @Override
+    public final String paramValueString() {
+        return stringVal();
+    }
+
+    /**
+     * 反转义字符串取值，转义规则与 {@link Lexer} 相同。转义序列都是 ASCII，直接在字节上处理后整体按 UTF-8 解码。
+     */
+    private String unescape(int start, int end) {
+        byte[] out = new byte[end - start];
+        int n = 0;
+        for (int p = start; p < end; p++) {
+            int c = byteAt(p);
+            if (c == '\\' && p + 1 < end) {
+                c = byteAt(++p);
+                switch (c) {
+                    case '0':
+                        out[n++] = 0;
+                        break;
+                    case 'b':
+                        out[n++] = '\b';
+                        break;
+                    case 'n':
+                        out[n++] = '\n';
+                        break;
+                    case 'r':
+                        out[n++] = '\r';
+                        break;
+                    case 't':
+                        out[n++] = '\t';
+                        break;
+                    case 'Z':
+                        out[n++] = 0x1A;
+                        break;
+                    case '%':
+                        out[n++] = '\\';
+                        out[n++] = '%';
+                        break;
+                    default:
+                        out[n++] = (byte) c;
+                        break;
+                }
+            } else if (c == escapeQuote && p + 1 < end && byteAt(p + 1) == escapeQuote) {
+                out[n++] = (byte) c;
+                p++;
+            } else {
+                out[n++] = (byte) c;
+            }
+        }
+        return new String(out, 0, n, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void check(Token token) {
+        if (this.token != token) {
+            throw new ParserException("syntax error： expect " + token + ", actual " + this.token + " " + info());
+        }
+    }
+
+    @Override
+    public void skipTo(Token t) {
+        if (token == t) {
+            return;
+        }
+        while (pos < length) {
+            nextToken();
+            if (token == t) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void skipTo(Token... ts) {
+        for (Token t : ts) {
+            if (token == t) {
+                return;
+            }
+        }
+        outLoop:
+        while (pos < length) {
+            nextToken();
+            for (Token t : ts) {
+                if (token == t) {
+                    break outLoop;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void skipToEOF() {
+        pos = length;
+        ch = EOI;
+        token = EOF;
+    }
+
+    @Override
+    public boolean isEOF() {
+        return pos >= length;
+    }
+
+    @Override
+    public final int currentPos() {
+        return pos;
+    }
+
+    @Override
+    public final int currentMark() {
+        return mark;
+    }
+
+    @Override
+    public final int quesIndex() {
+        return quesCount - 1;
+    }
+
+    @Override
+    public String subText(int start, int end) {
+        return buf.toString(offset + start, end - start, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public long hashLower() {
+        return hash_lower;
+    }
+
+    /**
+     * 纯 ASCII 的标识符直接逐字节比较，不解码；其余按解码后的取值比较。
+     */
+    @Override
+    public boolean identifierEquals(String name) {
+        if (token != IDENTIFIER) {
+            return false;
+        }
+        if (!symbol) {
+            return name.equals(stringVal());
+        }
+        int start = valueStart < 0 ? mark : valueStart;
+        int end = valueStart < 0 ? pos : valueEnd;
+        if (end - start != name.length()) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (buf.getUnsignedByte(offset + start + i) != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public long tokenHash() {
+        long h = FnvHash.BASIC;
+        for (int i = mark; i < pos; i++) {
+            h ^= buf.getUnsignedByte(offset + i);
+            h *= FnvHash.PRIME;
+        }
+        return h;
+    }
+
+    @Override
+    public void reset(int pos) {
+        this.pos = pos;
+        this.ch = byteAt(pos);
+    }
+
+    /**
+     * 当前解析位置信息。
+     *
+     * @return
+     */
+    public String info() {
+        return "pos " + pos + ", token " + token;
+    }
+}
@@ -37,5 +37,10 @@ public class HintTypes {
      */
     public static final String ROUTE = "route";
 
+    /**
+     * 结果集转存：结果先整体转存到临时文件，后端连接提前归还，再按客户端速度发送。
+     */
+    public static final String SPOOL = "spool";
+
 
 }
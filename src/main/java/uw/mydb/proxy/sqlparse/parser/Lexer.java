@@ -14,7 +14,7 @@ import static uw.mydb.proxy.sqlparse.parser.Token.*;
  * @author wenshao [szujobs@hotmail.com]
  * @author axeon [23231269@qq.com]
  */
-public class Lexer {
+public class Lexer implements SqlLexer {
 
     /**
      * 解析的文本字符串。
@@ -61,6 +61,10 @@ public class Lexer {
     private boolean endOfComment = false;
     private boolean keepComments = true;
     private boolean optimizedForParameterized = false;
+    /**
+     * 已扫描到的 ? 占位符个数，供预编译语句定位参数序号。
+     */
+    private int quesCount = 0;
     /**
      * 保存检查点。
      */
@@ -209,6 +213,7 @@ public class Lexer {
         savePoint.stringVal = stringVal;
         savePoint.hash = hash;
         savePoint.hash_lower = hash_lower;
+        savePoint.quesCount = quesCount;
         return this.savePoint = savePoint;
     }
 
@@ -226,6 +231,7 @@ public class Lexer {
         this.stringVal = savePoint.stringVal;
         this.hash = savePoint.hash;
         this.hash_lower = savePoint.hash_lower;
+        this.quesCount = savePoint.quesCount;
     }
 
     /**
@@ -406,6 +412,7 @@ public class Lexer {
         if (ch == '?') {
             scanChar();
             token = Token.QUES;
+            quesCount++;
             return;
         }
 
@@ -676,7 +683,7 @@ public class Lexer {
                     scanChar();
 
                     token = Token.QUES;
-
+                    quesCount++;
                     return;
                 case ';':
                     scanChar();
@@ -931,6 +938,7 @@ public class Lexer {
             case '?':
                 scanChar();
                 token = Token.QUES;
+                quesCount++;
                 break;
             case '~':
                 scanChar();
@@ -1982,6 +1990,13 @@ public class Lexer {
         return mark;
     }
 
+    /**
+     * 返回当前 ? 占位符的序号（从0开始），仅在当前 token 为 QUES 时有意义。
+     */
+    public final int quesIndex() {
+        return quesCount - 1;
+    }
+
     /**
      * The value of a literal token, recorded as a string. For integers, leading 0x and 'l' suffixes are suppressed.
      */
@@ -2116,6 +2131,16 @@ public class Lexer {
     }
 
     protected boolean isSafeComment(String comment) {
+        return isSafeCommentText(comment);
+    }
+
+    /**
+     * 检查注释内容是否安全（不含可能拼接注入的关键字与操作符）。
+     *
+     * @param comment
+     * @return
+     */
+    static boolean isSafeCommentText(String comment) {
         if (comment == null) {
             return true;
         }
@@ -2153,6 +2178,59 @@ public class Lexer {
         return text;
     }
 
+    /**
+     * 截取源文本。
+     *
+     * @param start 起始位置（含）
+     * @param end   结束位置（不含）
+     * @return 文本片段
+     */
+    public String subText(int start, int end) {
+        return text.substring(start, end);
+    }
+
+    /**
+     * 源文本长度。
+     *
+     * @return
+     */
+    public int length() {
+        return text.length();
+    }
+
+    /**
+     * 当前标识符的小写 fnv1a_64 哈希。
+     *
+     * @return
+     */
+    public final long hashLower() {
+        return hash_lower;
+    }
+
+    /**
+     * 当前标识符是否与 name 相同（区分大小写）。标识符取值来自全局符号表，比较不分配。
+     *
+     * @param name
+     * @return
+     */
+    public boolean identifierEquals(String name) {
+        return token == Token.IDENTIFIER && name.equals(stringVal);
+    }
+
+    /**
+     * 当前 token 原文的 fnv1a_64 哈希，区分大小写。
+     *
+     * @return
+     */
+    public long tokenHash() {
+        long h = FnvHash.BASIC;
+        for (int i = mark; i < pos; i++) {
+            h ^= text.charAt(i);
+            h *= FnvHash.PRIME;
+        }
+        return h;
+    }
+
     public static interface CommentHandler {
         boolean handle(Token lastToken, String comment);
     }
@@ -2165,6 +2243,7 @@ public class Lexer {
         char ch;
         long hash;
         long hash_lower;
+        int quesCount;
         String stringVal;
     }
 }
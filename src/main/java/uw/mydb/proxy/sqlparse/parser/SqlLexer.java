@@ -0,0 +1,117 @@
+package uw.mydb.proxy.sqlparse.parser;
+
+/**
+ * SqlParser 使用的词法分析接口，{@link Lexer} 基于 String 按字符扫描，{@link ByteLexer} 直接在包的 ByteBuf 上按 UTF-8 字节扫描。
+ * <p>
+ * 两种实现产出相同的 token 序列；位置（{@link #currentPos()}、{@link #currentMark()}）分别是字符偏移和字节偏移，
+ * 只能与同一个 lexer 的 {@link #subText} 配合使用。
+ *
+ * @author axeon
+ */
+public interface SqlLexer {
+
+    /**
+     * 前进到下一个 token。
+     */
+    void nextToken();
+
+    /**
+     * @return 当前 token
+     */
+    Token token();
+
+    /**
+     * @return 当前 token 的取值：标识符为名称（不含反引号），字符串为去掉引号后的内容，HINT 为注释内容，其余为 token 原文
+     */
+    String stringVal();
+
+    /**
+     * @return 当前 token 作为参数值的文本（字面量取值）
+     */
+    String paramValueString();
+
+    /**
+     * 确认当前 token，不一致时抛出 {@link ParserException}。
+     *
+     * @param token 期望的 token
+     */
+    void check(Token token);
+
+    /**
+     * 跳到最近的 token。
+     *
+     * @param t 目标 token
+     */
+    void skipTo(Token t);
+
+    /**
+     * 跳到最近的任意一个 token。
+     *
+     * @param ts 目标 token 列表
+     */
+    void skipTo(Token... ts);
+
+    /**
+     * 直接跳到结束位置，不再扫描剩余文本。
+     */
+    void skipToEOF();
+
+    /**
+     * @return 是否已扫描到结尾
+     */
+    boolean isEOF();
+
+    /**
+     * @return 当前扫描位置（当前 token 之后）
+     */
+    int currentPos();
+
+    /**
+     * @return 当前 token 的起始位置
+     */
+    int currentMark();
+
+    /**
+     * @return 当前 ? 占位符的序号（从0开始），仅在当前 token 为 QUES 时有意义
+     */
+    int quesIndex();
+
+    /**
+     * 截取源文本。
+     *
+     * @param start 起始位置（含）
+     * @param end   结束位置（不含）
+     * @return 文本片段
+     */
+    String subText(int start, int end);
+
+    /**
+     * @return 源文本长度（与位置同一单位）
+     */
+    int length();
+
+    /**
+     * @return 当前标识符的小写 fnv1a_64 哈希（{@link Lexer} 按字符、{@link ByteLexer} 按 UTF-8 字节计算，ASCII 标识符两者一致）
+     */
+    long hashLower();
+
+    /**
+     * 比较当前标识符与 name 是否相同（区分大小写），不构造标识符字符串。
+     *
+     * @param name 名称
+     * @return 当前 token 为标识符且取值与 name 相同
+     */
+    boolean identifierEquals(String name);
+
+    /**
+     * @return 当前 token 原文（[{@link #currentMark()}, {@link #currentPos()})）的 fnv1a_64 哈希，区分大小写
+     */
+    long tokenHash();
+
+    /**
+     * 把扫描位置重置到 pos，下一次 {@link #nextToken()} 从该位置开始扫描。pos 应为某个 token 的起始位置。
+     *
+     * @param pos 位置
+     */
+    void reset(int pos);
+}
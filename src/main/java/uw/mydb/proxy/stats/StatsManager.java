@@ -6,7 +6,9 @@ import uw.mydb.proxy.conf.MydbProxyConfigService;
 import uw.mydb.proxy.conf.MydbProxyProperties;
 import uw.mydb.proxy.constant.SQLType;
 import uw.mydb.proxy.mysql.MySqlClient;
+import uw.mydb.proxy.route.RouteResultCache;
 import uw.mydb.proxy.server.ProxySessionManager;
+import uw.mydb.proxy.sqlparse.SqlPlanCache;
 
 import java.lang.management.ManagementFactory;
 import java.lang.management.OperatingSystemMXBean;
@@ -237,6 +239,19 @@ public class StatsManager {
         proxyRunStats.setMysqlBusyConnNum( (int) mysqlConnStats.getMysqlBusyConnNum() );
         proxyRunStats.setMysqlIdleConnNum( (int) mysqlConnStats.getMysqlIdleConnNum() );
         proxyRunStats.setMysqlConnList( mysqlConnStats.getMysqlConnList() );
+        proxyRunStats.setMysqlPendingAcquireList( mysqlConnStats.getMysqlPendingAcquireList() );
+        proxyRunStats.setMysqlPendingAcquireNum( mysqlConnStats.getMysqlPendingAcquireNum() );
+        proxyRunStats.setMysqlAcquireWaitNum( mysqlConnStats.getMysqlAcquireWaitNum() );
+        proxyRunStats.setMysqlAcquireWaitMillis( mysqlConnStats.getMysqlAcquireWaitMillis() );
+        proxyRunStats.setMysqlAcquireTimeoutNum( mysqlConnStats.getMysqlAcquireTimeoutNum() );
+        proxyRunStats.setMysqlAcquireRejectNum( mysqlConnStats.getMysqlAcquireRejectNum() );
+        proxyRunStats.setSqlPlanCacheHitNum( SqlPlanCache.getHitNum() );
+        proxyRunStats.setSqlPlanCacheMissNum( SqlPlanCache.getMissNum() );
+        long routeCacheHitNum = RouteResultCache.getHitNum();
+        long routeCacheTotalNum = routeCacheHitNum + RouteResultCache.getMissNum();
+        proxyRunStats.setRouteResultCacheHitNum( routeCacheHitNum );
+        proxyRunStats.setRouteResultCacheMissNum( routeCacheTotalNum - routeCacheHitNum );
+        proxyRunStats.setRouteResultCacheHitRatio( routeCacheTotalNum > 0 ? (double) routeCacheHitNum / routeCacheTotalNum : 0 );
         proxyRunStats.setSchemaStatsNum( (int) schemaRunStatsMap.values().stream().filter( x -> x.checkReportProxy() ).count() );
         MydbProxyConfigService.reportProxyRunStats( proxyRunStats );
     }
@@ -0,0 +1,157 @@
+package uw.mydb.proxy.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * 不可变的一致性哈希环，泛型参数 T 为真实节点类型。
+ * <p>
+ * 与 {@link ConsistentHash} 的分布完全一致（相同的虚拟节点命名、相同的 murmur3_32 哈希、哈希碰撞时后加入的节点覆盖先加入的），
+ * 区别在于存储与查找：
+ * <ul>
+ *   <li>环存放在按哈希升序排列的平行数组 {@link #hashes}/{@link #nodes} 中，构造时一次建好，之后只读，并发查找无需同步。</li>
+ *   <li>查找对 {@link #hashes} 二分，找到 &gt;= key 哈希的第一个虚拟节点，越过末尾时回绕到第一个；无装箱、无 SortedMap 视图分配。</li>
+ *   <li>key 的哈希直接在字符上计算（与 Guava {@code Hashing.murmur3_32().hashUnencodedChars} 逐位相同），不构造 Hasher/HashCode。
+ *       保持按 UTF-16 字符计算是为了与已有数据的分布兼容，改为按 UTF-8 字节计算会导致已有数据的路由全部变化。</li>
+ * </ul>
+ *
+ * @param <T> 真实节点类型
+ * @author axeon
+ */
+public class ConsistentHashRing<T> {
+
+    /**
+     * murmur3 常量 c1。
+     */
+    private static final int C1 = 0xcc9e2d51;
+
+    /**
+     * murmur3 常量 c2。
+     */
+    private static final int C2 = 0x1b873593;
+
+    /**
+     * 虚拟节点哈希，升序。
+     */
+    private final int[] hashes;
+
+    /**
+     * 与 {@link #hashes} 对应的真实节点。
+     */
+    private final Object[] nodes;
+
+    /**
+     * 构造哈希环，为每个节点生成 numberOfReplicas 个虚拟节点（命名为 {@code node.toString() + "/" + i}）。
+     *
+     * @param numberOfReplicas 每个真实节点的虚拟节点数
+     * @param nodes            真实节点集合
+     */
+    public ConsistentHashRing(int numberOfReplicas, Collection<T> nodes) {
+        int size = numberOfReplicas * nodes.size();
+        //高32位为哈希，低32位为加入顺序，排序后同哈希的虚拟节点按加入顺序排列。
+        long[] entries = new long[size];
+        Object[] order = new Object[size];
+        int count = 0;
+        for (T node : nodes) {
+            String name = node.toString();
+            for (int i = 0; i < numberOfReplicas; i++) {
+                entries[count] = ((long) hash(name + "/" + i) << 32) | count;
+                order[count] = node;
+                count++;
+            }
+        }
+        Arrays.sort(entries);
+        int[] ringHashes = new int[size];
+        Object[] ringNodes = new Object[size];
+        int ringSize = 0;
+        for (long entry : entries) {
+            int code = (int) (entry >> 32);
+            Object node = order[(int) entry];
+            if (ringSize > 0 && ringHashes[ringSize - 1] == code) {
+                //哈希碰撞，后加入的覆盖先加入的，与TreeMap.put一致。
+                ringNodes[ringSize - 1] = node;
+            } else {
+                ringHashes[ringSize] = code;
+                ringNodes[ringSize] = node;
+                ringSize++;
+            }
+        }
+        this.hashes = ringSize == size ? ringHashes : Arrays.copyOf(ringHashes, ringSize);
+        this.nodes = ringSize == size ? ringNodes : Arrays.copyOf(ringNodes, ringSize);
+    }
+
+    /**
+     * 根据 key 顺时针查找应落在的真实节点。
+     *
+     * @param key 路由 key（如 saasId / userId）
+     * @return 命中的真实节点；环为空时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public T get(CharSequence key) {
+        if (hashes.length == 0) {
+            return null;
+        }
+        int code = hash(key);
+        int low = 0;
+        int high = hashes.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (hashes[mid] < code) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return (T) nodes[low == hashes.length ? 0 : low];
+    }
+
+    /**
+     * @return 虚拟节点数（去除哈希碰撞后）
+     */
+    public int size() {
+        return hashes.length;
+    }
+
+    /**
+     * 按 UTF-16 字符计算 murmur3_32（seed 0），结果与 Guava {@code Hashing.murmur3_32().hashUnencodedChars(input).asInt()} 相同。
+     *
+     * @param input 输入
+     * @return 32 位哈希
+     */
+    public static int hash(CharSequence input) {
+        int h1 = 0;
+        int length = input.length();
+        for (int i = 1; i < length; i += 2) {
+            int k1 = input.charAt(i - 1) | (input.charAt(i) << 16);
+            h1 = mixH1(h1, mixK1(k1));
+        }
+        if ((length & 1) == 1) {
+            h1 ^= mixK1(input.charAt(length - 1));
+        }
+        return fmix(h1, 2 * length);
+    }
+
+    private static int mixK1(int k1) {
+        k1 *= C1;
+        k1 = Integer.rotateLeft(k1, 15);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static int mixH1(int h1, int k1) {
+        h1 ^= k1;
+        h1 = Integer.rotateLeft(h1, 13);
+        h1 = h1 * 5 + 0xe6546b64;
+        return h1;
+    }
+
+    private static int fmix(int h1, int length) {
+        h1 ^= length;
+        h1 ^= h1 >>> 16;
+        h1 *= 0x85ebca6b;
+        h1 ^= h1 >>> 13;
+        h1 *= 0xc2b2ae35;
+        h1 ^= h1 >>> 16;
+        return h1;
+    }
+}
@@ -0,0 +1,110 @@
+package uw.mydb.conf;
+
+import org.junit.Before;
+import org.junit.Test;
+import uw.mydb.common.conf.TableConfig;
+import uw.mydb.proxy.conf.TableConfigIndex;
+import uw.mydb.proxy.sqlparse.parser.Lexer;
+import uw.mydb.proxy.sqlparse.parser.Token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 表配置索引测试：按表名与 lexer 标识符查找，条目数不超过上限，满时按 CLOCK 淘汰未被引用的条目。
+ */
+public class TableConfigIndexTest {
+
+    @Before
+    public void init() {
+        TableConfigIndex.config( TableConfigIndex.DEFAULT_MAX_SIZE );
+    }
+
+    @Test
+    public void testPutAndLookup() {
+        TableConfig userInfo = new TableConfig( "user_info", 1, "test" );
+        TableConfig orderConfig = new TableConfig( "订单", 1, "test" );
+        TableConfigIndex.put( "user_info", userInfo );
+        TableConfigIndex.put( "订单", orderConfig );
+        assertSame( userInfo, TableConfigIndex.get( "user_info" ) );
+        assertSame( orderConfig, TableConfigIndex.get( "订单" ) );
+        assertNull( TableConfigIndex.get( "USER_INFO" ) );
+        assertSame( userInfo, lookup( "select * from user_info" ) );
+        assertNull( lookup( "select * from user_detail" ) );
+        //替换后只能查到新配置。
+        TableConfig replaced = new TableConfig( "user_info", 2, "test" );
+        TableConfigIndex.put( "user_info", replaced );
+        assertSame( replaced, TableConfigIndex.get( "user_info" ) );
+        assertEquals( 2, TableConfigIndex.size() );
+        TableConfigIndex.remove( "user_info" );
+        assertNull( TableConfigIndex.get( "user_info" ) );
+        assertEquals( 1, TableConfigIndex.size() );
+    }
+
+    /**
+     * 扩容后全部条目仍可查到。
+     */
+    @Test
+    public void testResize() {
+        TableConfig[] configs = new TableConfig[5000];
+        for (int i = 0; i < configs.length; i++) {
+            configs[i] = new TableConfig( "table_" + i, 1, "test" );
+            TableConfigIndex.put( "table_" + i, configs[i] );
+        }
+        assertEquals( configs.length, TableConfigIndex.size() );
+        for (int i = 0; i < configs.length; i++) {
+            assertSame( configs[i], TableConfigIndex.get( "table_" + i ) );
+        }
+    }
+
+    /**
+     * 大量不同表名（如未配置的表）登记后条目数不超过上限，被引用过的条目优先保留。
+     */
+    @Test
+    public void testEvict() {
+        TableConfigIndex.config( 4 );
+        for (String name : new String[]{"a", "b", "c", "d"}) {
+            TableConfigIndex.put( name, new TableConfig( name, 1, "test" ) );
+        }
+        assertTrue( lookup( "select * from a" ) != null );
+        TableConfigIndex.put( "e", new TableConfig( "e", 1, "test" ) );
+        assertEquals( 4, TableConfigIndex.size() );
+        assertTrue( TableConfigIndex.get( "a" ) != null );
+        assertNull( TableConfigIndex.get( "b" ) );
+        for (int i = 0; i < 10000; i++) {
+            TableConfigIndex.put( "unknown_" + i, new TableConfig( "unknown_" + i, 1, "test" ) );
+            assertTrue( TableConfigIndex.size() <= 4 );
+        }
+        assertTrue( TableConfigIndex.get( "unknown_9999" ) != null );
+    }
+
+    /**
+     * 读取缓存期间发生过变更时放弃登记。
+     */
+    @Test
+    public void testStalePut() {
+        long version = TableConfigIndex.version();
+        TableConfigIndex.remove( "user_info" );
+        assertFalse( TableConfigIndex.put( "user_info", new TableConfig( "user_info", 1, "test" ), version ) );
+        assertNull( TableConfigIndex.get( "user_info" ) );
+        version = TableConfigIndex.version();
+        assertTrue( TableConfigIndex.put( "user_info", new TableConfig( "user_info", 1, "test" ), version ) );
+        assertTrue( TableConfigIndex.get( "user_info" ) != null );
+    }
+
+    /**
+     * 把 lexer 推进到 FROM 之后的表名再查找。
+     */
+    private static TableConfig lookup(String sql) {
+        Lexer lexer = new Lexer( sql, false, true );
+        do {
+            lexer.nextToken();
+        } while (lexer.token() != Token.FROM);
+        lexer.nextToken();
+        TableConfigIndex.Entry entry = TableConfigIndex.lookup( lexer );
+        return entry != null ? entry.getTableConfig() : null;
+    }
+}
@@ -1,9 +1,28 @@
 package uw.mydb.parse;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
 import org.junit.Before;
 import org.junit.Test;
+import uw.mydb.proxy.route.RouteResultCache;
 import uw.mydb.proxy.sqlparse.SqlParseResult;
 import uw.mydb.proxy.sqlparse.SqlParser;
+import uw.mydb.proxy.sqlparse.SqlPlanCache;
+import uw.mydb.proxy.sqlparse.parser.ByteLexer;
+import uw.mydb.proxy.sqlparse.parser.Lexer;
+import uw.mydb.proxy.sqlparse.parser.SqlLexer;
+import uw.mydb.proxy.sqlparse.parser.Token;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 
 /**
@@ -38,6 +57,250 @@ public class ParserTest {
         System.out.println( result );
     }
 
+    /**
+     * 多行插入按行拆分：各行交替落在两个分表上，每个分表只能收到自己的行。
+     */
+    @Test
+    public void testInsertRowsSplit() {
+        uw.mydb.parse.SqlTest.initRoute();
+        SqlParseResult result = new SqlParser( uw.mydb.parse.SqlTest.database, uw.mydb.parse.SqlTest.insertRows ).parse();
+        assertFalse( result.hasError() );
+        List<SqlParseResult.SqlInfo> sqlInfoList = result.getSqlInfoList();
+        assertEquals( 2, sqlInfoList.size() );
+        assertEquals( "insert into test.route_table_0 (id,name) values (1,'a'),(2,'c')", sqlInfoList.get( 0 ).getNewSql() );
+        assertEquals( "insert into test.route_table_1 (id,name) values (101,'b'),(102,'d')", sqlInfoList.get( 1 ).getNewSql() );
+    }
+
+    /**
+     * IN 列表按分表裁剪：每个分表只保留落在自己上的取值。
+     */
+    @Test
+    public void testInListPrune() {
+        uw.mydb.parse.SqlTest.initRoute();
+        SqlParseResult result = new SqlParser( uw.mydb.parse.SqlTest.database, "select * from route_table where id in (1, 101, 2)" ).parse();
+        assertFalse( result.hasError() );
+        Map<String, String> sqlMap = sqlMap( result );
+        assertEquals( 2, sqlMap.size() );
+        assertEquals( "select * from test.route_table_0 where id in (1, 2)", sqlMap.get( "route_table_0" ) );
+        assertEquals( "select * from test.route_table_1 where id in ( 101)", sqlMap.get( "route_table_1" ) );
+    }
+
+    /**
+     * 不等条件不能缩小路由范围：id != 5 不作为取值，不能当作 id &lt;= 5 只路由到第一张表，
+     * 之后的 id = 101 才是路由取值；只有不等条件时按匹配模式处理（MATCH_FIX 报错）。
+     */
+    @Test
+    public void testNotEqualNotNarrowRoute() {
+        uw.mydb.parse.SqlTest.initRoute();
+        SqlParseResult result = new SqlParser( uw.mydb.parse.SqlTest.database, "select * from route_table where id != 5 and id = 101" ).parse();
+        assertFalse( result.hasError() );
+        assertEquals( "select * from test.route_table_1 where id != 5 and id = 101", newSql( result ) );
+        result = new SqlParser( uw.mydb.parse.SqlTest.database, "select * from route_table where id != 5" ).parse();
+        assertTrue( result.hasError() );
+    }
+
+    /**
+     * 支持单端范围的算法按开区间路由：id &gt;= 100 只落在 [100, +∞) 的分表。
+     */
+    @Test
+    public void testOpenRangeRoute() {
+        uw.mydb.parse.SqlTest.initRoute();
+        SqlParseResult result = new SqlParser( uw.mydb.parse.SqlTest.database, "select * from route_table where id >= 100" ).parse();
+        assertFalse( result.hasError() );
+        assertEquals( "select * from test.route_table_1 where id >= 100", newSql( result ) );
+        result = new SqlParser( uw.mydb.parse.SqlTest.database, "select * from route_table where id >= 50" ).parse();
+        assertEquals( 2, sqlMap( result ).size() );
+    }
+
+    /**
+     * 不支持单端范围的算法仍把单端范围当作单值：id &gt;= 3 按 3 取模只路由到 mod_table_1，id &lt;= 4 只路由到 mod_table_0。
+     */
+    @Test
+    public void testOneSidedRangeAsSingleValue() {
+        uw.mydb.parse.SqlTest.initRoute();
+        SqlParseResult result = new SqlParser( uw.mydb.parse.SqlTest.database, "select * from mod_table where id >= 3" ).parse();
+        assertFalse( result.hasError() );
+        assertEquals( "select * from test.mod_table_1 where id >= 3", newSql( result ) );
+        result = new SqlParser( uw.mydb.parse.SqlTest.database, "select * from mod_table where id <= 4" ).parse();
+        assertFalse( result.hasError() );
+        assertEquals( "select * from test.mod_table_0 where id <= 4", newSql( result ) );
+    }
+
+    /**
+     * 跨分表 LIMIT offset,count 改写为各分表 LIMIT offset+count，合并后再取全局的 offset,count。
+     */
+    @Test
+    public void testLimitRewrite() {
+        uw.mydb.parse.SqlTest.initRoute();
+        SqlParseResult result = new SqlParser( uw.mydb.parse.SqlTest.database,
+                "select id,name from route_table where id between 1 and 150 order by id limit 10, 5" ).parse();
+        assertFalse( result.hasError() );
+        Map<String, String> sqlMap = sqlMap( result );
+        assertEquals( "select id,name from test.route_table_0 where id between 1 and 150 order by id LIMIT 15", sqlMap.get( "route_table_0" ) );
+        assertEquals( "select id,name from test.route_table_1 where id between 1 and 150 order by id LIMIT 15", sqlMap.get( "route_table_1" ) );
+        assertEquals( 10, result.getLimitOffset() );
+        assertEquals( 5, result.getLimitCount() );
+    }
+
+    /**
+     * 跨分表 GROUP BY 时各分表去掉 LIMIT（分组需全部合并后才能截取），全局 LIMIT 保留。
+     */
+    @Test
+    public void testGroupLimitStrip() {
+        uw.mydb.parse.SqlTest.initRoute();
+        SqlParseResult result = new SqlParser( uw.mydb.parse.SqlTest.database,
+                "select name,count(*) from route_table where id between 1 and 150 group by name limit 5" ).parse();
+        assertFalse( result.hasError() );
+        Map<String, String> sqlMap = sqlMap( result );
+        assertEquals( "select name,count(*) from test.route_table_0 where id between 1 and 150 group by name ", sqlMap.get( "route_table_0" ) );
+        assertEquals( "select name,count(*) from test.route_table_1 where id between 1 and 150 group by name ", sqlMap.get( "route_table_1" ) );
+        assertTrue( result.hasGroupBy() );
+        assertEquals( 0, result.getLimitOffset() );
+        assertEquals( 5, result.getLimitCount() );
+    }
+
+    /**
+     * 字符与字节两种词法分析器对测试 SQL 产出相同的 token 序列。
+     */
+    @Test
+    public void testLexerSameTokens() {
+        for (String sql : testSqls()) {
+            Lexer lexer = new Lexer( sql, false, true );
+            ByteBuf buf = Unpooled.copiedBuffer( sql, StandardCharsets.UTF_8 );
+            try {
+                ByteLexer byteLexer = new ByteLexer( buf );
+                int count = 0;
+                do {
+                    lexer.nextToken();
+                    byteLexer.nextToken();
+                    String info = sql + " #" + count++;
+                    assertEquals( info, lexer.token(), byteLexer.token() );
+                    assertEquals( info, tokenText( lexer ), tokenText( byteLexer ) );
+                    switch (lexer.token()) {
+                        case IDENTIFIER:
+                            assertEquals( info, lexer.stringVal(), byteLexer.stringVal() );
+                            assertEquals( info, lexer.hashLower(), byteLexer.hashLower() );
+                            break;
+                        case LITERAL_INT:
+                        case LITERAL_FLOAT:
+                        case LITERAL_HEX:
+                        case LITERAL_CHARS:
+                        case LITERAL_NCHARS:
+                        case LITERAL_ALIAS:
+                            assertEquals( info, lexer.paramValueString(), byteLexer.paramValueString() );
+                            break;
+                        default:
+                            break;
+                    }
+                } while (lexer.token() != Token.EOF);
+            } finally {
+                buf.release();
+            }
+        }
+    }
+
+    /**
+     * 字符与字节两种解析入口对测试 SQL 产出相同的解析结果与路由结果。关闭解析计划缓存与路由结果缓存，保证两次都完整解析、计算路由。
+     */
+    @Test
+    public void testLexerSameResult() {
+        uw.mydb.parse.SqlTest.initRoute();
+        SqlPlanCache.config( 0, 4096 );
+        RouteResultCache.config( 0 );
+        try {
+            for (String sql : testSqls()) {
+                SqlParseResult result = new SqlParser( uw.mydb.parse.SqlTest.database, sql ).parse();
+                ByteBuf buf = Unpooled.copiedBuffer( sql, StandardCharsets.UTF_8 );
+                SqlParseResult bufResult = null;
+                try {
+                    bufResult = new SqlParser( uw.mydb.parse.SqlTest.database, buf ).parse();
+                    assertEquals( sql, describe( result ), describe( bufResult ) );
+                } finally {
+                    if (bufResult != null) {
+                        bufResult.release();
+                    }
+                    buf.release();
+                }
+            }
+        } finally {
+            SqlPlanCache.config( 1024, 4096 );
+            RouteResultCache.config( 4096 );
+        }
+    }
+
+    /**
+     * @return 全部测试 SQL，含分表路由的语句
+     */
+    private static List<String> testSqls() {
+        List<String> sqls = new ArrayList<>();
+        Collections.addAll( sqls, uw.mydb.parse.SqlTest.insert, uw.mydb.parse.SqlTest.insertNoCols, uw.mydb.parse.SqlTest.insertBatch,
+                uw.mydb.parse.SqlTest.update, uw.mydb.parse.SqlTest.updateWithSubSelect, uw.mydb.parse.SqlTest.delete,
+                uw.mydb.parse.SqlTest.deleteWithSubSelect, uw.mydb.parse.SqlTest.select, uw.mydb.parse.SqlTest.selectWithSubSelect,
+                uw.mydb.parse.SqlTest.selectMultiTable, uw.mydb.parse.SqlTest.selectJoinTable, uw.mydb.parse.SqlTest.insertRows,
+                "select * from route_table where id in (1, 101, 2)",
+                "select id,name from route_table where id between 1 and 150 order by id desc limit 10, 5",
+                "select name,count(*),sum(id) from route_table where id >= 1 group by name order by name limit 5",
+                "update route_table set name='杨过' where id=101",
+                "delete from route_table where id in (2, 102)" );
+        return sqls;
+    }
+
+    /**
+     * @return 当前 token 的原文
+     */
+    private static String tokenText(SqlLexer lexer) {
+        return lexer.subText( lexer.currentMark(), lexer.currentPos() );
+    }
+
+    /**
+     * 把解析结果中影响执行的字段拼成字符串，便于比对。
+     */
+    private static String describe(SqlParseResult result) {
+        StringBuilder sb = new StringBuilder();
+        sb.append( "sqlType=" ).append( result.getSqlType() )
+                .append( ", dml=" ).append( result.isDML() )
+                .append( ", master=" ).append( result.isMasterQuery() )
+                .append( ", spool=" ).append( result.isSpool() )
+                .append( ", transactionCmd=" ).append( result.getTransactionCmd() )
+                .append( ", error=" ).append( result.getErrorCode() ).append( ':' ).append( result.getErrorMessage() )
+                .append( ", sourceTable=" ).append( result.getSourceTable() )
+                .append( ", orderBy=" ).append( result.getOrderByList() )
+                .append( ", limit=" ).append( result.getLimitOffset() ).append( ',' ).append( result.getLimitCount() )
+                .append( ", groupBy=" ).append( result.getGroupByList() )
+                .append( ", aggregateHiddenCount=" ).append( result.getAggregateHiddenCount() );
+        if (result.getSqlInfo() != null) {
+            sb.append( "\n" ).append( result.getSqlInfo().getDataTable() ).append( ": " ).append( result.getSqlInfo().getNewSql() );
+        }
+        if (result.getSqlInfoList() != null) {
+            for (SqlParseResult.SqlInfo sqlInfo : result.getSqlInfoList()) {
+                sb.append( "\n" ).append( sqlInfo.getDataTable() ).append( ": " ).append( sqlInfo.getNewSql() );
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return 只路由到一个分表时改写后的 SQL
+     */
+    private static String newSql(SqlParseResult result) {
+        if (result.getSqlInfo() != null) {
+            return result.getSqlInfo().getNewSql();
+        }
+        assertEquals( 1, result.getSqlInfoList().size() );
+        return result.getSqlInfoList().get( 0 ).getNewSql();
+    }
+
+    /**
+     * @return 分表名 -> 改写后的 SQL（多个分表的执行顺序不固定）
+     */
+    private static Map<String, String> sqlMap(SqlParseResult result) {
+        Map<String, String> sqlMap = new TreeMap<>();
+        for (SqlParseResult.SqlInfo sqlInfo : result.getSqlInfoList()) {
+            sqlMap.put( sqlInfo.getTable(), sqlInfo.getNewSql() );
+        }
+        return sqlMap;
+    }
+
     @Test
     public void testExceptionSql() {
         String sql = "/* ApplicationName=DBeaver Ultimate 23.3.1 - Metadata */ SELECT * FROM information_schema.COLUMNS WHERE TABLE_SCHEMA='auth' AND TABLE_NAME='msc_perm' " +
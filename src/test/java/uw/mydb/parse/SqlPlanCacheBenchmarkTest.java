@@ -0,0 +1,86 @@
+package uw.mydb.parse;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uw.mydb.proxy.sqlparse.SqlParseResult;
+import uw.mydb.proxy.sqlparse.SqlParser;
+import uw.mydb.proxy.sqlparse.SqlPlanCache;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 解析计划缓存的吞吐对比：capacity=0 为关闭缓存（与 {@link BenchmarkTest} 相同的完整解析），capacity=1024 为按指纹命中计划。
+ * 每条语句的 routeKey 字面量随机变化，指纹相同。
+ */
+@BenchmarkMode(Mode.Throughput)//基准测试类型
+@OutputTimeUnit(TimeUnit.MILLISECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 1, time = 5)//预热的迭代次数
+@Threads(10)//测试线程数量
+@State(Scope.Benchmark)//该状态为所有线程共享
+//度量:iterations进行测试的轮次，time每轮进行的时长，timeUnit时长单位,batchSize批次数量
+@Measurement(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS, batchSize = -1)
+public class SqlPlanCacheBenchmarkTest {
+
+    private static final Logger logger = LoggerFactory.getLogger( SqlPlanCacheBenchmarkTest.class );
+
+    /**
+     * 每种语句的字面量变体数。
+     */
+    private static final int VARIANTS = 1024;
+
+    @Param({"0", "1024"})
+    private int capacity;
+
+    private String[] inserts;
+
+    private String[] updates;
+
+    private String[] selects;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder().include( SqlPlanCacheBenchmarkTest.class.getSimpleName() ).forks( 0 ).build();
+        new Runner( opt ).run();
+    }
+
+    @Setup
+    public void init() {
+        uw.mydb.parse.SqlTest.init();
+        SqlPlanCache.config( capacity, 4096 );
+        inserts = new String[VARIANTS];
+        updates = new String[VARIANTS];
+        selects = new String[VARIANTS];
+        for (int i = 0; i < VARIANTS; i++) {
+            inserts[i] = uw.mydb.parse.SqlTest.insert.replace( "values (10002,", "values (" + (10000 + i) + "," );
+            updates[i] = uw.mydb.parse.SqlTest.update.replace( "saas_id=1000", "saas_id=" + (1000 + i) );
+            selects[i] = uw.mydb.parse.SqlTest.select.replace( "id=1000", "id=" + (1000 + i) );
+        }
+    }
+
+    @TearDown
+    public void report() {
+        logger.info( "capacity: {}, hit: {}, miss: {}", capacity, SqlPlanCache.getHitNum(), SqlPlanCache.getMissNum() );
+    }
+
+    @Benchmark
+    public SqlParseResult testInsert() {
+        return new SqlParser( uw.mydb.parse.SqlTest.database, inserts[ThreadLocalRandom.current().nextInt( VARIANTS )] ).parse();
+    }
+
+    @Benchmark
+    public SqlParseResult testUpdate() {
+        return new SqlParser( uw.mydb.parse.SqlTest.database, updates[ThreadLocalRandom.current().nextInt( VARIANTS )] ).parse();
+    }
+
+    @Benchmark
+    public SqlParseResult testSelect() {
+        return new SqlParser( uw.mydb.parse.SqlTest.database, selects[ThreadLocalRandom.current().nextInt( VARIANTS )] ).parse();
+    }
+
+}
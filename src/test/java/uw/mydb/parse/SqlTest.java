@@ -2,8 +2,23 @@ package uw.mydb.parse;
 
 import uw.cache.FusionCache;
 import uw.common.util.SystemClock;
+import uw.mydb.common.conf.DataTable;
 import uw.mydb.common.conf.MydbProxyConfig;
+import uw.mydb.common.conf.RouteConfig;
 import uw.mydb.common.conf.TableConfig;
+import uw.mydb.proxy.conf.MydbProxyConfigService;
+import uw.mydb.proxy.conf.MydbProxyProperties;
+import uw.mydb.proxy.conf.TableConfigIndex;
+import uw.mydb.proxy.constant.MydbRouteMatchMode;
+import uw.mydb.proxy.route.RouteManager;
+import uw.mydb.proxy.route.algorithm.RouteTableByMod;
+import uw.mydb.proxy.route.algorithm.RouteTableByRange;
+import uw.mydb.proxy.sqlparse.SqlPlanCache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 
 /**
  * 测试sql。
@@ -67,6 +82,19 @@ public class SqlTest {
      */
     static String selectJoinTable = "select * from user_info a left join user_detail b on a.id=b.id where a.id>0 and a.saas_id=10000";
 
+    /**
+     * 分表路由的逻辑表：按 id 范围分表，[0,100) 落到 route_table_0，[100,+∞) 落到 route_table_1。
+     */
+    static String routeTable = "route_table";
+    /**
+     * 取模分表的逻辑表：按 id 对 2 取模，落到 mod_table_0 或 mod_table_1，不支持单端范围。
+     */
+    static String modTable = "mod_table";
+    /**
+     * 多行插入，各行交替落在两个分表上。
+     */
+    static String insertRows = "insert into route_table (id,name) values (1,'a'),(101,'b'),(2,'c'),(102,'d')";
+
     static void init() {
         FusionCache.config( new FusionCache.Config( MydbProxyConfig.class, 1, -1 ) );
         FusionCache.put( TableConfig.class, "default", new MydbProxyConfig( "default", "default", "root", "mysqlRootPassword", 1, "1",1, SystemClock.now() ), true );
@@ -75,4 +103,29 @@ public class SqlTest {
         FusionCache.put( TableConfig.class, "test_table", new TableConfig( "test_table", 1, "test" ), true );
     }
 
+    /**
+     * 初始化分表路由配置：注册配置服务（不连 center，配置直接写入本地缓存），route_table 按 id 范围分为两张表，
+     * mod_table 按 id 取模分为两张表。
+     */
+    static void initRoute() {
+        init();
+        new MydbProxyConfigService( new MydbProxyProperties(), null ) {
+        };
+        Map<String, String> paramMap = new HashMap<>();
+        paramMap.put( "0", "1.test.route_table_0" );
+        paramMap.put( "100", "1.test.route_table_1" );
+        FusionCache.put( RouteConfig.class, "default:1", new RouteConfig( 1, 0, "range", "id", RouteTableByRange.class.getName(), paramMap ), true );
+        FusionCache.put( TableConfig.class, "default:" + routeTable, new TableConfig( routeTable, null, null, 1, "test", 1, MydbRouteMatchMode.MATCH_FIX.getValue() ),
+                true );
+        Map<String, String> modParamMap = new HashMap<>();
+        modParamMap.put( "routeList", "1.test.mod_table_0,1.test.mod_table_1" );
+        FusionCache.put( RouteConfig.class, "default:2", new RouteConfig( 2, 0, "mod", "id", RouteTableByMod.class.getName(), modParamMap ), true );
+        FusionCache.put( TableConfig.class, "default:" + modTable, new TableConfig( modTable, null, null, 1, "test", 2, MydbRouteMatchMode.MATCH_FIX.getValue() ),
+                true );
+        FusionCache.put( DataTable.class, "1:test", new HashSet<>( Arrays.asList( "route_table_0", "route_table_1", "mod_table_0", "mod_table_1" ) ), true );
+        TableConfigIndex.clear();
+        RouteManager.invalidateAllRouteAlgorithm();
+        SqlPlanCache.clear();
+    }
+
 }
@@ -0,0 +1,85 @@
+package uw.mydb.route;
+
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import uw.mydb.common.conf.DataNode;
+import uw.mydb.common.conf.DataTable;
+import uw.mydb.proxy.util.ConsistentHash;
+import uw.mydb.proxy.util.ConsistentHashRing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 一致性 hash 查找的吞吐对比：TreeMap 环（{@link ConsistentHash}） vs 平行数组 + 二分查找的环（{@link ConsistentHashRing}）。
+ * 128 个虚拟节点 x 64 张表，与 RouteTableByHash 的配置一致；key 为随机的数字串。
+ */
+@BenchmarkMode(Mode.Throughput)//基准测试类型
+@OutputTimeUnit(TimeUnit.MILLISECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 1, time = 5)//预热的迭代次数
+@Threads(10)//测试线程数量
+@State(Scope.Benchmark)//该状态为所有线程共享
+//度量:iterations进行测试的轮次，time每轮进行的时长，timeUnit时长单位,batchSize批次数量
+@Measurement(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS, batchSize = -1)
+public class ConsistentHashBenchmarkTest {
+
+    /**
+     * 每张表的虚拟节点数。
+     */
+    private static final int REPLICAS = 128;
+
+    /**
+     * 表数量。
+     */
+    private static final int TABLES = 64;
+
+    /**
+     * key 数量。
+     */
+    private static final int KEYS = 4096;
+
+    private ConsistentHash<DataTable> treeMapRing;
+
+    private ConsistentHashRing<DataTable> arrayRing;
+
+    private String[] keys;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder().include( ConsistentHashBenchmarkTest.class.getSimpleName() ).forks( 0 ).build();
+        new Runner( opt ).run();
+    }
+
+    @Setup
+    public void init() {
+        List<DataTable> tables = new ArrayList<>();
+        for (int i = 0; i < TABLES; i++) {
+            tables.add( new DataTable( new DataNode( 1, "shop_db" ), "order_" + i ) );
+        }
+        treeMapRing = new ConsistentHash<>( REPLICAS, tables );
+        arrayRing = new ConsistentHashRing<>( REPLICAS, tables );
+        keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = String.valueOf( ThreadLocalRandom.current().nextLong( 1, Long.MAX_VALUE ) );
+            if (treeMapRing.get( keys[i] ) != arrayRing.get( keys[i] )) {
+                throw new IllegalStateException( "ring mismatch, key: " + keys[i] );
+            }
+        }
+    }
+
+    @Benchmark
+    public DataTable testTreeMap() {
+        return treeMapRing.get( keys[ThreadLocalRandom.current().nextInt( KEYS )] );
+    }
+
+    @Benchmark
+    public DataTable testArray() {
+        return arrayRing.get( keys[ThreadLocalRandom.current().nextInt( KEYS )] );
+    }
+
+}
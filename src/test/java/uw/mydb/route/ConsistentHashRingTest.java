@@ -0,0 +1,117 @@
+package uw.mydb.route;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import org.junit.Test;
+import uw.mydb.common.conf.DataNode;
+import uw.mydb.common.conf.DataTable;
+import uw.mydb.proxy.util.ConsistentHash;
+import uw.mydb.proxy.util.ConsistentHashRing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * 一致性 hash 环的兼容性测试：{@link ConsistentHashRing} 必须与原 TreeMap 环（{@link ConsistentHash}）选出同一个节点，
+ * 否则已有数据会被路由到别的分表。虚拟节点数与 RouteTableByHash 一致（128）。
+ */
+public class ConsistentHashRingTest {
+
+    /**
+     * 每张表的虚拟节点数。
+     */
+    private static final int REPLICAS = 128;
+
+    /**
+     * 每组节点比对的 key 数量。
+     */
+    private static final int KEYS = 100_000;
+
+    @Test
+    public void testSameNodeAsTreeMapRing() {
+        int[] tableCounts = {1, 2, 3, 7, 16, 64, 256};
+        for (int tableCount : tableCounts) {
+            assertSameNode( tables( "shop_db", "order_", tableCount ), tableCount );
+        }
+        //多集群、多库混合的节点。
+        List<DataTable> mixed = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            mixed.add( new DataTable( new DataNode( i % 3 + 1, "db_" + (i % 4) ), "user_info_" + i ) );
+        }
+        assertSameNode( mixed, 99 );
+    }
+
+    @Test
+    public void testEmptyRing() {
+        assertNull( new ConsistentHashRing<DataTable>( REPLICAS, new ArrayList<>() ).get( "1000" ) );
+    }
+
+    @Test
+    public void testHashSameAsGuava() {
+        HashFunction murmur3 = Hashing.murmur3_32();
+        Random random = new Random( 7 );
+        for (int i = 0; i < KEYS; i++) {
+            String key = randomKey( random );
+            assertEquals( key, murmur3.hashUnencodedChars( key ).asInt(), ConsistentHashRing.hash( key ) );
+        }
+    }
+
+    /**
+     * 用随机 key 比对两个环的选择结果。
+     *
+     * @param tables 节点列表
+     * @param seed   随机种子
+     */
+    private static void assertSameNode(List<DataTable> tables, long seed) {
+        ConsistentHash<DataTable> treeMapRing = new ConsistentHash<>( REPLICAS, tables );
+        ConsistentHashRing<DataTable> arrayRing = new ConsistentHashRing<>( REPLICAS, tables );
+        Random random = new Random( seed );
+        for (int i = 0; i < KEYS; i++) {
+            String key = randomKey( random );
+            assertSame( "tables: " + tables.size() + ", key: " + key, treeMapRing.get( key ), arrayRing.get( key ) );
+        }
+        //虚拟节点名本身落在环上，key 的哈希与虚拟节点相等时两者都应选中该节点。
+        for (DataTable table : tables) {
+            String key = table.toString() + "/0";
+            assertSame( treeMapRing.get( key ), arrayRing.get( key ) );
+        }
+    }
+
+    /**
+     * 生成 key：数字串、字母数字串（奇偶长度）与含中文的字符串。
+     */
+    private static String randomKey(Random random) {
+        switch (random.nextInt( 4 )) {
+            case 0:
+                return String.valueOf( random.nextLong() & Long.MAX_VALUE );
+            case 1:
+                return String.valueOf( random.nextInt( 100_000 ) );
+            case 2: {
+                int length = random.nextInt( 24 );
+                StringBuilder sb = new StringBuilder( length );
+                for (int i = 0; i < length; i++) {
+                    sb.append( (char) ('0' + random.nextInt( 75 )) );
+                }
+                return sb.toString();
+            }
+            default:
+                return "用户" + random.nextInt( 10_000 ) + (char) (0x4e00 + random.nextInt( 0x5000 ));
+        }
+    }
+
+    /**
+     * 生成同一库下的一组分表。
+     */
+    private static List<DataTable> tables(String database, String prefix, int count) {
+        List<DataTable> tables = new ArrayList<>( count );
+        for (int i = 0; i < count; i++) {
+            tables.add( new DataTable( new DataNode( 1, database ), prefix + i ) );
+        }
+        return tables;
+    }
+}
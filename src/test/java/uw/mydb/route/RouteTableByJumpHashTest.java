@@ -0,0 +1,100 @@
+package uw.mydb.route;
+
+import com.google.common.hash.Hashing;
+import org.junit.Test;
+import uw.mydb.common.conf.RouteConfig;
+import uw.mydb.proxy.route.RouteAlgorithm;
+import uw.mydb.proxy.route.algorithm.RouteTableByJumpHash;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Jump 一致性 Hash 分表路由测试：与 Guava 的实现一致，扩容时只有约 1/M 的 key 迁往新增的表。
+ */
+public class RouteTableByJumpHashTest {
+
+    /**
+     * key 数量。
+     */
+    private static final int KEYS = 100_000;
+
+    @Test
+    public void testJumpHashSameAsGuava() {
+        Random random = new Random( 7 );
+        for (int i = 0; i < KEYS; i++) {
+            long key = random.nextLong();
+            int buckets = 1 + random.nextInt( 1024 );
+            assertEquals( Hashing.consistentHash( key, buckets ), RouteTableByJumpHash.jumpHash( key, buckets ) );
+        }
+    }
+
+    @Test
+    public void testCalculate() throws Exception {
+        RouteTableByJumpHash algorithm = algorithm( "1.shop_db.order_0,1.shop_db.order_1,2.shop_db.order_2,bad_route" );
+        assertEquals( 3, algorithm.getAllRouteList( null, new ArrayList<>() ).size() );
+        for (int i = 0; i < 1000; i++) {
+            String value = "user_" + i;
+            int index = RouteTableByJumpHash.jumpHash( RouteTableByJumpHash.keyHash( value ), 3 );
+            assertEquals( algorithm.getAllRouteList( null, null ).get( index ), algorithm.calculate( null, null, value ) );
+        }
+    }
+
+    @Test(expected = RouteAlgorithm.RouteException.class)
+    public void testCalculateWithoutRouteList() throws Exception {
+        RouteTableByJumpHash algorithm = new RouteTableByJumpHash();
+        algorithm.init( new RouteConfig( 1, 0, "jump", "id", RouteTableByJumpHash.class.getName(), new HashMap<>() ) );
+        algorithm.config();
+        algorithm.calculate( null, null, "1" );
+    }
+
+    @Test
+    public void testListMovedKeys() {
+        List<String> keys = new ArrayList<>( KEYS );
+        for (int i = 0; i < KEYS; i++) {
+            keys.add( String.valueOf( 100_000_000L + i ) );
+        }
+        //4 张表扩到 5 张：迁移的 key 只去新表，数量约为 1/5。
+        List<RouteTableByJumpHash.KeyMove> moves = RouteTableByJumpHash.listMovedKeys( keys, 4, 5 );
+        for (RouteTableByJumpHash.KeyMove move : moves) {
+            assertEquals( 4, move.getToIndex() );
+        }
+        assertTrue( "moved: " + moves.size(), Math.abs( moves.size() - KEYS / 5 ) < KEYS / 50 );
+        //未列出的 key 扩容前后落在同一张表。
+        int moved = 0;
+        for (String key : keys) {
+            long hash = RouteTableByJumpHash.keyHash( key );
+            if (RouteTableByJumpHash.jumpHash( hash, 4 ) != RouteTableByJumpHash.jumpHash( hash, 5 )) {
+                moved++;
+            }
+        }
+        assertEquals( moved, moves.size() );
+        assertTrue( RouteTableByJumpHash.listMovedKeys( keys, 5, 5 ).isEmpty() );
+    }
+
+    @Test
+    public void testKeyHashDistribution() {
+        int[] counts = new int[8];
+        for (int i = 0; i < KEYS; i++) {
+            counts[RouteTableByJumpHash.jumpHash( RouteTableByJumpHash.keyHash( String.valueOf( i ) ), counts.length )]++;
+        }
+        for (int count : counts) {
+            assertTrue( "count: " + count, Math.abs( count - KEYS / counts.length ) < KEYS / counts.length / 10 );
+        }
+    }
+
+    private static RouteTableByJumpHash algorithm(String routeList) {
+        Map<String, String> paramMap = new HashMap<>();
+        paramMap.put( "routeList", routeList );
+        RouteTableByJumpHash algorithm = new RouteTableByJumpHash();
+        algorithm.init( new RouteConfig( 1, 0, "jump", "id", RouteTableByJumpHash.class.getName(), paramMap ) );
+        algorithm.config();
+        return algorithm;
+    }
+}
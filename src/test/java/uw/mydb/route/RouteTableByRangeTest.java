@@ -0,0 +1,163 @@
+package uw.mydb.route;
+
+import org.junit.Before;
+import org.junit.Test;
+import uw.mydb.common.conf.DataTable;
+import uw.mydb.common.conf.RouteConfig;
+import uw.mydb.proxy.route.RouteAlgorithm;
+import uw.mydb.proxy.route.algorithm.RouteDatabaseByPreset;
+import uw.mydb.proxy.route.algorithm.RouteDatabaseBySaas;
+import uw.mydb.proxy.route.algorithm.RouteTableByAutoDate;
+import uw.mydb.proxy.route.algorithm.RouteTableByAutoKey;
+import uw.mydb.proxy.route.algorithm.RouteTableByHash;
+import uw.mydb.proxy.route.algorithm.RouteTableByJumpHash;
+import uw.mydb.proxy.route.algorithm.RouteTableByMod;
+import uw.mydb.proxy.route.algorithm.RouteTableByPreset;
+import uw.mydb.proxy.route.algorithm.RouteTableByRange;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 范围分表路由测试：单值二分查找所在区间，范围查询只返回有交集的分表；单端范围只对本算法保留为开区间。
+ */
+public class RouteTableByRangeTest {
+
+    private RouteTableByRange algorithm;
+
+    /**
+     * 三个区间 [0, 1000000)、[1000000, 2000000)、[2000000, +∞)，配置顺序打乱，另有两项错误配置。
+     */
+    @Before
+    public void init() {
+        Map<String, String> paramMap = new HashMap<>();
+        paramMap.put( "2000000", "2.shop_db.order_2" );
+        paramMap.put( "0", "1.shop_db.order_0" );
+        paramMap.put( "1000000", "1.shop_db.order_1" );
+        paramMap.put( "abc", "1.shop_db.order_x" );
+        paramMap.put( "3000000", "shop_db.order_y" );
+        algorithm = new RouteTableByRange();
+        algorithm.init( new RouteConfig( 1, 0, "range", "id", RouteTableByRange.class.getName(), paramMap ) );
+        algorithm.config();
+    }
+
+    @Test
+    public void testCalculate() throws Exception {
+        assertEquals( "1.shop_db.order_0", calculate( "0" ) );
+        assertEquals( "1.shop_db.order_0", calculate( "999999" ) );
+        assertEquals( "1.shop_db.order_1", calculate( "1000000" ) );
+        assertEquals( "1.shop_db.order_1", calculate( " 1500000 " ) );
+        assertEquals( "2.shop_db.order_2", calculate( "2000000" ) );
+        assertEquals( "2.shop_db.order_2", calculate( String.valueOf( Long.MAX_VALUE ) ) );
+    }
+
+    @Test
+    public void testCalculateOutOfRange() {
+        for (String value : new String[]{"-1", "abc", null}) {
+            try {
+                calculate( value );
+                fail( "value: " + value );
+            } catch (RouteAlgorithm.RouteException e) {
+                //预期异常。
+            }
+        }
+    }
+
+    @Test
+    public void testCalculateRange() throws Exception {
+        assertEquals( List.of( "1.shop_db.order_0", "1.shop_db.order_1" ), calculateRange( "500000", "1200000" ) );
+        assertEquals( List.of( "1.shop_db.order_1" ), calculateRange( "1000000", "1999999" ) );
+        assertEquals( List.of( "1.shop_db.order_0", "1.shop_db.order_1", "2.shop_db.order_2" ), calculateRange( "-100", "5000000" ) );
+        //单端范围。
+        assertEquals( List.of( "1.shop_db.order_1", "2.shop_db.order_2" ), calculateRange( "1000000", null ) );
+        assertEquals( List.of( "1.shop_db.order_0" ), calculateRange( null, "999999" ) );
+        //起止颠倒、整个区间低于最小下界时只返回一张表。
+        assertEquals( List.of( "2.shop_db.order_2" ), calculateRange( "2500000", "10" ) );
+        assertEquals( List.of( "1.shop_db.order_0" ), calculateRange( "-100", "-10" ) );
+        assertTrue( algorithm.supportOpenRange() );
+    }
+
+    @Test
+    public void testGetAllRouteList() throws Exception {
+        List<String> names = new ArrayList<>();
+        for (DataTable dataTable : algorithm.getAllRouteList( null, new ArrayList<>() )) {
+            names.add( dataTable.toString() );
+        }
+        assertEquals( List.of( "1.shop_db.order_0", "1.shop_db.order_1", "2.shop_db.order_2" ), names );
+    }
+
+    @Test(expected = RouteAlgorithm.RouteException.class)
+    public void testCalculateRangeWithoutConfig() throws Exception {
+        RouteTableByRange empty = new RouteTableByRange();
+        empty.init( new RouteConfig( 2, 0, "range", "id", RouteTableByRange.class.getName(), new HashMap<>() ) );
+        empty.config();
+        empty.calculateRange( null, null, "1", "2" );
+    }
+
+    /**
+     * 单端范围只对支持开区间的算法保留为 RANGE，其它算法仍退化为单值。
+     */
+    @Test
+    public void testGuessType() {
+        RouteAlgorithm.RouteValue start = new RouteAlgorithm.RouteValue();
+        start.putRangeStart( "100" );
+        start.guessType();
+        assertEquals( RouteAlgorithm.RouteValue.SINGLE, start.getType() );
+        assertEquals( "100", start.getValueStart() );
+        assertEquals( "100", start.getValueEnd() );
+
+        RouteAlgorithm.RouteValue end = new RouteAlgorithm.RouteValue();
+        end.putRangeEnd( "200" );
+        end.guessType( false );
+        assertEquals( RouteAlgorithm.RouteValue.SINGLE, end.getType() );
+        assertEquals( "200", end.getValueStart() );
+
+        RouteAlgorithm.RouteValue open = new RouteAlgorithm.RouteValue();
+        open.putRangeEnd( "200" );
+        open.guessType( true );
+        assertEquals( RouteAlgorithm.RouteValue.RANGE, open.getType() );
+        assertNull( open.getValueStart() );
+        assertEquals( "200", open.getValueEnd() );
+
+        RouteAlgorithm.RouteValue both = new RouteAlgorithm.RouteValue();
+        both.putRangeStart( "100" );
+        both.putRangeEnd( "200" );
+        both.guessType( true );
+        assertEquals( RouteAlgorithm.RouteValue.RANGE, both.getType() );
+        both.guessType( false );
+        assertEquals( RouteAlgorithm.RouteValue.RANGE, both.getType() );
+    }
+
+    /**
+     * 只有范围分表支持单端范围，其它算法保持原有的单值退化。
+     */
+    @Test
+    public void testSupportOpenRange() {
+        assertTrue( algorithm.supportOpenRange() );
+        RouteAlgorithm[] others = {new RouteTableByMod(), new RouteTableByHash(), new RouteTableByJumpHash(), new RouteTableByPreset(),
+                new RouteTableByAutoKey(), new RouteTableByAutoDate(), new RouteDatabaseByPreset(), new RouteDatabaseBySaas()};
+        for (RouteAlgorithm other : others) {
+            assertFalse( other.getClass().getSimpleName(), other.supportOpenRange() );
+        }
+    }
+
+    private String calculate(String value) throws RouteAlgorithm.RouteException {
+        return algorithm.calculate( null, null, value ).toString();
+    }
+
+    private List<String> calculateRange(String start, String end) throws RouteAlgorithm.RouteException {
+        List<String> names = new ArrayList<>();
+        for (DataTable dataTable : algorithm.calculateRange( null, null, start, end )) {
+            names.add( dataTable.toString() );
+        }
+        return names;
+    }
+}
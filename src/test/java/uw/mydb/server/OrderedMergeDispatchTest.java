@@ -0,0 +1,135 @@
+package uw.mydb.server;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+import uw.mydb.proxy.server.ProxyMultiNodeHandler;
+import uw.mydb.proxy.server.merge.ShardRowMerger;
+import uw.mydb.proxy.server.merge.SortKey;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 节点数超过并发上限的有序归并：按 ProxyMultiNodeHandler 的派发与高低水位暂停规则模拟各节点，
+ * 每个节点的行数超过高水位，全部行必须按序输出而不会互相等待。
+ */
+public class OrderedMergeDispatchTest {
+
+    /**
+     * 与 ProxyMultiNodeHandler.SHARD_BUFFER_HIGH_WATER 一致。
+     */
+    private static final int HIGH_WATER = 256;
+
+    /**
+     * 与 ProxyMultiNodeHandler.SHARD_BUFFER_LOW_WATER 一致。
+     */
+    private static final int LOW_WATER = 64;
+
+    private static final int SHARDS = 8;
+
+    private static final int MAX_CONCURRENCY = 2;
+
+    private static final int ROWS_PER_SHARD = 600;
+
+    @Test
+    public void testDispatchConcurrency() {
+        assertEquals( 2, ProxyMultiNodeHandler.dispatchConcurrency( 2, 8, false ) );
+        assertEquals( 8, ProxyMultiNodeHandler.dispatchConcurrency( 0, 8, false ) );
+        assertEquals( 3, ProxyMultiNodeHandler.dispatchConcurrency( 16, 3, false ) );
+        assertEquals( 8, ProxyMultiNodeHandler.dispatchConcurrency( 2, 8, true ) );
+    }
+
+    /**
+     * 各节点的 id 交错分布（shard, shard+SHARDS, ...），任何一个节点缺席都无法输出下一行。
+     */
+    @Test
+    public void testOrderedMergeMoreShardsThanConcurrency() {
+        ShardRowMerger merger = new ShardRowMerger( SHARDS );
+        merger.sortBy( new SortKey[]{new SortKey( 0, false, SortKey.VALUE_LONG )} );
+        int concurrency = ProxyMultiNodeHandler.dispatchConcurrency( MAX_CONCURRENCY, SHARDS, true );
+        boolean[] dispatched = new boolean[SHARDS];
+        boolean[] done = new boolean[SHARDS];
+        boolean[] paused = new boolean[SHARDS];
+        int[] sent = new int[SHARDS];
+        int nextShard = 0;
+        while (nextShard < concurrency) {
+            dispatched[nextShard++] = true;
+        }
+        long last = -1;
+        int output = 0;
+        int doneCount = 0;
+        while (doneCount < SHARDS) {
+            boolean progress = false;
+            for (int shard = 0; shard < SHARDS; shard++) {
+                if (!dispatched[shard] || done[shard] || paused[shard]) {
+                    continue;
+                }
+                progress = true;
+                if (sent[shard] < ROWS_PER_SHARD) {
+                    merger.offer( shard, row( (long) sent[shard]++ * SHARDS + shard ) );
+                    if (merger.getBufferedRows( shard ) >= HIGH_WATER) {
+                        paused[shard] = true;
+                    }
+                } else {
+                    //节点结束时派发下一个排队节点。
+                    merger.finish( shard );
+                    done[shard] = true;
+                    doneCount++;
+                    if (nextShard < SHARDS) {
+                        dispatched[nextShard++] = true;
+                    }
+                }
+            }
+            ByteBuf row;
+            while ((row = merger.poll()) != null) {
+                long id = readId( row );
+                row.release();
+                assertTrue( "out of order: " + last + " -> " + id, id > last );
+                last = id;
+                output++;
+                progress = true;
+            }
+            for (int shard = 0; shard < SHARDS; shard++) {
+                if (paused[shard] && merger.getBufferedRows( shard ) < LOW_WATER) {
+                    paused[shard] = false;
+                    progress = true;
+                }
+            }
+            if (!progress) {
+                merger.release();
+                fail( "merge stalled after " + output + " rows" );
+            }
+        }
+        ByteBuf row;
+        while ((row = merger.poll()) != null) {
+            long id = readId( row );
+            row.release();
+            assertTrue( id > last );
+            last = id;
+            output++;
+        }
+        assertEquals( SHARDS * ROWS_PER_SHARD, output );
+    }
+
+    /**
+     * 构造只有一列的文本协议行数据包。
+     */
+    private static ByteBuf row(long id) {
+        byte[] value = String.valueOf( id ).getBytes( StandardCharsets.US_ASCII );
+        ByteBuf buf = Unpooled.buffer( 5 + value.length );
+        buf.writeMediumLE( 1 + value.length );
+        buf.writeByte( 0 );
+        buf.writeByte( value.length );
+        buf.writeBytes( value );
+        return buf;
+    }
+
+    private static long readId(ByteBuf row) {
+        int length = row.getUnsignedByte( row.readerIndex() + 4 );
+        return Long.parseLong( row.toString( row.readerIndex() + 5, length, StandardCharsets.US_ASCII ) );
+    }
+}
@@ -0,0 +1,165 @@
+package uw.mydb.server;
+
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import uw.mydb.proxy.server.merge.ShardEventDrainer;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 多节点结果转发的吞吐对比：后端 EventLoop 上 synchronized 转发（改造前） vs 单生产者队列 + 前端 EventLoop 汇聚（改造后）。
+ * 每次操作模拟一次散发查询：每个节点 {@link #ROWS_PER_SHARD} 行，全部行重写 packetId 后计为完成。
+ */
+@BenchmarkMode(Mode.Throughput)//基准测试类型
+@OutputTimeUnit(TimeUnit.SECONDS)//基准测试结果的时间类型
+@Warmup(iterations = 1, time = 5)//预热的迭代次数
+@Threads(1)//测试线程数量
+@State(Scope.Benchmark)//该状态为所有线程共享
+//度量:iterations进行测试的轮次，time每轮进行的时长，timeUnit时长单位,batchSize批次数量
+@Measurement(iterations = 3, time = 5, timeUnit = TimeUnit.SECONDS, batchSize = -1)
+public class ShardForwardBenchmarkTest {
+
+    /**
+     * 每个节点返回的行数。
+     */
+    private static final int ROWS_PER_SHARD = 1000;
+
+    /**
+     * 后端 EventLoop 数量。
+     */
+    private static final int BACKEND_THREADS = 4;
+
+    @Param({"4", "16", "64"})
+    private int shards;
+
+    private EventLoopGroup backendGroup;
+
+    private DefaultEventLoop clientLoop;
+
+    private ByteBuf[] rows;
+
+    public static void main(String[] args) throws RunnerException {
+        Options opt = new OptionsBuilder().include( ShardForwardBenchmarkTest.class.getSimpleName() ).forks( 0 ).build();
+        new Runner( opt ).run();
+    }
+
+    @Setup
+    public void init() {
+        backendGroup = new DefaultEventLoopGroup( BACKEND_THREADS );
+        clientLoop = new DefaultEventLoop();
+        rows = new ByteBuf[shards];
+        for (int i = 0; i < shards; i++) {
+            rows[i] = Unpooled.buffer( 64 ).writeZero( 64 );
+        }
+    }
+
+    @TearDown
+    public void destroy() {
+        backendGroup.shutdownGracefully();
+        clientLoop.shutdownGracefully();
+    }
+
+    /**
+     * 改造前：各节点在后端 EventLoop 上竞争同一把锁转发。
+     */
+    @Benchmark
+    public void lockedForward() throws InterruptedException {
+        LockedSink sink = new LockedSink( shards * ROWS_PER_SHARD );
+        for (int shard = 0; shard < shards; shard++) {
+            final ByteBuf row = rows[shard];
+            backendGroup.next().execute( () -> {
+                for (int i = 0; i < ROWS_PER_SHARD; i++) {
+                    sink.forward( row );
+                }
+            } );
+        }
+        sink.latch.await();
+    }
+
+    /**
+     * 改造后：各节点写入自己的无锁队列，由前端 EventLoop 汇聚转发。
+     */
+    @Benchmark
+    public void drainerForward() throws InterruptedException {
+        DrainSink sink = new DrainSink( shards * ROWS_PER_SHARD );
+        ShardEventDrainer drainer = new ShardEventDrainer( shards, clientLoop, sink );
+        for (int shard = 0; shard < shards; shard++) {
+            final int index = shard;
+            final ByteBuf row = rows[shard];
+            backendGroup.next().execute( () -> {
+                for (int i = 0; i < ROWS_PER_SHARD; i++) {
+                    drainer.offer( index, row );
+                }
+            } );
+        }
+        sink.latch.await();
+    }
+
+    /**
+     * synchronized 转发：重写 packetId 并计数。
+     */
+    private static class LockedSink {
+
+        private final CountDownLatch latch = new CountDownLatch( 1 );
+
+        private final int total;
+
+        private int seq;
+
+        private int count;
+
+        private long bytes;
+
+        LockedSink(int total) {
+            this.total = total;
+        }
+
+        synchronized void forward(ByteBuf row) {
+            row.setByte( 3, ++seq );
+            bytes += row.readableBytes();
+            if (++count == total) {
+                latch.countDown();
+            }
+        }
+    }
+
+    /**
+     * 队列汇聚转发：在消费者线程上重写 packetId 并计数。
+     */
+    private static class DrainSink implements ShardEventDrainer.Handler {
+
+        private final CountDownLatch latch = new CountDownLatch( 1 );
+
+        private final int total;
+
+        private int seq;
+
+        private int count;
+
+        private long bytes;
+
+        DrainSink(int total) {
+            this.total = total;
+        }
+
+        @Override
+        public void onEvent(int shard, Object event) {
+            ByteBuf row = (ByteBuf) event;
+            row.setByte( 3, ++seq );
+            bytes += row.readableBytes();
+            if (++count == total) {
+                latch.countDown();
+            }
+        }
+    }
+}